@@ -1,15 +1,21 @@
 package inkball;
 
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.core.PVector;
 import processing.data.JSONArray;
 import processing.data.JSONObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.zip.CRC32;
 import processing.core.PImage;
 import processing.event.MouseEvent;
 
@@ -20,6 +26,10 @@ public class App extends PApplet {
     public static final int WIDTH = 576;
     public static final int HEIGHT = 640;
     public static final int FPS = 30;
+    // Room for the mouse events a window delivers between two ticks
+    private static final int INPUT_CAPACITY = 1024;
+    // Headless games only queue what a remote client sends, and hosts and solvers keep many
+    private static final int HEADLESS_INPUT_CAPACITY = 64;
 
     private String configPath;
     private JSONObject config;
@@ -33,6 +43,8 @@ public class App extends PApplet {
     private int remainingTime;
     private long lastTimeCheck;
     private int score;
+    private long capturePoints;
+    private int lineVersion;
     private int initialScore;
 
     private int currentLevelIndex = 0;
@@ -55,11 +67,42 @@ public class App extends PApplet {
     private boolean gameCompleted = false;
     private boolean showWinMessage = false;
 
+    private boolean headless = false;
+    private long tick;
+    private long seed;
+    private final GameRandom random = new GameRandom(System.nanoTime());
+    private InputLog inputLog;
+    private String recordPath;
+    private ParallelBallUpdater ballUpdater;
+    private LayoutCache layoutCache;
+    private GhostRace ghostRace;
+    private PGraphics staticLayer;
+    private Level staticLayerLevel;
+    private int staticLayerBrickVersion;
+    private boolean staticLayerBricks;
+    private final GameEventBus events = new GameEventBus(this, 64);
+    private final InputQueue inputQueue;
+    private final InputQueue.Handler inputHandler = this::applyInput;
+    private final TimerWheel timers = new TimerWheel(-1);
+    private final TimerWheel.Timer countdownTimer = new TimerWheel.Timer(this::countDown);
+    private final TimerWheel.Timer bonusTimer = new TimerWheel.Timer(this::awardTimeBonus);
+    private final TimerWheel.Timer tileTimer = new TimerWheel.Timer(this::stepYellowTiles);
+
     /**
      * Constructor for the App class. Initializes the config path.
      */
     public App() {
+        this(INPUT_CAPACITY);
+    }
+
+    /**
+     * Constructor for an App with an input queue of a given size.
+     *
+     * @param inputCapacity The number of inputs the queue holds between ticks.
+     */
+    private App(int inputCapacity) {
         this.configPath = "/inkball/config.json";
+        this.inputQueue = new InputQueue(inputCapacity);
     }
 
     /**
@@ -69,9 +112,188 @@ public class App extends PApplet {
      * @param seed The seed value to set for random number generation.
      */
     public void setRandomSeed(long seed) {
+        this.seed = seed;
+        random.setSeed(seed);
         randomSeed(seed);  // PApplet's method to set the seed for random
     }
 
+    /**
+     * Creates an App that runs the simulation without a window or sprites.
+     * The returned App is never passed to Processing; call {@link #tick()} to advance it.
+     *
+     * @param config The game configuration, in the same format as config.json.
+     * @param seed The seed for the random number generator.
+     * @return A headless App with the first level loaded.
+     */
+    public static App createHeadless(JSONObject config, long seed) {
+        return createHeadless(config, seed, 0);
+    }
+
+    /**
+     * Creates an App that runs the simulation without a window or sprites, starting on a given
+     * level of the config instead of the first.
+     *
+     * @param config The game configuration, in the same format as config.json.
+     * @param seed The seed for the random number generator.
+     * @param levelIndex The index of the level to start on.
+     * @return A headless App with that level loaded.
+     * @throws IllegalArgumentException If the config has no level with that index.
+     */
+    public static App createHeadless(JSONObject config, long seed, int levelIndex) {
+        App app = newHeadless(config, seed);
+        app.levels = config.getJSONArray("levels");
+        if (levelIndex < 0 || levelIndex >= app.levels.size()) {
+            throw new IllegalArgumentException("No level " + levelIndex);
+        }
+        app.currentLevelIndex = levelIndex;
+        app.loadLevel(levelIndex);
+        return app;
+    }
+
+    /**
+     * Creates a headless App whose levels take their layouts from a shared cache, so that many
+     * Apps playing the same levels keep one copy of the static geometry between them.
+     *
+     * @param config The game configuration, in the same format as config.json.
+     * @param seed The seed for the random number generator.
+     * @param layouts The cache to load layouts from.
+     * @return A headless App with the first level loaded.
+     */
+    public static App createHeadless(JSONObject config, long seed, LayoutCache layouts) {
+        App app = newHeadless(config, seed);
+        app.layoutCache = layouts;
+        app.levels = config.getJSONArray("levels");
+        app.loadLevel(app.currentLevelIndex);
+        return app;
+    }
+
+    /**
+     * Creates a headless App playing a single layout in the levelN.txt format, for tools that
+     * analyze layouts which are not part of a config. The level has no balls queued to spawn.
+     *
+     * @param config The game configuration, used for scoring.
+     * @param seed The seed for the random number generator.
+     * @param layout The level layout, one string per row.
+     * @return A headless App with the layout loaded as its current level.
+     */
+    public static App createHeadless(JSONObject config, long seed, String[] layout) {
+        App app = newHeadless(config, seed);
+        app.levels = new JSONArray();
+        Level level = new Level(app);
+        level.parseLayout(layout);
+        app.currentLevel = level;
+        app.levelTime = 120;
+        app.remainingTime = app.levelTime;
+        app.armTimers();
+        return app;
+    }
+
+    /**
+     * Creates a headless App with no level loaded.
+     *
+     * @param config The game configuration.
+     * @param seed The seed for the random number generator.
+     * @return The App.
+     */
+    static App newHeadless(JSONObject config, long seed) {
+        App app = new App(HEADLESS_INPUT_CAPACITY);
+        app.headless = true;
+        app.width = WIDTH;
+        app.height = HEIGHT;
+        app.sprites = new HashMap<>();
+        app.playerLines = new ArrayList<>();
+        app.setRandomSeed(seed);
+        app.config = config;
+        return app;
+    }
+
+    /**
+     * Creates a headless copy of this App's running game for what-if evaluation.
+     * The copy shares static geometry, finished player lines and, until either side
+     * changes them, balls and bricks, so forking costs close to nothing.
+     *
+     * @return The forked App. It has its own random generator, score and timers.
+     */
+    public App fork() {
+        App fork = new App(HEADLESS_INPUT_CAPACITY);
+        fork.headless = true;
+        fork.width = width;
+        fork.height = height;
+        fork.configPath = configPath;
+        fork.config = config;
+        fork.levels = levels;
+        fork.sprites = sprites;
+        fork.ballSprites = ballSprites;
+        fork.seed = seed;
+        fork.layoutCache = layoutCache;
+        fork.random.setState(random.getState());
+        fork.tick = tick;
+        fork.paused = paused;
+        fork.timeUp = timeUp;
+        fork.levelTime = levelTime;
+        fork.remainingTime = remainingTime;
+        fork.lastTimeCheck = lastTimeCheck;
+        fork.score = score;
+        fork.capturePoints = capturePoints;
+        fork.initialScore = initialScore;
+        fork.currentLevelIndex = currentLevelIndex;
+        fork.levelCompleted = levelCompleted;
+        fork.timeBonusRemaining = timeBonusRemaining;
+        fork.lastBonusTime = lastBonusTime;
+        fork.lastTileMoveTime = lastTileMoveTime;
+        fork.timers.reset(tick - 1);
+        fork.gameCompleted = gameCompleted;
+        fork.showWinMessage = showWinMessage;
+        if (yellowTiles != null) {
+            fork.yellowTiles = new ArrayList<>();
+            for (YellowTile tile : yellowTiles) {
+                YellowTile copy = fork.new YellowTile(tile.position.copy(), tile.edge);
+                copy.indexOnEdge = tile.indexOnEdge;
+                copy.loopsCompleted = tile.loopsCompleted;
+                fork.yellowTiles.add(copy);
+            }
+        }
+        // Finished lines are never modified, so the fork only needs its own list of them
+        fork.playerLines = new ArrayList<>(playerLines);
+        if (currentLine != null) {
+            List<PVector> points = new ArrayList<>();
+            for (PVector point : currentLine.points()) {
+                points.add(point.copy());
+            }
+            fork.currentLine = new Line(points, fork);
+            fork.currentLine.setDragging(currentLine.isDragging());
+        }
+        fork.currentLevel = currentLevel.fork(fork);
+        fork.armTimers();
+        return fork;
+    }
+
+    /**
+     * Loads a configuration file from the classpath.
+     *
+     * @param path The classpath location of the JSON file, e.g. "/inkball/config.json".
+     * @return The parsed configuration.
+     */
+    public static JSONObject loadConfigResource(String path) {
+        InputStream stream = App.class.getResourceAsStream(path);
+        if (stream == null) {
+            throw new IllegalArgumentException("Config not found: " + path);
+        }
+        return new JSONObject(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Computes a checksum of a configuration so that replays can detect a config mismatch.
+     *
+     * @param config The configuration to hash.
+     * @return The CRC32 of the compact JSON text.
+     */
+    public static int configHash(JSONObject config) {
+        CRC32 crc = new CRC32();
+        crc.update(config.format(-1).getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
     /**
      * Class representing a yellow tile that moves along the edges of the game window.
      */
@@ -154,47 +376,59 @@ public class App extends PApplet {
      */
     public void startLevelCompletion() {
         timeBonusRemaining = remainingTime;
-        lastBonusTime = millis();
+        lastBonusTime = getSimulationMillis();
         remainingTime = 0;
 
         yellowTiles = new ArrayList<>();
         yellowTiles.add(new YellowTile(new PVector(0, 0), 0));
         yellowTiles.add(new YellowTile(new PVector(width - CELLSIZE, height - TOPBAR - CELLSIZE), 2));
-        lastTileMoveTime = millis();
+        lastTileMoveTime = getSimulationMillis();
+        armTimers();
     }
 
     /**
      * Updates the level completion sequence, including time bonus and yellow tiles.
      */
     public void updateLevelCompletion() {
-        if (timeBonusRemaining > 0) {
-            if (millis() - lastBonusTime >= 67) {
-                score += 1;
-                timeBonusRemaining -= 1;
-                lastBonusTime = millis();
-            }
-        }
+        timers.advance(tick);
         if (timeBonusRemaining < 0) {
             timeBonusRemaining = 0;
         }
 
-        if (millis() - lastTileMoveTime >= 67) {
-            moveYellowTiles();
-            lastTileMoveTime = millis();
-        }
-
-        drawYellowTiles();
-
         if (timeBonusRemaining <= 0 && yellowTilesCompleted()) {
             if (gameCompleted) {
                 showWinMessage = true;
                 levelCompleted = false;
+                armTimers();
             } else {
                 nextLevel();
             }
         }
     }
 
+    /**
+     * Converts one second of the time bonus into a point, every 67 ms of the completion sequence.
+     */
+    private void awardTimeBonus() {
+        if (timeBonusRemaining > 0) {
+            score += 1;
+            timeBonusRemaining -= 1;
+            lastBonusTime = getSimulationMillis();
+        }
+        if (timeBonusRemaining > 0) {
+            timers.schedule(bonusTimer, tickAt(lastBonusTime + 67));
+        }
+    }
+
+    /**
+     * Moves the yellow tiles one step, every 67 ms of the completion sequence.
+     */
+    private void stepYellowTiles() {
+        moveYellowTiles();
+        lastTileMoveTime = getSimulationMillis();
+        timers.schedule(tileTimer, tickAt(lastTileMoveTime + 67));
+    }
+
     /**
      * Moves all yellow tiles along their respective edges.
      */
@@ -246,11 +480,79 @@ public class App extends PApplet {
         frameRate(FPS);
         sprites = new HashMap<>();
         playerLines = new ArrayList<>();
+        setRandomSeed(System.currentTimeMillis());
+        List<InputLog> ghosts = loadGhosts();
+        if (!ghosts.isEmpty()) {
+            // Race the same game the ghosts played
+            setRandomSeed(ghosts.get(0).getSeed());
+        }
         loadBallSprites();
         loadConfig();
         score = 0;
         initialScore = score;
         yellowTileSprite = loadImageFromResources("inkball/wall4.png");
+        if (!ghosts.isEmpty()) {
+            ghostRace = new GhostRace(config, ghosts, Runtime.getRuntime().availableProcessors());
+        }
+
+        if (args != null) {
+            for (int i = 0; i < args.length - 1; i++) {
+                if (args[i].equals("--record")) {
+                    recordPath = args[i + 1];
+                    startRecording();
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the recordings passed with --ghost on the command line, to race against.
+     *
+     * @return The recordings, empty if there are none.
+     */
+    private List<InputLog> loadGhosts() {
+        List<InputLog> ghosts = new ArrayList<>();
+        if (args != null) {
+            for (int i = 0; i < args.length - 1; i++) {
+                if (args[i].equals("--ghost")) {
+                    try {
+                        ghosts.add(InputLog.load(new File(args[i + 1])));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+        return ghosts;
+    }
+
+    /**
+     * Starts recording player input against the simulation tick it is applied on.
+     *
+     * @return The log that inputs are appended to.
+     */
+    public InputLog startRecording() {
+        inputLog = new InputLog(seed, configHash(config));
+        return inputLog;
+    }
+
+    /**
+     * Saves the input recording, if one was requested on the command line, before the sketch closes.
+     */
+    @Override
+    public void dispose() {
+        if (inputLog != null && recordPath != null) {
+            inputLog.setEndTick(tick);
+            try {
+                inputLog.save(new File(recordPath));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (ghostRace != null) {
+            ghostRace.close();
+        }
+        super.dispose();
     }
 
     /**
@@ -292,7 +594,7 @@ public class App extends PApplet {
      */
     public PImage getSprite(String s) {
         PImage result = sprites.get(s);
-        if (result == null) {
+        if (result == null && !headless) {
             URL resourceUrl = getClass().getResource(s + ".png");
             if (resourceUrl != null) {
                 String decodedPath = resourceUrl.getPath().replace("%20", " ");
@@ -335,12 +637,17 @@ public class App extends PApplet {
 
         JSONObject levelConfig = levels.getJSONObject(index);
         currentLevel = new Level(this);
-        currentLevel.loadLevel(levelConfig);
+        if (layoutCache != null) {
+            currentLevel.loadLevel(levelConfig, layoutCache);
+        } else {
+            currentLevel.loadLevel(levelConfig);
+        }
 
         levelTime = levelConfig.getInt("time", 120);
         remainingTime = levelTime;
-        lastTimeCheck = millis();
+        lastTimeCheck = getSimulationMillis();
         timeUp = false;
+        armTimers();
     }
 
     /**
@@ -349,6 +656,7 @@ public class App extends PApplet {
     public void restartLevel() {
         score = initialScore;
         playerLines.clear();
+        markLinesChanged();
         loadLevel(currentLevelIndex);
         paused = false;
         timeUp = false;
@@ -362,6 +670,7 @@ public class App extends PApplet {
         if (currentLevelIndex < levels.size()) {
             levelCompleted = false;
             playerLines.clear();
+            markLinesChanged();
             loadLevel(currentLevelIndex);
         } else {
             gameCompleted = true;
@@ -379,16 +688,32 @@ public class App extends PApplet {
     @Override
     public void keyPressed() {
         if (key == 'r') {
-            if (gameCompleted) {
-                restartGame();
-            } else {
-                restartLevel();
-            }
+            inputQueue.offer(InputLog.RESTART, 0, 0);
         } else if (key == ' ') {
-            paused = !paused;
+            inputQueue.offer(InputLog.PAUSE, 0, 0);
         }
     }
 
+    /**
+     * Restarts the whole game once it has been completed, otherwise the current level.
+     */
+    public void restart() {
+        record(InputLog.RESTART, 0, 0);
+        if (gameCompleted) {
+            restartGame();
+        } else {
+            restartLevel();
+        }
+    }
+
+    /**
+     * Pauses or unpauses the game.
+     */
+    public void togglePause() {
+        record(InputLog.PAUSE, 0, 0);
+        paused = !paused;
+    }
+
     /**
      * Restarts the entire game from the first level, resetting score and game state.
      */
@@ -400,35 +725,111 @@ public class App extends PApplet {
         gameCompleted = false;
         showWinMessage = false;
         playerLines.clear();
+        markLinesChanged();
         loadLevel(currentLevelIndex);
     }
 
 
+    /**
+     * Advances the game by one frame without drawing anything.
+     * All game logic runs here so that a headless App behaves exactly like the windowed one.
+     * Mouse and keyboard input queued since the last tick is applied first, so the event thread
+     * never touches the lines while the simulation is using them.
+     * Captures, destroyed bricks and used-up lines are collected on the event bus during the
+     * tick and applied together before the level is checked for completion.
+     */
+    public void tick() {
+        applyQueuedInput();
+        if (!levelCompleted) {
+            events.begin();
+            try {
+                if (!paused && !timeUp) {
+                    currentLevel.update(config);
+                    updateTimer();
+                }
+
+                checkBallLineCollisions();
+            } finally {
+                events.end();
+            }
+
+            if (currentLevel.isLevelCompleted()) {
+                levelCompleted = true;
+                startLevelCompletion();
+            }
+        } else {
+            updateLevelCompletion();
+        }
+        tick++;
+    }
+
     /**
      * Override function that handles game logic, drawing the current state of the game each frame.
      * This function is automatically called by the Processing engine every frame.
      */
     @Override
     public void draw() {
-        background(255);
-        PImage tileImage = getSprite("tile");
-
-        pushMatrix();
-        translate(0, TOPBAR);
+        if (ghostRace != null) {
+            // The ghosts step on their own threads while the live game ticks
+            ghostRace.beginAdvance();
+        }
+        tick();
+        if (ghostRace != null) {
+            ghostRace.finishAdvance();
+        }
+        render();
+    }
 
+    /**
+     * Redraws the off-screen layer holding the tiles, walls, holes, spawners and bricks if the
+     * level has changed or one of its bricks has been hit, destroyed or restored since it was
+     * last drawn. These never move, so each frame draws the layer as a single image instead of
+     * every sprite on the board.
+     *
+     * @param withBricks True to include the bricks still standing.
+     */
+    private void updateStaticLayer(boolean withBricks) {
+        if (staticLayer != null && staticLayerLevel == currentLevel && staticLayerBricks == withBricks
+                && staticLayerBrickVersion == currentLevel.getBrickVersion()) {
+            return;
+        }
+        if (staticLayer == null) {
+            staticLayer = createGraphics(width, height - TOPBAR);
+        }
+        PImage tileImage = getSprite("tile");
+        staticLayer.beginDraw();
+        staticLayer.clear();
         for (int y = 0; y < height - TOPBAR; y += CELLSIZE) {
             for (int x = 0; x < width; x += CELLSIZE) {
-                image(tileImage, x, y, CELLSIZE, CELLSIZE);
+                staticLayer.image(tileImage, x, y, CELLSIZE, CELLSIZE);
             }
         }
+        currentLevel.displayStaticLayer(staticLayer, withBricks);
+        staticLayer.endDraw();
+        staticLayerLevel = currentLevel;
+        staticLayerBrickVersion = currentLevel.getBrickVersion();
+        staticLayerBricks = withBricks;
+    }
+
+    /**
+     * Draws the current state of the game without advancing it.
+     */
+    public void render() {
+        background(255);
+
+        pushMatrix();
+        translate(0, TOPBAR);
+
+        // Bricks are left off the board once the level is completed
+        updateStaticLayer(!levelCompleted);
+        image(staticLayer, 0, 0);
 
         if (!levelCompleted) {
-            if (!paused && !timeUp) {
-                currentLevel.update(config);
-                updateTimer();
-            }
+            currentLevel.displayDynamicElements();
 
-            currentLevel.display();
+            if (ghostRace != null) {
+                ghostRace.display(this);
+            }
 
             for (Line line : playerLines) {
                 line.display();
@@ -437,16 +838,8 @@ public class App extends PApplet {
             if (currentLine != null) {
                 currentLine.display();
             }
-
-            checkBallLineCollisions();
-
-            if (currentLevel.isLevelCompleted()) {
-                levelCompleted = true;
-                startLevelCompletion();
-            }
         } else {
-            currentLevel.displayStaticElements();
-            updateLevelCompletion();
+            drawYellowTiles();
         }
 
         popMatrix();
@@ -483,6 +876,7 @@ public class App extends PApplet {
      */
     public void removeLine(Line line) {
         playerLines.remove(line);
+        markLinesChanged();
     }
 
     /**
@@ -521,32 +915,12 @@ public class App extends PApplet {
     public void mousePressed(MouseEvent event) {
         if (mouseButton == LEFT) {
             if (event.isControlDown()) {
-                Line lineToRemove = null;
-                for (Line line : playerLines) {
-                    if (line.isPointOnLine(new PVector(mouseX, mouseY - TOPBAR))) {
-                        lineToRemove = line;
-                        break;
-                    }
-                }
-                if (lineToRemove != null) {
-                    playerLines.remove(lineToRemove);
-                }
+                inputQueue.offer(InputLog.ERASE, mouseX, mouseY - TOPBAR);
             } else if (mouseY > TOPBAR) {
-                PVector start = new PVector(mouseX, mouseY - TOPBAR);
-                currentLine = new Line(new ArrayList<>(), this);
-                currentLine.startDrawing(start);
+                inputQueue.offer(InputLog.LINE_START, mouseX, mouseY - TOPBAR);
             }
         } else if (mouseButton == RIGHT) {
-            Line lineToRemove = null;
-            for (Line line : playerLines) {
-                if (line.isPointOnLine(new PVector(mouseX, mouseY - TOPBAR))) {
-                    lineToRemove = line;
-                    break;
-                }
-            }
-            if (lineToRemove != null) {
-                playerLines.remove(lineToRemove);
-            }
+            inputQueue.offer(InputLog.ERASE, mouseX, mouseY - TOPBAR);
         }
     }
 
@@ -556,8 +930,8 @@ public class App extends PApplet {
      */
     @Override
     public void mouseDragged() {
-        if (currentLine != null && mouseY > TOPBAR) {
-            currentLine.addPoint(new PVector(mouseX, mouseY - TOPBAR));
+        if (mouseY > TOPBAR) {
+            inputQueue.offer(InputLog.LINE_DRAG, mouseX, mouseY - TOPBAR);
         }
     }
 
@@ -567,18 +941,135 @@ public class App extends PApplet {
      */
     @Override
     public void mouseReleased() {
+        inputQueue.offer(InputLog.LINE_RELEASE, 0, 0);
+    }
+
+    /**
+     * Applies the mouse and keyboard input queued since the last call. Must be called on the
+     * thread that runs the simulation; {@link #tick()} calls it first.
+     *
+     * @return The number of inputs applied.
+     */
+    public int applyQueuedInput() {
+        return inputQueue.drain(inputHandler);
+    }
+
+    /**
+     * Applies one input through the same methods live play uses. Inputs from the mouse and
+     * keyboard arrive here from the input queue at the start of a tick; replays call it directly.
+     *
+     * @param type The input type, one of the InputLog constants.
+     * @param x The x coordinate on the board, or 0 if the input has none.
+     * @param y The y coordinate on the board, or 0 if the input has none.
+     */
+    public void applyInput(byte type, int x, int y) {
+        switch (type) {
+            case InputLog.LINE_START:
+                beginLine(x, y);
+                break;
+            case InputLog.LINE_DRAG:
+                extendLine(x, y);
+                break;
+            case InputLog.LINE_RELEASE:
+                finishLine();
+                break;
+            case InputLog.ERASE:
+                eraseLineAt(x, y);
+                break;
+            case InputLog.PAUSE:
+                togglePause();
+                break;
+            case InputLog.RESTART:
+                restart();
+                break;
+            default:
+                throw new IllegalStateException("Unknown input type " + type);
+        }
+    }
+
+    /**
+     * Starts a new player line at a board position.
+     *
+     * @param x The x coordinate on the board.
+     * @param y The y coordinate on the board, below the top bar.
+     */
+    public void beginLine(int x, int y) {
+        record(InputLog.LINE_START, x, y);
+        currentLine = new Line(new ArrayList<>(), this);
+        currentLine.startDrawing(new PVector(x, y));
+    }
+
+    /**
+     * Adds a point to the line currently being drawn, if any.
+     *
+     * @param x The x coordinate on the board.
+     * @param y The y coordinate on the board, below the top bar.
+     */
+    public void extendLine(int x, int y) {
+        if (currentLine != null) {
+            record(InputLog.LINE_DRAG, x, y);
+            currentLine.addPoint(new PVector(x, y));
+        }
+    }
+
+    /**
+     * Finishes the line currently being drawn, if any, and adds it to the player's lines.
+     */
+    public void finishLine() {
         if (currentLine != null) {
+            record(InputLog.LINE_RELEASE, 0, 0);
             playerLines.add(currentLine);
+            markLinesChanged();
             currentLine.stopDrawing();
             currentLine = null;
         }
     }
 
+    /**
+     * Removes the first player line passing near a board position.
+     *
+     * @param x The x coordinate on the board.
+     * @param y The y coordinate on the board, below the top bar.
+     */
+    public void eraseLineAt(int x, int y) {
+        record(InputLog.ERASE, x, y);
+        Line lineToRemove = null;
+        for (Line line : playerLines) {
+            if (line.isPointOnLine(new PVector(x, y))) {
+                lineToRemove = line;
+                break;
+            }
+        }
+        if (lineToRemove != null) {
+            playerLines.remove(lineToRemove);
+            markLinesChanged();
+        }
+    }
+
+    /**
+     * Appends an input to the recording, if one is running.
+     *
+     * @param type The input type, one of the InputLog constants.
+     * @param x The x coordinate of the input, or 0 if it has none.
+     * @param y The y coordinate of the input, or 0 if it has none.
+     */
+    private void record(byte type, int x, int y) {
+        if (inputLog != null) {
+            inputLog.add(tick, type, x, y);
+        }
+    }
+
     /**
      * Checks for collisions between balls and player-drawn lines.
      */
     public void checkBallLineCollisions() {
-        for (Ball ball : currentLevel.getBalls()) {
+        // Balls captured earlier in the tick are still in the level until the events are applied
+        List<Ball> balls = events.withoutCaptured(currentLevel.mutableBalls());
+        if (ballUpdater != null && ballUpdater.isWorthwhile(balls.size()) && !playerLines.isEmpty()) {
+            ballUpdater.checkLineCollisions(currentLevel, balls, playerLines);
+            return;
+        }
+        for (Ball ball : balls) {
             ball.checkLineCollisions(playerLines, playerLines);
         }
     }
@@ -649,20 +1140,61 @@ public class App extends PApplet {
 
     /**
      * Updates the countdown timer for the current level, decrementing the remaining time.
+     * The countdown sits on the timer wheel, so this only does work in the tick a second runs out.
      */
     public void updateTimer() {
-        int currentTime = millis();
-        if (currentTime - lastTimeCheck >= 1000) {
-            remainingTime--;
-            lastTimeCheck = currentTime;
-
-            if (remainingTime <= 0) {
-                timeUp = true;
-                paused = true;
-            }
+        timers.advance(tick);
+    }
+
+    /**
+     * Takes a second off the level's remaining time and schedules the next one.
+     */
+    private void countDown() {
+        remainingTime--;
+        lastTimeCheck = getSimulationMillis();
+        if (remainingTime <= 0) {
+            timeUp = true;
+            paused = true;
+        }
+        timers.schedule(countdownTimer, tickAt(lastTimeCheck + 1000));
+    }
+
+    /**
+     * Puts the game's timers on the wheel to match its state: the countdown while a level is
+     * played, and the time bonus and yellow tiles during the completion sequence. Each timer is
+     * due in the first tick whose time is at least its interval after it last ran, which is when
+     * the old per-frame time checks would have fired.
+     */
+    private void armTimers() {
+        if (!levelCompleted) {
+            timers.schedule(countdownTimer, tickAt(lastTimeCheck + 1000));
+            timers.cancel(bonusTimer);
+            timers.cancel(tileTimer);
+            return;
+        }
+        timers.cancel(countdownTimer);
+        if (timeBonusRemaining > 0) {
+            timers.schedule(bonusTimer, tickAt(lastBonusTime + 67));
+        } else {
+            timers.cancel(bonusTimer);
+        }
+        if (yellowTiles != null) {
+            timers.schedule(tileTimer, tickAt(lastTileMoveTime + 67));
+        } else {
+            timers.cancel(tileTimer);
         }
     }
 
+    /**
+     * Finds the first tick at or after a point in simulation time.
+     *
+     * @param millis The simulation time in milliseconds.
+     * @return The tick.
+     */
+    private static long tickAt(long millis) {
+        return Math.floorDiv(millis * FPS + 999, 1000L);
+    }
+
     /**
      * Increases the player's score by a specified amount.
      *
@@ -670,6 +1202,7 @@ public class App extends PApplet {
      */
     public void increaseScore(int amount) {
         score += amount;
+        capturePoints += amount;
     }
 
     /**
@@ -680,6 +1213,7 @@ public class App extends PApplet {
      */
     public void decreaseScore(int amount) {
         score -= amount;
+        capturePoints -= amount;
         if (score < 0) {
             score = 0;
         }
@@ -699,8 +1233,69 @@ public class App extends PApplet {
         }
     }
 
+    /**
+     * Gets the game time derived from the number of frames simulated so far.
+     * Timers use this clock instead of the wall clock so that replays reproduce them exactly.
+     *
+     * @return The simulation time in milliseconds.
+     */
+    public long getSimulationMillis() {
+        return tick * 1000 / FPS;
+    }
+
     // Getter and setter methods for various class variables
 
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public GameRandom getRandom() {
+        return random;
+    }
+
+    public void setTick(long tick) {
+        this.tick = tick;
+        timers.reset(tick - 1);
+        armTimers();
+    }
+
+    public int getInitialScore() {
+        return initialScore;
+    }
+
+    public void setInitialScore(int initialScore) {
+        this.initialScore = initialScore;
+    }
+
+    public void setLevelTime(int levelTime) {
+        this.levelTime = levelTime;
+    }
+
+    public long getLastTileMoveTime() {
+        return lastTileMoveTime;
+    }
+
+    public void setLastTileMoveTime(long lastTileMoveTime) {
+        this.lastTileMoveTime = lastTileMoveTime;
+        armTimers();
+    }
+
+    public JSONObject getConfig() {
+        return config;
+    }
+
+    public InputLog getInputLog() {
+        return inputLog;
+    }
+
     public void setRemainingTime(int remainingTime) {
         this.remainingTime = remainingTime;
     }
@@ -749,6 +1344,11 @@ public class App extends PApplet {
         return yellowTiles;
     }
 
+    public void setYellowTiles(List<YellowTile> yellowTiles) {
+        this.yellowTiles = yellowTiles;
+        armTimers();
+    }
+
     public boolean isMoveUpcomingBalls() {
         return moveUpcomingBalls;
     }
@@ -759,6 +1359,7 @@ public class App extends PApplet {
     
     public void setLastTimeCheck(long lastTimeCheck) {
         this.lastTimeCheck = lastTimeCheck;
+        armTimers();
     }
     
     public long getLastTimeCheck() {
@@ -783,6 +1384,7 @@ public class App extends PApplet {
     
     public void setLevelCompleted(boolean levelCompleted) {
         this.levelCompleted = levelCompleted;
+        armTimers();
     }
     
     public boolean isLevelCompleted() {
@@ -791,6 +1393,7 @@ public class App extends PApplet {
     
     public void setTimeBonusRemaining(int timeBonusRemaining) {
         this.timeBonusRemaining = timeBonusRemaining;
+        armTimers();
     }
 
     public void setTimeUp(boolean timeUp) {
@@ -803,6 +1406,7 @@ public class App extends PApplet {
 
     public void setLastBonusTime(long lastBonusTime) {
         this.lastBonusTime = lastBonusTime;
+        armTimers();
     }
 
     public long getLastBonusTime() {
@@ -821,6 +1425,37 @@ public class App extends PApplet {
         this.score = score;
     }
 
+    /**
+     * Records that the player lines have changed, so anything cached from them is rebuilt.
+     */
+    void markLinesChanged() {
+        lineVersion++;
+    }
+
+    /**
+     * Gets a counter that changes whenever a player line is added, removed or restored.
+     *
+     * @return The current line version.
+     */
+    public int getLineVersion() {
+        return lineVersion;
+    }
+
+    /**
+     * Gets the running total of points given by {@link #increaseScore(int)} minus points
+     * taken by {@link #decreaseScore(int)}. Unlike the score, it is never clamped at zero
+     * and does not include the time bonus, so its changes are exactly what captures earned.
+     *
+     * @return The net capture points since the App was created.
+     */
+    public long getCapturePoints() {
+        return capturePoints;
+    }
+
+    public void setCapturePoints(long capturePoints) {
+        this.capturePoints = capturePoints;
+    }
+
     public void setconfigPath(String path) {
         this.configPath = path;
     }
@@ -829,7 +1464,41 @@ public class App extends PApplet {
         this.currentLine = currentLine;
     }
 
+    /**
+     * Sets the updater that splits ball updates across threads. Results are the same as
+     * without one. Forks do not inherit it.
+     *
+     * @param ballUpdater The updater, or null to update balls on the calling thread.
+     */
+    public void setBallUpdater(ParallelBallUpdater ballUpdater) {
+        this.ballUpdater = ballUpdater;
+    }
+
+    public ParallelBallUpdater getBallUpdater() {
+        return ballUpdater;
+    }
+
+    public LayoutCache getLayoutCache() {
+        return layoutCache;
+    }
+
+    public GhostRace getGhostRace() {
+        return ghostRace;
+    }
+
+    public void setGhostRace(GhostRace ghostRace) {
+        this.ghostRace = ghostRace;
+    }
+
+    public GameEventBus getEvents() {
+        return events;
+    }
+
+    public InputQueue getInputQueue() {
+        return inputQueue;
+    }
+
     public static void main(String[] args) {
-        PApplet.main("inkball.App");
+        PApplet.main("inkball.App", args);
     }
 }
\ No newline at end of file
@@ -5,12 +5,16 @@ import processing.core.PImage;
 import processing.data.JSONObject;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Ball extends GameObject {
     private PImage sprite;
     private float radius;
     private float originalSize;
     private int colorType;
+    private int[] cooldownWallIds = new int[4];
+    private int[] cooldownValues = new int[4];
+    private int cooldownCount;
 
     /**
      * Constructor to initialize the ball.
@@ -29,6 +33,110 @@ public class Ball extends GameObject {
         this.colorType = colorType;
     }
 
+    /**
+     * Copy constructor used when a forked level first changes its balls.
+     *
+     * @param other The ball to copy.
+     * @param app Reference to the application that owns the copy.
+     */
+    private Ball(Ball other, App app) {
+        super(other.position.copy(), app);
+        this.sprite = other.sprite;
+        this.velocity = other.velocity.copy();
+        this.originalSize = other.originalSize;
+        this.radius = other.radius;
+        this.colorType = other.colorType;
+        this.cooldownWallIds = other.cooldownWallIds.clone();
+        this.cooldownValues = other.cooldownValues.clone();
+        this.cooldownCount = other.cooldownCount;
+    }
+
+    /**
+     * Creates an independent copy of the ball for another App.
+     *
+     * @param app Reference to the application that owns the copy.
+     * @return The copy.
+     */
+    public Ball copy(App app) {
+        return new Ball(this, app);
+    }
+
+    /**
+     * Gets the collision cooldown this ball has with a wall.
+     * Walls skip their collision response while the cooldown is above zero.
+     *
+     * @param wall The wall or brick.
+     * @return The remaining cooldown, or 0 if there is none.
+     */
+    public int getCooldown(Wall wall) {
+        int id = wall.getId();
+        for (int i = 0; i < cooldownCount; i++) {
+            if (cooldownWallIds[i] == id) {
+                return cooldownValues[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sets the collision cooldown this ball has with a wall. A value of 0 removes it.
+     *
+     * @param wall The wall or brick.
+     * @param value The cooldown to set.
+     */
+    public void setCooldown(Wall wall, int value) {
+        setCooldown(wall.getId(), value);
+    }
+
+    /**
+     * Sets the collision cooldown this ball has with the wall of the given id.
+     *
+     * @param wallId The id of the wall or brick.
+     * @param value The cooldown to set, or 0 to remove it.
+     */
+    void setCooldown(int wallId, int value) {
+        for (int i = 0; i < cooldownCount; i++) {
+            if (cooldownWallIds[i] == wallId) {
+                if (value == 0) {
+                    cooldownCount--;
+                    cooldownWallIds[i] = cooldownWallIds[cooldownCount];
+                    cooldownValues[i] = cooldownValues[cooldownCount];
+                } else {
+                    cooldownValues[i] = value;
+                }
+                return;
+            }
+        }
+        if (value != 0) {
+            if (cooldownCount == cooldownWallIds.length) {
+                cooldownWallIds = Arrays.copyOf(cooldownWallIds, cooldownCount * 2);
+                cooldownValues = Arrays.copyOf(cooldownValues, cooldownCount * 2);
+            }
+            cooldownWallIds[cooldownCount] = wallId;
+            cooldownValues[cooldownCount] = value;
+            cooldownCount++;
+        }
+    }
+
+    /**
+     * Removes all collision cooldowns.
+     */
+    void clearCooldowns() {
+        cooldownCount = 0;
+    }
+
+    int getCooldownCount() {
+        return cooldownCount;
+    }
+
+    int getCooldownWallId(int index) {
+        return cooldownWallIds[index];
+    }
+
+    int getCooldownValue(int index) {
+        return cooldownValues[index];
+    }
+
     /**
      * Sets the size of the ball.
      *
@@ -65,13 +173,20 @@ public class Ball extends GameObject {
         this.originalSize = originalSize;
     }
 
+    /**
+     * Draws a new random spawn velocity, the same way the constructor does.
+     */
+    void redrawVelocity() {
+        velocity.set(randomVelocity(), randomVelocity());
+    }
+
     /**
      * Generates a random velocity for the ball.
      *
      * @return A float representing the random velocity (-2 or 2).
      */
     private float randomVelocity() {
-        float randomValue = app.random(1);
+        float randomValue = app.getRandom().nextFloat(1);
         return randomValue < 0.5 ? -2 : 2;
     }
 
@@ -139,7 +254,7 @@ public class Ball extends GameObject {
      * Respawns the ball at a random position with original size and velocity.
      */
     public void respawn() {
-        this.position = new PVector(app.random(app.width), app.random(app.height));
+        this.position = new PVector(app.getRandom().nextFloat(app.width), app.getRandom().nextFloat(app.height));
         this.velocity = new PVector(randomVelocity(), randomVelocity());
         this.radius = originalSize;
         this.colorType = -1;
@@ -162,21 +277,28 @@ public class Ball extends GameObject {
     }
 
     /**
-     * Checks for collisions between the ball and lines.
+     * Checks for collisions between the ball and lines. Every line hit is used up; lines used
+     * up earlier in the tick are skipped.
      *
      * @param lines A list of Line objects to check for collisions.
      * @param playerLines A list of lines drawn by the player.
      */
     public void checkLineCollisions(List<Line> lines, List<Line> playerLines) {
+        GameEventBus events = app.getEvents();
         List<Line> linesToRemove = new ArrayList<>();
         for (Line line : lines) {
+            if (events.isConsumed(line)) {
+                continue;
+            }
             if (line.checkCollision(this)) {
                 PVector newVelocity = line.calculateNewVelocity(this);
                 this.velocity.set(newVelocity);
                 linesToRemove.add(line);
             }
         }
-        playerLines.removeAll(linesToRemove);
+        for (Line line : linesToRemove) {
+            events.lineConsumed(line, this, playerLines);
+        }
     }
 
     /**
@@ -260,6 +382,26 @@ public class Ball extends GameObject {
         this.sprite = app.getBallSprites()[this.colorType];
     }
 
+    /**
+     * Overwrites the ball's state in place, reusing its position and velocity vectors.
+     *
+     * @param x The x coordinate of the ball's centre.
+     * @param y The y coordinate of the ball's centre.
+     * @param vx The x component of the velocity.
+     * @param vy The y component of the velocity.
+     * @param radius The current radius.
+     * @param originalSize The radius the ball returns to away from holes.
+     * @param colorType The color type, or -1 for a ball without a color.
+     */
+    void restore(float x, float y, float vx, float vy, float radius, float originalSize, int colorType) {
+        this.position.set(x, y);
+        this.velocity.set(vx, vy);
+        this.radius = radius;
+        this.originalSize = originalSize;
+        this.colorType = colorType;
+        this.sprite = colorType >= 0 ? app.getBallSprites()[colorType] : null;
+    }
+
     /**
      * Gets the sprite of the ball.
      *
@@ -0,0 +1,93 @@
+package inkball;
+
+/**
+ * Reads values packed by a {@link BitWriter}.
+ */
+public class BitReader {
+    private final byte[] bytes;
+    private final long end;
+    private long bits;
+
+    /**
+     * Constructor for the BitReader object.
+     *
+     * @param bytes The packed bytes.
+     */
+    public BitReader(byte[] bytes) {
+        this.bytes = bytes;
+        this.end = (long) bytes.length * 8;
+    }
+
+    /**
+     * Reads a fixed-width value.
+     *
+     * @param count The number of bits, from 0 to 64.
+     * @return The value, in the low bits.
+     */
+    public long read(int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 1) | (readBit() ? 1 : 0);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a fixed-width two's complement value.
+     *
+     * @param count The number of bits, from 1 to 64.
+     * @return The value, sign-extended.
+     */
+    public long readSignedBits(int count) {
+        return read(count) << (64 - count) >> (64 - count);
+    }
+
+    /**
+     * Reads a single bit.
+     *
+     * @return The bit.
+     * @throws IllegalStateException If there are no bits left.
+     */
+    public boolean readBit() {
+        if (bits >= end) {
+            throw new IllegalStateException("Read past the end of the data");
+        }
+        boolean bit = (bytes[(int) (bits >>> 3)] & (0x80 >>> (bits & 7))) != 0;
+        bits++;
+        return bit;
+    }
+
+    /**
+     * Reads a value written by {@link BitWriter#writeUnsigned(long)}.
+     *
+     * @return The value.
+     */
+    public long readUnsigned() {
+        int zeros = 0;
+        while (!readBit()) {
+            zeros++;
+            if (zeros > 63) {
+                throw new IllegalStateException("Malformed gamma code");
+            }
+        }
+        return ((1L << zeros) | read(zeros)) - 1;
+    }
+
+    /**
+     * Gets the number of bits not read yet.
+     *
+     * @return The bits left.
+     */
+    public long remaining() {
+        return end - bits;
+    }
+
+    /**
+     * Reads a value written by {@link BitWriter#writeSigned(long)}.
+     *
+     * @return The value.
+     */
+    public long readSigned() {
+        return Varint.unZigZag(readUnsigned());
+    }
+}
@@ -0,0 +1,97 @@
+package inkball;
+
+import java.util.Arrays;
+
+/**
+ * Packs values into a byte array a few bits at a time, most significant bit first.
+ *
+ * <p>Fixed-width fields are written with {@link #write(long, int)}. Counts and small deltas,
+ * which are usually close to zero but occasionally large, use Elias gamma codes: a value v
+ * takes 2 * floor(log2(v + 1)) + 1 bits, so 0 costs one bit and 1 or 2 cost three.</p>
+ */
+public class BitWriter {
+    private byte[] bytes;
+    private long bits;
+
+    /**
+     * Constructor for the BitWriter object.
+     *
+     * @param capacity The initial size in bytes. The buffer grows as needed.
+     */
+    public BitWriter(int capacity) {
+        this.bytes = new byte[Math.max(8, capacity)];
+    }
+
+    /**
+     * Writes the low bits of a value.
+     *
+     * @param value The value.
+     * @param count The number of bits, from 0 to 64.
+     */
+    public void write(long value, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            writeBit(((value >>> i) & 1) != 0);
+        }
+    }
+
+    /**
+     * Writes a single bit.
+     *
+     * @param bit The bit.
+     */
+    public void writeBit(boolean bit) {
+        int index = (int) (bits >>> 3);
+        if (index == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        if (bit) {
+            bytes[index] |= (byte) (0x80 >>> (bits & 7));
+        }
+        bits++;
+    }
+
+    /**
+     * Writes a value that is not negative as an Elias gamma code.
+     *
+     * @param value The value, at least 0.
+     */
+    public void writeUnsigned(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        long coded = value + 1;
+        int width = 64 - Long.numberOfLeadingZeros(coded);
+        write(0, width - 1);
+        write(coded, width);
+    }
+
+    /**
+     * Writes a signed value as the gamma code of its zig-zag encoding.
+     *
+     * @param value The value.
+     */
+    public void writeSigned(long value) {
+        writeUnsigned(Varint.zigZag(value));
+    }
+
+    /**
+     * Forgets everything written so far, keeping the buffer.
+     */
+    public void reset() {
+        Arrays.fill(bytes, 0, (int) ((bits + 7) >>> 3), (byte) 0);
+        bits = 0;
+    }
+
+    /**
+     * Copies the written bits out, padded with zeros to a whole byte.
+     *
+     * @return The bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, (int) ((bits + 7) >>> 3));
+    }
+
+    public long getBitLength() {
+        return bits;
+    }
+}
@@ -19,6 +19,17 @@ public class Brick extends Wall {
         this.hitCount = 0;
     }
 
+    /**
+     * Copy constructor used when a forked level first changes its bricks.
+     *
+     * @param other The brick to copy.
+     * @param app Reference to the application that owns the copy.
+     */
+    public Brick(Brick other, App app) {
+        super(other, app);
+        this.hitCount = other.hitCount;
+    }
+
     /**
      * Gets the hit count for the brick.
      *
@@ -28,6 +39,15 @@ public class Brick extends Wall {
         return hitCount;
     }
 
+    /**
+     * Sets the hit count for the brick.
+     *
+     * @param hitCount The number of times the brick has been hit.
+     */
+    public void setHitCount(int hitCount) {
+        this.hitCount = hitCount;
+    }
+
     /**
      * Increments the hit count of the brick.
      */
@@ -52,26 +72,27 @@ public class Brick extends Wall {
     @Override
     public boolean checkCollision(Ball ball) {
         if (isCollidingWithBall(ball)) {
-            int buffer = collisionBuffers.getOrDefault(ball, 0);
+            int buffer = ball.getCooldown(this);
 
             if (buffer <= 0) {
                 correctBallPosition(ball);
                 reflectBallVelocity(ball);
-                collisionBuffers.put(ball, 5);
+                ball.setCooldown(this, HIT_COOLDOWN);
 
                 if (wallType == 0 || wallType == ball.getColorType()) {
                     incrementHitCount();
+                    app.getEvents().brickHit(this, ball);
                     if (hitCount >= 3) {
-                        app.getCurrentLevel().removeBrick(this);
+                        app.getEvents().brickDestroyed(this);
                     }
                 }
             } else {
-                collisionBuffers.put(ball, buffer - 1);
+                ball.setCooldown(this, buffer - 1);
                 correctBallPosition(ball);
             }
             return true;
         } else {
-            collisionBuffers.put(ball, 0);
+            ball.setCooldown(this, 0);
             return false;
         }
     }
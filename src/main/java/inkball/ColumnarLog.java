@@ -0,0 +1,373 @@
+package inkball;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A columnar encoding of an {@link InputLog}, smaller than its row format and quick to decode,
+ * for keeping large numbers of recordings.
+ *
+ * <p>Instead of one record per event, the events are split into columns: the tick deltas, the
+ * event types as runs of equal types, and for each event type with a position a column of x
+ * deltas and a column of y deltas from the previous position. Drag points, which make up most
+ * of a recording, then sit together in two columns of small zig-zag varints, and line starts and
+ * erases, whose jumps are larger, do not dilute them. Each column is preceded by its length, so
+ * a reader can skip the columns it does not need.</p>
+ *
+ * <p>The columns can optionally be passed through a Huffman-only deflate, an entropy coding
+ * without string matching that suits columns of small numbers and inflates quickly.
+ * {@link InputLog#read(InputStream)} recognises this format, so columnar recordings load
+ * wherever row ones do.</p>
+ */
+public final class ColumnarLog {
+    static final int MAGIC = 0x494E4B43; // "INKC"
+
+    private static final int VERSION = 1;
+    private static final int ENTROPY_CODED = 1;
+    private static final byte[] POSITION_TYPES = {InputLog.LINE_START, InputLog.LINE_DRAG, InputLog.ERASE};
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+    // Deflate cannot shrink data by more than this, so a larger raw length is a lie
+    private static final int MAX_INFLATE_RATIO = 1032;
+    private static final int CHUNK_SIZE = 8192;
+
+    private ColumnarLog() {
+    }
+
+    /**
+     * Writes a log in the columnar format.
+     *
+     * @param log The log.
+     * @param out The stream to write to.
+     * @param entropyCoded True to pass the columns through a Huffman-only deflate.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void write(InputLog log, OutputStream out, boolean entropyCoded) throws IOException {
+        int size = log.size();
+        ByteArrayOutputStream ticks = new ByteArrayOutputStream(size);
+        ByteArrayOutputStream types = new ByteArrayOutputStream();
+        ByteArrayOutputStream[] xs = new ByteArrayOutputStream[POSITION_TYPES.length];
+        ByteArrayOutputStream[] ys = new ByteArrayOutputStream[POSITION_TYPES.length];
+        for (int c = 0; c < POSITION_TYPES.length; c++) {
+            xs[c] = new ByteArrayOutputStream();
+            ys[c] = new ByteArrayOutputStream();
+        }
+
+        long lastTick = 0;
+        int lastX = 0;
+        int lastY = 0;
+        for (int i = 0; i < size; i++) {
+            Varint.writeUnsigned(ticks, log.getTick(i) - lastTick);
+            lastTick = log.getTick(i);
+            byte type = log.getType(i);
+            if (i == 0 || type != log.getType(i - 1)) {
+                int run = 1;
+                while (i + run < size && log.getType(i + run) == type) {
+                    run++;
+                }
+                types.write(type);
+                Varint.writeUnsigned(types, run);
+            }
+            int column = positionColumn(type);
+            if (column >= 0) {
+                Varint.writeSigned(xs[column], log.getX(i) - lastX);
+                Varint.writeSigned(ys[column], log.getY(i) - lastY);
+                lastX = log.getX(i);
+                lastY = log.getY(i);
+            }
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeColumn(payload, ticks);
+        writeColumn(payload, types);
+        for (int c = 0; c < POSITION_TYPES.length; c++) {
+            writeColumn(payload, xs[c]);
+            writeColumn(payload, ys[c]);
+        }
+        byte[] raw = payload.toByteArray();
+        byte[] stored = entropyCoded ? deflate(raw) : raw;
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        Varint.writeUnsigned(data, VERSION);
+        data.writeByte(entropyCoded ? ENTROPY_CODED : 0);
+        data.writeLong(log.getSeed());
+        data.writeInt(log.getConfigHash());
+        Varint.writeUnsigned(data, log.getEndTick());
+        Varint.writeUnsigned(data, size);
+        Varint.writeUnsigned(data, raw.length);
+        Varint.writeUnsigned(data, stored.length);
+        data.write(stored);
+        data.flush();
+    }
+
+    /**
+     * Encodes a log in the columnar format.
+     *
+     * @param log The log.
+     * @param entropyCoded True to pass the columns through a Huffman-only deflate.
+     * @return The encoded bytes.
+     */
+    public static byte[] encode(InputLog log, boolean entropyCoded) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(log, out, entropyCoded);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads a log written by {@link #write(InputLog, OutputStream, boolean)}.
+     *
+     * @param in The stream to read from.
+     * @return The decoded log.
+     * @throws IOException If the stream is not a valid columnar log.
+     */
+    public static InputLog read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a columnar input log");
+        }
+        return readBody(data);
+    }
+
+    /**
+     * Reads a columnar log whose magic number has already been read.
+     *
+     * @param data The stream, positioned after the magic number.
+     * @return The decoded log.
+     * @throws IOException If the stream is not a valid columnar log.
+     */
+    static InputLog readBody(DataInputStream data) throws IOException {
+        long version = Varint.readUnsigned(data);
+        if (version != VERSION) {
+            throw new IOException("Unsupported columnar log version " + version);
+        }
+        int flags = data.readByte();
+        InputLog log = new InputLog(data.readLong(), data.readInt());
+        long endTick = Varint.readUnsigned(data);
+        int count = readLength(data, "event count");
+        int rawLength = readLength(data, "column length");
+        byte[] stored = readStored(data, readLength(data, "stored length"));
+        boolean entropyCoded = (flags & ENTROPY_CODED) != 0;
+        if (entropyCoded ? rawLength > (long) stored.length * MAX_INFLATE_RATIO : rawLength != stored.length) {
+            throw new IOException("Columnar log claims " + rawLength + " bytes of columns in "
+                    + stored.length + " stored bytes");
+        }
+        // Every event takes at least one byte of the tick column
+        if (count > rawLength) {
+            throw new IOException("Columnar log claims " + count + " events in " + rawLength + " bytes");
+        }
+        byte[] raw = entropyCoded ? inflate(stored, rawLength) : stored;
+
+        Column payload = new Column(raw, 0, raw.length);
+        Column ticks = payload.next();
+        Column types = payload.next();
+        Column[] xs = new Column[POSITION_TYPES.length];
+        Column[] ys = new Column[POSITION_TYPES.length];
+        for (int c = 0; c < POSITION_TYPES.length; c++) {
+            xs[c] = payload.next();
+            ys[c] = payload.next();
+        }
+
+        long tick = 0;
+        int x = 0;
+        int y = 0;
+        byte type = 0;
+        long run = 0;
+        for (int i = 0; i < count; i++) {
+            tick += ticks.readUnsigned();
+            if (run == 0) {
+                type = types.readByte();
+                run = types.readUnsigned();
+            }
+            run--;
+            int column = positionColumn(type);
+            if (column >= 0) {
+                x += (int) Varint.unZigZag(xs[column].readUnsigned());
+                y += (int) Varint.unZigZag(ys[column].readUnsigned());
+                log.add(tick, type, x, y);
+            } else {
+                log.add(tick, type, 0, 0);
+            }
+        }
+        boolean usedUp = run == 0 && payload.isUsedUp() && ticks.isUsedUp() && types.isUsedUp();
+        for (int c = 0; c < POSITION_TYPES.length; c++) {
+            usedUp &= xs[c].isUsedUp() && ys[c].isUsedUp();
+        }
+        if (!usedUp) {
+            throw new IOException("Columnar log has data after its last event");
+        }
+        log.setEndTick(endTick);
+        return log;
+    }
+
+    /**
+     * Decodes a log encoded by {@link #encode(InputLog, boolean)}.
+     *
+     * @param bytes The encoded bytes.
+     * @return The decoded log.
+     * @throws IOException If the bytes are not a valid columnar log.
+     */
+    public static InputLog decode(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    private static int positionColumn(byte type) {
+        for (int c = 0; c < POSITION_TYPES.length; c++) {
+            if (POSITION_TYPES[c] == type) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private static int readLength(DataInputStream data, String what) throws IOException {
+        long length = Varint.readUnsigned(data);
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("Columnar log has an invalid " + what + " of " + Long.toUnsignedString(length));
+        }
+        return (int) length;
+    }
+
+    /**
+     * Reads the stored columns a chunk at a time, so that a length from a corrupt header costs
+     * no more memory than the data that is actually there.
+     */
+    private static byte[] readStored(DataInputStream data, int length) throws IOException {
+        ByteArrayOutputStream stored = new ByteArrayOutputStream(Math.min(length, CHUNK_SIZE));
+        byte[] chunk = new byte[Math.min(length, CHUNK_SIZE)];
+        int remaining = length;
+        while (remaining > 0) {
+            int read = data.read(chunk, 0, Math.min(remaining, chunk.length));
+            if (read < 0) {
+                throw new EOFException("Truncated columnar log");
+            }
+            stored.write(chunk, 0, read);
+            remaining -= read;
+        }
+        return stored.toByteArray();
+    }
+
+    private static void writeColumn(ByteArrayOutputStream payload, ByteArrayOutputStream column) throws IOException {
+        Varint.writeUnsigned(payload, column.size());
+        column.writeTo(payload);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater();
+        deflater.setStrategy(Deflater.HUFFMAN_ONLY);
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] stored, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(stored);
+        byte[] raw = new byte[rawLength];
+        try {
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Truncated columnar log");
+                }
+                length += inflated;
+            }
+            if (length < rawLength) {
+                throw new EOFException("Truncated columnar log");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt columnar log", e);
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    /**
+     * A column of varints being read from a shared byte array, without bounds checks beyond
+     * the array's own.
+     */
+    private static final class Column {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        Column(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.position = start;
+            this.end = end;
+        }
+
+        /**
+         * Reads a length-prefixed column from this one and moves past it.
+         */
+        Column next() throws IOException {
+            int length = (int) readUnsigned();
+            if (length > end - position) {
+                throw new EOFException("Truncated columnar log");
+            }
+            Column column = new Column(bytes, position, position + length);
+            position += length;
+            return column;
+        }
+
+        boolean isUsedUp() {
+            return position == end;
+        }
+
+        byte readByte() throws IOException {
+            if (position >= end) {
+                throw new EOFException("Truncated columnar log");
+            }
+            return bytes[position++];
+        }
+
+        long readUnsigned() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+
+    /**
+     * Converts a recording to the columnar format from the command line and prints the sizes.
+     *
+     * @param args The path of the recording and the path to write the columnar log to.
+     * @throws IOException If the recording cannot be read or the output cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        File source = new File(args[0]);
+        InputLog log = InputLog.load(source);
+        byte[] encoded = encode(log, true);
+        Files.write(new File(args[1]).toPath(), encoded);
+        System.out.println("Events: " + log.size() + ", row format: " + source.length()
+                + " bytes, columnar: " + encoded.length + " bytes");
+    }
+}
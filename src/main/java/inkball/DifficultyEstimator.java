@@ -0,0 +1,347 @@
+package inkball;
+
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Estimates how hard each level of a config is by letting a reference player play it many
+ * times headlessly.
+ *
+ * <p>Games are played in batches of consecutive seeds. After each batch the estimator computes
+ * 95% confidence intervals for the completion probability (a Wilson score interval, which
+ * behaves well near 0 and 1) and for the expected score (a normal interval). Sampling stops
+ * when both intervals are narrower than their targets, or at the game limit. Batches have a
+ * fixed size and seeds a fixed order, so where sampling stops does not depend on the number of
+ * threads.</p>
+ *
+ * <p>A level's difficulty is 1 minus the average of its completion probability and its
+ * expected score as a fraction of the most the level's balls could score, so 0 is a level the
+ * player always clears with full marks and 1 one where nothing is ever scored.</p>
+ */
+public class DifficultyEstimator {
+    private static final double Z_95 = 1.959964;
+
+    private final JSONObject config;
+    private final Player player;
+    private final int threads;
+    private int batchSize = 32;
+    private int minGames = 64;
+    private int maxGames = 4096;
+    private double completionWidth = 0.05;
+    private double scoreWidth = 0.05;
+
+    /**
+     * The difficulty of one level, with the games it was estimated from.
+     */
+    public static class Estimate {
+        private final int levelIndex;
+        private final String layout;
+        private final int games;
+        private final int completed;
+        private final double meanScore;
+        private final double scoreHalfWidth;
+        private final int maxScore;
+        private final boolean converged;
+
+        /**
+         * Constructor for the Estimate object.
+         *
+         * @param levelIndex The level's index in the config.
+         * @param layout The level's layout file.
+         * @param games The number of games played.
+         * @param completed The number of games in which the level was completed.
+         * @param meanScore The mean final score.
+         * @param scoreHalfWidth The half-width of the score's confidence interval.
+         * @param maxScore The most the level's balls could score.
+         * @param converged Whether the intervals reached their targets before the game limit.
+         */
+        public Estimate(int levelIndex, String layout, int games, int completed, double meanScore,
+                        double scoreHalfWidth, int maxScore, boolean converged) {
+            this.levelIndex = levelIndex;
+            this.layout = layout;
+            this.games = games;
+            this.completed = completed;
+            this.meanScore = meanScore;
+            this.scoreHalfWidth = scoreHalfWidth;
+            this.maxScore = maxScore;
+            this.converged = converged;
+        }
+
+        /**
+         * Gets the level's difficulty, from 0 for the easiest to 1 for the hardest.
+         *
+         * @return The difficulty.
+         */
+        public double getDifficulty() {
+            double scoreFraction = maxScore > 0 ? Math.max(0, Math.min(1, meanScore / maxScore)) : 0;
+            return 1 - (getCompletionRate() + scoreFraction) / 2;
+        }
+
+        public double getCompletionRate() {
+            return (double) completed / games;
+        }
+
+        public double getCompletionLow() {
+            return wilson(completed, games)[0];
+        }
+
+        public double getCompletionHigh() {
+            return wilson(completed, games)[1];
+        }
+
+        public double getScoreLow() {
+            return meanScore - scoreHalfWidth;
+        }
+
+        public double getScoreHigh() {
+            return meanScore + scoreHalfWidth;
+        }
+
+        public int getLevelIndex() {
+            return levelIndex;
+        }
+
+        public String getLayout() {
+            return layout;
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public double getMeanScore() {
+            return meanScore;
+        }
+
+        public int getMaxScore() {
+            return maxScore;
+        }
+
+        public boolean isConverged() {
+            return converged;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Level %d (%s): difficulty %.3f, completed %.1f%% [%.1f%%, %.1f%%], "
+                            + "score %.1f [%.1f, %.1f] of %d, %d games%s",
+                    levelIndex + 1, layout, getDifficulty(), getCompletionRate() * 100,
+                    getCompletionLow() * 100, getCompletionHigh() * 100, meanScore, getScoreLow(),
+                    getScoreHigh(), maxScore, games, converged ? "" : " (game limit reached)");
+        }
+    }
+
+    /**
+     * Constructor for the DifficultyEstimator object.
+     *
+     * @param config The game configuration.
+     * @param player The reference player.
+     * @param threads The number of worker threads.
+     */
+    public DifficultyEstimator(JSONObject config, Player player, int threads) {
+        this.config = config;
+        this.player = player;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Estimates the difficulty of every level in the config.
+     *
+     * @param seed The seed of each level's first game.
+     * @return One estimate per level, in config order.
+     */
+    public List<Estimate> estimateAll(long seed) {
+        List<Estimate> estimates = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < config.getJSONArray("levels").size(); i++) {
+                estimates.add(estimate(executor, i, seed));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return estimates;
+    }
+
+    /**
+     * Estimates the difficulty of one level.
+     *
+     * @param levelIndex The level's index in the config.
+     * @param seed The seed of the first game.
+     * @return The estimate.
+     */
+    public Estimate estimate(int levelIndex, long seed) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return estimate(executor, levelIndex, seed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays batches of games on a level until the confidence intervals are narrow enough.
+     *
+     * @param executor The pool to play on.
+     * @param levelIndex The level's index in the config.
+     * @param seed The seed of the first game.
+     * @return The estimate.
+     */
+    private Estimate estimate(ExecutorService executor, final int levelIndex, long seed) {
+        int games = 0;
+        int completed = 0;
+        double sum = 0;
+        double sumSquares = 0;
+        double scoreHalfWidth = Double.POSITIVE_INFINITY;
+        boolean converged = false;
+        int maxScore = maxScore(levelIndex);
+
+        while (games < maxGames && !converged) {
+            List<Callable<int[]>> batch = new ArrayList<>();
+            int size = Math.min(batchSize, maxGames - games);
+            for (int g = 0; g < size; g++) {
+                final long gameSeed = seed + games + g;
+                batch.add(() -> {
+                    App app = play(levelIndex, gameSeed);
+                    return new int[] {app.getScore(), app.isLevelCompleted() ? 1 : 0};
+                });
+            }
+            for (int[] result : ParallelTasks.runAll(executor, batch)) {
+                sum += result[0];
+                sumSquares += (double) result[0] * result[0];
+                completed += result[1];
+            }
+            games += size;
+
+            double mean = sum / games;
+            double variance = games > 1 ? Math.max(0, (sumSquares - games * mean * mean) / (games - 1)) : 0;
+            scoreHalfWidth = Z_95 * Math.sqrt(variance / games);
+            double[] completion = wilson(completed, games);
+            // Scores are judged relative to the level's maximum so that levels are treated alike
+            converged = games >= minGames
+                    && completion[1] - completion[0] <= completionWidth
+                    && 2 * scoreHalfWidth <= scoreWidth * Math.max(1, maxScore);
+        }
+        String layout = config.getJSONArray("levels").getJSONObject(levelIndex).getString("layout", "");
+        return new Estimate(levelIndex, layout, games, completed, sum / games, scoreHalfWidth, maxScore, converged);
+    }
+
+    /**
+     * Plays one game of a level until it is completed or the time runs out.
+     *
+     * @param levelIndex The level's index in the config.
+     * @param seed The game's seed.
+     * @return The finished game.
+     */
+    App play(int levelIndex, long seed) {
+        return player.playOut(App.createHeadless(config, seed, levelIndex));
+    }
+
+    /**
+     * Works out the most a level could score: every queued and placed ball captured once by a
+     * hole of its own colour, with the level's capture modifier applied.
+     *
+     * @param levelIndex The level's index in the config.
+     * @return The score.
+     */
+    int maxScore(int levelIndex) {
+        JSONObject level = config.getJSONArray("levels").getJSONObject(levelIndex);
+        JSONObject values = config.hasKey("score_increase_from_hole_capture")
+                ? config.getJSONObject("score_increase_from_hole_capture") : new JSONObject();
+        float modifier = level.getFloat("score_increase_from_hole_capture_modifier", 1.0f);
+        List<String> colors = new ArrayList<>();
+        JSONArray queued = level.getJSONArray("balls");
+        for (int i = 0; queued != null && i < queued.size(); i++) {
+            colors.add(queued.getString(i));
+        }
+        for (Ball ball : App.createHeadless(config, 0, levelIndex).getCurrentLevel().getBalls()) {
+            colors.add(ball.getColorName());
+        }
+        int total = 0;
+        for (String color : colors) {
+            total += (int) ((values.hasKey(color) ? values.getInt(color) : 0) * modifier);
+        }
+        return total;
+    }
+
+    /**
+     * Computes the 95% Wilson score interval of a proportion.
+     *
+     * @param successes The number of successes.
+     * @param trials The number of trials.
+     * @return The interval's lower and upper bounds.
+     */
+    static double[] wilson(int successes, int trials) {
+        if (trials == 0) {
+            return new double[] {0, 1};
+        }
+        double p = (double) successes / trials;
+        double z2 = Z_95 * Z_95;
+        double centre = (p + z2 / (2 * trials)) / (1 + z2 / trials);
+        double half = Z_95 * Math.sqrt(p * (1 - p) / trials + z2 / (4.0 * trials * trials)) / (1 + z2 / trials);
+        return new double[] {Math.max(0, centre - half), Math.min(1, centre + half)};
+    }
+
+    /**
+     * Sets how many games are played between checks of the confidence intervals.
+     *
+     * @param batchSize The batch size.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Sets the bounds on the number of games played per level.
+     *
+     * @param minGames The number of games always played.
+     * @param maxGames The number of games after which sampling stops regardless.
+     */
+    public void setGameLimits(int minGames, int maxGames) {
+        this.minGames = minGames;
+        this.maxGames = Math.max(1, maxGames);
+    }
+
+    /**
+     * Sets how narrow the 95% confidence intervals must be for sampling to stop.
+     *
+     * @param completionWidth The width of the completion probability's interval.
+     * @param scoreWidth The width of the expected score's interval, as a fraction of the level's maximum score.
+     */
+    public void setTargetWidths(double completionWidth, double scoreWidth) {
+        this.completionWidth = completionWidth;
+        this.scoreWidth = scoreWidth;
+    }
+
+    /**
+     * Estimates every level of the default config and prints them from easiest to hardest.
+     *
+     * @param args Optionally the reference player ("idle" or "solver") and the number of threads.
+     */
+    public static void main(String[] args) {
+        Player player = args.length > 0 && args[0].equals("idle")
+                ? Player.IDLE : Player.solver(8, 2, 5, 5);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        DifficultyEstimator estimator = new DifficultyEstimator(config, player, threads);
+
+        long start = System.nanoTime();
+        List<Estimate> estimates = estimator.estimateAll(1);
+        long elapsed = System.nanoTime() - start;
+        estimates.sort((a, b) -> Double.compare(a.getDifficulty(), b.getDifficulty()));
+        for (Estimate estimate : estimates) {
+            System.out.println(estimate);
+        }
+        System.out.println("Estimated in " + (elapsed / 1000000) + " ms");
+    }
+}
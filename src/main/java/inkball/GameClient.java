@@ -0,0 +1,119 @@
+package inkball;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A blocking client for a {@link GameServer} on the same machine, for bots, tests and thin
+ * front ends.
+ *
+ * <p>The input methods mirror {@link App#applyInput(byte, int, int)}: each sends one command
+ * that the server applies at the start of the game's next tick. {@link #readState(App)} waits
+ * for the next frame and restores it into a local App, which can then be drawn or inspected.</p>
+ */
+public class GameClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final ByteBuffer command = ByteBuffer.allocateDirect(GameServer.COMMAND_SIZE);
+    private final ByteBuffer header = ByteBuffer.allocateDirect(GameServer.HEADER_SIZE);
+    private ByteBuffer frame = ByteBuffer.allocateDirect(4096);
+
+    /**
+     * Constructor for the GameClient object. Connects straight away.
+     *
+     * @param port The server's loopback port.
+     * @throws IOException If the server cannot be reached.
+     */
+    public GameClient(int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    /**
+     * Sends one command.
+     *
+     * @param type The input type, one of the InputLog constants.
+     * @param x The x coordinate on the board, or 0 if the input has none.
+     * @param y The y coordinate on the board, or 0 if the input has none.
+     * @throws IOException If the connection has failed.
+     */
+    public void send(byte type, int x, int y) throws IOException {
+        command.clear();
+        command.put(type).putShort((short) x).putShort((short) y);
+        command.flip();
+        while (command.hasRemaining()) {
+            channel.write(command);
+        }
+    }
+
+    public void beginLine(int x, int y) throws IOException {
+        send(InputLog.LINE_START, x, y);
+    }
+
+    public void extendLine(int x, int y) throws IOException {
+        send(InputLog.LINE_DRAG, x, y);
+    }
+
+    public void finishLine() throws IOException {
+        send(InputLog.LINE_RELEASE, 0, 0);
+    }
+
+    public void eraseLineAt(int x, int y) throws IOException {
+        send(InputLog.ERASE, x, y);
+    }
+
+    public void togglePause() throws IOException {
+        send(InputLog.PAUSE, 0, 0);
+    }
+
+    public void restart() throws IOException {
+        send(InputLog.RESTART, 0, 0);
+    }
+
+    /**
+     * Waits for the next frame and restores the game state it holds.
+     *
+     * @param app The App to restore into; it must use the server's config.
+     * @return False if the server closed the connection.
+     * @throws IOException If the connection has failed.
+     */
+    public boolean readState(App app) throws IOException {
+        header.clear();
+        if (!readFully(header)) {
+            return false;
+        }
+        int length = header.getInt(0) - 1;
+        if (header.get(4) != GameServer.STATE || length < 0) {
+            throw new IOException("Unexpected frame from the server");
+        }
+        if (frame.capacity() < length) {
+            frame = ByteBuffer.allocateDirect(Integer.highestOneBit(length) << 1);
+        }
+        frame.clear();
+        frame.limit(length);
+        if (!readFully(frame)) {
+            throw new EOFException("The server closed the connection in the middle of a frame");
+        }
+        frame.flip();
+        LevelSnapshot.read(app, frame);
+        return true;
+    }
+
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,124 @@
+package inkball;
+
+import java.util.List;
+
+/**
+ * Something that happened during a tick, as published on a {@link GameEventBus}.
+ *
+ * <p>Events live in slots of the bus's ring buffer and are overwritten once they have been
+ * applied, so a listener that keeps one must copy what it needs. Fields that do not apply to
+ * an event's type are null or 0.</p>
+ */
+public class GameEvent {
+    /** A ball was captured by a hole that accepts it. */
+    public static final byte CAPTURE = 0;
+    /** A ball was captured by a hole of another colour. */
+    public static final byte WRONG_CAPTURE = 1;
+    /** A ball hit a brick of its colour, or a grey brick. */
+    public static final byte BRICK_HIT = 2;
+    /** A brick took its last hit. */
+    public static final byte BRICK_DESTROYED = 3;
+    /** A ball bounced off a player line, which is used up. */
+    public static final byte LINE_CONSUMED = 4;
+    /** A ball came out of a spawner. */
+    public static final byte BALL_SPAWNED = 5;
+
+    private byte type;
+    private long tick;
+    private Ball ball;
+    private Hole hole;
+    private Brick brick;
+    private Line line;
+    private List<Line> lines;
+    private int points;
+    private boolean requeue;
+
+    /**
+     * Fills the event in, replacing whatever the slot held before.
+     *
+     * @param type The event type, one of the constants above.
+     * @param tick The tick the event happened in.
+     * @param ball The ball involved, if any.
+     * @param hole The hole involved, if any.
+     * @param brick The brick involved, if any.
+     * @param line The line involved, if any.
+     * @param lines The list the line is removed from, if any.
+     * @param points The points given or taken, if any.
+     * @param requeue Whether a wrongly captured ball goes back in the spawn queue.
+     */
+    void set(byte type, long tick, Ball ball, Hole hole, Brick brick, Line line, List<Line> lines,
+             int points, boolean requeue) {
+        this.type = type;
+        this.tick = tick;
+        this.ball = ball;
+        this.hole = hole;
+        this.brick = brick;
+        this.line = line;
+        this.lines = lines;
+        this.points = points;
+        this.requeue = requeue;
+    }
+
+    /**
+     * Drops the event's references so that an applied event does not keep objects alive.
+     */
+    void clear() {
+        set((byte) -1, 0, null, null, null, null, null, 0, false);
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case CAPTURE:
+                return "Capture(tick " + tick + ", " + ball.getColorName() + " +" + points + ")";
+            case WRONG_CAPTURE:
+                return "WrongCapture(tick " + tick + ", " + ball.getColorName() + " -" + points + ")";
+            case BRICK_HIT:
+                return "BrickHit(tick " + tick + ", brick " + brick.getId() + ")";
+            case BRICK_DESTROYED:
+                return "BrickDestroyed(tick " + tick + ", brick " + brick.getId() + ")";
+            case LINE_CONSUMED:
+                return "LineConsumed(tick " + tick + ")";
+            case BALL_SPAWNED:
+                return "BallSpawned(tick " + tick + ", " + ball.getColorName() + ")";
+            default:
+                return "GameEvent(empty)";
+        }
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public Ball getBall() {
+        return ball;
+    }
+
+    public Hole getHole() {
+        return hole;
+    }
+
+    public Brick getBrick() {
+        return brick;
+    }
+
+    public Line getLine() {
+        return line;
+    }
+
+    List<Line> getLines() {
+        return lines;
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    public boolean isRequeue() {
+        return requeue;
+    }
+}
@@ -0,0 +1,292 @@
+package inkball;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the side effects of a tick as {@link GameEvent}s in a ring buffer and applies them
+ * in one batch. The events are reused from tick to tick, so only the busiest tick so far
+ * allocates any.
+ *
+ * <p>{@link App#tick()} opens a batch before the level update and closes it after the line
+ * checks. Inside a batch, captures, brick destruction and line removal are only recorded; the
+ * physics code asks the bus whether a ball, brick or line is already gone so that later
+ * balls in the same tick see the same board as if the effect had happened straight away.
+ * The balls, brick ids and lines the open batch removes are kept in sets that answer those
+ * questions. Closing the batch applies the events in the order they were published and then
+ * passes each one to the listeners. Outside a batch, for example when a level is updated on
+ * its own, every event is applied as soon as it is published.</p>
+ *
+ * <p>Brick hits and spawns are recorded after the fact: a brick's hit count and a new ball
+ * have to be visible to the rest of the tick, so there is nothing left to apply for them.</p>
+ */
+public class GameEventBus {
+    private final App app;
+    private final List<Listener> listeners = new ArrayList<>();
+    private GameEvent[] ring;
+    private int head;
+    private int size;
+    private boolean batching;
+    private final Set<Ball> capturedBalls = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Integer> destroyedBrickIds = new HashSet<>();
+    private final Set<Line> consumedLines = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Receives every event once it has been applied.
+     */
+    public interface Listener {
+        /**
+         * Called for each event, in publishing order.
+         *
+         * @param event The event. Its slot is reused afterwards.
+         */
+        void onEvent(GameEvent event);
+    }
+
+    /**
+     * Constructor for the GameEventBus object.
+     *
+     * @param app The game the events are applied to.
+     * @param capacity The number of events the ring buffer holds before it grows. Its slots
+     *                 are only filled with events as a tick first needs them.
+     */
+    public GameEventBus(App app, int capacity) {
+        this.app = app;
+        this.ring = new GameEvent[Math.max(1, capacity)];
+    }
+
+    /**
+     * Starts collecting events instead of applying them.
+     */
+    public void begin() {
+        batching = true;
+    }
+
+    /**
+     * Applies every collected event and goes back to applying events as they are published.
+     */
+    public void end() {
+        batching = false;
+        flush();
+    }
+
+    /**
+     * Records that a ball was captured by a hole that accepts it.
+     *
+     * @param ball The ball, which leaves the level.
+     * @param hole The hole.
+     * @param points The points the capture gives.
+     */
+    public void capture(Ball ball, Hole hole, int points) {
+        capturedBalls.add(ball);
+        publish(GameEvent.CAPTURE, ball, hole, null, null, null, points, false);
+    }
+
+    /**
+     * Records that a ball was captured by a hole of another colour.
+     *
+     * @param ball The ball, which leaves the level.
+     * @param hole The hole.
+     * @param penalty The points the capture takes.
+     * @param requeue Whether the ball's colour goes back in the spawn queue.
+     */
+    public void wrongCapture(Ball ball, Hole hole, int penalty, boolean requeue) {
+        capturedBalls.add(ball);
+        publish(GameEvent.WRONG_CAPTURE, ball, hole, null, null, null, penalty, requeue);
+    }
+
+    /**
+     * Records that a ball hit a brick and added to its hit count.
+     *
+     * @param brick The brick.
+     * @param ball The ball.
+     */
+    public void brickHit(Brick brick, Ball ball) {
+        publish(GameEvent.BRICK_HIT, ball, null, brick, null, null, 0, false);
+    }
+
+    /**
+     * Records that a brick took its last hit.
+     *
+     * @param brick The brick, which leaves the level.
+     */
+    public void brickDestroyed(Brick brick) {
+        destroyedBrickIds.add(brick.getId());
+        publish(GameEvent.BRICK_DESTROYED, null, null, brick, null, null, 0, false);
+    }
+
+    /**
+     * Records that a ball bounced off a line.
+     *
+     * @param line The line, which is used up.
+     * @param ball The ball.
+     * @param lines The list the line is removed from.
+     */
+    public void lineConsumed(Line line, Ball ball, List<Line> lines) {
+        consumedLines.add(line);
+        publish(GameEvent.LINE_CONSUMED, ball, null, null, line, lines, 0, false);
+    }
+
+    /**
+     * Records that a ball came out of a spawner.
+     *
+     * @param ball The new ball.
+     */
+    public void ballSpawned(Ball ball) {
+        publish(GameEvent.BALL_SPAWNED, ball, null, null, null, null, 0, false);
+    }
+
+    /**
+     * Checks whether a ball has been captured in the current batch.
+     *
+     * @param ball The ball.
+     * @return True if the ball is waiting to be removed.
+     */
+    public boolean isCaptured(Ball ball) {
+        return !capturedBalls.isEmpty() && capturedBalls.contains(ball);
+    }
+
+    /**
+     * Checks whether a brick has been destroyed in the current batch. Bricks are compared by
+     * id, so a fork's copy of the brick counts too.
+     *
+     * @param brick The brick.
+     * @return True if the brick is waiting to be removed.
+     */
+    public boolean isDestroyed(Brick brick) {
+        return !destroyedBrickIds.isEmpty() && destroyedBrickIds.contains(brick.getId());
+    }
+
+    /**
+     * Checks whether a line has been used up in the current batch.
+     *
+     * @param line The line.
+     * @return True if the line is waiting to be removed.
+     */
+    public boolean isConsumed(Line line) {
+        return !consumedLines.isEmpty() && consumedLines.contains(line);
+    }
+
+    /**
+     * Leaves out the balls captured in the current batch.
+     *
+     * @param balls The balls.
+     * @return The balls themselves if none were captured, otherwise a filtered copy.
+     */
+    public List<Ball> withoutCaptured(List<Ball> balls) {
+        if (capturedBalls.isEmpty()) {
+            return balls;
+        }
+        List<Ball> remaining = new ArrayList<>(balls.size());
+        for (Ball ball : balls) {
+            if (!isCaptured(ball)) {
+                remaining.add(ball);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Registers a listener for applied events.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Writes an event to the next free slot, growing the ring if it is full, and applies it
+     * straight away if no batch is open.
+     */
+    private void publish(byte type, Ball ball, Hole hole, Brick brick, Line line, List<Line> lines,
+                         int points, boolean requeue) {
+        if (size == ring.length) {
+            GameEvent[] grown = new GameEvent[ring.length * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = slot(i);
+            }
+            ring = grown;
+            head = 0;
+        }
+        int index = (head + size++) % ring.length;
+        if (ring[index] == null) {
+            ring[index] = new GameEvent();
+        }
+        ring[index].set(type, app.getTick(), ball, hole, brick, line, lines, points, requeue);
+        if (!batching) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies and dispatches every pending event, oldest first.
+     */
+    private void flush() {
+        capturedBalls.clear();
+        destroyedBrickIds.clear();
+        consumedLines.clear();
+        while (size > 0) {
+            GameEvent event = ring[head];
+            head = (head + 1) % ring.length;
+            size--;
+            apply(event);
+            for (Listener listener : listeners) {
+                listener.onEvent(event);
+            }
+            event.clear();
+        }
+    }
+
+    /**
+     * Carries out an event's deferred effect on the game.
+     *
+     * @param event The event.
+     */
+    private void apply(GameEvent event) {
+        switch (event.getType()) {
+            case GameEvent.CAPTURE:
+                app.increaseScore(event.getPoints());
+                event.getHole().removeBallFromGame(event.getBall(), app);
+                break;
+            case GameEvent.WRONG_CAPTURE:
+                app.decreaseScore(event.getPoints());
+                if (event.isRequeue()) {
+                    app.getCurrentLevel().addBallToRespawnQueue(event.getBall());
+                }
+                event.getHole().removeBallFromGame(event.getBall(), app);
+                break;
+            case GameEvent.BRICK_HIT:
+                app.getCurrentLevel().markBricksChanged();
+                break;
+            case GameEvent.BRICK_DESTROYED:
+                app.getCurrentLevel().removeBrick(event.getBrick());
+                break;
+            case GameEvent.LINE_CONSUMED:
+                if (event.getLines().remove(event.getLine())) {
+                    app.markLinesChanged();
+                }
+                break;
+            default:
+                // Spawns have already happened
+                break;
+        }
+    }
+
+    private GameEvent slot(int offset) {
+        return ring[(head + offset) % ring.length];
+    }
+}
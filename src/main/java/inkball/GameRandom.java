@@ -0,0 +1,87 @@
+package inkball;
+
+/**
+ * Random number generator for game logic.
+ * It produces the same sequence as java.util.Random (and so PApplet.random) for a given seed,
+ * but its state can be read and restored, which snapshots and rollback need.
+ */
+public class GameRandom {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state;
+
+    /**
+     * Constructor for the GameRandom object.
+     *
+     * @param seed The initial seed.
+     */
+    public GameRandom(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * Resets the generator, scrambling the seed the same way java.util.Random does.
+     *
+     * @param seed The new seed.
+     */
+    public void setSeed(long seed) {
+        this.state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * Generates the next pseudorandom bits.
+     *
+     * @param bits The number of bits to return, at most 32.
+     * @return The bits in the low end of an int.
+     */
+    private int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * Returns a float in [0, 1).
+     *
+     * @return The next float.
+     */
+    public float nextFloat() {
+        return next(24) / ((float) (1 << 24));
+    }
+
+    /**
+     * Returns a float in [0, high), matching PApplet.random(high).
+     *
+     * @param high The exclusive upper bound.
+     * @return The next float, or 0 if the bound is 0 or NaN.
+     */
+    public float nextFloat(float high) {
+        if (high == 0 || high != high) {
+            return 0;
+        }
+        float value;
+        do {
+            value = nextFloat() * high;
+        } while (value == high);
+        return value;
+    }
+
+    /**
+     * Gets the raw 48-bit generator state.
+     *
+     * @return The current state.
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Restores a state previously returned by {@link #getState()}.
+     *
+     * @param state The state to restore.
+     */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
@@ -0,0 +1,322 @@
+package inkball;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves games from a {@link SessionHost} to clients on the loopback interface.
+ *
+ * <p>Every connection gets its own session. The client sends fixed-size commands of
+ * {@link #COMMAND_SIZE} bytes: an {@link InputLog} type followed by an x and a y coordinate as
+ * big-endian shorts. They go into the session's {@link InputQueue}, exactly like the mouse
+ * and keyboard events of the windowed game, and are applied at the start of the next tick.
+ * After every tick the server sends a frame: an int giving the length of the rest of the
+ * frame, the byte {@link #STATE} and a {@link LevelSnapshot} of the game.</p>
+ *
+ * <p>One selector thread does all the networking. Each connection has three direct buffers,
+ * so the worker that ticks a session writes the snapshot straight into a buffer the socket is
+ * written from. The worker fills one buffer while the selector sends another, and the third
+ * holds the latest finished frame; a client that reads slower than the game ticks only ever
+ * gets the latest state, and neither side waits for the other.</p>
+ */
+public class GameServer implements AutoCloseable {
+    /** The size of a command from a client, in bytes. */
+    public static final int COMMAND_SIZE = 5;
+    /** The size of a frame header: the length and the kind. */
+    public static final int HEADER_SIZE = 5;
+    /** The kind of a frame holding a snapshot. */
+    public static final byte STATE = 1;
+
+    private static final int FRAME_CAPACITY = 4096;
+    private static final int DIRTY = 4;
+    private static final int INDEX = 3;
+
+    private final SessionHost host;
+    private final int ticksPerSecond;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ConcurrentLinkedQueue<Connection> dirty = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long nextSeed;
+
+    /**
+     * A client connection and the session it plays.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer commands = ByteBuffer.allocateDirect(COMMAND_SIZE * 64);
+        private final ByteBuffer[] frames = new ByteBuffer[3];
+        // The index of the buffer between the worker and the selector, and whether it holds a new frame
+        private final AtomicInteger middle = new AtomicInteger(2);
+        private int back = 0;
+        private int front = 1;
+        private boolean sending;
+        private boolean closed;
+        private SelectionKey key;
+        private SessionHost.Session session;
+
+        /**
+         * Constructor for the Connection object.
+         *
+         * @param channel The client's channel.
+         */
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = ByteBuffer.allocateDirect(FRAME_CAPACITY);
+                frames[i].limit(0);
+            }
+        }
+
+        /**
+         * Writes the game's state into the worker's buffer and swaps it into the middle. Runs
+         * on the worker that ticked the session.
+         *
+         * @param app The session's game.
+         */
+        private void publish(App app) {
+            ByteBuffer frame = frames[back];
+            while (true) {
+                frame.clear();
+                frame.position(HEADER_SIZE);
+                try {
+                    LevelSnapshot.write(app, frame);
+                    break;
+                } catch (BufferOverflowException e) {
+                    frame = ByteBuffer.allocateDirect(frame.capacity() * 2);
+                    frames[back] = frame;
+                }
+            }
+            frame.putInt(0, frame.position() - 4);
+            frame.put(4, STATE);
+            frame.flip();
+            int previous = middle.getAndSet(back | DIRTY);
+            back = previous & INDEX;
+            if ((previous & DIRTY) == 0) {
+                dirty.add(this);
+                if (!wakeupPending.getAndSet(true)) {
+                    selector.wakeup();
+                }
+            }
+        }
+
+        /**
+         * Sends the latest frame, and any that finishes while sending. Runs on the selector.
+         */
+        private void flush() throws IOException {
+            while (true) {
+                if (!sending) {
+                    if ((middle.get() & DIRTY) == 0) {
+                        break;
+                    }
+                    front = middle.getAndSet(front) & INDEX;
+                    sending = true;
+                }
+                channel.write(frames[front]);
+                if (frames[front].hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                sending = false;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /**
+         * Reads commands and queues them for the session. Runs on the selector, which is the
+         * only thread that offers to the session's input queue.
+         */
+        private void read() throws IOException {
+            if (channel.read(commands) < 0 || session.isClosed()) {
+                close();
+                return;
+            }
+            commands.flip();
+            InputQueue queue = session.getApp().getInputQueue();
+            while (commands.remaining() >= COMMAND_SIZE) {
+                byte type = commands.get();
+                int x = commands.getShort();
+                int y = commands.getShort();
+                if (type < InputLog.LINE_START || type > InputLog.RESTART) {
+                    close();
+                    return;
+                }
+                queue.offer(type, x, y);
+            }
+            commands.compact();
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more to send on a channel that fails to close
+            }
+            if (session != null) {
+                session.close();
+            }
+            connections.decrementAndGet();
+        }
+    }
+
+    /**
+     * Constructor for the GameServer object. The server listens straight away.
+     *
+     * @param host The host that runs the sessions.
+     * @param port The loopback port to listen on, or 0 for any free port.
+     * @param ticksPerSecond How often each session ticks and sends a frame.
+     * @param firstSeed The seed of the first connection's game; later ones count up from it.
+     * @throws IOException If the port cannot be opened.
+     */
+    public GameServer(SessionHost host, int port, int ticksPerSecond, long firstSeed) throws IOException {
+        this.host = host;
+        this.ticksPerSecond = ticksPerSecond;
+        this.nextSeed = firstSeed;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        this.thread = new Thread(this::run, "inkball-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs the selector until the server is closed.
+     */
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                break;
+            }
+            wakeupPending.set(false);
+            Connection connection;
+            while ((connection = dirty.poll()) != null) {
+                handle(connection, SelectionKey.OP_WRITE);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                } else {
+                    handle((Connection) key.attachment(), key.readyOps());
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() != null) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        try {
+            selector.close();
+            server.close();
+        } catch (IOException e) {
+            // The server is going away either way
+        }
+    }
+
+    /**
+     * Accepts every pending connection and starts a session for each.
+     */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+                if (channel == null) {
+                    return;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                return;
+            }
+            Connection connection = new Connection(channel);
+            connections.incrementAndGet();
+            try {
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                connection.close();
+                continue;
+            }
+            connection.session = host.open(nextSeed++, ticksPerSecond, Player.IDLE,
+                    session -> connection.publish(session.getApp()));
+        }
+    }
+
+    /**
+     * Reads from or writes to a connection, closing it if the client has gone.
+     *
+     * @param connection The connection.
+     * @param ops The operations it is ready for.
+     */
+    private void handle(Connection connection, int ops) {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        try {
+            if ((ops & SelectionKey.OP_READ) != 0) {
+                connection.read();
+            }
+            if ((ops & SelectionKey.OP_WRITE) != 0 && connection.channel.isOpen()) {
+                connection.flush();
+            }
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Stops accepting clients, closes every connection and its session, and waits for the
+     * selector thread to finish.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+}
@@ -0,0 +1,266 @@
+package inkball;
+
+import processing.core.PImage;
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Recorded runs raced alongside a live game, each re-simulated from its {@link InputLog} one
+ * tick per frame and drawn as a translucent ghost.
+ *
+ * <p>Every ghost is a headless App loaded through one {@link LayoutCache}, so the walls, holes,
+ * spawners and wall grid of a level exist once however many ghosts play it; only balls, bricks
+ * and lines are per ghost. Ghosts never touch each other, so each frame they are stepped in
+ * contiguous groups on a fixed pool of threads. {@link #beginAdvance()} starts the step and
+ * returns at once, so the live game can tick at the same time; {@link #finishAdvance()} waits
+ * for it before anything reads the ghosts.</p>
+ *
+ * <p>{@link #display(App)} draws every ghost in one pass: the tint and line style are set once,
+ * balls are drawn grouped by sprite, and only ghosts on the live game's level are shown, since
+ * their balls mean nothing on another layout.</p>
+ */
+public class GhostRace implements AutoCloseable {
+    private static final int BALL_ALPHA = 90;
+    private static final int LINE_ALPHA = 60;
+
+    private final List<Replayer> ghosts = new ArrayList<>();
+    private final boolean[] finished;
+    private final ExecutorService executor;
+    private final List<Callable<Void>> tasks = new ArrayList<>();
+    private final List<Future<Void>> running = new ArrayList<>();
+    private final LayoutCache layouts = new LayoutCache();
+
+    /**
+     * Constructor for the GhostRace object.
+     *
+     * @param config The configuration the runs were recorded with.
+     * @param logs The recorded runs, one ghost each.
+     * @param threads The number of threads to step the ghosts on.
+     */
+    public GhostRace(JSONObject config, List<InputLog> logs, int threads) {
+        for (InputLog log : logs) {
+            ghosts.add(new Replayer(log, config, layouts));
+        }
+        this.finished = new boolean[ghosts.size()];
+        int groups = Math.max(1, Math.min(threads, ghosts.size()));
+        this.executor = Executors.newFixedThreadPool(groups, runnable -> {
+            Thread thread = new Thread(runnable, "ghost-race");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int g = 0; g < groups; g++) {
+            final int from = g * ghosts.size() / groups;
+            final int to = (g + 1) * ghosts.size() / groups;
+            tasks.add(() -> {
+                step(from, to);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Runs the next tick of every ghost whose recording has not ended.
+     */
+    public void advance() {
+        beginAdvance();
+        finishAdvance();
+    }
+
+    /**
+     * Starts running the next tick of every ghost on the pool and returns straight away.
+     * Must be followed by {@link #finishAdvance()} before the ghosts are read or advanced again.
+     */
+    public void beginAdvance() {
+        if (!running.isEmpty()) {
+            throw new IllegalStateException("The previous step has not been finished");
+        }
+        for (Callable<Void> task : tasks) {
+            running.add(executor.submit(task));
+        }
+    }
+
+    /**
+     * Waits for the step started by {@link #beginAdvance()}. A ghost cannot be stopped part way
+     * through a tick, so the wait goes on until every group has finished, even if the calling
+     * thread is interrupted or a group fails; an interrupt is passed on by setting the thread's
+     * interrupt flag again before returning.
+     *
+     * @throws IllegalStateException If a ghost failed to step.
+     */
+    public void finishAdvance() {
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<Void> future : running) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        running.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("A ghost failed to step", failure);
+        }
+    }
+
+    private void step(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!finished[i] && !ghosts.get(i).step()) {
+                finished[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Draws the ghosts on the live game's level, under its balls and lines. Call this with the
+     * board's origin in place, as {@link Level#display()} is called.
+     *
+     * @param app The live game, whose sprites the ghosts are drawn with.
+     */
+    public void display(App app) {
+        List<App> shown = new ArrayList<>();
+        for (Replayer ghost : ghosts) {
+            App ghostApp = ghost.getApp();
+            if (ghostApp.getCurrentLevelIndex() == app.getCurrentLevelIndex() && !ghostApp.isLevelCompleted()) {
+                shown.add(ghostApp);
+            }
+        }
+        if (shown.isEmpty()) {
+            return;
+        }
+
+        app.pushStyle();
+        app.noFill();
+        app.stroke(0, LINE_ALPHA);
+        app.strokeWeight(10);
+        for (App ghostApp : shown) {
+            for (Line line : ghostApp.getPlayerLines()) {
+                drawPoints(app, line.points());
+            }
+            if (ghostApp.getCurrentLine() != null) {
+                drawPoints(app, ghostApp.getCurrentLine().points());
+            }
+        }
+
+        app.tint(255, BALL_ALPHA);
+        PImage[] sprites = app.getBallSprites();
+        for (int color = 0; color < sprites.length; color++) {
+            if (sprites[color] == null) {
+                continue;
+            }
+            for (App ghostApp : shown) {
+                for (Ball ball : ghostApp.getCurrentLevel().getBalls()) {
+                    if (ball.getColorType() == color) {
+                        float radius = ball.getRadius();
+                        app.image(sprites[color], ball.getPosition().x - radius, ball.getPosition().y - radius,
+                                radius * 2, radius * 2);
+                    }
+                }
+            }
+        }
+        app.popStyle();
+    }
+
+    private static void drawPoints(App app, List<PVector> points) {
+        app.beginShape();
+        for (PVector point : points) {
+            app.vertex(point.x, point.y);
+        }
+        app.endShape();
+    }
+
+    /**
+     * Counts the ghosts with a higher score than the live game.
+     *
+     * @param app The live game.
+     * @return The number of ghosts ahead of it.
+     */
+    public int countAhead(App app) {
+        int ahead = 0;
+        for (Replayer ghost : ghosts) {
+            if (ghost.getApp().getScore() > app.getScore()) {
+                ahead++;
+            }
+        }
+        return ahead;
+    }
+
+    /**
+     * Stops the threads stepping the ghosts.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public int getGhostCount() {
+        return ghosts.size();
+    }
+
+    public App getGhost(int index) {
+        return ghosts.get(index).getApp();
+    }
+
+    public boolean isFinished(int index) {
+        return finished[index];
+    }
+
+    public LayoutCache getLayoutCache() {
+        return layouts;
+    }
+
+    /**
+     * Races idle recorded runs and reports how long stepping every ghost takes per frame.
+     *
+     * @param args The number of ghosts, the number of frames to time and the number of threads.
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int warmup = App.FPS * 2;
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        List<InputLog> logs = new ArrayList<>();
+        for (int g = 0; g < count; g++) {
+            App app = App.createHeadless(config, 500 + g);
+            InputLog log = app.startRecording();
+            for (int t = 0; t < warmup + frames; t++) {
+                app.tick();
+            }
+            log.setEndTick(app.getTick());
+            logs.add(log);
+        }
+        try (GhostRace race = new GhostRace(config, logs, threads)) {
+            for (int frame = 0; frame < warmup; frame++) {
+                race.advance();
+            }
+            long start = System.nanoTime();
+            for (int frame = 0; frame < frames; frame++) {
+                race.advance();
+            }
+            double millisPerFrame = (System.nanoTime() - start) / 1e6 / frames;
+            System.out.println(count + " ghosts on " + threads + " threads: "
+                    + String.format("%.2f", millisPerFrame) + " ms per frame, "
+                    + String.format("%.2f", 1000.0 / App.FPS) + " ms available");
+        }
+    }
+}
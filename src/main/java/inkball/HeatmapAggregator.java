@@ -0,0 +1,504 @@
+package inkball;
+
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Plays many seeded games of one level headlessly and counts where things happen: how many
+ * ticks balls spend in each cell of the board, how often each wall and brick is hit, and how
+ * many balls each hole captures.
+ *
+ * <p>Each worker counts into its own {@link Heatmap} of plain long arrays, so the workers never
+ * share memory while playing, and the heatmaps are added together at the end. Captures and
+ * brick hits, which are the hits that damage a brick, are counted from the game's
+ * {@link GameEventBus}.</p>
+ *
+ * <p>Wall bounces are not published on the bus. They happen while a ball moves, which
+ * {@link ParallelBallUpdater} runs on its worker threads, and the bus may only be used by the
+ * thread ticking the game. Publishing them would mean buffering every bounce per band and
+ * merging them in ball order on every tick, for the heatmap alone. Wall hits are instead read
+ * after each tick from the balls' collision cooldowns: a bounce sets the cooldown to
+ * {@link Wall#HIT_COOLDOWN}, and every later tick lowers it, so the value marks the tick of
+ * the bounce.</p>
+ */
+public class HeatmapAggregator {
+    private static final int BOARD_SIZE = App.WIDTH;
+    private static final int TILES = BOARD_SIZE / App.CELLSIZE;
+
+    private final JSONObject config;
+    private final int levelIndex;
+    private final int cellSize;
+    private final int threads;
+
+    /**
+     * Counts for one level, either from one worker or merged from all of them. Ball ticks are
+     * counted per cell; wall hits, brick hits and captures per board tile, with captures on the
+     * tile at the top-left of the hole.
+     */
+    public static class Heatmap {
+        private final int cellSize;
+        private final int columns;
+        private final long[] ballTicks;
+        private final long[] wallHits = new long[TILES * TILES];
+        private final long[] brickHits = new long[TILES * TILES];
+        private final long[] captures = new long[TILES * TILES];
+        private long games;
+        private long completed;
+        private long ticks;
+
+        /**
+         * Constructor for the Heatmap object.
+         *
+         * @param cellSize The side of an occupancy cell in pixels.
+         */
+        public Heatmap(int cellSize) {
+            this.cellSize = cellSize;
+            this.columns = BOARD_SIZE / cellSize;
+            this.ballTicks = new long[columns * columns];
+        }
+
+        /**
+         * Adds another heatmap's counts to this one.
+         *
+         * @param other A heatmap with the same cell size.
+         */
+        public void merge(Heatmap other) {
+            if (other.cellSize != cellSize) {
+                throw new IllegalArgumentException("Heatmaps must have the same cell size");
+            }
+            add(ballTicks, other.ballTicks);
+            add(wallHits, other.wallHits);
+            add(brickHits, other.brickHits);
+            add(captures, other.captures);
+            games += other.games;
+            completed += other.completed;
+            ticks += other.ticks;
+        }
+
+        private static void add(long[] into, long[] from) {
+            for (int i = 0; i < into.length; i++) {
+                into[i] += from[i];
+            }
+        }
+
+        /**
+         * Counts a ball at a board position for one tick. Positions off the board are ignored.
+         *
+         * @param x The ball's x coordinate.
+         * @param y The ball's y coordinate.
+         */
+        void countBall(float x, float y) {
+            if (x >= 0 && x < BOARD_SIZE && y >= 0 && y < BOARD_SIZE) {
+                ballTicks[(int) (y / cellSize) * columns + (int) (x / cellSize)]++;
+            }
+        }
+
+        /**
+         * Counts an event on the tile containing a position.
+         *
+         * @param counts The per-tile counts.
+         * @param position A position on the tile, such as an object's top-left corner.
+         */
+        static void countTile(long[] counts, PVector position) {
+            int column = (int) (position.x / App.CELLSIZE);
+            int row = (int) (position.y / App.CELLSIZE);
+            if (column >= 0 && column < TILES && row >= 0 && row < TILES) {
+                counts[row * TILES + column]++;
+            }
+        }
+
+        public long getBallTicks(int column, int row) {
+            return ballTicks[row * columns + column];
+        }
+
+        public long getWallHits(int column, int row) {
+            return wallHits[row * TILES + column];
+        }
+
+        public long getBrickHits(int column, int row) {
+            return brickHits[row * TILES + column];
+        }
+
+        public long getCaptures(int column, int row) {
+            return captures[row * TILES + column];
+        }
+
+        /**
+         * Sums the ball ticks over one board tile.
+         *
+         * @param column The tile's column.
+         * @param row The tile's row.
+         * @return The ticks balls spent on the tile.
+         */
+        public long getTileBallTicks(int column, int row) {
+            int perTile = App.CELLSIZE / cellSize;
+            long total = 0;
+            for (int r = row * perTile; r < (row + 1) * perTile; r++) {
+                for (int c = column * perTile; c < (column + 1) * perTile; c++) {
+                    total += ballTicks[r * columns + c];
+                }
+            }
+            return total;
+        }
+
+        /**
+         * Writes one row per board tile: ball ticks, wall hits, brick hits and captures.
+         *
+         * @param out Where to write; it is flushed but not closed.
+         */
+        public void writeTileCsv(Writer out) {
+            PrintWriter writer = new PrintWriter(out);
+            writer.println("column,row,ball_ticks,wall_hits,brick_hits,captures");
+            for (int row = 0; row < TILES; row++) {
+                for (int column = 0; column < TILES; column++) {
+                    int tile = row * TILES + column;
+                    writer.println(column + "," + row + "," + getTileBallTicks(column, row) + ","
+                            + wallHits[tile] + "," + brickHits[tile] + "," + captures[tile]);
+                }
+            }
+            writer.flush();
+        }
+
+        /**
+         * Writes one row per occupancy cell with the cell's pixel origin and ball ticks.
+         *
+         * @param out Where to write; it is flushed but not closed.
+         */
+        public void writeCellCsv(Writer out) {
+            PrintWriter writer = new PrintWriter(out);
+            writer.println("x,y,ball_ticks");
+            for (int row = 0; row < columns; row++) {
+                for (int column = 0; column < columns; column++) {
+                    writer.println(column * cellSize + "," + row * cellSize + "," + ballTicks[row * columns + column]);
+                }
+            }
+            writer.flush();
+        }
+
+        public int getCellSize() {
+            return cellSize;
+        }
+
+        public int getColumns() {
+            return columns;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+    }
+
+    /**
+     * Constructor for the HeatmapAggregator object.
+     *
+     * @param config The game configuration.
+     * @param levelIndex The level to play.
+     * @param cellSize The side of an occupancy cell in pixels; it must divide the tile size.
+     * @param threads The number of worker threads.
+     */
+    public HeatmapAggregator(JSONObject config, int levelIndex, int cellSize, int threads) {
+        if (cellSize < 1 || App.CELLSIZE % cellSize != 0) {
+            throw new IllegalArgumentException("Cell size must divide the tile size " + App.CELLSIZE);
+        }
+        this.config = config;
+        this.levelIndex = levelIndex;
+        this.cellSize = cellSize;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Creates a game on the level, before its first tick.
+     *
+     * @param seed The game's seed.
+     * @return The game.
+     */
+    App newGame(long seed) {
+        return App.createHeadless(config, seed, levelIndex);
+    }
+
+    /**
+     * Plays games with consecutive seeds and counts them. Worker w plays games w, w + threads
+     * and so on into its own heatmap, so the result does not depend on scheduling.
+     *
+     * @param firstSeed The seed of the first game.
+     * @param games The number of games.
+     * @param player The player making moves in every game.
+     * @return The merged counts.
+     */
+    public Heatmap run(final long firstSeed, final int games, final Player player) {
+        int workers = Math.max(1, Math.min(threads, games));
+        List<Callable<Heatmap>> tasks = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            final int worker = w;
+            tasks.add(() -> {
+                Heatmap heatmap = new Heatmap(cellSize);
+                for (int g = worker; g < games; g += workers) {
+                    play(newGame(firstSeed + g), player, heatmap);
+                }
+                return heatmap;
+            });
+        }
+
+        Heatmap total = new Heatmap(cellSize);
+        for (Heatmap heatmap : ParallelTasks.runAll(workers, tasks)) {
+            total.merge(heatmap);
+        }
+        return total;
+    }
+
+    /**
+     * Plays one game until the level is completed or the time runs out, counting into a heatmap.
+     *
+     * @param app The game.
+     * @param player The player.
+     * @param heatmap The counts to add to.
+     */
+    static void play(App app, Player player, Heatmap heatmap) {
+        Level level = app.getCurrentLevel();
+        GameEventBus.Listener counter = event -> {
+            switch (event.getType()) {
+                case GameEvent.CAPTURE:
+                case GameEvent.WRONG_CAPTURE:
+                    Heatmap.countTile(heatmap.captures, event.getHole().getPosition());
+                    break;
+                case GameEvent.BRICK_HIT:
+                    Heatmap.countTile(heatmap.brickHits, event.getBrick().getPosition());
+                    break;
+                default:
+                    break;
+            }
+        };
+        app.getEvents().addListener(counter);
+        try {
+            player.playOut(app, () -> {
+                heatmap.ticks++;
+                countBalls(level, heatmap);
+            });
+        } finally {
+            app.getEvents().removeListener(counter);
+        }
+        heatmap.games++;
+        if (app.isLevelCompleted()) {
+            heatmap.completed++;
+        }
+    }
+
+    /**
+     * Counts where the balls are after a tick and which walls bounced them during it. A wall
+     * that bounces a ball sets the ball's cooldown for it to {@link Wall#HIT_COOLDOWN}, and
+     * the cooldown only counts down on later ticks, so each bounce is counted once.
+     *
+     * @param level The level.
+     * @param heatmap The counts to add to.
+     */
+    private static void countBalls(Level level, Heatmap heatmap) {
+        WallGrid walls = level.getWallGrid();
+        List<Ball> balls = level.getBalls();
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            heatmap.countBall(ball.getPosition().x, ball.getPosition().y);
+            for (int c = 0; c < ball.getCooldownCount(); c++) {
+                if (ball.getCooldownValue(c) != Wall.HIT_COOLDOWN) {
+                    continue;
+                }
+                int index = walls.indexOf(ball.getCooldownWallId(c));
+                if (index >= 0) {
+                    Heatmap.countTile(heatmap.wallHits, level.getWalls().get(index).getPosition());
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws a heatmap over the level it was counted on. Ball ticks are drawn on a logarithmic
+     * colour scale from blue to red, walls are outlined in red as strongly as they were hit
+     * relative to the most-hit wall, and holes are filled in green by their share of captures.
+     *
+     * @param heatmap The counts.
+     * @return The image, the size of the board.
+     */
+    public BufferedImage render(Heatmap heatmap) {
+        Level level = newGame(0).getCurrentLevel();
+        BufferedImage image = new BufferedImage(BOARD_SIZE, BOARD_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            drawLevel(g, level);
+
+            long maxTicks = max(heatmap.ballTicks);
+            double scale = Math.log1p(maxTicks);
+            for (int row = 0; row < heatmap.columns; row++) {
+                for (int column = 0; column < heatmap.columns; column++) {
+                    long value = heatmap.ballTicks[row * heatmap.columns + column];
+                    if (value > 0) {
+                        float t = (float) (Math.log1p(value) / scale);
+                        g.setComposite(translucent(0.25f + 0.55f * t));
+                        g.setColor(new Color(Color.HSBtoRGB(0.66f * (1 - t), 1, 1)));
+                        g.fillRect(column * heatmap.cellSize, row * heatmap.cellSize, heatmap.cellSize, heatmap.cellSize);
+                    }
+                }
+            }
+
+            long maxHits = Math.max(max(heatmap.wallHits), max(heatmap.brickHits));
+            long maxCaptures = max(heatmap.captures);
+            g.setStroke(new BasicStroke(3));
+            for (int tile = 0; tile < TILES * TILES; tile++) {
+                int x = tile % TILES * App.CELLSIZE;
+                int y = tile / TILES * App.CELLSIZE;
+                long hits = heatmap.wallHits[tile] + heatmap.brickHits[tile];
+                if (hits > 0) {
+                    g.setComposite(translucent(0.2f + 0.8f * hits / maxHits));
+                    g.setColor(Color.RED);
+                    g.drawRect(x + 1, y + 1, App.CELLSIZE - 3, App.CELLSIZE - 3);
+                }
+                if (heatmap.captures[tile] > 0) {
+                    g.setComposite(translucent(0.2f + 0.6f * heatmap.captures[tile] / maxCaptures));
+                    g.setColor(Color.GREEN);
+                    g.fillOval(x + 8, y + 8, App.CELLSIZE * 2 - 16, App.CELLSIZE * 2 - 16);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Writes the rendered heatmap as a PNG.
+     *
+     * @param heatmap The counts.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writePng(Heatmap heatmap, File file) throws IOException {
+        ImageIO.write(render(heatmap), "png", file);
+    }
+
+    /**
+     * Draws the level's tiles with the game's sprites.
+     *
+     * @param g The graphics to draw with.
+     * @param level The level.
+     */
+    private static void drawLevel(Graphics2D g, Level level) {
+        BufferedImage tile = sprite("tile");
+        for (int y = 0; y < BOARD_SIZE; y += App.CELLSIZE) {
+            for (int x = 0; x < BOARD_SIZE; x += App.CELLSIZE) {
+                drawSprite(g, tile, x, y, App.CELLSIZE);
+            }
+        }
+        for (Wall wall : level.getWalls()) {
+            drawSprite(g, sprite("wall" + wall.getWallType()), wall.getPosition(), App.CELLSIZE);
+        }
+        for (Brick brick : level.getLayoutBricks()) {
+            drawSprite(g, sprite("brick" + brick.getWallType()), brick.getPosition(), App.CELLSIZE);
+        }
+        for (Hole hole : level.getHoles()) {
+            drawSprite(g, sprite("hole" + hole.getColorType()), hole.getPosition(), App.CELLSIZE * 2);
+        }
+        for (Spawner spawner : level.getSpawners()) {
+            drawSprite(g, sprite("entrypoint"), spawner.getPosition(), App.CELLSIZE);
+        }
+    }
+
+    private static void drawSprite(Graphics2D g, BufferedImage sprite, PVector position, int size) {
+        drawSprite(g, sprite, (int) position.x, (int) position.y, size);
+    }
+
+    private static void drawSprite(Graphics2D g, BufferedImage sprite, int x, int y, int size) {
+        if (sprite != null) {
+            g.drawImage(sprite, x, y, size, size, null);
+        } else {
+            g.setColor(Color.DARK_GRAY);
+            g.fillRect(x, y, size, size);
+        }
+    }
+
+    /**
+     * Loads one of the game's sprites with AWT, since no PApplet is running.
+     *
+     * @param name The sprite's file name without the extension.
+     * @return The image, or null if it cannot be read.
+     */
+    private static BufferedImage sprite(String name) {
+        try (InputStream stream = HeatmapAggregator.class.getResourceAsStream("/inkball/" + name + ".png")) {
+            return stream != null ? ImageIO.read(stream) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a composite that draws over the image with some transparency.
+     *
+     * @param alpha The opacity; rounding may take it slightly past 1.
+     * @return The composite.
+     */
+    private static AlphaComposite translucent(float alpha) {
+        return AlphaComposite.getInstance(AlphaComposite.SRC_OVER, Math.min(1, alpha));
+    }
+
+    private static long max(long[] values) {
+        long max = 0;
+        for (long value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * Plays a level many times and writes the heatmap as CSV and PNG.
+     *
+     * @param args Optionally the level number, the number of games, the cell size in pixels,
+     *             the output file prefix and the number of threads.
+     * @throws IOException If an output file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int level = args.length > 0 ? Integer.parseInt(args[0]) - 1 : 0;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int cellSize = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        String prefix = args.length > 3 ? args[3] : "heatmap-level" + (level + 1);
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        System.setProperty("java.awt.headless", "true");
+
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        HeatmapAggregator aggregator = new HeatmapAggregator(config, level, cellSize, threads);
+        long start = System.nanoTime();
+        Heatmap heatmap = aggregator.run(1, games, Player.IDLE);
+        long elapsed = System.nanoTime() - start;
+
+        try (Writer tiles = Files.newBufferedWriter(new File(prefix + "-tiles.csv").toPath(), StandardCharsets.UTF_8);
+             Writer cells = Files.newBufferedWriter(new File(prefix + "-cells.csv").toPath(), StandardCharsets.UTF_8)) {
+            heatmap.writeTileCsv(tiles);
+            heatmap.writeCellCsv(cells);
+        }
+        aggregator.writePng(heatmap, new File(prefix + ".png"));
+        System.out.println("Played " + heatmap.getGames() + " games (" + heatmap.getTicks() + " ticks, "
+                + heatmap.getCompleted() + " completed) in " + (elapsed / 1000000) + " ms; wrote "
+                + prefix + "-tiles.csv, " + prefix + "-cells.csv and " + prefix + ".png");
+    }
+}
@@ -1,6 +1,7 @@
 package inkball;
 
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.core.PImage;
 import processing.core.PVector;
 import processing.data.JSONObject;
@@ -36,6 +37,17 @@ public class Hole extends GameObject {
         }
     }
 
+    /**
+     * Draws the hole onto an off-screen layer instead of the screen.
+     *
+     * @param layer The layer to draw onto.
+     */
+    public void display(PGraphics layer) {
+        if (sprite != null) {
+            layer.image(sprite, position.x, position.y, App.CELLSIZE * 2, App.CELLSIZE * 2);
+        }
+    }
+
     /**
      * Attracts a ball toward the hole if it is within range and handles ball capture.
      *
@@ -44,6 +56,19 @@ public class Hole extends GameObject {
      * @param config Configuration for ball capture.
      */
     public void attractBall(Ball ball, App app, JSONObject config) {
+        if (attract(ball)) {
+            handleCapture(ball, app, config);
+        }
+    }
+
+    /**
+     * Pulls a ball toward the hole and shrinks it as it gets close, without capturing it.
+     * Only the ball is changed.
+     *
+     * @param ball The ball to attract.
+     * @return True if the ball is close enough to be captured.
+     */
+    boolean attract(Ball ball) {
         PVector holeCenter = PVector.add(position, new PVector(App.CELLSIZE, App.CELLSIZE));
         PVector ballCenter = ball.getPosition();
         PVector direction = PVector.sub(holeCenter, ballCenter);
@@ -59,13 +84,12 @@ public class Hole extends GameObject {
             ball.setSize(ball.getOriginalSize());
         }
 
-        if (distance < ball.getRadius()) {
-            handleCapture(ball, app, config);
-        }
+        return distance < ball.getRadius();
     }
 
     /**
-     * Handles the capture logic when a ball reaches the hole.
+     * Handles the capture logic when a ball reaches the hole. The score change and the
+     * ball's removal are published as events and applied with the rest of the tick's events.
      *
      * @param ball The ball being captured.
      * @param app Reference to the main application object.
@@ -83,18 +107,13 @@ public class Hole extends GameObject {
                 int baseScore = getCapturePoints(scoreIncreaseMap, ballColor, holeColor);
                 float scoreIncreaseModifier = app.getCurrentLevel().getScoreIncreaseMultiplier();
                 int finalScore = (int) (baseScore * scoreIncreaseModifier);
-                app.increaseScore(finalScore);
-                removeBallFromGame(ball, app);
+                app.getEvents().capture(ball, this, finalScore);
             } else {
                 int basePenalty = getWrongCapturePenalty(scoreDecreaseMap, ballColor, holeColor);
                 float scoreDecreaseModifier = app.getCurrentLevel().getScoreDecreaseMultiplier();
                 int finalPenalty = (int) (basePenalty * scoreDecreaseModifier);
-                app.decreaseScore(finalPenalty);
-
-                if (this.colorType != 0 && ball.getColorType() != 0) {
-                    app.getCurrentLevel().addBallToRespawnQueue(ball);
-                }
-                removeBallFromGame(ball, app);
+                boolean requeue = this.colorType != 0 && ball.getColorType() != 0;
+                app.getEvents().wrongCapture(ball, this, finalPenalty, requeue);
             }
         }
     }
@@ -0,0 +1,297 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A replay file with a {@link LevelSnapshot} every few ticks, so that any tick can be reached
+ * without replaying the game from the start.
+ *
+ * <p>The file holds the {@link InputLog}, then a snapshot of the game before every tick that is
+ * a multiple of the keyframe interval, then an index of the snapshots' ticks and offsets, and
+ * last a fixed-size trailer giving the offset of the index. A file is opened by mapping it and
+ * reading the trailer, index and input log; snapshots are read straight from the mapping when a
+ * seek needs them. Seeking restores the last keyframe at or before the target and replays only
+ * the ticks after it, at most one interval's worth, or carries on from the current tick when
+ * the target is ahead of it and no further than the keyframe.</p>
+ */
+public class IndexedReplay {
+    public static final int DEFAULT_INTERVAL = 5 * App.FPS;
+
+    private static final int MAGIC = 0x494E4B49; // "INKI"
+    private static final int VERSION = 1;
+    private static final int TRAILER_SIZE = 12;
+
+    private final ByteBuffer data;
+    private final InputLog log;
+    private final int interval;
+    private final long[] keyframeTicks;
+    private final int[] keyframeOffsets;
+    private final int[] keyframeLengths;
+    private final App app;
+    private int cursor;
+    private long resimulatedTicks;
+
+    /**
+     * Constructor for the IndexedReplay object. Reads the index and input log and restores the
+     * first keyframe into the App.
+     *
+     * @param data The replay file's contents, between position 0 and the limit.
+     * @param app The App to replay into. It must use the configuration the game was recorded with.
+     * @throws IOException If the data is not a valid replay file.
+     */
+    public IndexedReplay(ByteBuffer data, App app) throws IOException {
+        this.data = data;
+        this.app = app;
+        int end = data.limit();
+        if (end < TRAILER_SIZE || data.getInt(end - 4) != MAGIC || data.getInt(0) != MAGIC) {
+            throw new IOException("Not an indexed replay");
+        }
+        ByteBuffer in = data.duplicate();
+        in.position(4);
+        long version = Varint.readUnsigned(in);
+        if (version != VERSION) {
+            throw new IOException("Unsupported indexed replay version " + version);
+        }
+        this.interval = (int) Varint.readUnsigned(in);
+        byte[] logBytes = new byte[(int) Varint.readUnsigned(in)];
+        in.get(logBytes);
+        this.log = InputLog.read(new ByteArrayInputStream(logBytes));
+        if (App.configHash(app.getConfig()) != log.getConfigHash()) {
+            throw new IllegalArgumentException("Replay was recorded with a different config");
+        }
+
+        in.position((int) data.getLong(end - TRAILER_SIZE));
+        int count = (int) Varint.readUnsigned(in);
+        if (count == 0) {
+            throw new IOException("Indexed replay has no keyframes");
+        }
+        this.keyframeTicks = new long[count];
+        this.keyframeOffsets = new int[count];
+        this.keyframeLengths = new int[count];
+        long tick = 0;
+        for (int i = 0; i < count; i++) {
+            tick += Varint.readUnsigned(in);
+            keyframeTicks[i] = tick;
+            keyframeOffsets[i] = (int) Varint.readUnsigned(in);
+            keyframeLengths[i] = (int) Varint.readUnsigned(in);
+        }
+        restore(0);
+    }
+
+    /**
+     * Opens a replay file by mapping it into memory.
+     *
+     * @param file The file.
+     * @param app The App to replay into. It must use the configuration the game was recorded with.
+     * @return The replay, positioned at its first keyframe.
+     * @throws IOException If the file cannot be read or is not a valid replay file.
+     */
+    public static IndexedReplay open(File file, App app) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new IndexedReplay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), app);
+        }
+    }
+
+    /**
+     * Replays a recording and writes it as an indexed replay.
+     *
+     * @param log The recording.
+     * @param config The configuration it was recorded with.
+     * @param interval The number of ticks between keyframes.
+     * @param out The stream to write to.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void write(InputLog log, JSONObject config, int interval, OutputStream out) throws IOException {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive");
+        }
+        ByteArrayOutputStream logBytes = new ByteArrayOutputStream();
+        log.write(logBytes);
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        Varint.writeUnsigned(data, VERSION);
+        Varint.writeUnsigned(data, interval);
+        Varint.writeUnsigned(data, logBytes.size());
+        logBytes.writeTo(data);
+
+        Replayer replayer = new Replayer(log, config);
+        LevelSnapshot snapshot = new LevelSnapshot();
+        List<long[]> index = new ArrayList<>();
+        do {
+            App app = replayer.getApp();
+            if (app.getTick() % interval == 0) {
+                snapshot.capture(app);
+                index.add(new long[]{app.getTick(), data.size(), snapshot.size()});
+                ByteBuffer buffer = snapshot.getBuffer();
+                data.write(buffer.array(), buffer.arrayOffset(), snapshot.size());
+            }
+        } while (replayer.step());
+
+        long indexOffset = data.size();
+        Varint.writeUnsigned(data, index.size());
+        long lastTick = 0;
+        for (long[] entry : index) {
+            Varint.writeUnsigned(data, entry[0] - lastTick);
+            Varint.writeUnsigned(data, entry[1]);
+            Varint.writeUnsigned(data, entry[2]);
+            lastTick = entry[0];
+        }
+        data.writeLong(indexOffset);
+        data.writeInt(MAGIC);
+        data.flush();
+    }
+
+    /**
+     * Replays a recording and saves it as an indexed replay file.
+     *
+     * @param log The recording.
+     * @param config The configuration it was recorded with.
+     * @param interval The number of ticks between keyframes.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(InputLog log, JSONObject config, int interval, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            write(log, config, interval, out);
+        }
+    }
+
+    /**
+     * Moves the replay to the state before a tick.
+     *
+     * @param target The tick, clamped to the length of the recording.
+     */
+    public void seek(long target) {
+        target = Math.max(0, Math.min(log.getEndTick(), target));
+        int keyframe = Arrays.binarySearch(keyframeTicks, target);
+        if (keyframe < 0) {
+            keyframe = -keyframe - 2;
+        }
+        long current = app.getTick();
+        if (current > target || current < keyframeTicks[keyframe]) {
+            restore(keyframe);
+        }
+        while (app.getTick() < target) {
+            step();
+            resimulatedTicks++;
+        }
+    }
+
+    /**
+     * Applies the inputs recorded for the current tick and advances the game by one tick.
+     *
+     * @return False once the end of the recording has been reached.
+     */
+    public boolean step() {
+        if (app.getTick() >= log.getEndTick()) {
+            return false;
+        }
+        while (cursor < log.size() && log.getTick(cursor) == app.getTick()) {
+            app.applyInput(log.getType(cursor), log.getX(cursor), log.getY(cursor));
+            cursor++;
+        }
+        app.tick();
+        return true;
+    }
+
+    /**
+     * Restores a keyframe into the App and moves the input cursor to its tick.
+     *
+     * @param keyframe The index of the keyframe.
+     */
+    private void restore(int keyframe) {
+        ByteBuffer snapshot = data.duplicate();
+        snapshot.limit(keyframeOffsets[keyframe] + keyframeLengths[keyframe]);
+        snapshot.position(keyframeOffsets[keyframe]);
+        LevelSnapshot.read(app, snapshot);
+        long tick = keyframeTicks[keyframe];
+        int low = 0;
+        int high = log.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (log.getTick(middle) < tick) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        cursor = low;
+    }
+
+    /**
+     * Converts a recording into an indexed replay file from the command line, then reports how
+     * long the slowest of a run of random seeks in the new file takes.
+     *
+     * @param args The path of the recording, the path of the file to write and optionally the
+     *             keyframe interval in ticks.
+     * @throws IOException If the recording cannot be read or the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        InputLog log = InputLog.load(new File(args[0]));
+        int interval = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_INTERVAL;
+        File file = new File(args[1]);
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        save(log, config, interval, file);
+        System.out.println("Ticks: " + log.getEndTick() + ", keyframes every " + interval
+                + " ticks, " + file.length() + " bytes");
+
+        IndexedReplay replay = open(file, App.createHeadless(config, 0));
+        Random random = new Random(3);
+        long worst = 0;
+        for (int i = 0; i < 250; i++) {
+            long start = System.nanoTime();
+            replay.seek(random.nextInt((int) replay.getEndTick() + 1));
+            // The first seeks only warm up
+            if (i >= 50) {
+                worst = Math.max(worst, System.nanoTime() - start);
+            }
+        }
+        System.out.println("Slowest seek: " + String.format("%.2f", worst / 1e6) + " ms, "
+                + String.format("%.2f", 1000.0 / App.FPS) + " ms available");
+    }
+
+    public App getApp() {
+        return app;
+    }
+
+    public InputLog getLog() {
+        return log;
+    }
+
+    public long getTick() {
+        return app.getTick();
+    }
+
+    public long getEndTick() {
+        return log.getEndTick();
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getKeyframeCount() {
+        return keyframeTicks.length;
+    }
+
+    public long getResimulatedTicks() {
+        return resimulatedTicks;
+    }
+}
@@ -0,0 +1,282 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reinforcement-learning environment over a headless game, in the style of Gym:
+ * {@link #reset(long)} starts an episode on one level and {@link #step(Action)} applies an
+ * action, advances the simulation and returns an observation, a reward and whether the
+ * episode is over.
+ *
+ * <p>The reward of a step is the change in the App's net capture points, that is the points
+ * given by increaseScore minus the points taken by decreaseScore. An episode ends when the
+ * level is completed or its time runs out, and is truncated after a maximum number of steps.</p>
+ *
+ * <p>Observations are float vectors of {@link #OBSERVATION_SIZE} values. The first
+ * {@link #HEADER_SIZE} are the remaining time as a fraction of the level time, the seconds
+ * until the next spawn, the number of balls waiting to spawn and the number of player lines.
+ * Then follow {@link #MAX_BALLS} ball slots of {@link #BALL_FIELDS} values each: 1 if the
+ * slot holds a ball, its x and y as fractions of the board size, its velocity and its colour
+ * index. Unused slots are all zero; balls beyond the last slot are left out.</p>
+ */
+public class InkballEnv {
+    public static final int MAX_BALLS = 16;
+    public static final int HEADER_SIZE = 4;
+    public static final int BALL_FIELDS = 6;
+    public static final int OBSERVATION_SIZE = HEADER_SIZE + MAX_BALLS * BALL_FIELDS;
+
+    private static final float BOARD_HEIGHT = App.HEIGHT - App.TOPBAR;
+
+    private final App template;
+    private final int ticksPerStep;
+    private final int maxSteps;
+    private final float[] observation;
+    private App app;
+    private int steps;
+    private long lastCapturePoints;
+
+    /**
+     * A player input: nothing, a stroke drawn as a player line, or an erase.
+     */
+    public static class Action {
+        public static final int NONE = 0;
+        public static final int STROKE = 1;
+        public static final int ERASE = 2;
+
+        public static final Action NOOP = new Action(NONE, new int[0]);
+
+        private final int type;
+        private final int[] coordinates;
+
+        /**
+         * Constructor for the Action object.
+         *
+         * @param type NONE, STROKE or ERASE.
+         * @param coordinates The board coordinates as x, y pairs.
+         */
+        private Action(int type, int[] coordinates) {
+            this.type = type;
+            this.coordinates = coordinates;
+        }
+
+        /**
+         * Creates an action that draws a finished line through the given points.
+         *
+         * @param points The board coordinates as x, y pairs; at least two points.
+         * @return The action.
+         */
+        public static Action stroke(int... points) {
+            if (points.length < 4 || points.length % 2 != 0) {
+                throw new IllegalArgumentException("A stroke needs at least two x, y pairs");
+            }
+            return new Action(STROKE, points.clone());
+        }
+
+        /**
+         * Creates an action that erases the player line under a point, like a right click.
+         *
+         * @param x The x coordinate on the board.
+         * @param y The y coordinate on the board.
+         * @return The action.
+         */
+        public static Action erase(int x, int y) {
+            return new Action(ERASE, new int[] {x, y});
+        }
+
+        /**
+         * Applies the action through the same handlers the mouse uses.
+         *
+         * @param app The App to apply the action to.
+         */
+        void apply(App app) {
+            switch (type) {
+                case STROKE:
+                    app.beginLine(coordinates[0], coordinates[1]);
+                    for (int i = 2; i < coordinates.length; i += 2) {
+                        app.extendLine(coordinates[i], coordinates[i + 1]);
+                    }
+                    app.finishLine();
+                    break;
+                case ERASE:
+                    app.eraseLineAt(coordinates[0], coordinates[1]);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        public int getType() {
+            return type;
+        }
+    }
+
+    /**
+     * What a single environment step returned.
+     */
+    public static class StepResult {
+        private final float[] observation;
+        private final float reward;
+        private final boolean done;
+        private final boolean truncated;
+
+        /**
+         * Constructor for the StepResult object.
+         *
+         * @param observation The observation after the step.
+         * @param reward The reward earned during the step.
+         * @param done Whether the level was completed or its time ran out.
+         * @param truncated Whether the episode hit the step limit.
+         */
+        public StepResult(float[] observation, float reward, boolean done, boolean truncated) {
+            this.observation = observation;
+            this.reward = reward;
+            this.done = done;
+            this.truncated = truncated;
+        }
+
+        public float[] getObservation() {
+            return observation;
+        }
+
+        public float getReward() {
+            return reward;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    /**
+     * Constructor for the InkballEnv object.
+     *
+     * @param config The game configuration.
+     * @param levelIndex The level every episode is played on.
+     * @param ticksPerStep How many simulation ticks each step advances.
+     * @param maxSteps The number of steps after which an episode is truncated, or 0 for no limit.
+     */
+    public InkballEnv(JSONObject config, int levelIndex, int ticksPerStep, int maxSteps) {
+        if (ticksPerStep < 1) {
+            throw new IllegalArgumentException("A step must advance at least one tick");
+        }
+        this.template = App.createHeadless(config, 0, levelIndex);
+        this.ticksPerStep = ticksPerStep;
+        this.maxSteps = maxSteps;
+        this.observation = new float[OBSERVATION_SIZE];
+    }
+
+    /**
+     * Starts a new episode. The layout is parsed once, so this forks a template game and
+     * reseeds it; balls placed in the layout get the same velocities they would get if the
+     * level were loaded with a generator seeded with the given seed.
+     *
+     * @param seed The seed for the episode's random generator.
+     * @return The first observation, in an array owned by the caller.
+     */
+    public float[] reset(long seed) {
+        app = template.fork();
+        app.setRandomSeed(seed);
+        for (Ball ball : app.getCurrentLevel().mutableBalls()) {
+            ball.redrawVelocity();
+        }
+        steps = 0;
+        lastCapturePoints = app.getCapturePoints();
+        writeObservation(observation, 0);
+        return observation.clone();
+    }
+
+    /**
+     * Applies an action and advances the simulation by one step.
+     *
+     * @param action The action to apply before the simulation advances.
+     * @return The observation, reward and end flags after the step.
+     */
+    public StepResult step(Action action) {
+        float reward = advance(action);
+        writeObservation(observation, 0);
+        return new StepResult(observation.clone(), reward, isDone(), isTruncated());
+    }
+
+    /**
+     * Applies an action and advances the simulation without building an observation.
+     * The simulation stops early if the episode ends part way through the step.
+     *
+     * @param action The action to apply.
+     * @return The reward earned during the step.
+     */
+    float advance(Action action) {
+        if (app == null || isDone() || isTruncated()) {
+            throw new IllegalStateException("Episode is over; call reset first");
+        }
+        action.apply(app);
+        for (int i = 0; i < ticksPerStep && !isDone(); i++) {
+            app.tick();
+        }
+        steps++;
+        long points = app.getCapturePoints();
+        float reward = points - lastCapturePoints;
+        lastCapturePoints = points;
+        return reward;
+    }
+
+    /**
+     * Writes the current observation into an array.
+     *
+     * @param out The array to write to.
+     * @param offset The index of the first value to write.
+     */
+    public void writeObservation(float[] out, int offset) {
+        Level level = app.getCurrentLevel();
+        out[offset] = app.getLevelTime() > 0 ? (float) app.getRemainingTime() / app.getLevelTime() : 0;
+        out[offset + 1] = level.getSpawnCountdown();
+        out[offset + 2] = level.getConfigBalls().size();
+        out[offset + 3] = app.getPlayerLines().size();
+
+        List<Ball> balls = level.getBalls();
+        int count = Math.min(MAX_BALLS, balls.size());
+        int slot = offset + HEADER_SIZE;
+        for (int i = 0; i < count; i++, slot += BALL_FIELDS) {
+            Ball ball = balls.get(i);
+            out[slot] = 1;
+            out[slot + 1] = ball.getPosition().x / App.WIDTH;
+            out[slot + 2] = ball.getPosition().y / BOARD_HEIGHT;
+            out[slot + 3] = ball.getVelocity().x;
+            out[slot + 4] = ball.getVelocity().y;
+            out[slot + 5] = ball.getColorType();
+        }
+        Arrays.fill(out, slot, offset + OBSERVATION_SIZE, 0);
+    }
+
+    /**
+     * Checks whether the episode has ended because the level was completed or time ran out.
+     *
+     * @return True if the episode is over.
+     */
+    public boolean isDone() {
+        return app.isLevelCompleted() || app.isTimeUp();
+    }
+
+    /**
+     * Checks whether the episode has been cut off by the step limit.
+     *
+     * @return True if the step limit has been reached.
+     */
+    public boolean isTruncated() {
+        return maxSteps > 0 && steps >= maxSteps;
+    }
+
+    public App getApp() {
+        return app;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+}
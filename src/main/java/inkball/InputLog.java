@@ -0,0 +1,231 @@
+package inkball;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A recording of player inputs, each stamped with the simulation tick it was applied on.
+ * Together with the random seed and the config hash, this is enough to replay a game exactly.
+ *
+ * <p>The binary format is a header (magic, version, seed, config hash, end tick, event count)
+ * followed by one record per event: the tick delta as a varint, the event type as a byte and,
+ * for events with a position, the zig-zag varint deltas from the previous position.</p>
+ */
+public class InputLog {
+    public static final byte LINE_START = 0;
+    public static final byte LINE_DRAG = 1;
+    public static final byte LINE_RELEASE = 2;
+    public static final byte ERASE = 3;
+    public static final byte PAUSE = 4;
+    public static final byte RESTART = 5;
+
+    private static final int MAGIC = 0x494E4B52; // "INKR"
+    private static final int VERSION = 1;
+
+    private final long seed;
+    private final int configHash;
+    private long endTick;
+    private long[] ticks;
+    private byte[] types;
+    private int[] xs;
+    private int[] ys;
+    private int size;
+
+    /**
+     * Constructor for an empty InputLog.
+     *
+     * @param seed The random seed the recorded game was started with.
+     * @param configHash The hash of the configuration the game was played with.
+     */
+    public InputLog(long seed, int configHash) {
+        this.seed = seed;
+        this.configHash = configHash;
+        this.ticks = new long[64];
+        this.types = new byte[64];
+        this.xs = new int[64];
+        this.ys = new int[64];
+    }
+
+    /**
+     * Checks whether an event type carries a board position.
+     *
+     * @param type The event type.
+     * @return True for line starts, drags and erases.
+     */
+    public static boolean hasPosition(byte type) {
+        return type == LINE_START || type == LINE_DRAG || type == ERASE;
+    }
+
+    /**
+     * Appends an event. Ticks must not decrease.
+     *
+     * @param tick The simulation tick the event was applied on.
+     * @param type The event type.
+     * @param x The x coordinate on the board, or 0 if the event has none.
+     * @param y The y coordinate on the board, or 0 if the event has none.
+     */
+    public void add(long tick, byte type, int x, int y) {
+        if (size > 0 && tick < ticks[size - 1]) {
+            throw new IllegalArgumentException("Events must be added in tick order");
+        }
+        if (size == ticks.length) {
+            int capacity = size * 2;
+            ticks = Arrays.copyOf(ticks, capacity);
+            types = Arrays.copyOf(types, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        ticks[size] = tick;
+        types[size] = type;
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+        endTick = Math.max(endTick, tick);
+    }
+
+    /**
+     * Writes the log in its binary format.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        Varint.writeUnsigned(data, VERSION);
+        data.writeLong(seed);
+        data.writeInt(configHash);
+        Varint.writeUnsigned(data, endTick);
+        Varint.writeUnsigned(data, size);
+
+        long lastTick = 0;
+        int lastX = 0;
+        int lastY = 0;
+        for (int i = 0; i < size; i++) {
+            Varint.writeUnsigned(data, ticks[i] - lastTick);
+            data.writeByte(types[i]);
+            if (hasPosition(types[i])) {
+                Varint.writeSigned(data, xs[i] - lastX);
+                Varint.writeSigned(data, ys[i] - lastY);
+                lastX = xs[i];
+                lastY = ys[i];
+            }
+            lastTick = ticks[i];
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a log written by {@link #write(OutputStream)}, or by {@link ColumnarLog}.
+     *
+     * @param in The stream to read from.
+     * @return The decoded log.
+     * @throws IOException If the stream is not a valid input log.
+     */
+    public static InputLog read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int magic = data.readInt();
+        if (magic == ColumnarLog.MAGIC) {
+            return ColumnarLog.readBody(data);
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Not an input log");
+        }
+        long version = Varint.readUnsigned(data);
+        if (version != VERSION) {
+            throw new IOException("Unsupported input log version " + version);
+        }
+        InputLog log = new InputLog(data.readLong(), data.readInt());
+        long endTick = Varint.readUnsigned(data);
+        long count = Varint.readUnsigned(data);
+
+        long tick = 0;
+        int x = 0;
+        int y = 0;
+        for (long i = 0; i < count; i++) {
+            tick += Varint.readUnsigned(data);
+            byte type = data.readByte();
+            if (hasPosition(type)) {
+                x += (int) Varint.readSigned(data);
+                y += (int) Varint.readSigned(data);
+                log.add(tick, type, x, y);
+            } else {
+                log.add(tick, type, 0, 0);
+            }
+        }
+        log.setEndTick(endTick);
+        return log;
+    }
+
+    /**
+     * Saves the log to a file.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    /**
+     * Loads a log from a file.
+     *
+     * @param file The file to read.
+     * @return The decoded log.
+     * @throws IOException If the file cannot be read or is not a valid input log.
+     */
+    public static InputLog load(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    // Getter and setter methods for various class variables
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getConfigHash() {
+        return configHash;
+    }
+
+    public long getEndTick() {
+        return endTick;
+    }
+
+    public void setEndTick(long endTick) {
+        this.endTick = endTick;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTick(int index) {
+        return ticks[index];
+    }
+
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        return ys[index];
+    }
+}
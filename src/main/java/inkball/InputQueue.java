@@ -0,0 +1,137 @@
+package inkball;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free queue that carries mouse and keyboard input from the thread Processing delivers
+ * it on to the thread that runs the simulation.
+ *
+ * <p>There must be exactly one producer and one consumer. Inputs are packed into the longs of
+ * a ring whose size is a power of two. The producer publishes an input by advancing the tail
+ * and the consumer frees its slots by advancing the head; each counter has a single writer, so
+ * ordered stores are enough and neither side ever waits. A full queue drops new inputs rather
+ * than blocking the event thread.</p>
+ *
+ * <p>Types are the {@link InputLog} constants, and coordinates must fit in 24 signed bits.</p>
+ */
+public class InputQueue {
+    private final long[] entries;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    // The producer's last look at the head, so it only reads the consumer's counter when the ring seems full
+    private long cachedHead;
+    private final AtomicLong dropped = new AtomicLong();
+    private long coalesced;
+
+    /**
+     * Receives the inputs taken from the queue.
+     */
+    public interface Handler {
+        /**
+         * Applies one input.
+         *
+         * @param type The input type, one of the InputLog constants.
+         * @param x The x coordinate, or 0 if the input has none.
+         * @param y The y coordinate, or 0 if the input has none.
+         */
+        void apply(byte type, int x, int y);
+    }
+
+    /**
+     * Constructor for the InputQueue object.
+     *
+     * @param capacity The number of inputs the queue holds, rounded up to a power of two.
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.entries = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an input. Only the producer thread may call this.
+     *
+     * @param type The input type, one of the InputLog constants.
+     * @param x The x coordinate, or 0 if the input has none.
+     * @param y The y coordinate, or 0 if the input has none.
+     * @return False if the queue was full and the input was dropped.
+     */
+    public boolean offer(byte type, int x, int y) {
+        long t = tail.get();
+        if (t - cachedHead >= entries.length) {
+            cachedHead = head.get();
+            if (t - cachedHead >= entries.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        entries[(int) t & mask] = pack(type, x, y);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Hands every queued input to a handler, oldest first. A drag followed straight away by
+     * another drag is skipped, since the line only needs the last point the mouse reached.
+     * Only the consumer thread may call this.
+     *
+     * @param handler The handler.
+     * @return The number of inputs handed over.
+     */
+    public int drain(Handler handler) {
+        long h = head.get();
+        long t = tail.get();
+        int applied = 0;
+        for (; h < t; h++) {
+            long entry = entries[(int) h & mask];
+            byte type = typeOf(entry);
+            if (type == InputLog.LINE_DRAG && h + 1 < t && typeOf(entries[(int) (h + 1) & mask]) == InputLog.LINE_DRAG) {
+                coalesced++;
+                continue;
+            }
+            handler.apply(type, xOf(entry), yOf(entry));
+            applied++;
+        }
+        head.lazySet(t);
+        return applied;
+    }
+
+    /**
+     * Checks whether the queue holds no inputs. The answer may be out of date as soon as it is
+     * returned if the producer is running.
+     *
+     * @return True if there is nothing to drain.
+     */
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    static long pack(byte type, int x, int y) {
+        return ((long) type << 48) | ((long) (x & 0xFFFFFF) << 24) | (y & 0xFFFFFF);
+    }
+
+    static byte typeOf(long entry) {
+        return (byte) (entry >>> 48);
+    }
+
+    static int xOf(long entry) {
+        return (int) (entry << 16 >> 40);
+    }
+
+    static int yOf(long entry) {
+        return (int) (entry << 40 >> 40);
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced;
+    }
+}
@@ -0,0 +1,688 @@
+package inkball;
+
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays random levels headlessly and checks physics invariants after every tick.
+ *
+ * <p>A case is a random layout in the levelN.txt grammar with a wall border, a random spawn
+ * queue and random player strokes, some of them with repeated points so that lines have
+ * zero-length segments. After every tick, every ball must have a finite velocity, must have its
+ * centre on the 576 by 576 board and must not have its centre strictly inside a wall or brick
+ * tile. The score must not be negative, and the tick must not throw.</p>
+ *
+ * <p>Games are deterministic given their seed, so a failing case can be replayed exactly. It is
+ * shrunk by repeatedly dropping strokes, stroke points, queued balls and layout tiles while the
+ * same invariant still fails, which usually leaves a handful of tiles and one stroke.</p>
+ */
+public class InvariantFuzzer {
+    public static final int BALL_IN_WALL = 0;
+    public static final int BALL_OFF_BOARD = 1;
+    public static final int NAN_VELOCITY = 2;
+    public static final int NEGATIVE_SCORE = 3;
+    public static final int EXCEPTION = 4;
+    private static final String[] INVARIANT_NAMES = {
+        "ball inside wall", "ball off board", "NaN velocity", "negative score", "exception"
+    };
+
+    private static final int BOARD_SIZE = App.WIDTH;
+    private static final int TILES = BOARD_SIZE / App.CELLSIZE;
+    private static final int MAX_SHRINK_PASSES = 8;
+
+    private final JSONObject config;
+    private final int ticksPerCase;
+    private final int threads;
+    private final LongAdder ticksRun = new LongAdder();
+
+    /**
+     * A player stroke, or an erase when it has a single point, applied before a given tick.
+     */
+    public static class Stroke {
+        private final int tick;
+        private final int[] points;
+
+        /**
+         * Constructor for the Stroke object.
+         *
+         * @param tick The tick the stroke is drawn before.
+         * @param points The x and y coordinates of each point, in pairs; a single point erases.
+         */
+        public Stroke(int tick, int... points) {
+            if (points.length < 2 || points.length % 2 != 0) {
+                throw new IllegalArgumentException("A stroke needs whole points");
+            }
+            this.tick = tick;
+            this.points = points.clone();
+        }
+
+        /**
+         * Draws the stroke, or erases at its point.
+         *
+         * @param app The game.
+         */
+        void apply(App app) {
+            if (points.length == 2) {
+                app.eraseLineAt(points[0], points[1]);
+                return;
+            }
+            app.beginLine(points[0], points[1]);
+            for (int i = 2; i < points.length; i += 2) {
+                app.extendLine(points[i], points[i + 1]);
+            }
+            app.finishLine();
+        }
+
+        /**
+         * Creates a copy of this stroke without one of its points.
+         *
+         * @param index The point to drop.
+         * @return The shorter stroke.
+         */
+        Stroke withoutPoint(int index) {
+            int[] shorter = new int[points.length - 2];
+            System.arraycopy(points, 0, shorter, 0, index * 2);
+            System.arraycopy(points, index * 2 + 2, shorter, index * 2, shorter.length - index * 2);
+            return new Stroke(tick, shorter);
+        }
+
+        public int getTick() {
+            return tick;
+        }
+
+        public int getPointCount() {
+            return points.length / 2;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(points.length == 2 ? "erase @" : "stroke @").append(tick);
+            for (int i = 0; i < points.length; i += 2) {
+                text.append(' ').append(points[i]).append(',').append(points[i + 1]);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Everything needed to replay one fuzzed game.
+     */
+    public static class Case {
+        private final long seed;
+        private final String[] layout;
+        private final List<String> queue;
+        private final float spawnInterval;
+        private final List<Stroke> strokes;
+        private final int ticks;
+
+        /**
+         * Constructor for the Case object.
+         *
+         * @param seed The game's seed.
+         * @param layout The layout, one string per row.
+         * @param queue The colours of the balls waiting to spawn.
+         * @param spawnInterval The seconds between spawns.
+         * @param strokes The player's strokes, in tick order.
+         * @param ticks The number of ticks to play.
+         */
+        public Case(long seed, String[] layout, List<String> queue, float spawnInterval, List<Stroke> strokes, int ticks) {
+            this.seed = seed;
+            this.layout = layout.clone();
+            this.queue = Collections.unmodifiableList(new ArrayList<>(queue));
+            this.spawnInterval = spawnInterval;
+            List<Stroke> sorted = new ArrayList<>(strokes);
+            sorted.sort((a, b) -> Integer.compare(a.tick, b.tick));
+            this.strokes = Collections.unmodifiableList(sorted);
+            this.ticks = ticks;
+        }
+
+        /**
+         * Creates the game this case plays, before its first tick.
+         *
+         * @param config The game configuration, used for scoring.
+         * @return The game.
+         */
+        App start(JSONObject config) {
+            App app = App.createHeadless(config, seed, layout);
+            app.getCurrentLevel().setConfigBalls(new ArrayList<>(queue));
+            app.getCurrentLevel().setSpawnInterval(spawnInterval);
+            // Keep the clock from running out before the case ends
+            int seconds = ticks / App.FPS + 1;
+            app.setLevelTime(Math.max(app.getLevelTime(), seconds));
+            app.setRemainingTime(app.getLevelTime());
+            return app;
+        }
+
+        Case withLayout(String[] newLayout) {
+            return new Case(seed, newLayout, queue, spawnInterval, strokes, ticks);
+        }
+
+        Case withQueue(List<String> newQueue) {
+            return new Case(seed, layout, newQueue, spawnInterval, strokes, ticks);
+        }
+
+        Case withStrokes(List<Stroke> newStrokes) {
+            return new Case(seed, layout, queue, spawnInterval, newStrokes, ticks);
+        }
+
+        Case withTicks(int newTicks) {
+            return new Case(seed, layout, queue, spawnInterval, strokes, newTicks);
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public String[] getLayout() {
+            return layout.clone();
+        }
+
+        public List<String> getQueue() {
+            return queue;
+        }
+
+        public List<Stroke> getStrokes() {
+            return strokes;
+        }
+
+        public int getTicks() {
+            return ticks;
+        }
+
+        /**
+         * Describes the case as a reproducer: the settings, then the strokes, then the layout
+         * with trailing blank space removed.
+         *
+         * @return The description.
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append("seed ").append(seed).append(", ticks ").append(ticks)
+                    .append(", spawn interval ").append(spawnInterval)
+                    .append(", queue ").append(queue).append('\n');
+            for (Stroke stroke : strokes) {
+                text.append(stroke).append('\n');
+            }
+            int rows = layout.length;
+            while (rows > 0 && layout[rows - 1].trim().isEmpty()) {
+                rows--;
+            }
+            for (int row = 0; row < rows; row++) {
+                text.append(layout[row].replaceAll("\\s+$", "")).append('\n');
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * An invariant that failed, and where.
+     */
+    public static class Failure {
+        private final Case failingCase;
+        private final int invariant;
+        private final long tick;
+        private final String detail;
+
+        /**
+         * Constructor for the Failure object.
+         *
+         * @param failingCase The case that failed.
+         * @param invariant The invariant that failed.
+         * @param tick The tick after which it failed.
+         * @param detail What was wrong.
+         */
+        public Failure(Case failingCase, int invariant, long tick, String detail) {
+            this.failingCase = failingCase;
+            this.invariant = invariant;
+            this.tick = tick;
+            this.detail = detail;
+        }
+
+        public Case getCase() {
+            return failingCase;
+        }
+
+        public int getInvariant() {
+            return invariant;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return INVARIANT_NAMES[invariant] + " after tick " + tick + ": " + detail + "\n" + failingCase;
+        }
+    }
+
+    /**
+     * Constructor for the InvariantFuzzer object.
+     *
+     * @param config The game configuration, used for scoring.
+     * @param ticksPerCase How many ticks each generated case plays.
+     * @param threads The number of worker threads.
+     */
+    public InvariantFuzzer(JSONObject config, int ticksPerCase, int threads) {
+        this.config = config;
+        this.ticksPerCase = ticksPerCase;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Generates a random case. The same seed always gives the same case.
+     *
+     * @param caseSeed The seed.
+     * @return The case.
+     */
+    public Case generate(long caseSeed) {
+        Random random = new Random(caseSeed);
+        char[][] grid = new char[TILES][TILES];
+        for (char[] row : grid) {
+            Arrays.fill(row, ' ');
+        }
+        for (int i = 0; i < TILES; i++) {
+            grid[0][i] = borderWall(random);
+            grid[TILES - 1][i] = borderWall(random);
+            grid[i][0] = borderWall(random);
+            grid[i][TILES - 1] = borderWall(random);
+        }
+
+        float wallDensity = random.nextFloat() * 0.25f;
+        for (int row = 1; row < TILES - 1; row++) {
+            for (int col = 1; col < TILES - 1; col++) {
+                if (random.nextFloat() < wallDensity) {
+                    grid[row][col] = random.nextInt(3) == 0 ? (char) ('1' + random.nextInt(4)) : 'X';
+                }
+            }
+        }
+        place(grid, random, 'E', 2, random.nextInt(6));
+        place(grid, random, 'H', 2, 1 + random.nextInt(3));
+        place(grid, random, 'B', 2, random.nextInt(3));
+        place(grid, random, 'S', 1, 1 + random.nextInt(3));
+
+        String[] layout = new String[TILES];
+        for (int row = 0; row < TILES; row++) {
+            layout[row] = new String(grid[row]);
+        }
+
+        List<String> queue = new ArrayList<>();
+        int queued = random.nextInt(12);
+        for (int i = 0; i < queued; i++) {
+            queue.add(Level.COLOR_NAMES[random.nextInt(Level.COLOR_NAMES.length)]);
+        }
+        float spawnInterval = 1 + random.nextFloat() * 9;
+
+        List<Stroke> strokes = new ArrayList<>();
+        int strokeCount = random.nextInt(10);
+        for (int i = 0; i < strokeCount; i++) {
+            strokes.add(randomStroke(random));
+        }
+        return new Case(caseSeed, layout, queue, spawnInterval, strokes, ticksPerCase);
+    }
+
+    /**
+     * Picks a border tile: usually a grey wall, sometimes a coloured one.
+     *
+     * @param random The generator.
+     * @return The tile.
+     */
+    private static char borderWall(Random random) {
+        return random.nextInt(8) == 0 ? (char) ('1' + random.nextInt(4)) : 'X';
+    }
+
+    /**
+     * Places objects on random open interior tiles. Two-character objects get a colour digit.
+     * Objects only go on open tiles so that no colour digit is ever overwritten, which would
+     * make the layout unparseable rather than test the physics.
+     *
+     * @param grid The layout being generated.
+     * @param random The generator.
+     * @param kind The object's character.
+     * @param width 2 for objects followed by a colour, 1 otherwise.
+     * @param count How many to place.
+     */
+    private static void place(char[][] grid, Random random, char kind, int width, int count) {
+        for (int i = 0; i < count; i++) {
+            int row = 1 + random.nextInt(TILES - 2);
+            int col = 1 + random.nextInt(TILES - 1 - width);
+            if (grid[row][col] != ' ' || grid[row][col + width - 1] != ' ') {
+                continue;
+            }
+            grid[row][col] = kind;
+            if (width == 2) {
+                grid[row][col + 1] = (char) ('0' + random.nextInt(Level.COLOR_NAMES.length));
+            }
+        }
+    }
+
+    /**
+     * Creates a random stroke. A third of strokes repeat some of their points, so their lines
+     * have zero-length segments; some are erases.
+     *
+     * @param random The generator.
+     * @return The stroke.
+     */
+    private Stroke randomStroke(Random random) {
+        int tick = random.nextInt(Math.max(1, ticksPerCase));
+        if (random.nextInt(6) == 0) {
+            return new Stroke(tick, random.nextInt(BOARD_SIZE), random.nextInt(BOARD_SIZE));
+        }
+        boolean degenerate = random.nextInt(3) == 0;
+        int count = 2 + random.nextInt(5);
+        int[] points = new int[count * 2];
+        int x = random.nextInt(BOARD_SIZE);
+        int y = random.nextInt(BOARD_SIZE);
+        for (int i = 0; i < count; i++) {
+            if (!degenerate || random.nextBoolean()) {
+                x = Math.max(0, Math.min(BOARD_SIZE - 1, x + random.nextInt(97) - 48));
+                y = Math.max(0, Math.min(BOARD_SIZE - 1, y + random.nextInt(97) - 48));
+            }
+            points[i * 2] = x;
+            points[i * 2 + 1] = y;
+        }
+        return new Stroke(tick, points);
+    }
+
+    /**
+     * Plays a case and checks the invariants after every tick.
+     *
+     * @param testCase The case.
+     * @return The first failure, or null if every invariant held.
+     */
+    public Failure check(Case testCase) {
+        App app;
+        try {
+            app = testCase.start(config);
+        } catch (RuntimeException e) {
+            return new Failure(testCase, EXCEPTION, -1, e.toString());
+        }
+        boolean[] solid = solidTiles(app.getCurrentLevel());
+        List<Stroke> strokes = testCase.strokes;
+        int next = 0;
+        int t = 0;
+        try {
+            for (; t < testCase.ticks && !app.isLevelCompleted(); t++) {
+                while (next < strokes.size() && strokes.get(next).tick <= t) {
+                    strokes.get(next++).apply(app);
+                }
+                app.tick();
+                Failure failure = checkInvariants(testCase, app, solid, t);
+                if (failure != null) {
+                    return failure;
+                }
+            }
+        } catch (RuntimeException e) {
+            return new Failure(testCase, EXCEPTION, t, e.toString());
+        } finally {
+            ticksRun.add(t);
+        }
+        return null;
+    }
+
+    /**
+     * Marks the tiles that hold a wall. Walls never move, so this is done once per case.
+     *
+     * @param level The level.
+     * @return One flag per board tile, row-major.
+     */
+    private static boolean[] solidTiles(Level level) {
+        boolean[] solid = new boolean[TILES * TILES];
+        for (Wall wall : level.getWalls()) {
+            int col = (int) (wall.getPosition().x / App.CELLSIZE);
+            int row = (int) (wall.getPosition().y / App.CELLSIZE);
+            if (col >= 0 && col < TILES && row >= 0 && row < TILES) {
+                solid[row * TILES + col] = true;
+            }
+        }
+        return solid;
+    }
+
+    /**
+     * Checks the invariants of a game after a tick.
+     *
+     * @param testCase The case being played.
+     * @param app The game.
+     * @param solid The wall tiles.
+     * @param tick The tick just played.
+     * @return The failure, or null if every invariant holds.
+     */
+    private static Failure checkInvariants(Case testCase, App app, boolean[] solid, int tick) {
+        if (app.getScore() < 0) {
+            return new Failure(testCase, NEGATIVE_SCORE, tick, "score " + app.getScore());
+        }
+        Level level = app.getCurrentLevel();
+        List<Ball> balls = level.getBalls();
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            PVector position = ball.getPosition();
+            PVector velocity = ball.getVelocity();
+            if (!Float.isFinite(velocity.x) || !Float.isFinite(velocity.y)) {
+                return new Failure(testCase, NAN_VELOCITY, tick, "ball " + i + " velocity " + velocity);
+            }
+            if (!(position.x >= 0 && position.x <= BOARD_SIZE && position.y >= 0 && position.y <= BOARD_SIZE)) {
+                return new Failure(testCase, BALL_OFF_BOARD, tick, "ball " + i + " at " + position);
+            }
+            int col = (int) (position.x / App.CELLSIZE);
+            int row = (int) (position.y / App.CELLSIZE);
+            // A centre on a tile's edge touches the tile but is not inside it
+            boolean interior = position.x > col * App.CELLSIZE && position.y > row * App.CELLSIZE;
+            if (interior && col < TILES && row < TILES && solid[row * TILES + col]) {
+                return new Failure(testCase, BALL_IN_WALL, tick, "ball " + i + " at " + position
+                        + " inside wall tile " + col + "," + row);
+            }
+            if (interior) {
+                for (Brick brick : level.getBricks()) {
+                    if ((int) (brick.getPosition().x / App.CELLSIZE) == col
+                            && (int) (brick.getPosition().y / App.CELLSIZE) == row) {
+                        return new Failure(testCase, BALL_IN_WALL, tick, "ball " + i + " at " + position
+                                + " inside brick tile " + col + "," + row);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Generates and checks a range of cases on the worker threads.
+     *
+     * @param firstSeed The seed of the first case.
+     * @param cases The number of cases.
+     * @return The failures, unshrunk, in seed order.
+     */
+    public List<Failure> run(final long firstSeed, final int cases) {
+        List<Callable<List<Failure>>> tasks = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            final int worker = w;
+            tasks.add(() -> {
+                List<Failure> failures = new ArrayList<>();
+                for (int i = worker; i < cases; i += threads) {
+                    Failure failure = check(generate(firstSeed + i));
+                    if (failure != null) {
+                        failures.add(failure);
+                    }
+                }
+                return failures;
+            });
+        }
+        List<Failure> failures = new ArrayList<>();
+        for (List<Failure> found : ParallelTasks.runAll(threads, tasks)) {
+            failures.addAll(found);
+        }
+        failures.sort((a, b) -> Long.compare(a.failingCase.seed, b.failingCase.seed));
+        return failures;
+    }
+
+    /**
+     * Shrinks failures on the worker threads.
+     *
+     * @param failures The failures.
+     * @return The shrunk failures, in the same order.
+     */
+    public List<Failure> shrinkAll(List<Failure> failures) {
+        List<Callable<Failure>> tasks = new ArrayList<>();
+        for (final Failure failure : failures) {
+            tasks.add(() -> shrink(failure));
+        }
+        return ParallelTasks.runAll(threads, tasks);
+    }
+
+    /**
+     * Shrinks a failing case to a smaller one that fails the same invariant. The game is cut
+     * off at the failing tick, then strokes, stroke points, queued balls and layout tiles are
+     * dropped one at a time for as long as that keeps the failure.
+     *
+     * @param failure The failure.
+     * @return The failure of the smallest case found.
+     */
+    public Failure shrink(Failure failure) {
+        Failure best = failure;
+        Failure cut = check(best.failingCase.withTicks((int) best.tick + 1));
+        if (sameFailure(cut, best)) {
+            best = cut;
+        }
+        for (int pass = 0; pass < MAX_SHRINK_PASSES; pass++) {
+            Failure before = best;
+            best = shrinkStrokes(best);
+            best = shrinkQueue(best);
+            best = shrinkLayout(best);
+            if (best == before) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    private Failure shrinkStrokes(Failure best) {
+        for (int i = best.failingCase.strokes.size() - 1; i >= 0; i--) {
+            List<Stroke> fewer = new ArrayList<>(best.failingCase.strokes);
+            fewer.remove(i);
+            best = tryCandidate(best, best.failingCase.withStrokes(fewer));
+        }
+        for (int i = 0; i < best.failingCase.strokes.size(); i++) {
+            for (int p = best.failingCase.strokes.get(i).getPointCount() - 1; p >= 0; p--) {
+                Stroke stroke = best.failingCase.strokes.get(i);
+                if (stroke.getPointCount() <= 2) {
+                    break;
+                }
+                List<Stroke> shorter = new ArrayList<>(best.failingCase.strokes);
+                shorter.set(i, stroke.withoutPoint(Math.min(p, stroke.getPointCount() - 1)));
+                best = tryCandidate(best, best.failingCase.withStrokes(shorter));
+            }
+        }
+        return best;
+    }
+
+    private Failure shrinkQueue(Failure best) {
+        for (int i = best.failingCase.queue.size() - 1; i >= 0; i--) {
+            List<String> fewer = new ArrayList<>(best.failingCase.queue);
+            fewer.remove(i);
+            best = tryCandidate(best, best.failingCase.withQueue(fewer));
+        }
+        return best;
+    }
+
+    private Failure shrinkLayout(Failure best) {
+        String[] layout = best.failingCase.layout;
+        for (int row = 0; row < layout.length; row++) {
+            for (int col = 0; col < best.failingCase.layout[row].length(); col++) {
+                String line = best.failingCase.layout[row];
+                char tile = line.charAt(col);
+                if (tile == ' ') {
+                    continue;
+                }
+                // Objects followed by a colour digit are removed together with it
+                int width = (tile == 'H' || tile == 'E' || tile == 'B') && col + 1 < line.length() ? 2 : 1;
+                String[] cleared = best.failingCase.layout.clone();
+                cleared[row] = line.substring(0, col) + (width == 2 ? "  " : " ") + line.substring(col + width);
+                best = tryCandidate(best, best.failingCase.withLayout(cleared));
+                col += width - 1;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Checks a smaller case and keeps it if it fails the same way.
+     *
+     * @param best The smallest failure so far.
+     * @param candidate The smaller case.
+     * @return The candidate's failure if it failed the same invariant, otherwise best.
+     */
+    private Failure tryCandidate(Failure best, Case candidate) {
+        Failure failure = check(candidate);
+        return sameFailure(failure, best) ? failure : best;
+    }
+
+    private static boolean sameFailure(Failure failure, Failure original) {
+        return failure != null && failure.invariant == original.invariant;
+    }
+
+    /**
+     * Gets the number of ticks played so far, including those played while shrinking.
+     *
+     * @return The number of ticks.
+     */
+    public long getTicksRun() {
+        return ticksRun.sum();
+    }
+
+    /**
+     * Fuzzes from the command line and prints shrunk reproducers of any failures.
+     *
+     * @param args Optionally the number of cases, the ticks per case, the first seed and the
+     *             number of threads.
+     */
+    public static void main(String[] args) {
+        int cases = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 60 * App.FPS;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        InvariantFuzzer fuzzer = new InvariantFuzzer(config, ticks, threads);
+
+        long start = System.nanoTime();
+        List<Failure> failures = fuzzer.run(seed, cases);
+        long fuzzed = fuzzer.getTicksRun();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d cases, %d ticks in %.1f s (%.1f million ticks per minute), %d failures%n",
+                cases, fuzzed, seconds, fuzzed / seconds * 60 / 1e6, failures.size());
+
+        int[] counts = new int[INVARIANT_NAMES.length];
+        for (Failure failure : failures) {
+            counts[failure.invariant]++;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                System.out.println("  " + INVARIANT_NAMES[i] + ": " + counts[i]);
+            }
+        }
+        // Shrink one reproducer per invariant; the rest are usually the same bug
+        List<Failure> firsts = new ArrayList<>();
+        boolean[] seen = new boolean[INVARIANT_NAMES.length];
+        for (Failure failure : failures) {
+            if (!seen[failure.invariant]) {
+                seen[failure.invariant] = true;
+                firsts.add(failure);
+            }
+        }
+        for (Failure shrunk : fuzzer.shrinkAll(firsts)) {
+            System.out.println();
+            System.out.print(shrunk);
+        }
+    }
+}
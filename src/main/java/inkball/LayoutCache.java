@@ -0,0 +1,59 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Parsed level layouts, shared between the headless Apps that play them.
+ *
+ * <p>Walls, holes, spawners and the wall grid never change once a layout is parsed, so one
+ * copy serves every level loaded through {@link Level#loadLevel(JSONObject, LayoutCache)}; the
+ * same sharing {@link Level#fork(App)} relies on. Each layout is parsed once, by whichever
+ * thread asks for it first, and the cache may be used from any number of threads.</p>
+ *
+ * <p>Layouts are parsed without sprites, so the cache is only for headless Apps.</p>
+ */
+public class LayoutCache {
+    private final ConcurrentMap<String, Level> layouts = new ConcurrentHashMap<>();
+
+    /**
+     * Gets a parsed layout, parsing it the first time it is asked for.
+     *
+     * @param layoutFile The layout's file name, as in the config's "layout" field.
+     * @return A level holding the layout. It must not be updated or changed.
+     */
+    public Level get(String layoutFile) {
+        return layouts.computeIfAbsent(layoutFile, this::parse);
+    }
+
+    /**
+     * Parses a layout into a level owned by an App of its own, so layouts parsed at the same
+     * time on different threads share no random generator or other game state.
+     *
+     * @param layoutFile The layout's file name.
+     * @return The level.
+     */
+    private Level parse(String layoutFile) {
+        InputStream layoutStream = getClass().getResourceAsStream("/inkball/" + layoutFile);
+        if (layoutStream == null) {
+            throw new IllegalArgumentException("Unknown layout " + layoutFile);
+        }
+        Level level = new Level(App.newHeadless(new JSONObject(), 0));
+        level.parseLayout(App.loadStrings(layoutStream));
+        // Built here so that levels sharing the grid never race to build it
+        level.getWallGrid();
+        return level;
+    }
+
+    /**
+     * Gets the number of layouts parsed so far.
+     *
+     * @return The number of layouts.
+     */
+    public int size() {
+        return layouts.size();
+    }
+}
@@ -1,5 +1,6 @@
 package inkball;
 
+import processing.core.PGraphics;
 import processing.core.PVector;
 import processing.core.PImage;
 import processing.data.JSONArray;
@@ -7,9 +8,12 @@ import processing.data.JSONObject;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Level {
+    static final String[] COLOR_NAMES = {"grey", "orange", "blue", "green", "yellow"};
+
     private List<Ball> balls;
     private List<Wall> walls;
     private List<Hole> holes;
@@ -26,8 +30,21 @@ public class Level {
     private float scoreIncreaseMultiplier;
     private float scoreDecreaseMultiplier;
     private final float MIN_SPAWN_INTERVAL = 1.0f;
+    private static final int MAX_SPARE_BALLS = 16;
     private PImage[] brickSprites;
     private List<Brick> bricks;
+    private List<Brick> layoutBricks;
+    private boolean sharedBalls;
+    private boolean sharedBricks;
+    // Balls this level removed, which no other level can hold, kept for restoring snapshots
+    private final List<Ball> spareBalls = new ArrayList<>(MAX_SPARE_BALLS);
+    private int brickVersion;
+    private WallGrid wallGrid;
+    private int[] nearbyWalls = new int[16];
+    private List<Wall> indexedWalls;
+    private int indexedCount = -1;
+    private int[] indexedIds;
+    private int[] indexedSlots;
 
     /**
      * Constructor for the Level object.
@@ -43,17 +60,131 @@ public class Level {
         this.lines = new ArrayList<>();
         this.configBalls = new ArrayList<>();
         this.bricks = new ArrayList<>();
+        this.layoutBricks = new ArrayList<>();
         this.spawnCounter = 0;
         wallSprites = new PImage[5];
         holeSprites = new PImage[5];
         ballSprites = new PImage[5];
         brickSprites = new PImage[5];
-        loadSprites();
+        if (!app.isHeadless()) {
+            loadSprites();
+        }
+    }
+
+    /**
+     * Constructor for a forked level. Sprites and static geometry are shared with the source;
+     * balls and bricks are shared until either level changes them.
+     *
+     * @param app Reference to the application that owns the fork.
+     * @param source The level to fork.
+     */
+    private Level(App app, Level source) {
+        this.app = app;
+        this.wallSprites = source.wallSprites;
+        this.holeSprites = source.holeSprites;
+        this.ballSprites = source.ballSprites;
+        this.brickSprites = source.brickSprites;
+        this.spawnerSprite = source.spawnerSprite;
+        this.walls = source.walls;
+        this.wallGrid = source.wallGrid;
+        this.indexedWalls = source.indexedWalls;
+        this.indexedCount = source.indexedCount;
+        this.indexedIds = source.indexedIds;
+        this.indexedSlots = source.indexedSlots;
+        this.holes = source.holes;
+        this.spawners = source.spawners;
+        this.lines = source.lines;
+        this.balls = source.balls;
+        this.bricks = source.bricks;
+        this.layoutBricks = source.layoutBricks;
+        this.sharedBalls = true;
+        this.sharedBricks = true;
+        this.configBalls = new ArrayList<>(source.configBalls);
+        this.spawnInterval = source.spawnInterval;
+        this.spawnCounter = source.spawnCounter;
+        this.scoreIncreaseMultiplier = source.scoreIncreaseMultiplier;
+        this.scoreDecreaseMultiplier = source.scoreDecreaseMultiplier;
     }
 
+    /**
+     * Creates a copy of this level for another App at close to no cost.
+     * Walls, holes and spawners never change and are always shared. Balls and bricks stay
+     * shared until one of the two levels changes them, at which point that level copies them.
+     *
+     * @param app The App that will own the fork.
+     * @return The forked level.
+     */
+    public Level fork(App app) {
+        sharedBalls = true;
+        sharedBricks = true;
+        getWallGrid();
+        return new Level(app, this);
+    }
+
+    /**
+     * Gets the balls for modification, copying them first if they are shared with a fork.
+     *
+     * @return The level's own list of balls.
+     */
+    List<Ball> mutableBalls() {
+        if (sharedBalls) {
+            List<Ball> copies = new ArrayList<>(balls.size());
+            for (Ball ball : balls) {
+                copies.add(ball.copy(app));
+            }
+            balls = copies;
+            sharedBalls = false;
+        }
+        return balls;
+    }
+
+    /**
+     * Gets every parsed brick for modification, copying the bricks first if they are shared with a fork.
+     *
+     * @return The level's own list of layout bricks.
+     */
+    List<Brick> mutableLayoutBricks() {
+        if (sharedBricks) {
+            List<Brick> copies = new ArrayList<>(layoutBricks.size());
+            List<Brick> remaining = new ArrayList<>(bricks.size());
+            for (Brick brick : layoutBricks) {
+                Brick copy = new Brick(brick, app);
+                copies.add(copy);
+                if (bricks.contains(brick)) {
+                    remaining.add(copy);
+                }
+            }
+            layoutBricks = copies;
+            bricks = remaining;
+            sharedBricks = false;
+        }
+        return layoutBricks;
+    }
+
+    /**
+     * Finds this level's own copy of a brick, copying the bricks first if they are shared with a fork.
+     *
+     * @param brick A brick of this level, possibly one it shared before copying its bricks.
+     * @return The brick this level may modify.
+     */
+    private Brick ownBrick(Brick brick) {
+        List<Brick> own = mutableLayoutBricks();
+        for (Brick candidate : own) {
+            if (candidate == brick) {
+                return brick;
+            }
+        }
+        for (Brick candidate : own) {
+            if (candidate.getId() == brick.getId()) {
+                return candidate;
+            }
+        }
+        return brick;
+    }
 
     public void setBalls(List<Ball> balls) {
         this.balls = balls;
+        this.sharedBalls = false;
     }
 
     public List<Wall> getWalls() {
@@ -178,12 +309,23 @@ public class Level {
 
     public void setBricks(List<Brick> bricks) {
         this.bricks = bricks;
+        this.sharedBricks = false;
+        brickVersion++;
     }
 
     public float getMinSpawnInterval() {
         return MIN_SPAWN_INTERVAL;
     }
 
+    /**
+     * Gets every brick parsed from the layout, including ones that have since been destroyed.
+     *
+     * @return The bricks in layout order.
+     */
+    public List<Brick> getLayoutBricks() {
+        return layoutBricks;
+    }
+
     /**
      * Adds a ball to the respawn queue.
      *
@@ -254,7 +396,41 @@ public class Level {
 
         String[] layout = App.loadStrings(layoutStream);
         parseLayout(layout);
+        applyLevelConfig(levelConfig);
+    }
 
+    /**
+     * Loads the level configuration, taking the parsed layout from a cache instead of parsing
+     * it again. Walls, holes, spawners and the wall grid are shared with every level loaded
+     * from the same cache, and bricks are shared until this level changes them. The layout's
+     * balls are created afresh, in layout order, so they draw their velocities from this
+     * level's App just as parsing would.
+     *
+     * @param levelConfig The JSON object containing level configuration.
+     * @param cache The cache holding the parsed layouts.
+     */
+    public void loadLevel(JSONObject levelConfig, LayoutCache cache) {
+        Level layout = cache.get(levelConfig.getString("layout"));
+        this.walls = layout.walls;
+        this.wallGrid = layout.wallGrid;
+        this.holes = layout.holes;
+        this.spawners = layout.spawners;
+        this.bricks = layout.bricks;
+        this.layoutBricks = layout.layoutBricks;
+        this.sharedBricks = true;
+        for (Ball ball : layout.balls) {
+            int ballColor = ball.getColorType();
+            mutableBalls().add(new Ball(ball.getPosition().copy(), ballSprites[ballColor], app, ballColor));
+        }
+        applyLevelConfig(levelConfig);
+    }
+
+    /**
+     * Reads the spawn settings, score modifiers and ball queue of a level.
+     *
+     * @param levelConfig The JSON object containing level configuration.
+     */
+    private void applyLevelConfig(JSONObject levelConfig) {
         this.spawnInterval = levelConfig.getFloat("spawn_interval", 10.0f);
         this.scoreIncreaseMultiplier = levelConfig.getFloat("score_increase_from_hole_capture_modifier", 1.0f);
         this.scoreDecreaseMultiplier = levelConfig.getFloat("score_decrease_from_wrong_hole_modifier", 1.0f);
@@ -270,7 +446,7 @@ public class Level {
      * @param ball The Ball object to add.
      */
     public void addBall(Ball ball) {
-        this.balls.add(ball);
+        mutableBalls().add(ball);
     }
 
     /**
@@ -310,14 +486,16 @@ public class Level {
                     case 'B':
                         if (col + 1 < line.length()) {
                             int ballColor = Character.getNumericValue(line.charAt(col + 1));
-                            balls.add(new Ball(new PVector(x, y), ballSprites[ballColor], app, ballColor));
+                            mutableBalls().add(new Ball(new PVector(x, y), ballSprites[ballColor], app, ballColor));
                             col++;
                         }
                         break;
                     case 'E':
                         if (col + 1 < line.length()) {
                             int brickColor = Character.getNumericValue(line.charAt(col + 1));
-                            bricks.add(new Brick(new PVector(x, y), brickSprites[brickColor], app, brickColor));
+                            Brick brick = new Brick(new PVector(x, y), brickSprites[brickColor], app, brickColor);
+                            bricks.add(brick);
+                            layoutBricks.add(brick);
                             col++;
                         }
                         break;
@@ -343,26 +521,182 @@ public class Level {
             }
         }
 
-        for (Ball ball : new ArrayList<>(balls)) {
-            ball.update();
-            for (Wall wall : walls) {
-                wall.checkCollision(ball);
+        List<Ball> current = new ArrayList<>(mutableBalls());
+        ParallelBallUpdater updater = app.getBallUpdater();
+        if (updater != null && updater.isWorthwhile(current.size())) {
+            updater.update(this, current, config);
+            return;
+        }
+        for (Ball ball : current) {
+            nearbyWalls = moveBall(ball, nearbyWalls);
+            checkBrickCollisions(ball);
+            attractToHoles(ball, config);
+        }
+    }
+
+    /**
+     * Moves a ball by its velocity and checks it against the walls. This only changes the ball,
+     * so different balls can be moved on different threads.
+     *
+     * @param ball The ball to move.
+     * @param nearby Scratch space for wall indices.
+     * @return The scratch space, grown if it was too small.
+     */
+    int[] moveBall(Ball ball, int[] nearby) {
+        ball.update();
+        return checkWallCollisions(ball, nearby);
+    }
+
+    /**
+     * Checks a ball against the bricks still standing, in order. Bricks destroyed earlier in
+     * the tick are skipped, as if they had already been removed.
+     *
+     * @param ball The ball to check.
+     */
+    void checkBrickCollisions(Ball ball) {
+        GameEventBus events = app.getEvents();
+        for (Brick brick : new ArrayList<>(bricks)) {
+            if (events.isDestroyed(brick)) {
+                continue;
             }
-            for (Brick brick : new ArrayList<>(bricks)) {
-                brick.checkCollision(ball);
+            if (brick.isCollidingWithBall(ball)) {
+                brick = ownBrick(brick);
             }
-            for (Hole hole : holes) {
-                hole.attractBall(ball, app, config);
+            brick.checkCollision(ball);
+        }
+    }
+
+    /**
+     * Checks whether checking a ball against the bricks could do anything: whether it overlaps
+     * one of them or still has a cooldown with one of them. Bricks are only ever removed during
+     * an update, so a ball that touches none of the bricks standing at its start is left alone
+     * by {@link #checkBrickCollisions(Ball)} whatever other balls do to the bricks first.
+     *
+     * @param ball The ball to check.
+     * @param standing The bricks standing at the start of the update.
+     * @param ids The ids of those bricks, sorted.
+     * @return True if the ball's brick checks have to run in order with other balls.
+     */
+    boolean touchesBricks(Ball ball, List<Brick> standing, int[] ids) {
+        for (int c = 0; c < ball.getCooldownCount(); c++) {
+            if (Arrays.binarySearch(ids, ball.getCooldownWallId(c)) >= 0) {
+                return true;
             }
         }
-        
-        for (Wall wall : walls) {
-            wall.cleanupCooldowns(balls);
+        for (Brick brick : standing) {
+            if (brick.isCollidingWithBall(ball)) {
+                return true;
+            }
         }
-        // Clean up collision cooldowns for bricks
-        for (Brick brick : bricks) {
-            brick.cleanupCooldowns(balls);
+        return false;
+    }
+
+    /**
+     * Lets every hole attract a ball, capturing it if it is close enough.
+     *
+     * @param ball The ball to attract.
+     * @param config The game configuration, for scoring.
+     */
+    void attractToHoles(Ball ball, JSONObject config) {
+        for (Hole hole : holes) {
+            hole.attractBall(ball, app, config);
+        }
+    }
+
+    /**
+     * Checks a ball against the walls around it. Walls are checked in list order, so the result
+     * is the same as checking every wall: walls out of reach could not have collided, and the
+     * only thing checking them would have done is clear the ball's cooldown with them.
+     *
+     * <p>The walls collected are every wall within the ball's radius plus a margin of where the
+     * ball started. Each correction can push the ball, by up to half a tile plus its radius, so
+     * while the ball stays within the margin of its start no other wall can touch it. Once a
+     * correction pushes it further, the remaining walls are checked by a full scan in list
+     * order, which is still exactly what checking every wall would have done.</p>
+     *
+     * @param ball The ball to check.
+     * @param nearby Scratch space for wall indices.
+     * @return The scratch space, grown if it was too small.
+     */
+    private int[] checkWallCollisions(Ball ball, int[] nearby) {
+        WallGrid grid = getWallGrid();
+        float margin = ball.getRadius() + 1;
+        float reach = ball.getRadius() + margin;
+        float x = ball.getPosition().x;
+        float y = ball.getPosition().y;
+        int count = grid.collect(x, y, reach, nearby);
+        if (count > nearby.length) {
+            nearby = new int[count * 2];
+            grid.collect(x, y, reach, nearby);
+        }
+        int scanned = walls.size();
+        for (int i = 0; i < count; i++) {
+            if (walls.get(nearby[i]).checkCollision(ball)
+                    && (Math.abs(ball.getPosition().x - x) > margin || Math.abs(ball.getPosition().y - y) > margin)) {
+                scanned = nearby[i] + 1;
+                count = i + 1;
+                for (int w = scanned; w < walls.size(); w++) {
+                    walls.get(w).checkCollision(ball);
+                }
+                break;
+            }
+        }
+
+        // Walls before the full scan that were not collected were out of reach on their turn
+        for (int c = ball.getCooldownCount() - 1; c >= 0; c--) {
+            int wallId = ball.getCooldownWallId(c);
+            int index = grid.indexOf(wallId);
+            if (index >= 0 && index < scanned && Arrays.binarySearch(nearby, 0, count, index) < 0) {
+                ball.setCooldown(wallId, 0);
+            }
         }
+        return nearby;
+    }
+
+    /**
+     * Finds the position of a wall or brick among the walls followed by the layout bricks, the
+     * order snapshots refer to them in. The lookup table is built once per layout; copies of
+     * bricks keep their ids, so it stays valid when bricks are copied for a fork.
+     *
+     * @param wallId The id of the wall or brick.
+     * @return The position, or -1 if the wall is not part of the level.
+     */
+    int wallIndex(int wallId) {
+        int count = walls.size() + layoutBricks.size();
+        if (indexedWalls != walls || indexedCount != count) {
+            long[] entries = new long[count];
+            for (int i = 0; i < walls.size(); i++) {
+                entries[i] = (long) walls.get(i).getId() << 32 | i;
+            }
+            for (int i = 0; i < layoutBricks.size(); i++) {
+                entries[walls.size() + i] = (long) layoutBricks.get(i).getId() << 32 | (walls.size() + i);
+            }
+            Arrays.sort(entries);
+            int[] ids = new int[count];
+            int[] slots = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = (int) (entries[i] >>> 32);
+                slots[i] = (int) entries[i];
+            }
+            indexedIds = ids;
+            indexedSlots = slots;
+            indexedWalls = walls;
+            indexedCount = count;
+        }
+        int found = Arrays.binarySearch(indexedIds, wallId);
+        return found >= 0 ? indexedSlots[found] : -1;
+    }
+
+    /**
+     * Gets the spatial index of the walls, building it if the walls have changed.
+     *
+     * @return The wall grid.
+     */
+    WallGrid getWallGrid() {
+        if (wallGrid == null || !wallGrid.isFor(walls)) {
+            wallGrid = new WallGrid(walls);
+        }
+        return wallGrid;
     }
 
     /**
@@ -399,11 +733,13 @@ public class Level {
      */
     public void spawnBallFromSpawner() {
         if (!spawners.isEmpty() && !configBalls.isEmpty()) {
-            Spawner spawner = spawners.get((int) app.random(spawners.size()));
+            Spawner spawner = spawners.get((int) app.getRandom().nextFloat(spawners.size()));
             String nextBallColor = configBalls.remove(0);
             int ballIndex = getColorIndex(nextBallColor);
             if (ballIndex >= 0) {
-                balls.add(spawner.spawnBall(ballSprites[ballIndex], ballIndex));
+                Ball ball = spawner.spawnBall(ballSprites[ballIndex], ballIndex, app);
+                mutableBalls().add(ball);
+                app.getEvents().ballSpawned(ball);
                 app.startMovingUpcomingBalls();
             }
         }
@@ -415,7 +751,7 @@ public class Level {
      * @param color The name of the color.
      * @return The index of the color in the sprites array.
      */
-    private int getColorIndex(String color) {
+    static int getColorIndex(String color) {
         switch (color.toLowerCase()) {
             case "grey":
                 return 0;
@@ -433,21 +769,33 @@ public class Level {
     }
 
     /**
-     * Displays all elements of the level.
+     * Draws the parts of the level that only change when a brick does: walls, holes, spawners
+     * and, optionally, the bricks still standing.
+     *
+     * @param layer The off-screen layer to draw onto.
+     * @param withBricks True to draw the bricks as well.
      */
-    public void display() {
+    public void displayStaticLayer(PGraphics layer, boolean withBricks) {
         for (Wall wall : walls) {
-            wall.display();
+            wall.display(layer);
         }
         for (Hole hole : holes) {
-            hole.display();
+            hole.display(layer);
         }
         for (Spawner spawner : spawners) {
-            spawner.display();
+            spawner.display(layer);
         }
-        for (Brick brick : bricks) {
-            brick.display();
+        if (withBricks) {
+            for (Brick brick : bricks) {
+                brick.display(layer);
+            }
         }
+    }
+
+    /**
+     * Displays the moving elements of the level: its balls and lines.
+     */
+    public void displayDynamicElements() {
         for (Ball ball : balls) {
             ball.display();
         }
@@ -456,11 +804,21 @@ public class Level {
         }
     }
 
+    /**
+     * Displays all elements of the level straight onto the screen, without the cached static
+     * layer {@link App#draw()} uses.
+     */
+    public void display() {
+        displayStaticLayer(app.g, true);
+        displayDynamicElements();
+    }
+
     /**
      * Restarts the level by clearing balls and resetting spawn interval.
      */
     public void restart() {
-        balls.clear();
+        balls = new ArrayList<>();
+        sharedBalls = false;
         spawnCounter = 0;
         spawnInterval = 10.0f;
     }
@@ -498,7 +856,34 @@ public class Level {
      * @param ball The Ball object to remove.
      */
     public void removeBall(Ball ball) {
-        balls.remove(ball);
+        int index = balls.indexOf(ball);
+        if (index >= 0) {
+            recycleBall(mutableBalls().remove(index));
+        }
+    }
+
+    /**
+     * Keeps a ball removed from this level's own list, so that restoring a snapshot can reuse it
+     * instead of allocating.
+     *
+     * @param ball The removed ball.
+     */
+    void recycleBall(Ball ball) {
+        if (spareBalls.size() < MAX_SPARE_BALLS) {
+            spareBalls.add(ball);
+        }
+    }
+
+    /**
+     * Takes a ball for a snapshot to overwrite, reusing one this level removed if it can.
+     *
+     * @return A ball the level's own list does not hold.
+     */
+    Ball takeSpareBall() {
+        if (spareBalls.isEmpty()) {
+            return new Ball(new PVector(), null, app, 0);
+        }
+        return spareBalls.remove(spareBalls.size() - 1);
     }
 
     /**
@@ -511,18 +896,10 @@ public class Level {
     }
 
     /**
-     * Displays static elements (walls, holes, spawners) of the level.
+     * Displays static elements (walls, holes, spawners) of the level straight onto the screen.
      */
     public void displayStaticElements() {
-        for (Wall wall : walls) {
-            wall.display();
-        }
-        for (Hole hole : holes) {
-            hole.display();
-        }
-        for (Spawner spawner : spawners) {
-            spawner.display();
-        }
+        displayStaticLayer(app.g, false);
     }
 
     /**
@@ -531,6 +908,24 @@ public class Level {
      * @param brick The Brick object to remove.
      */
     public void removeBrick(Brick brick) {
-        bricks.remove(brick);
+        bricks.remove(ownBrick(brick));
+        brickVersion++;
+    }
+
+    /**
+     * Records that a brick was hit or that the standing bricks were rewritten in place, so that
+     * anything drawn from them is redrawn.
+     */
+    void markBricksChanged() {
+        brickVersion++;
+    }
+
+    /**
+     * Gets a number that changes whenever a brick is hit, destroyed or restored.
+     *
+     * @return The brick version.
+     */
+    public int getBrickVersion() {
+        return brickVersion;
     }
 }
\ No newline at end of file
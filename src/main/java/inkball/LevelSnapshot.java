@@ -0,0 +1,420 @@
+package inkball;
+
+import processing.core.PVector;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary snapshot of a running game that can be restored in place.
+ *
+ * <p>The snapshot covers everything that affects how the game continues: the random generator,
+ * score and timers, the spawn queue, every ball, brick hit counts, wall and brick cooldowns and
+ * the player's lines. Restoring reuses the balls, lines and vectors the App owns. Balls the
+ * level has removed since are taken from its spares, and finished lines, which never change,
+ * are put back from the capture rather than read into new ones. A restore therefore only
+ * allocates to bring back a line that was still being drawn at the capture, or when the level
+ * has run out of spare balls. Objects a forked App still shares with its source are replaced
+ * rather than overwritten.</p>
+ */
+public class LevelSnapshot {
+    private static final int MAGIC = 0x494E4B53; // "INKS"
+
+    private ByteBuffer buffer;
+    // The finished lines at the last capture, in order
+    private final List<Line> lines = new ArrayList<>();
+
+    /**
+     * Constructor for an empty snapshot with a default capacity.
+     */
+    public LevelSnapshot() {
+        this(4096);
+    }
+
+    /**
+     * Constructor for an empty snapshot.
+     *
+     * @param capacity The initial buffer size in bytes. The buffer grows if a capture needs more.
+     */
+    public LevelSnapshot(int capacity) {
+        this.buffer = ByteBuffer.allocate(capacity);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Captures the current state of an App, replacing any previous contents.
+     *
+     * @param app The App to capture.
+     */
+    public void capture(App app) {
+        while (true) {
+            buffer.clear();
+            try {
+                write(app, buffer);
+                buffer.flip();
+                lines.clear();
+                lines.addAll(app.getPlayerLines());
+                return;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * Restores the captured state into an App.
+     *
+     * @param app The App to restore into. It must use the same configuration as the captured one.
+     */
+    public void restore(App app) {
+        buffer.rewind();
+        read(app, buffer, lines);
+        buffer.rewind();
+    }
+
+    /**
+     * Gets the buffer holding the snapshot, positioned at its start.
+     *
+     * @return The snapshot bytes between position and limit.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Gets the size of the captured snapshot.
+     *
+     * @return The number of bytes captured.
+     */
+    public int size() {
+        return buffer.limit();
+    }
+
+    /**
+     * Writes the state of an App into a buffer.
+     *
+     * @param app The App to capture.
+     * @param out The buffer to write to, starting at its position.
+     * @throws BufferOverflowException If the buffer is too small.
+     */
+    public static void write(App app, ByteBuffer out) {
+        Level level = app.getCurrentLevel();
+
+        out.putInt(MAGIC);
+        out.putInt(app.getCurrentLevelIndex());
+        out.putLong(app.getTick());
+        out.putLong(app.getRandom().getState());
+        out.putInt(app.getScore());
+        out.putInt(app.getInitialScore());
+        out.putLong(app.getCapturePoints());
+        out.putInt(app.getLevelTime());
+        out.putInt(app.getRemainingTime());
+        out.putLong(app.getLastTimeCheck());
+        out.put((byte) ((app.getPaused() ? 1 : 0)
+                | (app.isTimeUp() ? 2 : 0)
+                | (app.isLevelCompleted() ? 4 : 0)
+                | (app.isGameCompleted() ? 8 : 0)
+                | (app.getShowWinMessage() ? 16 : 0)));
+        out.putInt(app.getTimeBonusRemaining());
+        out.putLong(app.getLastBonusTime());
+        out.putLong(app.getLastTileMoveTime());
+
+        List<App.YellowTile> tiles = app.getYellowTiles();
+        int tileCount = tiles == null ? 0 : tiles.size();
+        out.put((byte) tileCount);
+        for (int i = 0; i < tileCount; i++) {
+            App.YellowTile tile = tiles.get(i);
+            out.putFloat(tile.position.x);
+            out.putFloat(tile.position.y);
+            out.put((byte) tile.edge);
+            out.putShort((short) tile.indexOnEdge);
+            out.putShort((short) tile.loopsCompleted);
+        }
+
+        out.putInt(level.getSpawnCounter());
+        out.putFloat(level.getSpawnInterval());
+        List<String> queue = level.getConfigBalls();
+        out.putShort((short) queue.size());
+        for (int i = 0; i < queue.size(); i++) {
+            out.put((byte) Level.getColorIndex(queue.get(i)));
+        }
+
+        List<Wall> walls = level.getWalls();
+        List<Brick> layoutBricks = level.getLayoutBricks();
+        List<Ball> balls = level.getBalls();
+        out.putShort((short) balls.size());
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            out.putFloat(ball.getPosition().x);
+            out.putFloat(ball.getPosition().y);
+            out.putFloat(ball.getVelocity().x);
+            out.putFloat(ball.getVelocity().y);
+            out.putFloat(ball.getRadius());
+            out.putFloat(ball.getOriginalSize());
+            out.put((byte) ball.getColorType());
+            int countPosition = out.position();
+            out.put((byte) 0);
+            int cooldowns = 0;
+            for (int c = 0; c < ball.getCooldownCount(); c++) {
+                int wallIndex = level.wallIndex(ball.getCooldownWallId(c));
+                if (wallIndex >= 0) {
+                    out.putShort((short) wallIndex);
+                    out.put((byte) ball.getCooldownValue(c));
+                    cooldowns++;
+                }
+            }
+            out.put(countPosition, (byte) cooldowns);
+        }
+
+        // Destroyed bricks are written as -1, then each standing brick's hit count over its slot
+        List<Brick> bricks = level.getBricks();
+        out.putShort((short) layoutBricks.size());
+        int hitCounts = out.position();
+        for (int i = 0; i < layoutBricks.size(); i++) {
+            out.put((byte) -1);
+        }
+        for (int i = 0; i < bricks.size(); i++) {
+            Brick brick = bricks.get(i);
+            int slot = level.wallIndex(brick.getId()) - walls.size();
+            if (slot >= 0) {
+                out.put(hitCounts + slot, (byte) brick.getHitCount());
+            }
+        }
+
+        List<Line> lines = app.getPlayerLines();
+        out.putShort((short) lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            writePoints(lines.get(i).points(), out);
+        }
+        Line currentLine = app.getCurrentLine();
+        out.put((byte) (currentLine == null ? 0 : 1));
+        if (currentLine != null) {
+            writePoints(currentLine.points(), out);
+        }
+    }
+
+    /**
+     * Reads a state written by {@link #write(App, ByteBuffer)} into an App, reusing its objects.
+     *
+     * @param app The App to restore into.
+     * @param in The buffer to read from, starting at its position.
+     */
+    public static void read(App app, ByteBuffer in) {
+        read(app, in, null);
+    }
+
+    /**
+     * Reads a state into an App, putting back the finished lines it was captured with.
+     *
+     * @param app The App to restore into.
+     * @param in The buffer to read from, starting at its position.
+     * @param captured The finished lines of the captured App, or null to read copies of them.
+     */
+    private static void read(App app, ByteBuffer in, List<Line> captured) {
+        if (in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a level snapshot");
+        }
+        int levelIndex = in.getInt();
+        if (app.getCurrentLevel() == null || app.getCurrentLevelIndex() != levelIndex) {
+            app.setCurrentLevelIndex(levelIndex);
+            app.loadLevel(levelIndex);
+        }
+        Level level = app.getCurrentLevel();
+
+        app.setTick(in.getLong());
+        long randomState = in.getLong();
+        app.setScore(in.getInt());
+        app.setInitialScore(in.getInt());
+        app.setCapturePoints(in.getLong());
+        app.setLevelTime(in.getInt());
+        app.setRemainingTime(in.getInt());
+        app.setLastTimeCheck(in.getLong());
+        byte flags = in.get();
+        app.setPaused((flags & 1) != 0);
+        app.setTimeUp((flags & 2) != 0);
+        app.setLevelCompleted((flags & 4) != 0);
+        app.setGameCompleted((flags & 8) != 0);
+        app.setShowWinMessage((flags & 16) != 0);
+        app.setTimeBonusRemaining(in.getInt());
+        app.setLastBonusTime(in.getLong());
+        app.setLastTileMoveTime(in.getLong());
+
+        int tileCount = in.get();
+        List<App.YellowTile> tiles = app.getYellowTiles();
+        if (tileCount > 0 && (tiles == null || tiles.size() != tileCount)) {
+            tiles = new ArrayList<>();
+            for (int i = 0; i < tileCount; i++) {
+                tiles.add(app.new YellowTile(new PVector(), 0));
+            }
+            app.setYellowTiles(tiles);
+        }
+        for (int i = 0; i < tileCount; i++) {
+            App.YellowTile tile = tiles.get(i);
+            tile.position.set(in.getFloat(), in.getFloat());
+            tile.edge = in.get();
+            tile.indexOnEdge = in.getShort();
+            tile.loopsCompleted = in.getShort();
+        }
+
+        level.setSpawnCounter(in.getInt());
+        level.setSpawnInterval(in.getFloat());
+        List<String> queue = level.getConfigBalls();
+        queue.clear();
+        int queueSize = in.getShort();
+        for (int i = 0; i < queueSize; i++) {
+            int color = in.get();
+            queue.add(color >= 0 ? Level.COLOR_NAMES[color] : "unknown");
+        }
+
+        List<Wall> walls = level.getWalls();
+        List<Ball> balls = level.mutableBalls();
+        int ballCount = in.getShort();
+        while (balls.size() > ballCount) {
+            level.recycleBall(balls.remove(balls.size() - 1));
+        }
+        while (balls.size() < ballCount) {
+            balls.add(level.takeSpareBall());
+        }
+        List<Brick> layoutBricks = level.mutableLayoutBricks();
+        for (int i = 0; i < ballCount; i++) {
+            Ball ball = balls.get(i);
+            ball.restore(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat(),
+                    in.getFloat(), in.getFloat(), in.get());
+            ball.clearCooldowns();
+            int cooldowns = in.get();
+            for (int c = 0; c < cooldowns; c++) {
+                int wallIndex = in.getShort();
+                Wall wall = wallIndex < walls.size() ? walls.get(wallIndex) : layoutBricks.get(wallIndex - walls.size());
+                ball.setCooldown(wall, in.get());
+            }
+        }
+
+        List<Brick> bricks = level.getBricks();
+        bricks.clear();
+        level.markBricksChanged();
+        int brickCount = in.getShort();
+        for (int i = 0; i < brickCount; i++) {
+            Brick brick = layoutBricks.get(i);
+            int hitCount = in.get();
+            if (hitCount >= 0) {
+                brick.setHitCount(hitCount);
+                bricks.add(brick);
+            }
+        }
+
+        List<Line> lines = app.getPlayerLines();
+        int lineCount = in.getShort();
+        while (lines.size() > lineCount) {
+            lines.remove(lines.size() - 1);
+        }
+        for (int i = 0; i < lineCount; i++) {
+            // Finished lines are shared with forks, so they are kept when unchanged and replaced otherwise
+            Line line = i < lines.size() ? lines.get(i) : null;
+            if (line != null && hasPoints(line.points(), in)) {
+                skipPoints(in);
+            } else {
+                if (captured != null) {
+                    line = captured.get(i);
+                    skipPoints(in);
+                } else {
+                    line = new Line(new ArrayList<>(), app);
+                    readPoints(line.points(), in);
+                }
+                if (i < lines.size()) {
+                    lines.set(i, line);
+                } else {
+                    lines.add(line);
+                }
+            }
+            line.setDragging(false);
+        }
+        app.markLinesChanged();
+        if (in.get() != 0) {
+            Line currentLine = app.getCurrentLine();
+            if (currentLine == null || currentLine.getApp() != app) {
+                currentLine = new Line(new ArrayList<>(), app);
+                app.setCurrentLine(currentLine);
+            }
+            readPoints(currentLine.points(), in);
+            currentLine.setDragging(true);
+        } else {
+            app.setCurrentLine(null);
+        }
+
+        // Restored last: creating missing balls above draws from the generator
+        app.getRandom().setState(randomState);
+    }
+
+    /**
+     * Writes a point list as a count followed by coordinate pairs.
+     *
+     * @param points The points to write.
+     * @param out The buffer to write to.
+     */
+    private static void writePoints(List<PVector> points, ByteBuffer out) {
+        out.putShort((short) points.size());
+        for (int i = 0; i < points.size(); i++) {
+            PVector point = points.get(i);
+            out.putFloat(point.x);
+            out.putFloat(point.y);
+        }
+    }
+
+    /**
+     * Checks whether a point list holds exactly the points written at the buffer's position,
+     * without moving it.
+     *
+     * @param points The points to compare.
+     * @param in The buffer holding a written point list.
+     * @return True if the points are the same.
+     */
+    private static boolean hasPoints(List<PVector> points, ByteBuffer in) {
+        int at = in.position();
+        int count = in.getShort(at);
+        if (count != points.size()) {
+            return false;
+        }
+        at += 2;
+        for (int i = 0; i < count; i++, at += 8) {
+            PVector point = points.get(i);
+            if (Float.floatToRawIntBits(point.x) != in.getInt(at) || Float.floatToRawIntBits(point.y) != in.getInt(at + 4)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the buffer past a written point list.
+     *
+     * @param in The buffer holding a written point list.
+     */
+    private static void skipPoints(ByteBuffer in) {
+        int count = in.getShort();
+        in.position(in.position() + count * 8);
+    }
+
+    /**
+     * Reads a point list, overwriting the existing vectors where possible.
+     *
+     * @param points The list to fill.
+     * @param in The buffer to read from.
+     */
+    private static void readPoints(List<PVector> points, ByteBuffer in) {
+        int count = in.getShort();
+        while (points.size() > count) {
+            points.remove(points.size() - 1);
+        }
+        for (int i = 0; i < count; i++) {
+            float x = in.getFloat();
+            float y = in.getFloat();
+            if (i < points.size()) {
+                points.get(i).set(x, y);
+            } else {
+                points.add(new PVector(x, y));
+            }
+        }
+    }
+}
@@ -212,6 +212,24 @@ public class Line extends GameObject {
         return new ArrayList<>(points); // Return a copy to prevent external modification
     }
 
+    /**
+     * Gets the live list of points, for code that needs to read or rewrite the line in place.
+     *
+     * @return The points that make up the line, not a copy.
+     */
+    List<PVector> points() {
+        return points;
+    }
+
+    /**
+     * Sets whether the line is still being drawn.
+     *
+     * @param dragging True if the line is still being drawn.
+     */
+    void setDragging(boolean dragging) {
+        this.isDragging = dragging;
+    }
+
     /**
      * Checks whether the line is currently being dragged (drawn).
      *
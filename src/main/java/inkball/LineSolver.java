@@ -0,0 +1,289 @@
+package inkball;
+
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Searches for good player lines by Monte Carlo simulation.
+ *
+ * <p>Candidate segments are sampled around spawners, holes and walls. Each candidate is drawn
+ * on a fork of the current game, which is played out headlessly for a fixed horizon a number
+ * of times, restored from a snapshot of the start before each rollout. The rollouts run in parallel across cores and use the game's own line reflection
+ * and hole scoring, so a placement's expected score is what the player would actually get.</p>
+ */
+public class LineSolver {
+    private static final int BOARD_HEIGHT = App.HEIGHT - App.TOPBAR;
+
+    private final int candidateCount;
+    private final int rolloutsPerCandidate;
+    private final int horizonTicks;
+    private final int threads;
+    private final long seed;
+
+    /**
+     * A candidate line together with how well it did in the rollouts.
+     */
+    public static class Placement {
+        private final int startX;
+        private final int startY;
+        private final int endX;
+        private final int endY;
+        private final double expectedScore;
+        private final double expectedGain;
+        private final double completionRate;
+
+        /**
+         * Constructor for the Placement object.
+         *
+         * @param startX The x coordinate of the line's start.
+         * @param startY The y coordinate of the line's start.
+         * @param endX The x coordinate of the line's end.
+         * @param endY The y coordinate of the line's end.
+         * @param expectedScore The mean score at the end of the rollouts.
+         * @param expectedGain The mean score minus the mean score without any new line.
+         * @param completionRate The fraction of rollouts in which the level was completed.
+         */
+        public Placement(int startX, int startY, int endX, int endY,
+                         double expectedScore, double expectedGain, double completionRate) {
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+            this.expectedScore = expectedScore;
+            this.expectedGain = expectedGain;
+            this.completionRate = completionRate;
+        }
+
+        /**
+         * Draws this placement as a finished player line.
+         *
+         * @param app The App to draw the line in.
+         */
+        public void apply(App app) {
+            app.beginLine(startX, startY);
+            app.extendLine(endX, endY);
+            app.finishLine();
+        }
+
+        public PVector getStart() {
+            return new PVector(startX, startY);
+        }
+
+        public PVector getEnd() {
+            return new PVector(endX, endY);
+        }
+
+        public double getExpectedScore() {
+            return expectedScore;
+        }
+
+        public double getExpectedGain() {
+            return expectedGain;
+        }
+
+        public double getCompletionRate() {
+            return completionRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%d, %d) -> (%d, %d): score %.1f (%+.1f), completed %.0f%%",
+                    startX, startY, endX, endY, expectedScore, expectedGain, completionRate * 100);
+        }
+    }
+
+    /**
+     * Constructor for the LineSolver object, using every available core.
+     *
+     * @param candidateCount The number of candidate lines to sample.
+     * @param rolloutsPerCandidate The number of simulated games per candidate.
+     * @param horizonTicks How many ticks each simulated game runs for.
+     * @param seed The seed for candidate sampling and rollouts.
+     */
+    public LineSolver(int candidateCount, int rolloutsPerCandidate, int horizonTicks, long seed) {
+        this(candidateCount, rolloutsPerCandidate, horizonTicks, seed, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for the LineSolver object.
+     *
+     * @param candidateCount The number of candidate lines to sample.
+     * @param rolloutsPerCandidate The number of simulated games per candidate.
+     * @param horizonTicks How many ticks each simulated game runs for.
+     * @param seed The seed for candidate sampling and rollouts.
+     * @param threads The number of worker threads.
+     */
+    public LineSolver(int candidateCount, int rolloutsPerCandidate, int horizonTicks, long seed, int threads) {
+        this.candidateCount = candidateCount;
+        this.rolloutsPerCandidate = rolloutsPerCandidate;
+        this.horizonTicks = horizonTicks;
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Finds the best lines to draw in a running game. The game itself is not modified.
+     *
+     * @param state The game to search from.
+     * @param keep The maximum number of placements to return.
+     * @return The best placements, highest expected score first.
+     */
+    public List<Placement> solve(App state, int keep) {
+        return solve(state, keep, seed);
+    }
+
+    /**
+     * Finds the best lines to draw in a running game with a seed of its own, so one solver can
+     * serve many searches. The game itself is not modified.
+     *
+     * @param state The game to search from.
+     * @param keep The maximum number of placements to return.
+     * @param seed The seed for candidate sampling and rollouts.
+     * @return The best placements, highest expected score first.
+     */
+    public List<Placement> solve(App state, int keep, long seed) {
+        // Fork once up front so the rollouts start from a game nobody is ticking
+        final App root = state.fork();
+        final int baseScore = root.getScore();
+        LevelSnapshot start = new LevelSnapshot();
+        start.capture(root);
+        List<int[]> candidates = sampleCandidates(root.getCurrentLevel(), new GameRandom(seed));
+
+        // The first task plays without a line, as the baseline the candidates are compared to
+        List<Callable<double[]>> tasks = new ArrayList<>();
+        tasks.add(rolloutTask(root, start, null, seed));
+        for (int[] candidate : candidates) {
+            tasks.add(rolloutTask(root, start, candidate, seed));
+        }
+        List<double[]> outcomes = ParallelTasks.runAll(threads, tasks);
+
+        double baselineScore = outcomes.get(0)[0];
+        List<Placement> placements = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            int[] c = candidates.get(i);
+            double[] outcome = outcomes.get(i + 1);
+            placements.add(new Placement(c[0], c[1], c[2], c[3],
+                    baseScore + outcome[0], outcome[0] - baselineScore, outcome[1]));
+        }
+        placements.sort((a, b) -> Double.compare(b.getExpectedScore(), a.getExpectedScore()));
+        return new ArrayList<>(placements.subList(0, Math.min(keep, placements.size())));
+    }
+
+    /**
+     * Creates a task that plays out every rollout for one candidate.
+     * All candidates use the same rollout seeds, so they are compared on the same spawns.
+     * Each task gets one fork, made here on the submitting thread because forking marks the
+     * root's balls and bricks as shared and pool threads must not write to the root. The task
+     * restores that fork from the start snapshot before each rollout, so only one game per
+     * candidate is alive at a time.
+     *
+     * @param root The game to fork from.
+     * @param start A snapshot of the root, which the task only reads.
+     * @param candidate The line as {startX, startY, endX, endY}, or null for no line.
+     * @param seed The seed the rollout seeds are derived from.
+     * @return A task returning the mean score change and the completion rate.
+     */
+    private Callable<double[]> rolloutTask(final App root, final LevelSnapshot start, final int[] candidate,
+                                           final long seed) {
+        final App rollout = root.fork();
+        final int rootScore = root.getScore();
+        return () -> {
+            long totalGain = 0;
+            int completed = 0;
+            for (int r = 0; r < rolloutsPerCandidate; r++) {
+                // Each task reads the shared bytes through its own view
+                LevelSnapshot.read(rollout, start.getBuffer().duplicate());
+                rollout.getRandom().setSeed(seed * 31 + r);
+                if (candidate != null) {
+                    rollout.beginLine(candidate[0], candidate[1]);
+                    rollout.extendLine(candidate[2], candidate[3]);
+                    rollout.finishLine();
+                }
+                for (int t = 0; t < horizonTicks && !rollout.isLevelCompleted(); t++) {
+                    rollout.tick();
+                }
+                totalGain += rollout.getScore() - rootScore;
+                if (rollout.isLevelCompleted()) {
+                    completed++;
+                }
+            }
+            return new double[] {
+                (double) totalGain / rolloutsPerCandidate,
+                (double) completed / rolloutsPerCandidate
+            };
+        };
+    }
+
+    /**
+     * Samples candidate segments around spawners, holes and walls.
+     *
+     * @param level The level to sample around.
+     * @param random The generator to sample with.
+     * @return The candidates as {startX, startY, endX, endY}.
+     */
+    private List<int[]> sampleCandidates(Level level, GameRandom random) {
+        List<PVector> anchors = new ArrayList<>();
+        for (Spawner spawner : level.getSpawners()) {
+            anchors.add(PVector.add(spawner.getPosition(), new PVector(App.CELLSIZE / 2, App.CELLSIZE / 2)));
+        }
+        for (Hole hole : level.getHoles()) {
+            anchors.add(PVector.add(hole.getPosition(), new PVector(App.CELLSIZE, App.CELLSIZE)));
+        }
+        List<Wall> walls = level.getWalls();
+        for (int i = 0; i < walls.size(); i += 4) {
+            anchors.add(PVector.add(walls.get(i).getPosition(), new PVector(App.CELLSIZE / 2, App.CELLSIZE / 2)));
+        }
+        if (anchors.isEmpty()) {
+            anchors.add(new PVector(App.WIDTH / 2, BOARD_HEIGHT / 2));
+        }
+
+        List<int[]> candidates = new ArrayList<>();
+        for (int i = 0; i < candidateCount; i++) {
+            PVector anchor = anchors.get((int) random.nextFloat(anchors.size()));
+            float centreX = anchor.x + random.nextFloat(192) - 96;
+            float centreY = anchor.y + random.nextFloat(192) - 96;
+            float angle = random.nextFloat((float) (Math.PI * 2));
+            float halfLength = 24 + random.nextFloat(48);
+            float dx = (float) Math.cos(angle) * halfLength;
+            float dy = (float) Math.sin(angle) * halfLength;
+            candidates.add(new int[] {
+                clamp(centreX - dx, App.WIDTH), clamp(centreY - dy, BOARD_HEIGHT),
+                clamp(centreX + dx, App.WIDTH), clamp(centreY + dy, BOARD_HEIGHT)
+            });
+        }
+        return candidates;
+    }
+
+    /**
+     * Rounds a coordinate and keeps it on the board.
+     *
+     * @param value The coordinate.
+     * @param size The board size along that axis.
+     * @return The coordinate in [0, size - 1].
+     */
+    private static int clamp(float value, int size) {
+        return Math.max(0, Math.min(size - 1, Math.round(value)));
+    }
+
+    /**
+     * Prints the best opening lines for every level in the default config.
+     *
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        int levelCount = config.getJSONArray("levels").size();
+        LineSolver solver = new LineSolver(64, 8, 60 * App.FPS, 1);
+        for (int i = 0; i < levelCount; i++) {
+            App app = App.createHeadless(config, 1, i);
+            System.out.println("Level " + (i + 1) + ":");
+            for (Placement placement : solver.solve(app, 3)) {
+                System.out.println("  " + placement);
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+
+/**
+ * One player's side of a head-to-head match played in deterministic lockstep.
+ *
+ * <p>Every player has a board of their own: a headless App started from the match's config
+ * and seed. Every peer simulates every board, so the only thing the peers exchange is each
+ * player's input for each tick. A tick runs once every player's input for it has arrived; a
+ * player's input is sent {@link #getInputDelay()} ticks ahead of the tick it applies to, which
+ * hides that much network latency before the match has to wait.</p>
+ *
+ * <p>The simulation is deterministic: each App draws from its own seeded {@link GameRandom},
+ * and the physics only uses float arithmetic and square roots, which Java rounds the same way
+ * on every platform. To catch anything that breaks this, every message also carries the
+ * checksum of the sender's state after its last tick, a CRC32 of the boards' snapshots. When
+ * a peer's checksum differs from ours for the same tick the match stops with a desync.</p>
+ *
+ * <p>A message is a handful of varints: the player, the tick the input is for, how many ticks
+ * earlier the sender's last simulated tick was, that tick's checksum as four plain bytes, and
+ * the input events. A tick without input
+ * still costs a message, but one of a few bytes.</p>
+ */
+public class LockstepMatch {
+    private static final int WINDOW = 256;
+
+    private final App[] boards;
+    private final int localPlayer;
+    private final Transport transport;
+    private final int inputDelay;
+    // Inputs per player for ticks not yet simulated, indexed by tick modulo WINDOW
+    private final long[][][] inputs;
+    private final long[][] inputTicks;
+    private final long[] checksumTicks = new long[WINDOW];
+    private final int[] checksums = new int[WINDOW];
+    private final List<long[]> remoteChecksums = new ArrayList<>();
+    private final List<Long> pendingInput = new ArrayList<>();
+    private final LevelSnapshot snapshot = new LevelSnapshot(1 << 16);
+    private final CRC32 crc = new CRC32();
+    private long tick;
+    private long sentTick;
+    private long desyncTick = -1;
+    private int desyncPlayer = -1;
+
+    /**
+     * Carries messages between the peers of a match. Messages must arrive complete and, from
+     * each sender, in order.
+     */
+    public interface Transport {
+        /**
+         * Sends a message to every other player.
+         *
+         * @param message The message. The transport may keep the array.
+         */
+        void send(byte[] message);
+
+        /**
+         * Takes the next message that has arrived.
+         *
+         * @return The message, or null if none is waiting.
+         */
+        byte[] poll();
+    }
+
+    /**
+     * Constructor for the LockstepMatch object.
+     *
+     * @param config The game configuration; every peer must use the same one.
+     * @param seed The match's seed; every peer must use the same one.
+     * @param players The number of players.
+     * @param localPlayer The index of the player on this peer.
+     * @param transport The transport connecting this peer to the others.
+     * @param inputDelay How many ticks ahead local input is sent, at least 1.
+     */
+    public LockstepMatch(JSONObject config, long seed, int players, int localPlayer, Transport transport, int inputDelay) {
+        if (localPlayer < 0 || localPlayer >= players) {
+            throw new IllegalArgumentException("No player " + localPlayer + " in a match of " + players);
+        }
+        this.boards = new App[players];
+        for (int p = 0; p < players; p++) {
+            boards[p] = App.createHeadless(config, seed);
+        }
+        this.localPlayer = localPlayer;
+        this.transport = transport;
+        this.inputDelay = Math.max(1, Math.min(WINDOW / 2, inputDelay));
+        this.inputs = new long[players][WINDOW][];
+        this.inputTicks = new long[players][WINDOW];
+        for (int p = 0; p < players; p++) {
+            Arrays.fill(inputTicks[p], -1);
+            // Nobody can have input for the ticks before the delay has passed
+            for (int t = 0; t < this.inputDelay; t++) {
+                store(p, t, new long[0]);
+            }
+        }
+        Arrays.fill(checksumTicks, -1);
+        this.sentTick = this.inputDelay - 1;
+    }
+
+    /**
+     * Queues an input from the local player. It is sent with the next message and applied,
+     * on every peer, at the start of the tick that message is for.
+     *
+     * @param type The input type, one of the InputLog constants.
+     * @param x The x coordinate on the board, or 0 if the input has none.
+     * @param y The y coordinate on the board, or 0 if the input has none.
+     */
+    public void input(byte type, int x, int y) {
+        pendingInput.add(InputQueue.pack(type, x, y));
+    }
+
+    /**
+     * Sends the local input for the next tick that has none yet, reads the messages that have
+     * arrived and, if every player's input for the current tick is there, runs it on every
+     * board. Call this once per frame.
+     *
+     * @return True if a tick ran, false if the match is waiting for a peer or has desynced.
+     */
+    public boolean advance() {
+        if (isDesynced()) {
+            return false;
+        }
+        if (sentTick < tick + inputDelay) {
+            sendInput();
+        }
+        receive();
+        if (isDesynced()) {
+            return false;
+        }
+        for (int p = 0; p < boards.length; p++) {
+            if (inputTicks[p][slot(tick)] != tick) {
+                return false;
+            }
+        }
+        for (int p = 0; p < boards.length; p++) {
+            for (long event : inputs[p][slot(tick)]) {
+                boards[p].applyInput(InputQueue.typeOf(event), InputQueue.xOf(event), InputQueue.yOf(event));
+            }
+            inputs[p][slot(tick)] = null;
+            boards[p].tick();
+        }
+        checksums[slot(tick)] = checksum();
+        checksumTicks[slot(tick)] = tick;
+        tick++;
+        compareChecksums();
+        return true;
+    }
+
+    /**
+     * Sends the pending local input as the input for the next unsent tick.
+     */
+    private void sendInput() {
+        long[] events = new long[pendingInput.size()];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = pendingInput.get(i);
+        }
+        pendingInput.clear();
+        sentTick++;
+        store(localPlayer, sentTick, events);
+        long last = tick - 1;
+        transport.send(encode(localPlayer, sentTick, last, last >= 0 ? checksums[slot(last)] : 0, events));
+    }
+
+    /**
+     * Takes every waiting message and files its input and checksum.
+     */
+    private void receive() {
+        byte[] bytes;
+        while ((bytes = transport.poll()) != null) {
+            Message message = Message.decode(bytes);
+            if (message.player < 0 || message.player >= boards.length || message.player == localPlayer) {
+                throw new IllegalStateException("Message from unknown player " + message.player);
+            }
+            if (message.inputTick < tick || message.inputTick >= tick + WINDOW) {
+                throw new IllegalStateException("Input for tick " + message.inputTick + " arrived at tick " + tick);
+            }
+            store(message.player, message.inputTick, message.events);
+            if (message.checksumTick >= 0) {
+                remoteChecksums.add(new long[]{message.player, message.checksumTick, message.checksum});
+            }
+        }
+        compareChecksums();
+    }
+
+    /**
+     * Compares the peers' checksums with ours for every tick both sides have simulated, and
+     * records the first tick that differs.
+     */
+    private void compareChecksums() {
+        for (int i = remoteChecksums.size() - 1; i >= 0; i--) {
+            long[] remote = remoteChecksums.get(i);
+            long remoteTick = remote[1];
+            if (remoteTick >= tick) {
+                continue;
+            }
+            remoteChecksums.remove(i);
+            if (checksumTicks[slot(remoteTick)] != remoteTick) {
+                // Too old to check
+                continue;
+            }
+            if (checksums[slot(remoteTick)] != (int) remote[2] && (desyncTick < 0 || remoteTick < desyncTick)) {
+                desyncTick = remoteTick;
+                desyncPlayer = (int) remote[0];
+            }
+        }
+    }
+
+    private void store(int player, long inputTick, long[] events) {
+        inputs[player][slot(inputTick)] = events;
+        inputTicks[player][slot(inputTick)] = inputTick;
+    }
+
+    /**
+     * Computes the CRC32 of every board's snapshot.
+     *
+     * @return The checksum.
+     */
+    private int checksum() {
+        crc.reset();
+        for (App board : boards) {
+            snapshot.capture(board);
+            ByteBuffer buffer = snapshot.getBuffer();
+            crc.update(buffer.array(), 0, buffer.limit());
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Encodes one message.
+     *
+     * @param player The sending player.
+     * @param inputTick The tick the input is for.
+     * @param checksumTick The sender's last simulated tick, or -1 if it has none.
+     * @param checksum The checksum of that tick.
+     * @param events The input events, packed as in {@link InputQueue}.
+     * @return The message.
+     */
+    static byte[] encode(int player, long inputTick, long checksumTick, int checksum, long[] events) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + events.length * 5);
+        try {
+            Varint.writeUnsigned(out, player);
+            Varint.writeUnsigned(out, inputTick);
+            Varint.writeUnsigned(out, checksumTick < 0 ? 0 : inputTick - checksumTick);
+            out.write(checksum >>> 24);
+            out.write(checksum >>> 16);
+            out.write(checksum >>> 8);
+            out.write(checksum);
+            Varint.writeUnsigned(out, events.length);
+            for (long event : events) {
+                out.write(InputQueue.typeOf(event));
+                Varint.writeSigned(out, InputQueue.xOf(event));
+                Varint.writeSigned(out, InputQueue.yOf(event));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A decoded message.
+     */
+    static final class Message {
+        int player;
+        long inputTick;
+        long checksumTick;
+        int checksum;
+        long[] events;
+
+        /**
+         * Decodes a message written by {@link #encode(int, long, long, int, long[])}.
+         *
+         * @param bytes The message.
+         * @return The decoded message.
+         * @throws UncheckedIOException If the message is cut short or malformed.
+         */
+        static Message decode(byte[] bytes) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            Message message = new Message();
+            try {
+                message.player = (int) Varint.readUnsigned(in);
+                message.inputTick = Varint.readUnsigned(in);
+                long age = Varint.readUnsigned(in);
+                message.checksumTick = age == 0 ? -1 : message.inputTick - age;
+                message.checksum = in.readInt();
+                long count = Varint.readUnsigned(in);
+                // Every event takes at least three bytes
+                if (count > in.available() / 3) {
+                    throw new IOException("Event count " + count + " does not fit the message");
+                }
+                message.events = new long[(int) count];
+                for (int i = 0; i < message.events.length; i++) {
+                    byte type = in.readByte();
+                    int x = (int) Varint.readSigned(in);
+                    int y = (int) Varint.readSigned(in);
+                    message.events[i] = InputQueue.pack(type, x, y);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Malformed lockstep message", e);
+            }
+            return message;
+        }
+    }
+
+    private static int slot(long tick) {
+        return (int) (tick % WINDOW);
+    }
+
+    /**
+     * Creates transports that connect the players of a match inside one process, for local
+     * matches, bots and tests.
+     *
+     * @param players The number of players.
+     * @return One transport per player.
+     */
+    public static Transport[] loopback(int players) {
+        List<Queue<byte[]>> inboxes = new ArrayList<>();
+        for (int p = 0; p < players; p++) {
+            inboxes.add(new ConcurrentLinkedQueue<>());
+        }
+        Transport[] transports = new Transport[players];
+        for (int p = 0; p < players; p++) {
+            final Queue<byte[]> inbox = inboxes.get(p);
+            transports[p] = new Transport() {
+                @Override
+                public void send(byte[] message) {
+                    for (Queue<byte[]> other : inboxes) {
+                        if (other != inbox) {
+                            other.add(message);
+                        }
+                    }
+                }
+
+                @Override
+                public byte[] poll() {
+                    return inbox.poll();
+                }
+            };
+        }
+        return transports;
+    }
+
+    /**
+     * Checks whether a peer's state has been found to differ from ours.
+     *
+     * @return True if the match has desynced.
+     */
+    public boolean isDesynced() {
+        return desyncTick >= 0;
+    }
+
+    public long getDesyncTick() {
+        return desyncTick;
+    }
+
+    public int getDesyncPlayer() {
+        return desyncPlayer;
+    }
+
+    public App getBoard(int player) {
+        return boards[player];
+    }
+
+    public int getLocalPlayer() {
+        return localPlayer;
+    }
+
+    public int getInputDelay() {
+        return inputDelay;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+}
@@ -0,0 +1,325 @@
+package inkball;
+
+import processing.core.PVector;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Observations for a batch of games, written straight into one preallocated direct or
+ * memory-mapped buffer so that a trainer, possibly in another process, can read them in place.
+ *
+ * <p>All values are little-endian. The buffer starts with a {@value #HEADER_SIZE}-byte header:</p>
+ * <pre>
+ *   0  int32   magic "INKO" (0x4F4B4E49 read as little-endian)
+ *   4  int32   layout version, currently 2
+ *   8  int32   number of slots
+ *  12  int32   slot size in bytes
+ *  16  int32   ball slots per board
+ *  20  int32   brick slots per board
+ *  24  int32   raster columns
+ *  28  int32   raster rows
+ *  32          reserved, zero
+ * </pre>
+ * <p>followed by one {@value #SLOT_SIZE}-byte slot per board:</p>
+ * <pre>
+ *   0  int64   sequence counter: odd while the slot is being written, even once it is
+ *              complete, and twice the number of completed writes
+ *   8  float32 reward of the last step
+ *  12  uint8   1 if the episode is done
+ *  13  uint8   1 if the episode was truncated
+ *  14  uint8   number of balls written
+ *  15  uint8   number of bricks in the layout, at most the brick slots
+ *  16  float32 remaining time as a fraction of the level time
+ *  20  float32 seconds until the next spawn
+ *  24  int32   balls waiting to spawn
+ *  28  int32   player lines
+ *  32  ball slots, 20 bytes each: float32 x, y, velocity x, velocity y (board pixels),
+ *      uint8 colour index, 3 bytes padding; unused slots are zero
+ * 352  brick slots, 1 byte each in layout order: hits taken (0-2), 3 once destroyed,
+ *      0xFF for unused slots
+ * 384  line raster, 1 byte per board tile in row-major order: 1 if a finished player line
+ *      passes through the tile
+ * </pre>
+ *
+ * <p>The sequence counter makes each slot a seqlock. A reader reads the counter, then the slot,
+ * then the counter again, and retries if the counter was odd or has changed, since the slot
+ * was then read while it was being written. {@link #read(int, byte[])} does this for readers
+ * in the same process. Both sides order their buffer accesses around the counter with
+ * {@link VarHandle} fences.</p>
+ *
+ * <p>Writing costs one pass over the balls and one over the standing bricks, and the line
+ * raster is only redrawn when the App reports that its lines changed. Each slot must only be
+ * written by one thread at a time.</p>
+ */
+public class ObservationBuffer {
+    public static final int MAGIC = 0x4F4B4E49; // "INKO"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 64;
+    public static final int MAX_BALLS = 16;
+    public static final int MAX_BRICKS = 32;
+    public static final int RASTER_COLUMNS = App.WIDTH / App.CELLSIZE;
+    public static final int RASTER_ROWS = (App.HEIGHT - App.TOPBAR) / App.CELLSIZE;
+
+    public static final int STEP_OFFSET = 0;
+    public static final int REWARD_OFFSET = 8;
+    public static final int DONE_OFFSET = 12;
+    public static final int TRUNCATED_OFFSET = 13;
+    public static final int BALL_COUNT_OFFSET = 14;
+    public static final int BRICK_COUNT_OFFSET = 15;
+    public static final int TIME_OFFSET = 16;
+    public static final int SPAWN_COUNTDOWN_OFFSET = 20;
+    public static final int QUEUE_OFFSET = 24;
+    public static final int LINE_COUNT_OFFSET = 28;
+    public static final int BALLS_OFFSET = 32;
+    public static final int BALL_SIZE = 20;
+    public static final int BRICKS_OFFSET = BALLS_OFFSET + MAX_BALLS * BALL_SIZE;
+    public static final int RASTER_OFFSET = BRICKS_OFFSET + MAX_BRICKS;
+    public static final int SLOT_SIZE = (RASTER_OFFSET + RASTER_COLUMNS * RASTER_ROWS + 63) / 64 * 64;
+
+    private static final byte UNUSED_BRICK = (byte) 0xFF;
+    private static final byte DESTROYED_BRICK = 3;
+
+    private final ByteBuffer buffer;
+    private final int slots;
+    private final App[] rasterApps;
+    private final int[] rasterVersions;
+
+    /**
+     * Constructor for the ObservationBuffer object.
+     *
+     * @param buffer The buffer to lay the slots out in; it must be large enough for them.
+     * @param slots The number of slots.
+     */
+    private ObservationBuffer(ByteBuffer buffer, int slots) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.slots = slots;
+        this.rasterApps = new App[slots];
+        this.rasterVersions = new int[slots];
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slots);
+        buffer.putInt(12, SLOT_SIZE);
+        buffer.putInt(16, MAX_BALLS);
+        buffer.putInt(20, MAX_BRICKS);
+        buffer.putInt(24, RASTER_COLUMNS);
+        buffer.putInt(28, RASTER_ROWS);
+    }
+
+    /**
+     * Gets the number of bytes a buffer with the given number of slots needs.
+     *
+     * @param slots The number of slots.
+     * @return The size in bytes.
+     */
+    public static int sizeFor(int slots) {
+        return HEADER_SIZE + slots * SLOT_SIZE;
+    }
+
+    /**
+     * Creates a buffer in direct memory, outside the Java heap.
+     *
+     * @param slots The number of slots.
+     * @return The observation buffer.
+     */
+    public static ObservationBuffer allocate(int slots) {
+        return new ObservationBuffer(ByteBuffer.allocateDirect(sizeFor(slots)), slots);
+    }
+
+    /**
+     * Creates a buffer backed by a memory-mapped file, so another process can map the same
+     * file and read observations as they are written. The file is created or resized.
+     *
+     * @param file The file to map.
+     * @param slots The number of slots.
+     * @return The observation buffer.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    public static ObservationBuffer map(File file, int slots) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return new ObservationBuffer(channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeFor(slots)), slots);
+        }
+    }
+
+    /**
+     * Writes the state of a game into a slot.
+     *
+     * @param slot The slot to write.
+     * @param app The game.
+     * @param reward The reward of the last step.
+     * @param done Whether the episode is done.
+     * @param truncated Whether the episode was truncated.
+     */
+    public void write(int slot, App app, float reward, boolean done, boolean truncated) {
+        int base = slotOffset(slot);
+        Level level = app.getCurrentLevel();
+        long sequence = buffer.getLong(base + STEP_OFFSET) | 1;
+        buffer.putLong(base + STEP_OFFSET, sequence);
+        // The odd counter must be visible before any of the slot changes
+        VarHandle.storeStoreFence();
+
+        buffer.putFloat(base + REWARD_OFFSET, reward);
+        buffer.put(base + DONE_OFFSET, (byte) (done ? 1 : 0));
+        buffer.put(base + TRUNCATED_OFFSET, (byte) (truncated ? 1 : 0));
+        buffer.putFloat(base + TIME_OFFSET,
+                app.getLevelTime() > 0 ? (float) app.getRemainingTime() / app.getLevelTime() : 0);
+        buffer.putFloat(base + SPAWN_COUNTDOWN_OFFSET, level.getSpawnCountdown());
+        buffer.putInt(base + QUEUE_OFFSET, level.getConfigBalls().size());
+        buffer.putInt(base + LINE_COUNT_OFFSET, app.getPlayerLines().size());
+
+        List<Ball> balls = level.getBalls();
+        int ballCount = Math.min(MAX_BALLS, balls.size());
+        buffer.put(base + BALL_COUNT_OFFSET, (byte) ballCount);
+        int at = base + BALLS_OFFSET;
+        for (int i = 0; i < ballCount; i++, at += BALL_SIZE) {
+            Ball ball = balls.get(i);
+            buffer.putFloat(at, ball.getPosition().x);
+            buffer.putFloat(at + 4, ball.getPosition().y);
+            buffer.putFloat(at + 8, ball.getVelocity().x);
+            buffer.putFloat(at + 12, ball.getVelocity().y);
+            buffer.put(at + 16, (byte) ball.getColorType());
+            buffer.put(at + 17, (byte) 0);
+            buffer.putShort(at + 18, (short) 0);
+        }
+        for (int end = base + BRICKS_OFFSET; at < end; at += 4) {
+            buffer.putInt(at, 0);
+        }
+
+        // Every layout brick starts out destroyed, then each standing brick is written over its slot
+        int brickCount = Math.min(MAX_BRICKS, level.getLayoutBricks().size());
+        buffer.put(base + BRICK_COUNT_OFFSET, (byte) brickCount);
+        for (int i = 0; i < MAX_BRICKS; i++) {
+            buffer.put(base + BRICKS_OFFSET + i, i < brickCount ? DESTROYED_BRICK : UNUSED_BRICK);
+        }
+        List<Brick> bricks = level.getBricks();
+        int wallCount = level.getWalls().size();
+        for (int i = 0; i < bricks.size(); i++) {
+            Brick brick = bricks.get(i);
+            int index = level.wallIndex(brick.getId()) - wallCount;
+            if (index >= 0 && index < brickCount) {
+                buffer.put(base + BRICKS_OFFSET + index, (byte) Math.min(brick.getHitCount(), 2));
+            }
+        }
+
+        if (rasterApps[slot] != app || rasterVersions[slot] != app.getLineVersion()) {
+            rasterizeLines(base + RASTER_OFFSET, app.getPlayerLines());
+            rasterApps[slot] = app;
+            rasterVersions[slot] = app.getLineVersion();
+        }
+
+        VarHandle.releaseFence();
+        buffer.putLong(base + STEP_OFFSET, sequence + 1);
+    }
+
+    /**
+     * Copies a slot as it was after one complete write, retrying while it is being written.
+     *
+     * @param slot The slot to read.
+     * @param into The array to copy the slot into, at least {@value #SLOT_SIZE} bytes long.
+     * @return The number of completed writes the copy reflects.
+     */
+    public long read(int slot, byte[] into) {
+        int base = slotOffset(slot);
+        while (true) {
+            long before = buffer.getLong(base + STEP_OFFSET);
+            VarHandle.acquireFence();
+            if ((before & 1) == 0) {
+                for (int i = 0; i < SLOT_SIZE; i++) {
+                    into[i] = buffer.get(base + i);
+                }
+                VarHandle.loadLoadFence();
+                if (buffer.getLong(base + STEP_OFFSET) == before) {
+                    return before >>> 1;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Redraws the line raster of a slot.
+     *
+     * @param offset The raster's position in the buffer.
+     * @param lines The player lines.
+     */
+    private void rasterizeLines(int offset, List<Line> lines) {
+        for (int i = 0; i < RASTER_COLUMNS * RASTER_ROWS; i++) {
+            buffer.put(offset + i, (byte) 0);
+        }
+        for (Line line : lines) {
+            List<PVector> points = line.points();
+            for (int p = 0; p + 1 < points.size(); p++) {
+                PVector from = points.get(p);
+                PVector to = points.get(p + 1);
+                // Sample every quarter tile so no tile the segment crosses is skipped
+                int samples = 1 + (int) (PVector.dist(from, to) / (App.CELLSIZE / 4f));
+                for (int s = 0; s <= samples; s++) {
+                    float t = (float) s / samples;
+                    markTile(offset, from.x + (to.x - from.x) * t, from.y + (to.y - from.y) * t);
+                }
+            }
+            if (points.size() == 1) {
+                markTile(offset, points.get(0).x, points.get(0).y);
+            }
+        }
+    }
+
+    /**
+     * Marks the raster tile that contains a point, if the point is on the board.
+     *
+     * @param offset The raster's position in the buffer.
+     * @param x The point's x coordinate.
+     * @param y The point's y coordinate.
+     */
+    private void markTile(int offset, float x, float y) {
+        int column = (int) Math.floor(x / App.CELLSIZE);
+        int row = (int) Math.floor(y / App.CELLSIZE);
+        if (column >= 0 && column < RASTER_COLUMNS && row >= 0 && row < RASTER_ROWS) {
+            buffer.put(offset + row * RASTER_COLUMNS + column, (byte) 1);
+        }
+    }
+
+    /**
+     * Gets the position of a slot in the buffer.
+     *
+     * @param slot The slot.
+     * @return The offset of the slot's first byte.
+     */
+    public int slotOffset(int slot) {
+        if (slot < 0 || slot >= slots) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + slots);
+        }
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * Gets the number of completed writes to a slot.
+     *
+     * @param slot The slot.
+     * @return The number of times the slot has been written in full.
+     */
+    public long getStep(int slot) {
+        return buffer.getLong(slotOffset(slot) + STEP_OFFSET) >>> 1;
+    }
+
+    /**
+     * Gets the underlying buffer. It is shared, not copied, and its positions are not used.
+     *
+     * @return The buffer.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+}
@@ -0,0 +1,330 @@
+package inkball;
+
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rasterizes a running level onto a coarse grid as a stack of byte planes, one per channel.
+ *
+ * <p>The grid has the board's 18 by 18 tiles, optionally split into a number of cells per tile
+ * along each axis. Planes are stored channel-major and then row-major in one array that is
+ * reused for every board. Cell values are:</p>
+ * <ul>
+ *   <li>{@link #WALLS}: wall type + 1</li>
+ *   <li>{@link #BRICK_HITS}: hits a brick can still take (1-3)</li>
+ *   <li>{@link #BRICK_COLORS}: brick colour + 1</li>
+ *   <li>{@link #HOLES}: hole colour + 1, over the hole's two by two tiles</li>
+ *   <li>{@link #BALLS}: colour + 1 of the ball whose centre is in the cell</li>
+ *   <li>{@link #BALL_VELOCITY_X}, {@link #BALL_VELOCITY_Y}: that ball's velocity in
+ *       sixteenths of a pixel per tick, as a signed byte</li>
+ *   <li>{@link #LINES}: 1 where a finished player line passes</li>
+ * </ul>
+ *
+ * <p>Walls and holes never change, so their planes are drawn only when the layout changes, and
+ * the line plane only when the App reports that its lines changed. Bricks and balls are erased
+ * where they were drawn last time and drawn again, so the work per board depends on the number
+ * of bricks and balls rather than on the resolution.</p>
+ */
+public class OccupancyGrid {
+    public static final int WALLS = 0;
+    public static final int BRICK_HITS = 1;
+    public static final int BRICK_COLORS = 2;
+    public static final int HOLES = 3;
+    public static final int BALLS = 4;
+    public static final int BALL_VELOCITY_X = 5;
+    public static final int BALL_VELOCITY_Y = 6;
+    public static final int LINES = 7;
+    public static final int CHANNELS = 8;
+
+    private static final int BOARD_COLUMNS = App.WIDTH / App.CELLSIZE;
+    private static final int BOARD_ROWS = (App.HEIGHT - App.TOPBAR) / App.CELLSIZE;
+
+    private final int cellsPerTile;
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    private final int planeSize;
+    private final byte[] planes;
+
+    private List<Wall> staticWalls;
+    private List<Hole> staticHoles;
+    private int staticWallCount;
+
+    private App lineApp;
+    private int lineVersion;
+
+    private int[] brickCells = new int[16];
+    private int brickCount;
+    private int[] ballCells = new int[16];
+    private int ballCount;
+
+    /**
+     * Constructor for a grid with one cell per tile.
+     */
+    public OccupancyGrid() {
+        this(1);
+    }
+
+    /**
+     * Constructor for the OccupancyGrid object.
+     *
+     * @param cellsPerTile The number of cells each tile is split into along each axis.
+     */
+    public OccupancyGrid(int cellsPerTile) {
+        if (cellsPerTile < 1 || App.CELLSIZE % cellsPerTile != 0) {
+            throw new IllegalArgumentException("Cells per tile must divide the tile size " + App.CELLSIZE);
+        }
+        this.cellsPerTile = cellsPerTile;
+        this.cellSize = (float) App.CELLSIZE / cellsPerTile;
+        this.columns = BOARD_COLUMNS * cellsPerTile;
+        this.rows = BOARD_ROWS * cellsPerTile;
+        this.planeSize = columns * rows;
+        this.planes = new byte[CHANNELS * planeSize];
+    }
+
+    /**
+     * Draws the current state of a game onto the grid, replacing what was there.
+     *
+     * @param app The game.
+     */
+    public void rasterize(App app) {
+        Level level = app.getCurrentLevel();
+        if (level.getWalls() != staticWalls || level.getHoles() != staticHoles
+                || level.getWalls().size() != staticWallCount) {
+            drawStatic(level);
+        }
+
+        for (int i = 0; i < brickCount; i++) {
+            fillSquare(BRICK_HITS, brickCells[i], cellsPerTile, (byte) 0);
+            fillSquare(BRICK_COLORS, brickCells[i], cellsPerTile, (byte) 0);
+        }
+        List<Brick> bricks = level.getBricks();
+        if (brickCells.length < bricks.size()) {
+            brickCells = new int[bricks.size() * 2];
+        }
+        brickCount = 0;
+        for (int i = 0; i < bricks.size(); i++) {
+            Brick brick = bricks.get(i);
+            int cell = tileCell(brick.getPosition());
+            fillSquare(BRICK_HITS, cell, cellsPerTile, (byte) Math.max(1, 3 - brick.getHitCount()));
+            fillSquare(BRICK_COLORS, cell, cellsPerTile, (byte) (brick.getWallType() + 1));
+            brickCells[brickCount++] = cell;
+        }
+
+        for (int i = 0; i < ballCount; i++) {
+            planes[BALLS * planeSize + ballCells[i]] = 0;
+            planes[BALL_VELOCITY_X * planeSize + ballCells[i]] = 0;
+            planes[BALL_VELOCITY_Y * planeSize + ballCells[i]] = 0;
+        }
+        List<Ball> balls = level.getBalls();
+        if (ballCells.length < balls.size()) {
+            ballCells = new int[balls.size() * 2];
+        }
+        ballCount = 0;
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            int cell = cellAt(ball.getPosition().x, ball.getPosition().y);
+            if (cell >= 0) {
+                planes[BALLS * planeSize + cell] = (byte) (ball.getColorType() + 1);
+                planes[BALL_VELOCITY_X * planeSize + cell] = velocityByte(ball.getVelocity().x);
+                planes[BALL_VELOCITY_Y * planeSize + cell] = velocityByte(ball.getVelocity().y);
+                ballCells[ballCount++] = cell;
+            }
+        }
+
+        if (app != lineApp || app.getLineVersion() != lineVersion) {
+            drawLines(app.getPlayerLines());
+            lineApp = app;
+            lineVersion = app.getLineVersion();
+        }
+    }
+
+    /**
+     * Draws the wall and hole planes for a layout.
+     *
+     * @param level The level.
+     */
+    private void drawStatic(Level level) {
+        Arrays.fill(planes, WALLS * planeSize, (WALLS + 1) * planeSize, (byte) 0);
+        Arrays.fill(planes, HOLES * planeSize, (HOLES + 1) * planeSize, (byte) 0);
+        for (Wall wall : level.getWalls()) {
+            fillSquare(WALLS, tileCell(wall.getPosition()), cellsPerTile, (byte) (wall.getWallType() + 1));
+        }
+        for (Hole hole : level.getHoles()) {
+            fillSquare(HOLES, tileCell(hole.getPosition()), 2 * cellsPerTile,
+                    (byte) (Level.getColorIndex(hole.getColorName()) + 1));
+        }
+        staticWalls = level.getWalls();
+        staticHoles = level.getHoles();
+        staticWallCount = staticWalls.size();
+    }
+
+    /**
+     * Draws the line plane.
+     *
+     * @param lines The finished player lines.
+     */
+    private void drawLines(List<Line> lines) {
+        Arrays.fill(planes, LINES * planeSize, (LINES + 1) * planeSize, (byte) 0);
+        for (Line line : lines) {
+            List<PVector> points = line.points();
+            for (int p = 0; p + 1 < points.size(); p++) {
+                PVector from = points.get(p);
+                PVector to = points.get(p + 1);
+                // Sample every quarter cell so no cell the segment crosses is skipped
+                int samples = 1 + (int) (PVector.dist(from, to) / (cellSize / 4));
+                for (int s = 0; s <= samples; s++) {
+                    float t = (float) s / samples;
+                    int cell = cellAt(from.x + (to.x - from.x) * t, from.y + (to.y - from.y) * t);
+                    if (cell >= 0) {
+                        planes[LINES * planeSize + cell] = 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the cell at the top-left corner of the tile an object is drawn in.
+     * Objects normally sit exactly on a tile, so their position is rounded to the nearest cell.
+     *
+     * @param position The object's top-left corner on the board.
+     * @return The cell's index within a plane.
+     */
+    private int tileCell(PVector position) {
+        int column = Math.max(0, Math.min(columns - 1, (int) (position.x / cellSize + 0.5f)));
+        int row = Math.max(0, Math.min(rows - 1, (int) (position.y / cellSize + 0.5f)));
+        return row * columns + column;
+    }
+
+    /**
+     * Fills a square of cells in one plane, clipped to the grid.
+     *
+     * @param channel The plane.
+     * @param cell The cell at the square's top-left corner.
+     * @param size The square's side in cells.
+     * @param value The value to fill with.
+     */
+    private void fillSquare(int channel, int cell, int size, byte value) {
+        int fromColumn = cell % columns;
+        int fromRow = cell / columns;
+        int toColumn = Math.min(columns, fromColumn + size);
+        int toRow = Math.min(rows, fromRow + size);
+        int plane = channel * planeSize;
+        for (int row = fromRow; row < toRow; row++) {
+            for (int column = fromColumn; column < toColumn; column++) {
+                planes[plane + row * columns + column] = value;
+            }
+        }
+    }
+
+    /**
+     * Finds the cell that contains a point.
+     *
+     * @param x The point's x coordinate on the board.
+     * @param y The point's y coordinate on the board.
+     * @return The cell's index within a plane, or -1 if the point is off the board.
+     */
+    private int cellAt(float x, float y) {
+        if (!(x >= 0 && y >= 0)) {
+            return -1;
+        }
+        int column = (int) (x / cellSize);
+        int row = (int) (y / cellSize);
+        return column < columns && row < rows ? row * columns + column : -1;
+    }
+
+    /**
+     * Encodes a velocity component as a signed byte.
+     *
+     * @param velocity The velocity in pixels per tick.
+     * @return The velocity in sixteenths of a pixel per tick, clamped to a byte.
+     */
+    private static byte velocityByte(float velocity) {
+        return (byte) Math.max(-127, Math.min(127, Math.round(velocity * 16)));
+    }
+
+    /**
+     * Lists the cells that differ from another grid of the same size.
+     *
+     * @param other The grid to compare with, typically the previous frame.
+     * @param out Receives the indices into {@link #getPlanes()} of the differing cells.
+     * @return The number of differing cells; if larger than out, only the first ones were written.
+     */
+    public int diff(OccupancyGrid other, int[] out) {
+        if (other.planes.length != planes.length) {
+            throw new IllegalArgumentException("Grids must have the same resolution");
+        }
+        int count = 0;
+        for (int i = 0; i < planes.length; i++) {
+            if (planes[i] != other.planes[i]) {
+                if (count < out.length) {
+                    out[count] = i;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the value of one cell.
+     *
+     * @param channel The plane.
+     * @param column The cell's column.
+     * @param row The cell's row.
+     * @return The cell's value.
+     */
+    public byte get(int channel, int column, int row) {
+        return planes[channel * planeSize + row * columns + column];
+    }
+
+    /**
+     * Gets the planes, channel-major and then row-major. The array is reused by every call
+     * to {@link #rasterize(App)}, which relies on it not being changed by anyone else.
+     *
+     * @return The planes.
+     */
+    public byte[] getPlanes() {
+        return planes;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCellsPerTile() {
+        return cellsPerTile;
+    }
+
+    /**
+     * Measures how long rasterizing a running game takes.
+     *
+     * @param args Optionally the number of cells per tile.
+     */
+    public static void main(String[] args) {
+        int cellsPerTile = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        App app = App.createHeadless(config, 1);
+        for (int i = 0; i < 600; i++) {
+            app.tick();
+        }
+        OccupancyGrid grid = new OccupancyGrid(cellsPerTile);
+        int rounds = 2000000;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                grid.rasterize(app);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%d cells per tile: %.0f ns per board%n", cellsPerTile, (double) elapsed / rounds);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Updates the balls of a level on several threads, with results identical to the sequential
+ * update.
+ *
+ * <p>Balls never collide with each other, so most of a ball's update only changes that ball:
+ * moving it, bouncing it off walls, and the pull of the holes. The board is cut into
+ * horizontal bands and the balls in each band are given those steps by one task. Anything that
+ * reaches beyond a single ball is buffered instead and merged in ball order on the calling
+ * thread once every task is done:</p>
+ * <ul>
+ *     <li>A ball that overlaps a brick, or still has a cooldown with one, has its brick checks
+ *     and hole checks run in the merge. Hitting a brick changes the brick, and that can change
+ *     what later balls see.</li>
+ *     <li>A capture is recorded as a (ball, hole) pair. The merge publishes the capture events
+ *     in ball order, because scores are clamped at zero.</li>
+ *     <li>Each ball records which player lines it overlaps. The merge bounces the ball off the
+ *     lines earlier balls have not already removed, and removes them.</li>
+ * </ul>
+ *
+ * <p>An updater is attached to an App with {@link App#setBallUpdater(ParallelBallUpdater)}
+ * and is used by every level that App loads. It keeps per-update state and must not be shared
+ * by Apps that tick at the same time.</p>
+ */
+public class ParallelBallUpdater implements AutoCloseable {
+    private static final int MOVE = 0;
+    private static final int LINES = 1;
+
+    private final ExecutorService executor;
+    private final int regions;
+    private final List<Callable<Void>> tasks;
+    private final int[][] nearby;
+    private final long[][] events;
+    private final int[] eventCounts;
+    private int minBalls = 64;
+
+    private int phase;
+    private Level level;
+    private List<Ball> balls;
+    private List<Brick> standing;
+    private int[] brickIds;
+    private List<Line> lines;
+    private int[] order = new int[0];
+    private int[] regionStarts;
+    private boolean[] contended = new boolean[0];
+
+    /**
+     * Constructor for the ParallelBallUpdater object.
+     *
+     * @param threads The number of worker threads.
+     * @param regions The number of bands the board is cut into; more bands than threads
+     *                balance the work better when balls bunch up.
+     */
+    public ParallelBallUpdater(int threads, int regions) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        this.regions = Math.max(1, regions);
+        this.regionStarts = new int[this.regions + 1];
+        this.nearby = new int[this.regions][16];
+        this.events = new long[this.regions][16];
+        this.eventCounts = new int[this.regions];
+        this.tasks = new ArrayList<>();
+        for (int r = 0; r < this.regions; r++) {
+            final int region = r;
+            tasks.add(() -> {
+                runRegion(region);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Checks whether a level has enough balls to be worth splitting across threads.
+     *
+     * @param ballCount The number of balls.
+     * @return True if the balls should be updated in parallel.
+     */
+    public boolean isWorthwhile(int ballCount) {
+        return ballCount >= minBalls;
+    }
+
+    /**
+     * Moves the balls and checks them against walls, bricks and holes, as the sequential loop
+     * in {@link Level#update(JSONObject)} does.
+     *
+     * @param level The level being updated.
+     * @param balls The level's balls at the start of the update, in order.
+     * @param config The game configuration, for scoring.
+     */
+    void update(Level level, List<Ball> balls, JSONObject config) {
+        level.getWallGrid();
+        this.standing = new ArrayList<>(level.getBricks());
+        this.brickIds = new int[standing.size()];
+        for (int i = 0; i < brickIds.length; i++) {
+            brickIds[i] = standing.get(i).getId();
+        }
+        Arrays.sort(brickIds);
+        if (contended.length < balls.size()) {
+            contended = new boolean[balls.size() * 2];
+        }
+        run(MOVE, level, balls);
+
+        List<Hole> holes = level.getHoles();
+        long[] merged = mergeEvents();
+        App app = level.getApp();
+        int e = 0;
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            if (contended[i]) {
+                level.checkBrickCollisions(ball);
+                level.attractToHoles(ball, config);
+            } else {
+                for (; e < merged.length && merged[e] / holes.size() == i; e++) {
+                    holes.get((int) (merged[e] % holes.size())).handleCapture(ball, app, config);
+                }
+            }
+        }
+        standing = null;
+    }
+
+    /**
+     * Bounces balls off the player lines they overlap and removes those lines, as
+     * {@link App#checkBallLineCollisions()} does.
+     *
+     * @param level The current level.
+     * @param balls The level's balls, in order.
+     * @param playerLines The player lines, which lose every line a ball hits.
+     */
+    void checkLineCollisions(Level level, List<Ball> balls, List<Line> playerLines) {
+        this.lines = new ArrayList<>(playerLines);
+        run(LINES, level, balls);
+
+        long[] merged = mergeEvents();
+        boolean[] removed = new boolean[lines.size()];
+        int e = 0;
+        while (e < merged.length) {
+            int ball = (int) (merged[e] / lines.size());
+            List<Line> hits = new ArrayList<>();
+            for (; e < merged.length && merged[e] / lines.size() == ball; e++) {
+                int line = (int) (merged[e] % lines.size());
+                if (!removed[line]) {
+                    hits.add(lines.get(line));
+                    removed[line] = true;
+                }
+            }
+            if (!hits.isEmpty()) {
+                balls.get(ball).checkLineCollisions(hits, playerLines);
+            }
+        }
+        lines = null;
+    }
+
+    /**
+     * Sorts the balls into bands and runs one phase on every band.
+     *
+     * @param phase The phase to run.
+     * @param level The level being updated.
+     * @param balls The level's balls, in order.
+     */
+    private void run(int phase, Level level, List<Ball> balls) {
+        this.phase = phase;
+        this.level = level;
+        this.balls = balls;
+        if (order.length < balls.size()) {
+            order = new int[balls.size() * 2];
+        }
+        Arrays.fill(regionStarts, 0);
+        for (Ball ball : balls) {
+            regionStarts[regionOf(ball) + 1]++;
+        }
+        for (int r = 0; r < regions; r++) {
+            regionStarts[r + 1] += regionStarts[r];
+        }
+        int[] next = Arrays.copyOf(regionStarts, regions);
+        for (int i = 0; i < balls.size(); i++) {
+            order[next[regionOf(balls.get(i))]++] = i;
+        }
+
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while updating balls", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            this.level = null;
+            this.balls = null;
+        }
+    }
+
+    /**
+     * Runs the current phase on the balls of one band, in ball order.
+     *
+     * @param region The band.
+     */
+    private void runRegion(int region) {
+        eventCounts[region] = 0;
+        List<Hole> holes = level.getHoles();
+        for (int k = regionStarts[region]; k < regionStarts[region + 1]; k++) {
+            int i = order[k];
+            Ball ball = balls.get(i);
+            if (phase == LINES) {
+                for (int l = 0; l < lines.size(); l++) {
+                    if (lines.get(l).checkCollision(ball)) {
+                        addEvent(region, (long) i * lines.size() + l);
+                    }
+                }
+                continue;
+            }
+            nearby[region] = level.moveBall(ball, nearby[region]);
+            contended[i] = level.touchesBricks(ball, standing, brickIds);
+            if (contended[i]) {
+                continue;
+            }
+            for (int h = 0; h < holes.size(); h++) {
+                if (holes.get(h).attract(ball)) {
+                    addEvent(region, (long) i * holes.size() + h);
+                }
+            }
+        }
+    }
+
+    private void addEvent(int region, long event) {
+        if (eventCounts[region] == events[region].length) {
+            events[region] = Arrays.copyOf(events[region], eventCounts[region] * 2);
+        }
+        events[region][eventCounts[region]++] = event;
+    }
+
+    /**
+     * Gathers the events every band recorded and sorts them into ball order. Events encode the
+     * ball's index times the number of holes or lines plus the hole or line, so sorting them
+     * also keeps each ball's events in the order the sequential loop would meet them.
+     *
+     * @return The events, sorted.
+     */
+    private long[] mergeEvents() {
+        int total = 0;
+        for (int count : eventCounts) {
+            total += count;
+        }
+        long[] merged = new long[total];
+        int at = 0;
+        for (int r = 0; r < regions; r++) {
+            System.arraycopy(events[r], 0, merged, at, eventCounts[r]);
+            at += eventCounts[r];
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * Finds the band a ball starts the update in.
+     *
+     * @param ball The ball.
+     * @return The band's index.
+     */
+    private int regionOf(Ball ball) {
+        int band = (int) (ball.getPosition().y * regions / App.WIDTH);
+        return Math.max(0, Math.min(regions - 1, band));
+    }
+
+    /**
+     * Sets the smallest number of balls that is updated in parallel. Fewer balls are updated on
+     * the calling thread, where they cost less than handing them to the workers.
+     *
+     * @param minBalls The number of balls.
+     */
+    public void setMinBalls(int minBalls) {
+        this.minBalls = minBalls;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
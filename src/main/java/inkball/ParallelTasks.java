@@ -0,0 +1,83 @@
+package inkball;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs batches of independent tasks on a thread pool and collects their results in order, for
+ * the tools that fan simulated games out across cores.
+ *
+ * <p>A batch either completes or fails: an interrupted wait or a failed task throws, so a
+ * caller never mistakes the results of part of a batch for the whole of it.</p>
+ */
+final class ParallelTasks {
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * Runs tasks on a new fixed pool, which is shut down afterwards. With one thread or one
+     * task, the tasks run on the calling thread instead and no pool is started.
+     *
+     * @param threads The number of worker threads.
+     * @param tasks The tasks.
+     * @param <T> The result type.
+     * @return The results, in task order.
+     * @throws IllegalStateException If the calling thread is interrupted while waiting.
+     * @throws RuntimeException If a task throws, wrapping what it threw.
+     */
+    static <T> List<T> runAll(int threads, List<? extends Callable<T>> tasks) {
+        if (threads <= 1 || tasks.size() <= 1) {
+            return runInline(tasks);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            return runAll(executor, tasks);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> List<T> runInline(List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            try {
+                results.add(task.call());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs tasks on an existing pool and waits for all of them.
+     *
+     * @param executor The pool.
+     * @param tasks The tasks.
+     * @param <T> The result type.
+     * @return The results, in task order.
+     * @throws IllegalStateException If the calling thread is interrupted while waiting. The
+     *                               interrupt flag is set again before throwing.
+     * @throws RuntimeException If a task throws, wrapping what it threw.
+     */
+    static <T> List<T> runAll(ExecutorService executor, List<? extends Callable<T>> tasks) {
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for parallel tasks", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package inkball;
+
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Plays a level headlessly over a grid of config values, so that designers can see how the
+ * level knobs change completion rate and score without playtesting every combination.
+ *
+ * <p>Each axis names one config field and lists the values to try. The level fields are
+ * {@code time}, {@code spawn_interval}, the two score modifiers and {@code balls}. Entries of
+ * the global score tables are named like {@code score_increase_from_hole_capture.grey}. Every
+ * grid point is played the same number of times with the same seeds, so points are compared on
+ * the same spawns. Each game is one task on a fixed pool, so all cores stay busy even when
+ * there are fewer grid points than cores.</p>
+ */
+public class ParameterSweep {
+    public static final String[] LEVEL_INT_FIELDS = {"time"};
+    public static final String[] LEVEL_FLOAT_FIELDS = {
+        "spawn_interval",
+        "score_increase_from_hole_capture_modifier",
+        "score_decrease_from_wrong_hole_modifier"
+    };
+    public static final String BALLS_FIELD = "balls";
+    public static final String[] SCORE_TABLES = {"score_increase_from_hole_capture", "score_decrease_from_wrong_hole"};
+
+    private static final String CSV_HEADER = "games,completed,completion_rate,score_mean,score_sd,"
+            + "score_min,score_p10,score_median,score_p90,score_max,completion_seconds_mean";
+
+    private final JSONObject config;
+    private final int levelIndex;
+    private final List<Axis> axes;
+    private final int gamesPerPoint;
+    private final long seed;
+    private final int threads;
+
+    /**
+     * One config field and the values to try for it.
+     */
+    public static class Axis {
+        private final String name;
+        private final List<String> values;
+
+        /**
+         * Constructor for the Axis object.
+         *
+         * @param name The config field; see {@link ParameterSweep} for the names.
+         * @param values The values, as they would be written on the command line.
+         */
+        public Axis(String name, List<String> values) {
+            if (!isLevelInt(name) && !isLevelFloat(name) && !name.equals(BALLS_FIELD) && scoreTable(name) == null) {
+                throw new IllegalArgumentException("Unknown config field " + name);
+            }
+            if (values.isEmpty()) {
+                throw new IllegalArgumentException("No values for " + name);
+            }
+            this.name = name;
+            this.values = new ArrayList<>(values);
+            // Apply every value to a scratch config so bad values fail here rather than in a worker
+            JSONObject scratch = new JSONObject();
+            for (String table : SCORE_TABLES) {
+                scratch.setJSONObject(table, new JSONObject());
+            }
+            for (String value : values) {
+                apply(scratch, new JSONObject(), value);
+            }
+        }
+
+        /**
+         * Parses an axis written as {@code name=values}. Values are either a comma-separated
+         * list or an inclusive range {@code from:to:step}. Ball lists separate their colours
+         * with slashes, e.g. {@code balls=grey/blue,blue/blue/orange}.
+         *
+         * @param spec The axis.
+         * @return The parsed axis.
+         */
+        public static Axis parse(String spec) {
+            int equals = spec.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected name=values but got " + spec);
+            }
+            String name = spec.substring(0, equals);
+            String values = spec.substring(equals + 1);
+            String[] range = values.split(":");
+            if (range.length == 3) {
+                return new Axis(name, expandRange(new BigDecimal(range[0]), new BigDecimal(range[1]), new BigDecimal(range[2])));
+            }
+            return new Axis(name, Arrays.asList(values.split(",")));
+        }
+
+        /**
+         * Lists the values of an inclusive numeric range.
+         *
+         * @param from The first value.
+         * @param to The last value.
+         * @param step The distance between values.
+         * @return The values, formatted without trailing zeros.
+         */
+        private static List<String> expandRange(BigDecimal from, BigDecimal to, BigDecimal step) {
+            if (step.signum() <= 0) {
+                throw new IllegalArgumentException("Range step must be positive");
+            }
+            List<String> values = new ArrayList<>();
+            for (BigDecimal value = from; value.compareTo(to) <= 0; value = value.add(step)) {
+                values.add(value.stripTrailingZeros().toPlainString());
+            }
+            return values;
+        }
+
+        /**
+         * Writes one of this axis's values into a config.
+         *
+         * @param config The config to change.
+         * @param level The config of the level being swept, inside that config.
+         * @param value The value.
+         */
+        void apply(JSONObject config, JSONObject level, String value) {
+            if (isLevelInt(name)) {
+                level.setInt(name, Integer.parseInt(value));
+            } else if (isLevelFloat(name)) {
+                level.setFloat(name, Float.parseFloat(value));
+            } else if (name.equals(BALLS_FIELD)) {
+                JSONArray balls = new JSONArray();
+                for (String color : value.split("/")) {
+                    if (!color.isEmpty()) {
+                        if (Level.getColorIndex(color) < 0) {
+                            throw new IllegalArgumentException("Unknown ball colour " + color);
+                        }
+                        balls.append(color);
+                    }
+                }
+                level.setJSONArray(name, balls);
+            } else {
+                config.getJSONObject(scoreTable(name)).setInt(name.substring(name.indexOf('.') + 1), Integer.parseInt(value));
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getValues() {
+            return Collections.unmodifiableList(values);
+        }
+    }
+
+    /**
+     * The games played at one grid point.
+     */
+    public static class Result {
+        private final List<String> values;
+        private final int[] scores;
+        private final int completed;
+        private final double completionSeconds;
+
+        /**
+         * Constructor for the Result object.
+         *
+         * @param values The value of each axis at this point.
+         * @param scores The final score of every game, in any order.
+         * @param completed The number of games in which the level was completed.
+         * @param completionSeconds The mean simulated time to complete the level, or NaN.
+         */
+        public Result(List<String> values, int[] scores, int completed, double completionSeconds) {
+            this.values = values;
+            this.scores = scores.clone();
+            Arrays.sort(this.scores);
+            this.completed = completed;
+            this.completionSeconds = completionSeconds;
+        }
+
+        /**
+         * Gets the mean final score.
+         *
+         * @return The mean.
+         */
+        public double getMeanScore() {
+            long total = 0;
+            for (int score : scores) {
+                total += score;
+            }
+            return (double) total / scores.length;
+        }
+
+        /**
+         * Gets the sample standard deviation of the final scores.
+         *
+         * @return The standard deviation, or 0 for a single game.
+         */
+        public double getScoreDeviation() {
+            if (scores.length < 2) {
+                return 0;
+            }
+            double mean = getMeanScore();
+            double sum = 0;
+            for (int score : scores) {
+                sum += (score - mean) * (score - mean);
+            }
+            return Math.sqrt(sum / (scores.length - 1));
+        }
+
+        /**
+         * Gets a percentile of the final scores, using the nearest-rank method.
+         *
+         * @param percent The percentile, from 0 to 100.
+         * @return The score.
+         */
+        public int getScorePercentile(double percent) {
+            int rank = (int) Math.ceil(percent / 100 * scores.length);
+            return scores[Math.max(0, Math.min(scores.length - 1, rank - 1))];
+        }
+
+        /**
+         * Formats this result as a CSV row, in the same column order as the header.
+         *
+         * @return The row, without a line break.
+         */
+        public String toCsvRow() {
+            StringBuilder row = new StringBuilder();
+            for (String value : values) {
+                row.append(value).append(',');
+            }
+            row.append(getGames()).append(',')
+                    .append(completed).append(',')
+                    .append(String.format("%.4f,%.2f,%.2f,", getCompletionRate(), getMeanScore(), getScoreDeviation()))
+                    .append(scores[0]).append(',')
+                    .append(getScorePercentile(10)).append(',')
+                    .append(getScorePercentile(50)).append(',')
+                    .append(getScorePercentile(90)).append(',')
+                    .append(scores[scores.length - 1]).append(',')
+                    .append(Double.isNaN(completionSeconds) ? "" : String.format("%.2f", completionSeconds));
+            return row.toString();
+        }
+
+        public List<String> getValues() {
+            return values;
+        }
+
+        public int getGames() {
+            return scores.length;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public double getCompletionRate() {
+            return (double) completed / scores.length;
+        }
+
+        public double getCompletionSeconds() {
+            return completionSeconds;
+        }
+    }
+
+    /**
+     * Constructor for the ParameterSweep object.
+     *
+     * @param config The base configuration; it is copied, never changed.
+     * @param levelIndex The level to play.
+     * @param axes The fields to vary; every combination of their values is played.
+     * @param gamesPerPoint The number of games played at each grid point.
+     * @param seed The seed of the first game at each point; later games use the following seeds.
+     * @param threads The number of worker threads.
+     */
+    public ParameterSweep(JSONObject config, int levelIndex, List<Axis> axes, int gamesPerPoint, long seed, int threads) {
+        if (levelIndex < 0 || levelIndex >= config.getJSONArray("levels").size()) {
+            throw new IllegalArgumentException("No level " + levelIndex + " in the config");
+        }
+        this.config = config;
+        this.levelIndex = levelIndex;
+        this.axes = new ArrayList<>(axes);
+        this.gamesPerPoint = Math.max(1, gamesPerPoint);
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Gets the number of grid points.
+     *
+     * @return The product of the axis sizes.
+     */
+    public int getPointCount() {
+        int count = 1;
+        for (Axis axis : axes) {
+            count *= axis.values.size();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the axis values at a grid point. The last axis varies fastest.
+     *
+     * @param point The grid point.
+     * @return One value per axis.
+     */
+    public List<String> valuesAt(int point) {
+        String[] values = new String[axes.size()];
+        for (int a = axes.size() - 1; a >= 0; a--) {
+            List<String> axisValues = axes.get(a).values;
+            values[a] = axisValues.get(point % axisValues.size());
+            point /= axisValues.size();
+        }
+        return Arrays.asList(values);
+    }
+
+    /**
+     * Builds the config for a grid point. It holds only the swept level, so the game ends
+     * when that level does.
+     *
+     * @param values One value per axis.
+     * @return The config.
+     */
+    public JSONObject configFor(List<String> values) {
+        JSONObject copy = JSONObject.parse(config.format(-1));
+        JSONObject level = copy.getJSONArray("levels").getJSONObject(levelIndex);
+        for (String table : SCORE_TABLES) {
+            if (!copy.hasKey(table)) {
+                copy.setJSONObject(table, new JSONObject());
+            }
+        }
+        for (int a = 0; a < axes.size(); a++) {
+            axes.get(a).apply(copy, level, values.get(a));
+        }
+        JSONArray levels = new JSONArray();
+        levels.append(level);
+        copy.setJSONArray("levels", levels);
+        return copy;
+    }
+
+    /**
+     * Plays every grid point.
+     *
+     * @param player The player making moves in every game.
+     * @return One result per grid point, in grid order.
+     */
+    public List<Result> run(final Player player) {
+        int points = getPointCount();
+        final int[][] scores = new int[points][gamesPerPoint];
+        final long[][] completionTicks = new long[points][gamesPerPoint];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int p = 0; p < points; p++) {
+            final int point = p;
+            final JSONObject pointConfig = configFor(valuesAt(p));
+            for (int g = 0; g < gamesPerPoint; g++) {
+                final int game = g;
+                tasks.add(() -> {
+                    App app = play(pointConfig, seed + game, player);
+                    scores[point][game] = app.getScore();
+                    completionTicks[point][game] = app.isLevelCompleted() ? app.getTick() : -1;
+                    return null;
+                });
+            }
+        }
+        ParallelTasks.runAll(threads, tasks);
+
+        List<Result> results = new ArrayList<>(points);
+        for (int p = 0; p < points; p++) {
+            int completed = 0;
+            long ticks = 0;
+            for (long t : completionTicks[p]) {
+                if (t >= 0) {
+                    completed++;
+                    ticks += t;
+                }
+            }
+            double seconds = completed > 0 ? (double) ticks / completed / App.FPS : Double.NaN;
+            results.add(new Result(valuesAt(p), scores[p], completed, seconds));
+        }
+        return results;
+    }
+
+    /**
+     * Plays one game until the level is completed or the time runs out.
+     *
+     * @param config The config, holding only the level to play.
+     * @param seed The game's seed.
+     * @param player The player.
+     * @return The finished game.
+     */
+    static App play(JSONObject config, long seed, Player player) {
+        return player.playOut(App.createHeadless(config, seed));
+    }
+
+    /**
+     * Writes results as CSV, one row per grid point with a column per axis.
+     *
+     * @param results The results of {@link #run(Player)}.
+     * @param out Where to write; it is flushed but not closed.
+     */
+    public void writeCsv(List<Result> results, Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+        for (Axis axis : axes) {
+            writer.print(axis.name + ",");
+        }
+        writer.println(CSV_HEADER);
+        for (Result result : results) {
+            writer.println(result.toCsvRow());
+        }
+        writer.flush();
+    }
+
+    private static boolean isLevelInt(String name) {
+        return Arrays.asList(LEVEL_INT_FIELDS).contains(name);
+    }
+
+    private static boolean isLevelFloat(String name) {
+        return Arrays.asList(LEVEL_FLOAT_FIELDS).contains(name);
+    }
+
+    /**
+     * Finds the score table an axis name refers to.
+     *
+     * @param name The axis name.
+     * @return The table's name, or null if the name is not a score table entry for a known colour.
+     */
+    private static String scoreTable(String name) {
+        int dot = name.indexOf('.');
+        if (dot < 0 || dot == name.length() - 1) {
+            return null;
+        }
+        String table = name.substring(0, dot);
+        int color = Level.getColorIndex(name.substring(dot + 1));
+        // Score tables are keyed by the exact colour names the game looks up
+        if (color < 0 || !Level.COLOR_NAMES[color].equals(name.substring(dot + 1))) {
+            return null;
+        }
+        return Arrays.asList(SCORE_TABLES).contains(table) ? table : null;
+    }
+
+    /**
+     * Runs a sweep from the command line and writes the results as CSV.
+     *
+     * <p>Usage: {@code ParameterSweep [--level N] [--games N] [--seed N] [--threads N]
+     * [--player idle|solver|FILE] [--out FILE] [--config RESOURCE] name=values...}, where
+     * FILE is a recording to replay as a scripted player.</p>
+     *
+     * @param args The options and axes.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        int level = 0;
+        int games = 32;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String playerName = "idle";
+        String out = null;
+        String configPath = "/inkball/config.json";
+        List<Axis> axes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--level":
+                    level = Integer.parseInt(args[++i]) - 1;
+                    break;
+                case "--games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--player":
+                    playerName = args[++i];
+                    break;
+                case "--out":
+                    out = args[++i];
+                    break;
+                case "--config":
+                    configPath = args[++i];
+                    break;
+                default:
+                    axes.add(Axis.parse(args[i]));
+            }
+        }
+
+        Player player;
+        if (playerName.equals("idle")) {
+            player = Player.IDLE;
+        } else if (playerName.equals("solver")) {
+            player = Player.solver(16, 4, 10, 10);
+        } else {
+            player = Player.scripted(InputLog.load(new File(playerName)));
+        }
+
+        JSONObject config = App.loadConfigResource(configPath);
+        ParameterSweep sweep = new ParameterSweep(config, level, axes, games, seed, threads);
+        long start = System.nanoTime();
+        List<Result> results = sweep.run(player);
+        long elapsed = System.nanoTime() - start;
+
+        if (out == null) {
+            sweep.writeCsv(results, new PrintWriter(System.out));
+        } else {
+            try (Writer writer = Files.newBufferedWriter(new File(out).toPath(), StandardCharsets.UTF_8)) {
+                sweep.writeCsv(results, writer);
+            }
+        }
+        System.err.println("Played " + sweep.getPointCount() * games + " games at " + sweep.getPointCount()
+                + " points in " + (elapsed / 1000000) + " ms");
+    }
+}
@@ -0,0 +1,104 @@
+package inkball;
+
+import java.util.List;
+
+/**
+ * Makes the player's moves in a simulated game. The tools that play games headlessly share
+ * one player between all their games and call it from several threads at once, so a player
+ * must not keep per-game state.
+ */
+public interface Player {
+    /**
+     * A player that never draws a line.
+     */
+    Player IDLE = app -> {
+    };
+
+    /**
+     * Called before every tick of a game.
+     *
+     * @param app The game.
+     */
+    void act(App app);
+
+    /**
+     * Plays a game until the level is completed or the time runs out.
+     *
+     * @param app The game.
+     * @return The finished game.
+     */
+    default App playOut(App app) {
+        return playOut(app, null);
+    }
+
+    /**
+     * Plays a game until the level is completed or the time runs out, running a callback after
+     * every tick.
+     *
+     * @param app The game.
+     * @param afterTick Called after every tick, or null.
+     * @return The finished game.
+     */
+    default App playOut(App app, Runnable afterTick) {
+        while (!app.isLevelCompleted() && !app.isTimeUp()) {
+            act(app);
+            app.tick();
+            if (afterTick != null) {
+                afterTick.run();
+            }
+        }
+        return app;
+    }
+
+    /**
+     * Creates a player that repeats the inputs of a recording, tick for tick, whatever the seed.
+     *
+     * @param log The recorded inputs.
+     * @return The player.
+     */
+    static Player scripted(final InputLog log) {
+        return app -> {
+            long tick = app.getTick();
+            // Binary search for the first input of this tick
+            int low = 0;
+            int high = log.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (log.getTick(mid) < tick) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < log.size() && log.getTick(i) == tick; i++) {
+                app.applyInput(log.getType(i), log.getX(i), log.getY(i));
+            }
+        };
+    }
+
+    /**
+     * Creates a bot that asks a {@link LineSolver} for the best line at a fixed interval and
+     * draws it if it is expected to gain points. The rollouts run on the thread playing the
+     * game, since the tools running bots already keep every core busy with games.
+     *
+     * @param candidates The number of candidate lines per decision.
+     * @param rollouts The number of rollouts per candidate.
+     * @param horizonSeconds How far ahead each rollout plays.
+     * @param intervalSeconds How often the bot decides.
+     * @return The player.
+     */
+    static Player solver(int candidates, int rollouts, int horizonSeconds, int intervalSeconds) {
+        final int interval = Math.max(1, intervalSeconds * App.FPS);
+        final LineSolver solver = new LineSolver(candidates, rollouts, horizonSeconds * App.FPS, 0, 1);
+        return app -> {
+            if (app.getTick() % interval != interval / 2) {
+                return;
+            }
+            // Seed from the game so the bot's choices are as repeatable as the game itself
+            List<LineSolver.Placement> best = solver.solve(app, 1, app.getSeed() * 31 + app.getTick());
+            if (!best.isEmpty() && best.get(0).getExpectedGain() > 0) {
+                best.get(0).apply(app);
+            }
+        };
+    }
+}
@@ -0,0 +1,673 @@
+package inkball;
+
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Works out, without any player lines, where the balls of a level can end up.
+ *
+ * <p>A ball is traced from every spawner with each of the four velocities a ball can spawn
+ * with and each of the five colours, and from every ball placed in the layout with each
+ * velocity. Traces run on forks of a headless game, so wall reflection, colour-changing walls,
+ * brick destruction and hole attraction behave exactly as in play. A trace ends when the ball
+ * is captured, leaves the board, or is found to repeat a state it was in before, in which case
+ * it would loop forever. Loops are found with Brent's algorithm, so a trace needs no memory
+ * beyond one saved state.</p>
+ */
+public class ReachabilityAnalyzer {
+    public static final int CAPTURED = 0;
+    public static final int LOOPS = 1;
+    public static final int ESCAPED = 2;
+    public static final int UNRESOLVED = 3;
+
+    private static final int COLOR_COUNT = Level.COLOR_NAMES.length;
+    private static final int BOARD_COLUMNS = App.WIDTH / App.CELLSIZE;
+    private static final int BOARD_ROWS = (App.HEIGHT - App.TOPBAR) / App.CELLSIZE;
+    private static final float[][] VELOCITIES = {{-2, -2}, {-2, 2}, {2, -2}, {2, 2}};
+
+    private final JSONObject config;
+    private final int maxTicks;
+    private final int threads;
+
+    /**
+     * The outcome of tracing one ball.
+     */
+    public static class Trace {
+        private final int startX;
+        private final int startY;
+        private final int velocityX;
+        private final int velocityY;
+        private final int initialColor;
+        private final int outcome;
+        private final int ticks;
+        private final int hole;
+        private final int captureColor;
+        private final int period;
+        private final BitSet loopTiles;
+
+        /**
+         * Constructor for the Trace object.
+         *
+         * @param start Where the ball started.
+         * @param velocity The ball's initial velocity.
+         * @param initialColor The ball's colour when it started.
+         * @param outcome CAPTURED, LOOPS, ESCAPED or UNRESOLVED.
+         * @param ticks The number of ticks the trace ran for.
+         * @param hole The index of the capturing hole, or -1.
+         * @param captureColor The ball's colour when it was captured, or -1.
+         * @param period The length of the loop in ticks, or 0.
+         * @param loopTiles The tiles the ball passes through on the loop, or null.
+         */
+        public Trace(PVector start, PVector velocity, int initialColor, int outcome, int ticks,
+                     int hole, int captureColor, int period, BitSet loopTiles) {
+            this.startX = (int) start.x;
+            this.startY = (int) start.y;
+            this.velocityX = (int) velocity.x;
+            this.velocityY = (int) velocity.y;
+            this.initialColor = initialColor;
+            this.outcome = outcome;
+            this.ticks = ticks;
+            this.hole = hole;
+            this.captureColor = captureColor;
+            this.period = period;
+            this.loopTiles = loopTiles;
+        }
+
+        /**
+         * Creates the trace a ball of another starting colour would have taken, for traces
+         * whose path did not depend on the colour. Walls only ever recolour a ball to orange,
+         * blue, green or yellow, so a ball that is still grey at the end was never recoloured.
+         *
+         * @param color The other starting colour.
+         * @return The trace for that colour.
+         */
+        Trace withInitialColor(int color) {
+            int captured = outcome == CAPTURED && captureColor == 0 ? color : captureColor;
+            return new Trace(new PVector(startX, startY), new PVector(velocityX, velocityY), color,
+                    outcome, ticks, hole, captured, period, loopTiles);
+        }
+
+        public int getStartX() {
+            return startX;
+        }
+
+        public int getStartY() {
+            return startY;
+        }
+
+        public int getVelocityX() {
+            return velocityX;
+        }
+
+        public int getVelocityY() {
+            return velocityY;
+        }
+
+        public int getInitialColor() {
+            return initialColor;
+        }
+
+        public int getOutcome() {
+            return outcome;
+        }
+
+        public int getTicks() {
+            return ticks;
+        }
+
+        public int getHole() {
+            return hole;
+        }
+
+        public int getCaptureColor() {
+            return captureColor;
+        }
+
+        public int getPeriod() {
+            return period;
+        }
+
+        /**
+         * Gets the tiles of the loop, indexed as row * columns + column.
+         *
+         * @return The loop's tiles, or null if the ball does not loop.
+         */
+        public BitSet getLoopTiles() {
+            return loopTiles;
+        }
+
+        @Override
+        public String toString() {
+            String start = String.format("%s ball from (%d, %d) moving (%+d, %+d)",
+                    Level.COLOR_NAMES[initialColor], startX, startY, velocityX, velocityY);
+            switch (outcome) {
+                case CAPTURED:
+                    return start + ": captured by hole " + hole + " as " + Level.COLOR_NAMES[captureColor]
+                            + " after " + ticks + " ticks";
+                case LOOPS:
+                    return start + ": loops every " + period + " ticks through " + loopTiles.cardinality() + " tiles";
+                case ESCAPED:
+                    return start + ": leaves the board after " + ticks + " ticks";
+                default:
+                    return start + ": unresolved after " + ticks + " ticks";
+            }
+        }
+    }
+
+    /**
+     * The analysis of one level.
+     */
+    public static class Report {
+        private final String name;
+        private final int[] holeColors;
+        private final List<Trace> traces;
+
+        /**
+         * Constructor for the Report object.
+         *
+         * @param name The level's name.
+         * @param holeColors The colour of each hole, in layout order.
+         * @param traces The traces, in source order.
+         */
+        public Report(String name, int[] holeColors, List<Trace> traces) {
+            this.name = name;
+            this.holeColors = holeColors;
+            this.traces = traces;
+        }
+
+        /**
+         * Checks whether a ball of some colour can reach a hole.
+         *
+         * @param hole The hole's index.
+         * @param color The ball's colour on arrival.
+         * @return True if some trace was captured by the hole with that colour.
+         */
+        public boolean isReachable(int hole, int color) {
+            return (getReachableColors(hole) & (1 << color)) != 0;
+        }
+
+        /**
+         * Gets the colours a ball can reach a hole with.
+         *
+         * @param hole The hole's index.
+         * @return A mask with bit c set if a ball of colour c reaches the hole.
+         */
+        public int getReachableColors(int hole) {
+            int mask = 0;
+            for (Trace trace : traces) {
+                if (trace.outcome == CAPTURED && trace.hole == hole) {
+                    mask |= 1 << trace.captureColor;
+                }
+            }
+            return mask;
+        }
+
+        /**
+         * Checks whether a spawned ball of some colour can score without any lines.
+         *
+         * @param color The colour the ball spawns with.
+         * @return True if some trace of that colour ends in a hole that accepts it.
+         */
+        public boolean canScore(int color) {
+            for (Trace trace : traces) {
+                if (trace.initialColor == color && trace.outcome == CAPTURED && accepts(trace.hole, trace.captureColor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks whether a hole scores a ball, using the same rule as Hole.handleCapture.
+         *
+         * @param hole The hole's index.
+         * @param color The ball's colour.
+         * @return True if the capture scores.
+         */
+        public boolean accepts(int hole, int color) {
+            return holeColors[hole] == color || holeColors[hole] == 0 || color == 0;
+        }
+
+        /**
+         * Gets the traces that end with the given outcome.
+         *
+         * @param outcome CAPTURED, LOOPS, ESCAPED or UNRESOLVED.
+         * @return The matching traces.
+         */
+        public List<Trace> getTraces(int outcome) {
+            List<Trace> matching = new ArrayList<>();
+            for (Trace trace : traces) {
+                if (trace.outcome == outcome) {
+                    matching.add(trace);
+                }
+            }
+            return matching;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getHoleCount() {
+            return holeColors.length;
+        }
+
+        public int getHoleColor(int hole) {
+            return holeColors[hole];
+        }
+
+        public List<Trace> getTraces() {
+            return traces;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(name).append(":\n");
+            for (int h = 0; h < holeColors.length; h++) {
+                text.append("  hole ").append(h).append(" (").append(Level.COLOR_NAMES[holeColors[h]]).append("):");
+                int mask = getReachableColors(h);
+                if (mask == 0) {
+                    text.append(" unreachable");
+                }
+                for (int c = 0; c < COLOR_COUNT; c++) {
+                    if ((mask & (1 << c)) != 0) {
+                        text.append(' ').append(Level.COLOR_NAMES[c]);
+                    }
+                }
+                text.append('\n');
+            }
+            for (int c = 0; c < COLOR_COUNT; c++) {
+                if (!canScore(c)) {
+                    text.append("  ").append(Level.COLOR_NAMES[c]).append(" balls cannot score without lines\n");
+                }
+            }
+            for (Trace trace : traces) {
+                if (trace.outcome != CAPTURED) {
+                    text.append("  ").append(trace).append('\n');
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Constructor for the ReachabilityAnalyzer object, using every available core.
+     *
+     * @param config The game configuration, used for hole scoring.
+     * @param maxTicks How long a trace may run before it is reported as unresolved.
+     */
+    public ReachabilityAnalyzer(JSONObject config, int maxTicks) {
+        this(config, maxTicks, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for the ReachabilityAnalyzer object.
+     *
+     * @param config The game configuration, used for hole scoring.
+     * @param maxTicks How long a trace may run before it is reported as unresolved.
+     * @param threads The number of worker threads.
+     */
+    public ReachabilityAnalyzer(JSONObject config, int maxTicks, int threads) {
+        this.config = config;
+        this.maxTicks = maxTicks;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Analyzes one level, running its traces in parallel.
+     *
+     * @param name The level's name, for the report.
+     * @param layout The layout in the levelN.txt format, one string per row.
+     * @return The level's report.
+     */
+    public Report analyze(String name, String[] layout) {
+        final App base = createBase(layout);
+        List<Callable<List<Trace>>> tasks = new ArrayList<>();
+        for (final float[] source : sources(base)) {
+            tasks.add(() -> traceSource(base, source));
+        }
+        List<Trace> traces = new ArrayList<>();
+        for (List<Trace> sourceTraces : ParallelTasks.runAll(threads, tasks)) {
+            traces.addAll(sourceTraces);
+        }
+        return new Report(name, holeColors(base), traces);
+    }
+
+    /**
+     * Analyzes a pack of levels, running one level per worker at a time.
+     *
+     * @param names The levels' names.
+     * @param layouts The layouts, in the same order as the names.
+     * @return The reports, in the same order as the layouts.
+     */
+    public List<Report> analyzeAll(final List<String> names, List<String[]> layouts) {
+        List<Callable<Report>> tasks = new ArrayList<>();
+        for (int i = 0; i < layouts.size(); i++) {
+            final String name = names.get(i);
+            final String[] layout = layouts.get(i);
+            tasks.add(() -> {
+                App base = createBase(layout);
+                List<Trace> traces = new ArrayList<>();
+                for (float[] source : sources(base)) {
+                    traces.addAll(traceSource(base, source));
+                }
+                return new Report(name, holeColors(base), traces);
+            });
+        }
+        return ParallelTasks.runAll(threads, tasks);
+    }
+
+    /**
+     * Loads a layout into a headless game with no balls in play.
+     * Traces fork this game, so it is never ticked itself.
+     *
+     * @param layout The layout.
+     * @return The game.
+     */
+    private App createBase(String[] layout) {
+        App base = App.createHeadless(config, 0, layout);
+        // Build the wall grid once here rather than racing to build it in every fork
+        base.getCurrentLevel().getWallGrid();
+        return base;
+    }
+
+    /**
+     * Lists every ball to trace as {x, y, velocityX, velocityY, colour}.
+     * Spawned balls can have any colour, which is written as -1.
+     *
+     * @param base The game with the layout loaded.
+     * @return The starting states, spawners first and then layout balls, in layout order.
+     */
+    private static List<float[]> sources(App base) {
+        List<float[]> sources = new ArrayList<>();
+        for (Spawner spawner : base.getCurrentLevel().getSpawners()) {
+            PVector start = PVector.add(spawner.getPosition(), new PVector(App.CELLSIZE / 2, App.CELLSIZE / 2));
+            for (float[] velocity : VELOCITIES) {
+                sources.add(new float[] {start.x, start.y, velocity[0], velocity[1], -1});
+            }
+        }
+        for (Ball ball : base.getCurrentLevel().getBalls()) {
+            for (float[] velocity : VELOCITIES) {
+                sources.add(new float[] {ball.getPosition().x, ball.getPosition().y,
+                    velocity[0], velocity[1], ball.getColorType()});
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Traces one starting state. A ball's colour only changes its path when it hits a coloured
+     * brick, because only matching bricks count the hit; once a wall has recoloured the ball,
+     * every starting colour carries on identically. So spawned balls are traced once as grey
+     * and the result is shared by all colours, unless the grey ball comes near a coloured brick
+     * before any wall has recoloured it, in which case each colour is traced on its own.
+     *
+     * @param base The game to fork traces from.
+     * @param source The starting state as {x, y, velocityX, velocityY, colour}.
+     * @return One trace per colour the ball can start with.
+     */
+    private List<Trace> traceSource(App base, float[] source) {
+        if (source[4] >= 0) {
+            return Collections.singletonList(trace(base, source, (int) source[4], false));
+        }
+        List<Trace> traces = new ArrayList<>(COLOR_COUNT);
+        Trace grey = trace(base, source, 0, true);
+        for (int color = 0; color < COLOR_COUNT; color++) {
+            traces.add(grey != null ? grey.withInitialColor(color) : trace(base, source, color, false));
+        }
+        return traces;
+    }
+
+    /**
+     * Gets the colour of every hole in a layout.
+     *
+     * @param base The game with the layout loaded.
+     * @return The hole colours in layout order.
+     */
+    private static int[] holeColors(App base) {
+        List<Hole> holes = base.getCurrentLevel().getHoles();
+        int[] colors = new int[holes.size()];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = Level.getColorIndex(holes.get(i).getColorName());
+        }
+        return colors;
+    }
+
+    /**
+     * Traces a single ball until it is captured, leaves the board or loops.
+     *
+     * @param base The game to fork the trace from.
+     * @param source The starting state as {x, y, velocityX, velocityY, colour}.
+     * @param color The colour the ball starts with.
+     * @param shared Whether the trace stands in for every colour, and so must give up
+     *               before the ball could hit a coloured brick without having been recoloured.
+     * @return The outcome, or null if a shared trace gave up.
+     */
+    private Trace trace(App base, float[] source, int color, boolean shared) {
+        App app = base.fork();
+        Level level = app.getCurrentLevel();
+        level.setBalls(new ArrayList<Ball>());
+        PVector start = new PVector(source[0], source[1]);
+        PVector velocity = new PVector(source[2], source[3]);
+        Ball ball = new Ball(start.copy(), null, app, color);
+        ball.setVelocity(velocity.copy());
+        level.addBall(ball);
+
+        TraceState saved = new TraceState();
+        saved.capture(level, ball);
+        int power = 1;
+        int lambda = 0;
+        for (int tick = 1; tick <= maxTicks; tick++) {
+            if (shared && ball.getColorType() == color && isNearColoredBrick(level, ball)) {
+                return null;
+            }
+            level.update(config);
+            if (level.getBalls().isEmpty()) {
+                return new Trace(start, velocity, color, CAPTURED, tick,
+                        nearestHole(level, ball.getPosition()), ball.getColorType(), 0, null);
+            }
+            if (isOffBoard(ball.getPosition())) {
+                return new Trace(start, velocity, color, ESCAPED, tick, -1, -1, 0, null);
+            }
+            lambda++;
+            if (saved.matches(level, ball)) {
+                BitSet tiles = new BitSet(BOARD_COLUMNS * BOARD_ROWS);
+                for (int i = 0; i < lambda; i++) {
+                    level.update(config);
+                    if (isOffBoard(ball.getPosition())) {
+                        continue;
+                    }
+                    int column = (int) Math.floor(ball.getPosition().x / App.CELLSIZE);
+                    int row = (int) Math.floor(ball.getPosition().y / App.CELLSIZE);
+                    tiles.set(row * BOARD_COLUMNS + column);
+                }
+                return new Trace(start, velocity, color, LOOPS, tick, -1, -1, lambda, tiles);
+            }
+            if (lambda == power) {
+                saved.capture(level, ball);
+                power *= 2;
+                lambda = 0;
+            }
+        }
+        return new Trace(start, velocity, color, UNRESOLVED, maxTicks, -1, -1, 0, null);
+    }
+
+    /**
+     * Checks whether a ball could touch a coloured brick during the next tick.
+     * The margin covers the ball's movement and being pushed back by walls.
+     *
+     * @param level The traced level.
+     * @param ball The ball.
+     * @return True if a coloured brick is within reach.
+     */
+    private static boolean isNearColoredBrick(Level level, Ball ball) {
+        float reach = ball.getRadius() * 2 + ball.getVelocity().mag() + 1;
+        float x = ball.getPosition().x;
+        float y = ball.getPosition().y;
+        for (Brick brick : level.getBricks()) {
+            if (brick.getWallType() == 0) {
+                continue;
+            }
+            float closestX = Math.max(brick.getPosition().x, Math.min(x, brick.getPosition().x + App.CELLSIZE));
+            float closestY = Math.max(brick.getPosition().y, Math.min(y, brick.getPosition().y + App.CELLSIZE));
+            if ((x - closestX) * (x - closestX) + (y - closestY) * (y - closestY) < reach * reach) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a position is outside the board.
+     *
+     * @param position The position.
+     * @return True if it is off the board.
+     */
+    private static boolean isOffBoard(PVector position) {
+        return position.x < 0 || position.y < 0
+                || position.x >= BOARD_COLUMNS * App.CELLSIZE || position.y >= BOARD_ROWS * App.CELLSIZE;
+    }
+
+    /**
+     * Finds the hole whose centre is closest to a position. Holes capture a ball only within
+     * its radius of their centre, so this is the hole that captured a ball at that position.
+     *
+     * @param level The level.
+     * @param position The ball's position when it was captured.
+     * @return The index of the hole.
+     */
+    private static int nearestHole(Level level, PVector position) {
+        int nearest = -1;
+        float best = Float.MAX_VALUE;
+        List<Hole> holes = level.getHoles();
+        for (int i = 0; i < holes.size(); i++) {
+            PVector centre = PVector.add(holes.get(i).getPosition(), new PVector(App.CELLSIZE, App.CELLSIZE));
+            float distance = PVector.dist(centre, position);
+            if (distance < best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Everything a traced ball's future depends on, saved so a later tick can be compared to it.
+     */
+    private static class TraceState {
+        private float x;
+        private float y;
+        private float velocityX;
+        private float velocityY;
+        private float radius;
+        private int color;
+        private int[] cooldownIds = new int[8];
+        private int[] cooldownValues = new int[8];
+        private int cooldownCount;
+        private int brickVersion;
+
+        /**
+         * Saves the current state of a trace.
+         *
+         * @param level The traced level.
+         * @param ball The traced ball.
+         */
+        void capture(Level level, Ball ball) {
+            x = ball.getPosition().x;
+            y = ball.getPosition().y;
+            velocityX = ball.getVelocity().x;
+            velocityY = ball.getVelocity().y;
+            radius = ball.getRadius();
+            color = ball.getColorType();
+            cooldownCount = ball.getCooldownCount();
+            if (cooldownIds.length < cooldownCount) {
+                cooldownIds = new int[cooldownCount];
+                cooldownValues = new int[cooldownCount];
+            }
+            for (int i = 0; i < cooldownCount; i++) {
+                cooldownIds[i] = ball.getCooldownWallId(i);
+                cooldownValues[i] = ball.getCooldownValue(i);
+            }
+            brickVersion = level.getBrickVersion();
+        }
+
+        /**
+         * Checks whether a trace is in exactly the saved state.
+         *
+         * @param level The traced level.
+         * @param ball The traced ball.
+         * @return True if the states are equal.
+         */
+        boolean matches(Level level, Ball ball) {
+            if (ball.getPosition().x != x || ball.getPosition().y != y
+                    || ball.getVelocity().x != velocityX || ball.getVelocity().y != velocityY
+                    || ball.getRadius() != radius || ball.getColorType() != color
+                    || ball.getCooldownCount() != cooldownCount) {
+                return false;
+            }
+            // Cooldowns are unordered, so look each one up
+            for (int i = 0; i < cooldownCount; i++) {
+                int id = ball.getCooldownWallId(i);
+                int value = ball.getCooldownValue(i);
+                boolean found = false;
+                for (int j = 0; j < cooldownCount && !found; j++) {
+                    found = cooldownIds[j] == id && cooldownValues[j] == value;
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            // A hit only ever raises a brick's count or removes it, so the bricks are as saved
+            // exactly when no hit has happened since
+            return level.getBrickVersion() == brickVersion;
+        }
+    }
+
+    /**
+     * Analyzes level layouts from the command line and prints a report for each.
+     * With no arguments, the levels of the default config are analyzed.
+     *
+     * @param args Layout files, or directories whose .txt files are all layouts.
+     * @throws IOException If a layout cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        List<String> names = new ArrayList<>();
+        List<String[]> layouts = new ArrayList<>();
+        if (args.length == 0) {
+            for (int i = 0; i < config.getJSONArray("levels").size(); i++) {
+                String file = config.getJSONArray("levels").getJSONObject(i).getString("layout");
+                names.add(file);
+                layouts.add(App.loadStrings(ReachabilityAnalyzer.class.getResourceAsStream("/inkball/" + file)));
+            }
+        }
+        for (String arg : args) {
+            File path = new File(arg);
+            File[] files = path.isDirectory() ? path.listFiles((dir, file) -> file.endsWith(".txt")) : new File[] {path};
+            Arrays.sort(files);
+            for (File file : files) {
+                names.add(file.getPath());
+                layouts.add(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).toArray(new String[0]));
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Report> reports = new ReachabilityAnalyzer(config, 60 * App.FPS * 10).analyzeAll(names, layouts);
+        long elapsed = System.nanoTime() - start;
+        for (Report report : reports) {
+            System.out.print(report);
+        }
+        System.out.println("Analyzed " + reports.size() + " levels in " + (elapsed / 1000000) + " ms");
+    }
+}
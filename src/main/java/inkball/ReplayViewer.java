@@ -0,0 +1,106 @@
+package inkball;
+
+import processing.core.PApplet;
+import processing.event.MouseEvent;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A window that plays an {@link IndexedReplay} and can be scrubbed to any tick.
+ *
+ * <p>Run with {@code --replay path}. Space pauses and resumes playback, the left and right
+ * arrow keys jump five seconds, and pressing or dragging the mouse seeks to the tick at that
+ * fraction of the window's width. Seeks are applied at the start of the next frame, on the
+ * animation thread, like the game's own input.</p>
+ */
+public class ReplayViewer extends App {
+    private static final int JUMP = 5 * FPS;
+    private static final int BAR_HEIGHT = 6;
+
+    private IndexedReplay replay;
+    private volatile long pendingSeek = -1;
+    private volatile boolean playing = true;
+
+    /**
+     * Sets up the window as the game does and opens the replay named on the command line.
+     */
+    @Override
+    public void setup() {
+        super.setup();
+        for (int i = 0; args != null && i < args.length - 1; i++) {
+            if (args[i].equals("--replay")) {
+                try {
+                    replay = IndexedReplay.open(new File(args[i + 1]), this);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies any seek, plays one tick if playing, and draws the game with a progress bar.
+     */
+    @Override
+    public void draw() {
+        if (replay != null) {
+            long seek = pendingSeek;
+            if (seek >= 0) {
+                pendingSeek = -1;
+                replay.seek(seek);
+            } else if (playing) {
+                replay.step();
+            }
+        }
+        render();
+        if (replay != null) {
+            noStroke();
+            fill(60, 120, 220);
+            rect(0, TOPBAR - BAR_HEIGHT, width * replay.getTick() / (float) Math.max(1, replay.getEndTick()), BAR_HEIGHT);
+        }
+    }
+
+    @Override
+    public void keyPressed() {
+        if (replay == null) {
+            return;
+        }
+        if (key == ' ') {
+            playing = !playing;
+        } else if (key == CODED && keyCode == LEFT) {
+            pendingSeek = Math.max(0, replay.getTick() - JUMP);
+        } else if (key == CODED && keyCode == RIGHT) {
+            pendingSeek = replay.getTick() + JUMP;
+        }
+    }
+
+    @Override
+    public void mousePressed(MouseEvent event) {
+        scrubTo(mouseX);
+    }
+
+    @Override
+    public void mouseDragged() {
+        scrubTo(mouseX);
+    }
+
+    @Override
+    public void mouseReleased() {
+        // Playback carries on from wherever the scrub ended
+    }
+
+    private void scrubTo(int x) {
+        if (replay != null) {
+            pendingSeek = (long) (Math.max(0, Math.min(width, x)) / (double) width * replay.getEndTick());
+        }
+    }
+
+    public IndexedReplay getReplay() {
+        return replay;
+    }
+
+    public static void main(String[] args) {
+        PApplet.main("inkball.ReplayViewer", args);
+    }
+}
@@ -0,0 +1,90 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays an {@link InputLog} on a headless App as fast as the CPU allows.
+ */
+public class Replayer {
+    private final InputLog log;
+    private final App app;
+    private int cursor;
+
+    /**
+     * Constructor for the Replayer object.
+     *
+     * @param log The recorded inputs.
+     * @param config The configuration the log was recorded with.
+     */
+    public Replayer(InputLog log, JSONObject config) {
+        this(log, config, null);
+    }
+
+    /**
+     * Constructor for a Replayer whose App takes its layouts from a shared cache.
+     *
+     * @param log The recorded inputs.
+     * @param config The configuration the log was recorded with.
+     * @param layouts The cache to load layouts from, or null to parse them.
+     */
+    public Replayer(InputLog log, JSONObject config, LayoutCache layouts) {
+        if (App.configHash(config) != log.getConfigHash()) {
+            throw new IllegalArgumentException("Replay was recorded with a different config");
+        }
+        this.log = log;
+        this.app = App.createHeadless(config, log.getSeed(), layouts);
+        this.cursor = 0;
+    }
+
+    /**
+     * Applies the inputs recorded for the current tick and advances the game by one tick.
+     *
+     * @return False once the end of the recording has been reached.
+     */
+    public boolean step() {
+        if (app.getTick() >= log.getEndTick()) {
+            return false;
+        }
+        while (cursor < log.size() && log.getTick(cursor) == app.getTick()) {
+            app.applyInput(log.getType(cursor), log.getX(cursor), log.getY(cursor));
+            cursor++;
+        }
+        app.tick();
+        return true;
+    }
+
+    /**
+     * Replays the whole recording.
+     *
+     * @return The App in its final state.
+     */
+    public App run() {
+        while (step()) {
+            // Keep stepping until the recording ends
+        }
+        return app;
+    }
+
+    public App getApp() {
+        return app;
+    }
+
+    /**
+     * Replays a recording from the command line and prints the final score.
+     *
+     * @param args The path of the recording, optionally followed by a config resource path.
+     * @throws IOException If the recording cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        InputLog log = InputLog.load(new File(args[0]));
+        JSONObject config = App.loadConfigResource(args.length > 1 ? args[1] : "/inkball/config.json");
+        long start = System.nanoTime();
+        App app = new Replayer(log, config).run();
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Ticks: " + app.getTick() + ", score: " + app.getScore()
+                + ", replayed in " + (elapsed / 1000000) + " ms");
+    }
+}
@@ -0,0 +1,273 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One player's side of a head-to-head match that predicts instead of waiting, for play over
+ * links with high latency.
+ *
+ * <p>As in a {@link LockstepMatch}, every player has a board and every peer simulates every
+ * board from the same config and seed. Here each peer ticks at its own pace, applying local
+ * input straight away and predicting that the other players did nothing, which is what they
+ * do on almost every tick. Each board keeps a ring buffer of the snapshots taken before each
+ * of its recent ticks. When a remote player's input turns out to have been for a tick that has
+ * already run, only that player's board is restored to the snapshot before that tick and
+ * re-simulated up to the present with the input in place, within the same frame. Input that is
+ * older than the ring buffer is an error.</p>
+ *
+ * <p>Snapshots are {@link LevelSnapshot}s, which capture and restore in place. A restore
+ * reuses the balls the board has removed since and puts back the finished lines it captured,
+ * so it only allocates to bring back a line that was still being drawn, or once the board runs
+ * out of spare balls; the ticks simulated again allocate as any tick does.</p>
+ *
+ * <p>Messages use the {@link LockstepMatch} format; the checksum in a message is the CRC32 of
+ * the sender's own board after its last tick, which the receiver checks against its copy of
+ * that board once the tick is final.</p>
+ */
+public class RollbackMatch {
+    private static final int INPUT_WINDOW = 1024;
+    private static final long[] NO_INPUT = new long[0];
+
+    private final App[] boards;
+    private final int localPlayer;
+    private final LockstepMatch.Transport transport;
+    private final int history;
+    // Snapshots taken before each tick, per board, indexed by tick modulo history
+    private final LevelSnapshot[][] snapshots;
+    private final long[][] snapshotTicks;
+    // Inputs received per board, indexed by tick modulo INPUT_WINDOW
+    private final long[][][] inputs;
+    private final long[][] inputTicks;
+    private final long[] rollbackFrom;
+    private final List<LockstepMatch.Message> remoteChecksums = new ArrayList<>();
+    private final List<Long> pendingInput = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private long tick;
+    private long rollbacks;
+    private long resimulatedTicks;
+    private long desyncTick = -1;
+    private int desyncPlayer = -1;
+
+    /**
+     * Constructor for the RollbackMatch object.
+     *
+     * @param config The game configuration; every peer must use the same one.
+     * @param seed The match's seed; every peer must use the same one.
+     * @param players The number of players.
+     * @param localPlayer The index of the player on this peer.
+     * @param transport The transport connecting this peer to the others.
+     * @param history How many ticks back a late input can still be rolled back to.
+     */
+    public RollbackMatch(JSONObject config, long seed, int players, int localPlayer,
+                         LockstepMatch.Transport transport, int history) {
+        if (localPlayer < 0 || localPlayer >= players) {
+            throw new IllegalArgumentException("No player " + localPlayer + " in a match of " + players);
+        }
+        this.boards = new App[players];
+        this.localPlayer = localPlayer;
+        this.transport = transport;
+        this.history = Math.max(1, Math.min(INPUT_WINDOW / 2, history));
+        this.snapshots = new LevelSnapshot[players][this.history];
+        this.snapshotTicks = new long[players][this.history];
+        this.inputs = new long[players][INPUT_WINDOW][];
+        this.inputTicks = new long[players][INPUT_WINDOW];
+        this.rollbackFrom = new long[players];
+        for (int p = 0; p < players; p++) {
+            boards[p] = App.createHeadless(config, seed);
+            for (int s = 0; s < this.history; s++) {
+                snapshots[p][s] = new LevelSnapshot();
+            }
+            Arrays.fill(snapshotTicks[p], -1);
+            Arrays.fill(inputTicks[p], -1);
+            rollbackFrom[p] = -1;
+        }
+    }
+
+    /**
+     * Queues an input from the local player, to be applied in the next tick.
+     *
+     * @param type The input type, one of the InputLog constants.
+     * @param x The x coordinate on the board, or 0 if the input has none.
+     * @param y The y coordinate on the board, or 0 if the input has none.
+     */
+    public void input(byte type, int x, int y) {
+        pendingInput.add(InputQueue.pack(type, x, y));
+    }
+
+    /**
+     * Reads the messages that have arrived, corrects every board a late input has proved
+     * wrong, runs the next tick on every board and sends the local input for it. Call this
+     * once per frame.
+     *
+     * @throws IllegalStateException If an input arrived for a tick older than the snapshots kept.
+     */
+    public void advance() {
+        receive();
+        for (int p = 0; p < boards.length; p++) {
+            if (rollbackFrom[p] >= 0) {
+                rollBack(p, rollbackFrom[p]);
+                rollbackFrom[p] = -1;
+            }
+        }
+
+        long[] local = new long[pendingInput.size()];
+        for (int i = 0; i < local.length; i++) {
+            local[i] = pendingInput.get(i);
+        }
+        pendingInput.clear();
+        store(localPlayer, tick, local);
+        for (int p = 0; p < boards.length; p++) {
+            simulate(p, tick);
+        }
+        tick++;
+
+        // The state before the tick just run is the last one this peer has a snapshot of
+        long last = tick - 2;
+        int checksum = last >= 0 ? checksum(snapshots[localPlayer][slot(tick - 1)]) : 0;
+        transport.send(LockstepMatch.encode(localPlayer, tick - 1, last, checksum, local));
+        compareChecksums();
+    }
+
+    /**
+     * Takes every waiting message, files its input and notes the earliest tick each board has
+     * to be rolled back to.
+     */
+    private void receive() {
+        byte[] bytes;
+        while ((bytes = transport.poll()) != null) {
+            LockstepMatch.Message message = LockstepMatch.Message.decode(bytes);
+            int player = message.player;
+            if (player < 0 || player >= boards.length || player == localPlayer) {
+                throw new IllegalStateException("Message from unknown player " + player);
+            }
+            if (message.inputTick >= tick + INPUT_WINDOW / 2) {
+                throw new IllegalStateException("Input for tick " + message.inputTick + " arrived at tick " + tick);
+            }
+            if (message.events.length > 0 && message.inputTick < tick) {
+                if (message.inputTick < tick - history) {
+                    throw new IllegalStateException("Input for tick " + message.inputTick
+                            + " is older than the " + history + " ticks kept for rollback");
+                }
+                if (rollbackFrom[player] < 0 || message.inputTick < rollbackFrom[player]) {
+                    rollbackFrom[player] = message.inputTick;
+                }
+            }
+            store(player, message.inputTick, message.events);
+            if (message.checksumTick >= 0) {
+                remoteChecksums.add(message);
+            }
+        }
+    }
+
+    /**
+     * Restores a board to its state before a tick and runs it forward to the present again.
+     *
+     * @param player The board.
+     * @param from The first tick to run again.
+     */
+    private void rollBack(int player, long from) {
+        snapshots[player][slot(from)].restore(boards[player]);
+        for (long t = from; t < tick; t++) {
+            simulate(player, t);
+        }
+        rollbacks++;
+        resimulatedTicks += tick - from;
+    }
+
+    /**
+     * Runs one tick on one board: takes the snapshot the tick can be rolled back to, applies the
+     * board's input for the tick, if any has arrived, and ticks it.
+     *
+     * @param player The board.
+     * @param t The tick.
+     */
+    private void simulate(int player, long t) {
+        App board = boards[player];
+        snapshots[player][slot(t)].capture(board);
+        snapshotTicks[player][slot(t)] = t;
+        int input = (int) (t % INPUT_WINDOW);
+        long[] events = inputTicks[player][input] == t ? inputs[player][input] : NO_INPUT;
+        for (long event : events) {
+            board.applyInput(InputQueue.typeOf(event), InputQueue.xOf(event), InputQueue.yOf(event));
+        }
+        board.tick();
+    }
+
+    /**
+     * Checks the peers' checksums against this peer's copies of their boards, for every tick
+     * whose snapshot is at hand, and records the first tick that differs.
+     */
+    private void compareChecksums() {
+        for (int i = remoteChecksums.size() - 1; i >= 0; i--) {
+            LockstepMatch.Message remote = remoteChecksums.get(i);
+            // The state after a tick is the snapshot taken before the next one
+            long after = remote.checksumTick + 1;
+            if (after >= tick) {
+                continue;
+            }
+            remoteChecksums.remove(i);
+            if (snapshotTicks[remote.player][slot(after)] != after) {
+                continue;
+            }
+            int ours = checksum(snapshots[remote.player][slot(after)]);
+            if (ours != remote.checksum && (desyncTick < 0 || remote.checksumTick < desyncTick)) {
+                desyncTick = remote.checksumTick;
+                desyncPlayer = remote.player;
+            }
+        }
+    }
+
+    private int checksum(LevelSnapshot snapshot) {
+        crc.reset();
+        crc.update(snapshot.getBuffer().array(), snapshot.getBuffer().arrayOffset(), snapshot.size());
+        return (int) crc.getValue();
+    }
+
+    private void store(int player, long inputTick, long[] events) {
+        int slot = (int) (inputTick % INPUT_WINDOW);
+        inputs[player][slot] = events;
+        inputTicks[player][slot] = inputTick;
+    }
+
+    private int slot(long t) {
+        return (int) (t % history);
+    }
+
+    /**
+     * Checks whether a peer's copy of a board has been found to differ from ours.
+     *
+     * @return True if the match has desynced.
+     */
+    public boolean isDesynced() {
+        return desyncTick >= 0;
+    }
+
+    public long getDesyncTick() {
+        return desyncTick;
+    }
+
+    public int getDesyncPlayer() {
+        return desyncPlayer;
+    }
+
+    public App getBoard(int player) {
+        return boards[player];
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getRollbacks() {
+        return rollbacks;
+    }
+
+    public long getResimulatedTicks() {
+        return resimulatedTicks;
+    }
+}
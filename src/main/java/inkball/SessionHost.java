@@ -0,0 +1,356 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs many independent headless games in one JVM, for hosted play and bot ladders.
+ *
+ * <p>Each {@link Session} is a headless App with its own seed, level state and tick rate.
+ * A single scheduler thread keeps every session on a {@link TimerWheel} that turns once per
+ * millisecond; when a session's next tick is due it is handed to a bounded pool of workers,
+ * and it goes back on the wheel once the tick is done. A session is never ticked by two
+ * workers at once, and a session that falls behind skips ahead rather than ticking in a burst.
+ * Waiting sessions cost the scheduler nothing.</p>
+ *
+ * <p>The workers are virtual threads when the JVM has them and platform threads otherwise.
+ * The build targets Java 17, which has no virtual threads, so they are looked up by
+ * reflection on Java 21 and later. Every session loads its levels through one
+ * {@link LayoutCache}, so sessions on the same level share its walls, holes, spawners and
+ * wall grid.</p>
+ */
+public class SessionHost implements AutoCloseable {
+    private final JSONObject config;
+    private final LayoutCache layouts = new LayoutCache();
+    private final ExecutorService workers;
+    private final boolean virtualThreads;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    // Sessions to put on the wheel: new ones, and ones whose tick has finished
+    private final ConcurrentLinkedQueue<Session> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final long start = System.nanoTime();
+    private final TimerWheel wheel = new TimerWheel(-1);
+    private final Thread scheduler;
+    private volatile boolean running = true;
+
+    /**
+     * Hears about every tick of a session.
+     */
+    public interface TickListener {
+        /**
+         * Called on the worker right after a session ticks, while the worker still owns the App.
+         *
+         * @param session The session.
+         */
+        void ticked(Session session);
+    }
+
+    /**
+     * One game running on the host.
+     *
+     * <p>The App belongs to the workers while the session is open. Read it from the player,
+     * which runs on the worker right before each tick, or once the session is closed.</p>
+     */
+    public final class Session {
+        private final long id;
+        private final App app;
+        private final Player player;
+        private final TickListener listener;
+        private final long periodNanos;
+        private final TimerWheel.Timer timer;
+        private long dueNanos;
+        private volatile long ticks;
+        private volatile long skipped;
+        private volatile boolean closed;
+        private volatile RuntimeException failure;
+
+        /**
+         * Constructor for the Session object.
+         *
+         * @param id The session's id on the host.
+         * @param app The game.
+         * @param player The player making moves, called before every tick.
+         * @param listener The listener called after every tick, or null.
+         * @param ticksPerSecond The tick rate.
+         */
+        private Session(long id, App app, Player player, TickListener listener, int ticksPerSecond) {
+            this.id = id;
+            this.app = app;
+            this.player = player;
+            this.listener = listener;
+            this.periodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, ticksPerSecond);
+            this.timer = new TimerWheel.Timer(this::dispatch);
+        }
+
+        /**
+         * Hands the session to a worker. Runs on the scheduler thread when the session is due.
+         */
+        private void dispatch() {
+            if (closed) {
+                return;
+            }
+            try {
+                workers.execute(this::tick);
+            } catch (RejectedExecutionException e) {
+                closed = true;
+            }
+        }
+
+        /**
+         * Ticks the game once and sends the session back to be scheduled. Runs on a worker.
+         */
+        private void tick() {
+            if (closed) {
+                return;
+            }
+            try {
+                player.act(app);
+                app.tick();
+                ticks++;
+                if (listener != null) {
+                    listener.ticked(this);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+                close();
+                return;
+            }
+            ready.add(this);
+        }
+
+        /**
+         * Stops ticking the session and removes it from the host. A tick already running
+         * finishes first.
+         */
+        public void close() {
+            closed = true;
+            sessions.remove(id);
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public App getApp() {
+            return app;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        public RuntimeException getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * Constructor for the SessionHost object.
+     *
+     * @param config The game configuration every session plays.
+     * @param workers The number of sessions that may tick at the same time.
+     */
+    public SessionHost(JSONObject config, int workers) {
+        this.config = config;
+        ThreadFactory virtual = virtualThreadFactory();
+        this.virtualThreads = virtual != null;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workers),
+                virtual != null ? virtual : platformThreadFactory());
+        this.scheduler = new Thread(this::schedule, "inkball-session-scheduler");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+    /**
+     * Starts a session.
+     *
+     * @param seed The seed for the session's random number generator.
+     * @param ticksPerSecond How often the session ticks.
+     * @param player The player making moves, called before every tick. It is shared by every
+     *               session it is passed to and must not keep per-game state.
+     * @return The running session.
+     */
+    public Session open(long seed, int ticksPerSecond, Player player) {
+        return open(seed, ticksPerSecond, player, null);
+    }
+
+    /**
+     * Starts a session whose ticks are reported to a listener, for example to send the game's
+     * state to a client.
+     *
+     * @param seed The seed for the session's random number generator.
+     * @param ticksPerSecond How often the session ticks.
+     * @param player The player making moves, called before every tick.
+     * @param listener The listener called after every tick, or null.
+     * @return The running session.
+     */
+    public Session open(long seed, int ticksPerSecond, Player player, TickListener listener) {
+        if (!running) {
+            throw new IllegalStateException("The host is closed");
+        }
+        App app = App.createHeadless(config, seed, layouts);
+        Session session = new Session(nextId.getAndIncrement(), app, player, listener, ticksPerSecond);
+        session.dueNanos = System.nanoTime() - start;
+        sessions.put(session.id, session);
+        ready.add(session);
+        LockSupport.unpark(scheduler);
+        return session;
+    }
+
+    /**
+     * Starts a session that ticks at the game's normal rate with no player input.
+     *
+     * @param seed The seed for the session's random number generator.
+     * @return The running session.
+     */
+    public Session open(long seed) {
+        return open(seed, App.FPS, Player.IDLE);
+    }
+
+    /**
+     * Gets the sessions that are still open.
+     *
+     * @return A snapshot of the open sessions.
+     */
+    public List<Session> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * Runs the scheduler: once a millisecond, puts ready sessions back on the wheel and
+     * dispatches the ones that are due.
+     */
+    private void schedule() {
+        while (running) {
+            long now = System.nanoTime() - start;
+            Session session;
+            while ((session = ready.poll()) != null) {
+                if (!session.closed) {
+                    session.dueNanos += session.periodNanos;
+                    if (session.dueNanos < now - session.periodNanos) {
+                        // Too far behind to catch up without a burst of ticks
+                        session.skipped += (now - session.dueNanos) / session.periodNanos;
+                        session.dueNanos = now;
+                    }
+                    wheel.schedule(session.timer, millisCeil(session.dueNanos));
+                }
+            }
+            wheel.advance(now / 1000000);
+            LockSupport.parkNanos(1000000 - now % 1000000);
+        }
+    }
+
+    private static long millisCeil(long nanos) {
+        return (nanos + 999999) / 1000000;
+    }
+
+    /**
+     * Looks up a factory for virtual threads, which only exist on Java 21 and later.
+     *
+     * @return The factory, or null if the JVM has no virtual threads.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Object factory = Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            return (ThreadFactory) factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "inkball-session-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Closes every session and stops the scheduler and the workers, waiting briefly for
+     * ticks that are already running.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Session session : getSessions()) {
+            session.close();
+        }
+        LockSupport.unpark(scheduler);
+        workers.shutdown();
+        try {
+            scheduler.join(1000);
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public LayoutCache getLayoutCache() {
+        return layouts;
+    }
+
+    /**
+     * Hosts idle sessions for a while and reports how many ticks they managed and how much heap
+     * each session took when it was opened.
+     *
+     * @param args The number of sessions, the number of seconds and the number of workers.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        try (SessionHost host = new SessionHost(config, threads)) {
+            List<Session> opened = new ArrayList<>();
+            long heapBefore = usedHeap();
+            for (int i = 0; i < count; i++) {
+                opened.add(host.open(i));
+            }
+            long perSession = (usedHeap() - heapBefore) / Math.max(1, count);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+            long ticks = 0;
+            long skipped = 0;
+            for (Session session : opened) {
+                ticks += session.getTicks();
+                skipped += session.getSkipped();
+            }
+            System.out.println(count + " sessions on " + threads + (host.isUsingVirtualThreads() ? " virtual" : " platform")
+                    + " workers: " + (ticks / seconds) + " ticks/s, " + skipped + " ticks skipped, "
+                    + host.getLayoutCache().size() + " layouts cached, " + perSession / 1024 + " KiB heap per session");
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,6 +1,7 @@
 package inkball;
 
 import processing.core.PVector;
+import processing.core.PGraphics;
 import processing.core.PImage;
 
 public class Spawner extends GameObject {
@@ -34,8 +35,21 @@ public class Spawner extends GameObject {
      * @return A new Ball object at the spawner's position.
      */
     public Ball spawnBall(PImage sprite, int colorType) {
+        return spawnBall(sprite, colorType, app);
+    }
+
+    /**
+     * Spawns a new ball for a given App. Spawners are shared between forked levels,
+     * so the ball must draw its velocity from the App that will own it.
+     *
+     * @param sprite The image representing the ball.
+     * @param colorType The color type of the ball to be spawned.
+     * @param owner The application the ball belongs to.
+     * @return A new Ball object at the spawner's position.
+     */
+    public Ball spawnBall(PImage sprite, int colorType, App owner) {
         PVector spawnPosition = PVector.add(position, new PVector(App.CELLSIZE / 2, App.CELLSIZE / 2));
-        return new Ball(spawnPosition, sprite, app, colorType);
+        return new Ball(spawnPosition, sprite, owner, colorType);
     }
 
     /**
@@ -48,6 +62,17 @@ public class Spawner extends GameObject {
         }
     }
 
+    /**
+     * Draws the spawner onto an off-screen layer instead of the screen.
+     *
+     * @param layer The layer to draw onto.
+     */
+    public void display(PGraphics layer) {
+        if (sprite != null) {
+            layer.image(sprite, position.x, position.y, App.CELLSIZE, App.CELLSIZE);
+        }
+    }
+
     /**
      * Checks for collisions with another game object. Spawners do not collide with any objects.
      *
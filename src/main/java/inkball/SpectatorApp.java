@@ -0,0 +1,141 @@
+package inkball;
+
+import processing.core.PApplet;
+import processing.data.JSONObject;
+import processing.event.MouseEvent;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A window that shows a game from a spectator stream instead of playing one.
+ *
+ * <p>Frames are produced on a feed thread and applied by a {@link SpectatorDecoder} at the
+ * start of each frame, on the animation thread, before the game is drawn with the usual
+ * sprites. Input is ignored. The feed is one of:</p>
+ * <ul>
+ *     <li>{@code --file path}: a stream saved with {@link SpectatorEncoder#writeFrame}, played
+ *     back at the game's frame rate;</li>
+ *     <li>{@code --replay path}: an {@link InputLog} replayed and encoded as it runs;</li>
+ *     <li>no arguments: a new game with no player, encoded as it runs.</li>
+ * </ul>
+ */
+public class SpectatorApp extends App {
+    private static final int KEYFRAME_INTERVAL = 10 * FPS;
+
+    private final Queue<byte[]> frames = new ConcurrentLinkedQueue<>();
+    private SpectatorDecoder decoder;
+
+    /**
+     * Sets up the window as the game does and starts the feed.
+     */
+    @Override
+    public void setup() {
+        super.setup();
+        decoder = new SpectatorDecoder(this);
+        Thread feed = new Thread(this::feed, "spectator-feed");
+        feed.setDaemon(true);
+        feed.start();
+    }
+
+    /**
+     * Applies the frames that arrived since the last call and draws the game as they left it.
+     * A corrupt frame is dropped, and the deltas after it are skipped until the next keyframe.
+     */
+    @Override
+    public void draw() {
+        byte[] frame;
+        while ((frame = frames.poll()) != null) {
+            try {
+                decoder.apply(frame);
+            } catch (IllegalStateException e) {
+                System.err.println("Dropped a corrupt spectator frame, waiting for a keyframe: " + e.getMessage());
+            }
+        }
+        render();
+    }
+
+    /**
+     * Produces frames from the source named on the command line until it runs out.
+     */
+    private void feed() {
+        String file = option("--file");
+        String replay = option("--replay");
+        try {
+            if (file != null) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    byte[] frame;
+                    while ((frame = SpectatorEncoder.readFrame(in)) != null) {
+                        frames.add(frame);
+                        Thread.sleep(1000 / FPS);
+                    }
+                }
+            } else {
+                JSONObject config = loadConfigResource("/inkball/config.json");
+                SpectatorEncoder encoder = new SpectatorEncoder(KEYFRAME_INTERVAL);
+                if (replay != null) {
+                    Replayer replayer = new Replayer(InputLog.load(new File(replay)), config);
+                    while (replayer.step()) {
+                        frames.add(encoder.encode(replayer.getApp()));
+                        Thread.sleep(1000 / FPS);
+                    }
+                } else {
+                    App game = createHeadless(config, System.currentTimeMillis());
+                    while (true) {
+                        game.tick();
+                        frames.add(encoder.encode(game));
+                        Thread.sleep(1000 / FPS);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String option(String name) {
+        if (args != null) {
+            for (int i = 0; i < args.length - 1; i++) {
+                if (args[i].equals(name)) {
+                    return args[i + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void keyPressed() {
+        // Spectators cannot pause or restart the game
+    }
+
+    @Override
+    public void mousePressed(MouseEvent event) {
+        // Spectators cannot draw or erase lines
+    }
+
+    @Override
+    public void mouseDragged() {
+        // Spectators cannot draw lines
+    }
+
+    @Override
+    public void mouseReleased() {
+        // Spectators cannot draw lines
+    }
+
+    public SpectatorDecoder getDecoder() {
+        return decoder;
+    }
+
+    public static void main(String[] args) {
+        PApplet.main("inkball.SpectatorApp", args);
+    }
+}
@@ -0,0 +1,408 @@
+package inkball;
+
+import processing.core.PVector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static inkball.SpectatorEncoder.COLOR_BITS;
+import static inkball.SpectatorEncoder.FLAG_BITS;
+import static inkball.SpectatorEncoder.HIT_BITS;
+import static inkball.SpectatorEncoder.POSITION_SCALE;
+import static inkball.SpectatorEncoder.RADIUS_BITS;
+import static inkball.SpectatorEncoder.RADIUS_SCALE;
+
+/**
+ * Applies frames from a {@link SpectatorEncoder} to an App that only displays the game.
+ *
+ * <p>The view is never ticked; each frame overwrites the balls, bricks, lines, score and timers
+ * it shows, reusing its objects where it can. Deltas that arrive before the first keyframe are
+ * ignored, so a spectator can join a stream at any point and starts showing the game at the next
+ * keyframe.</p>
+ *
+ * <p>Every count and index in a frame is checked against the bits left in it and against what
+ * the view holds, so a corrupt frame fails with an IllegalStateException instead of reaching
+ * past a list or allocating for a count it cannot hold. A frame that fails leaves the view
+ * partly updated, so the decoder ignores deltas again until the next keyframe.</p>
+ */
+public class SpectatorDecoder {
+    // The fewest bits a ball takes: four one-bit numbers, a radius and a colour
+    private static final int BALL_BITS = 4 + RADIUS_BITS + COLOR_BITS;
+
+    private final App view;
+    private final Map<Integer, Line> linesById = new HashMap<>();
+    private boolean synced;
+    private long tick;
+    private Line currentLine;
+    private int currentLineId;
+    private int nextLineId;
+    private long frames;
+
+    /**
+     * Constructor for the SpectatorDecoder object.
+     *
+     * @param view The App to display the game in. It must use the same configuration as the game.
+     */
+    public SpectatorDecoder(App view) {
+        this.view = view;
+    }
+
+    /**
+     * Applies a frame to the view.
+     *
+     * @param frame The frame.
+     * @return True if the frame was applied, false if it was a delta without a keyframe before it.
+     * @throws IllegalStateException If the frame is cut short or does not fit the view. The
+     *                               decoder then waits for the next keyframe.
+     */
+    public boolean apply(byte[] frame) {
+        BitReader in = new BitReader(frame);
+        try {
+            if (in.readBit()) {
+                synced = false;
+                readKeyframe(in);
+                synced = true;
+            } else if (synced) {
+                readDelta(in);
+            } else {
+                return false;
+            }
+        } catch (IllegalStateException e) {
+            synced = false;
+            throw e;
+        }
+        frames++;
+        return true;
+    }
+
+    private void readKeyframe(BitReader in) {
+        int levelIndex = readIndex(in, view.getLevelsSize(), "level");
+        view.setCurrentLevelIndex(levelIndex);
+        view.loadLevel(levelIndex);
+        Level level = view.getCurrentLevel();
+        tick = in.readUnsigned();
+        view.setTick(tick);
+
+        view.setScore((int) in.readSigned());
+        view.setRemainingTime((int) in.readSigned());
+        view.setTimeBonusRemaining((int) in.readSigned());
+        setFlags((int) in.read(FLAG_BITS));
+        level.setSpawnCounter((int) in.readSigned());
+        level.setSpawnInterval(Float.intBitsToFloat((int) in.read(32)));
+        List<String> queue = level.getConfigBalls();
+        queue.clear();
+        readColors(in, queue);
+        readTiles(in);
+
+        List<Brick> layoutBricks = level.mutableLayoutBricks();
+        List<Brick> bricks = level.getBricks();
+        bricks.clear();
+        level.markBricksChanged();
+        for (Brick brick : layoutBricks) {
+            if (in.readBit()) {
+                brick.setHitCount((int) in.read(HIT_BITS));
+                bricks.add(brick);
+            }
+        }
+
+        List<Ball> balls = level.mutableBalls();
+        balls.clear();
+        int ballCount = readCount(in, BALL_BITS);
+        for (int i = 0; i < ballCount; i++) {
+            balls.add(readBall(in));
+        }
+
+        List<Line> playerLines = view.getPlayerLines();
+        playerLines.clear();
+        linesById.clear();
+        nextLineId = 0;
+        int lineCount = readCount(in, 1);
+        for (int i = 0; i < lineCount; i++) {
+            Line line = new Line(new ArrayList<>(), view);
+            readPoints(in, line.points());
+            playerLines.add(line);
+            linesById.put(nextLineId++, line);
+        }
+        currentLine = in.readBit() ? readCurrentLine(in) : null;
+        view.setCurrentLine(currentLine);
+        view.markLinesChanged();
+    }
+
+    private void readDelta(BitReader in) {
+        Level level = view.getCurrentLevel();
+        tick += in.readUnsigned() + 1;
+        view.setTick(tick);
+
+        if (in.readBit()) {
+            view.setScore(view.getScore() + (int) in.readSigned());
+        }
+        if (in.readBit()) {
+            view.setRemainingTime(view.getRemainingTime() + (int) in.readSigned());
+        }
+        if (in.readBit()) {
+            view.setTimeBonusRemaining(view.getTimeBonusRemaining() + (int) in.readSigned());
+        }
+        if (in.readBit()) {
+            setFlags((int) in.read(FLAG_BITS));
+        }
+        if (in.readBit()) {
+            level.setSpawnCounter(level.getSpawnCounter() + (int) in.readSigned());
+        } else {
+            level.setSpawnCounter(level.getSpawnCounter() + 1);
+        }
+        if (in.readBit()) {
+            level.setSpawnInterval(Float.intBitsToFloat((int) in.read(32)));
+        }
+        if (in.readBit()) {
+            List<String> queue = level.getConfigBalls();
+            int taken = readIndex(in, queue.size() + 1, "queued ball count");
+            queue.subList(0, taken).clear();
+            readColors(in, queue);
+            if (taken == 1) {
+                view.startMovingUpcomingBalls();
+            }
+        }
+        if (in.readBit()) {
+            readTiles(in);
+        }
+
+        readBricks(in, level);
+        readBalls(in, level);
+        readLines(in);
+    }
+
+    private void readBricks(BitReader in, Level level) {
+        List<Brick> layoutBricks = level.getLayoutBricks();
+        List<Brick> bricks = level.getBricks();
+        int changed = readCount(in, 2);
+        int index = -1;
+        for (int i = 0; i < changed; i++) {
+            index += readIndex(in, layoutBricks.size() - index - 1, "brick") + 1;
+            Brick brick = layoutBricks.get(index);
+            if (in.readBit()) {
+                brick.setHitCount((int) in.read(HIT_BITS));
+            } else {
+                bricks.remove(brick);
+            }
+        }
+        if (changed > 0) {
+            level.markBricksChanged();
+        }
+    }
+
+    private void readBalls(BitReader in, Level level) {
+        List<Ball> balls = level.mutableBalls();
+        int removed = readIndex(in, balls.size() + 1, "removed ball count");
+        int[] indices = new int[removed];
+        int index = -1;
+        for (int i = 0; i < removed; i++) {
+            index += readIndex(in, balls.size() - index - 1, "ball") + 1;
+            indices[i] = index;
+        }
+        for (int i = removed - 1; i >= 0; i--) {
+            balls.remove(indices[i]);
+        }
+
+        for (Ball ball : balls) {
+            int vx = SpectatorEncoder.quantize(ball.getVelocity().x, POSITION_SCALE);
+            int vy = SpectatorEncoder.quantize(ball.getVelocity().y, POSITION_SCALE);
+            if (in.readBit()) {
+                vx += (int) in.readSigned();
+                vy += (int) in.readSigned();
+            }
+            int x = SpectatorEncoder.quantize(ball.getPosition().x, POSITION_SCALE) + vx;
+            int y = SpectatorEncoder.quantize(ball.getPosition().y, POSITION_SCALE) + vy;
+            if (in.readBit()) {
+                x += (int) in.readSigned();
+                y += (int) in.readSigned();
+            }
+            int radius = SpectatorEncoder.quantizeRadius(ball.getRadius());
+            int color = ball.getColorType() + 1;
+            if (in.readBit()) {
+                radius = (int) in.read(RADIUS_BITS);
+                color = (int) in.read(COLOR_BITS);
+            }
+            restore(ball, x, y, vx, vy, radius, color);
+        }
+
+        int added = readCount(in, BALL_BITS);
+        for (int i = 0; i < added; i++) {
+            balls.add(readBall(in));
+        }
+    }
+
+    private void readLines(BitReader in) {
+        if (!in.readBit()) {
+            return;
+        }
+        List<Line> playerLines = view.getPlayerLines();
+        int removed = readIndex(in, linesById.size() + 1, "removed line count");
+        int id = -1;
+        for (int i = 0; i < removed; i++) {
+            id += readIndex(in, nextLineId - id - 1, "line") + 1;
+            Line line = linesById.remove(id);
+            if (line == null) {
+                throw new IllegalStateException("Line " + id + " is not on the board");
+            }
+            playerLines.remove(line);
+        }
+
+        int added = readCount(in, 1);
+        for (int i = 0; i < added; i++) {
+            if (in.readBit()) {
+                requireCurrentLine();
+                currentLine.setDragging(false);
+                playerLines.add(currentLine);
+                linesById.put(currentLineId, currentLine);
+                currentLine = null;
+            } else {
+                Line line = new Line(new ArrayList<>(), view);
+                readPoints(in, line.points());
+                playerLines.add(line);
+                linesById.put(nextLineId++, line);
+            }
+        }
+
+        if (in.readBit()) {
+            if (in.readBit()) {
+                requireCurrentLine();
+                readPoints(in, currentLine.points());
+            } else {
+                currentLine = readCurrentLine(in);
+            }
+        } else {
+            currentLine = null;
+        }
+        view.setCurrentLine(currentLine);
+        view.markLinesChanged();
+    }
+
+    private void requireCurrentLine() {
+        if (currentLine == null) {
+            throw new IllegalStateException("No line is being drawn");
+        }
+    }
+
+    private Line readCurrentLine(BitReader in) {
+        Line line = new Line(new ArrayList<>(), view);
+        currentLineId = nextLineId++;
+        readPoints(in, line.points());
+        line.setDragging(true);
+        return line;
+    }
+
+    /**
+     * Reads points written by the encoder and appends them to a line's points.
+     *
+     * @param in The frame.
+     * @param points The points to append to.
+     */
+    private static void readPoints(BitReader in, List<PVector> points) {
+        int count = readCount(in, 2);
+        for (int i = 0; i < count; i++) {
+            float x = in.readSigned();
+            float y = in.readSigned();
+            if (!points.isEmpty()) {
+                PVector previous = points.get(points.size() - 1);
+                x += previous.x;
+                y += previous.y;
+            }
+            points.add(new PVector(x, y));
+        }
+    }
+
+    private Ball readBall(BitReader in) {
+        int x = (int) in.readSigned();
+        int y = (int) in.readSigned();
+        int vx = (int) in.readSigned();
+        int vy = (int) in.readSigned();
+        int radius = (int) in.read(RADIUS_BITS);
+        int color = (int) in.read(COLOR_BITS);
+        Ball ball = new Ball(new PVector(), null, view, 0);
+        restore(ball, x, y, vx, vy, radius, color);
+        return ball;
+    }
+
+    private static void restore(Ball ball, int x, int y, int vx, int vy, int radius, int color) {
+        float scale = POSITION_SCALE;
+        ball.restore(x / scale, y / scale, vx / scale, vy / scale,
+                radius / (float) RADIUS_SCALE, ball.getOriginalSize(), color - 1);
+    }
+
+    private static void readColors(BitReader in, List<String> queue) {
+        int count = readCount(in, COLOR_BITS);
+        for (int i = 0; i < count; i++) {
+            int color = (int) in.read(COLOR_BITS) - 1;
+            queue.add(color >= 0 ? Level.COLOR_NAMES[color] : "unknown");
+        }
+    }
+
+    private void readTiles(BitReader in) {
+        int count = readCount(in, 2);
+        List<App.YellowTile> tiles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tiles.add(view.new YellowTile(new PVector(in.readSigned(), in.readSigned()), 0));
+        }
+        view.setYellowTiles(count == 0 ? null : tiles);
+    }
+
+    /**
+     * Reads the number of items that follow, which cannot be more than the bits left allow.
+     *
+     * @param in The frame.
+     * @param minBits The fewest bits one item takes.
+     * @return The count.
+     * @throws IllegalStateException If the items cannot fit in the rest of the frame.
+     */
+    private static int readCount(BitReader in, int minBits) {
+        long count = in.readUnsigned();
+        if (count > in.remaining() / minBits) {
+            throw new IllegalStateException("Count " + count + " does not fit the frame");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Reads a value that must be below a bound, such as an index into one of the view's lists.
+     *
+     * @param in The frame.
+     * @param bound The smallest value that is out of range.
+     * @param what What the value counts or indexes, for the error message.
+     * @return The value.
+     * @throws IllegalStateException If the value is out of range.
+     */
+    private static int readIndex(BitReader in, int bound, String what) {
+        long value = in.readUnsigned();
+        if (value >= bound) {
+            throw new IllegalStateException("The " + what + " " + value + " is out of range for the view");
+        }
+        return (int) value;
+    }
+
+    private void setFlags(int flags) {
+        view.setPaused((flags & 1) != 0);
+        view.setTimeUp((flags & 2) != 0);
+        view.setLevelCompleted((flags & 4) != 0);
+        view.setGameCompleted((flags & 8) != 0);
+        view.setShowWinMessage((flags & 16) != 0);
+    }
+
+    /**
+     * Checks whether a keyframe has arrived, so that the view shows the game.
+     *
+     * @return True once a keyframe has been applied.
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public App getView() {
+        return view;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+}
@@ -0,0 +1,617 @@
+package inkball;
+
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns a running game into a bit-packed stream for spectators: a keyframe with the whole
+ * visible state, then one small delta per tick.
+ *
+ * <p>The encoder keeps a mirror of what the {@link SpectatorDecoder} at the other end holds and
+ * only sends what differs from it. Ball positions and velocities are quantized to 1/16 of a
+ * pixel; a ball's position is sent as the difference from where its last position and velocity
+ * put it, which is zero or one unit for a ball moving freely. Bricks are sent only when their
+ * hit count changes or they are destroyed. Lines get an id when first seen; a delta lists the
+ * ids of consumed lines, new lines, and the points added to the line being drawn, so a tick
+ * costs the same however long the lines on the board are. Score, times, flags and the spawn
+ * queue are sent only when they change.</p>
+ *
+ * <p>A keyframe is sent for the first frame, every keyframe interval, when a level is loaded,
+ * and after {@link #requestKeyframe()}, for example when a spectator joins. Frames are
+ * written to a stream with a varint length in front by {@link #writeFrame}.</p>
+ */
+public class SpectatorEncoder {
+    static final int POSITION_SCALE = 16;
+    static final int RADIUS_SCALE = 4;
+    static final int RADIUS_BITS = 7;
+    static final int COLOR_BITS = 3;
+    static final int HIT_BITS = 3;
+    static final int FLAG_BITS = 5;
+    /** The largest frame {@link #writeFrame} writes and {@link #readFrame} accepts. */
+    static final int MAX_FRAME_BYTES = 1 << 22;
+
+    /**
+     * The quantized state of a ball as the decoder holds it.
+     */
+    private static final class BallState {
+        int x;
+        int y;
+        int vx;
+        int vy;
+        int radius;
+        int color;
+    }
+
+    private final int keyframeInterval;
+    private final BitWriter out = new BitWriter(256);
+    private boolean keyframeRequested = true;
+    private long lastKeyframeTick;
+
+    // The decoder's state after the last frame
+    private Level level;
+    private long tick;
+    private int score;
+    private int remainingTime;
+    private int timeBonusRemaining;
+    private int flags;
+    private int spawnCounter;
+    private float spawnInterval;
+    private final List<Integer> queue = new ArrayList<>();
+    private int[] tiles = new int[0];
+    private int[] brickStates = new int[0];
+    private final List<Ball> balls = new ArrayList<>();
+    private final Map<Ball, BallState> ballStates = new IdentityHashMap<>();
+    private final List<Line> lines = new ArrayList<>();
+    private final Map<Line, Integer> lineIds = new IdentityHashMap<>();
+    private Line currentLine;
+    private int currentPoints;
+    private int nextLineId;
+
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Integer> scratch = new ArrayList<>();
+
+    /**
+     * Constructor for the SpectatorEncoder object.
+     *
+     * @param keyframeInterval The number of ticks between keyframes, so that a spectator who
+     *                         missed frames is back in sync within that time.
+     */
+    public SpectatorEncoder(int keyframeInterval) {
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+    }
+
+    /**
+     * Makes the next frame a keyframe.
+     */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Encodes the state of a game since the previous frame. Call this once per tick, after the
+     * tick has run.
+     *
+     * @param app The game.
+     * @return The frame.
+     */
+    public byte[] encode(App app) {
+        Level current = app.getCurrentLevel();
+        boolean keyframe = keyframeRequested
+                || current != level
+                || app.getTick() <= tick
+                || app.getTick() - lastKeyframeTick >= keyframeInterval
+                || current.getLayoutBricks().size() != brickStates.length;
+        out.reset();
+        out.writeBit(keyframe);
+        if (keyframe) {
+            writeKeyframe(app);
+            keyframeRequested = false;
+            lastKeyframeTick = app.getTick();
+        } else {
+            writeDelta(app);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the whole visible state and resets the mirror to it.
+     *
+     * @param app The game.
+     */
+    private void writeKeyframe(App app) {
+        level = app.getCurrentLevel();
+        out.writeUnsigned(app.getCurrentLevelIndex());
+        tick = app.getTick();
+        out.writeUnsigned(tick);
+
+        score = app.getScore();
+        remainingTime = app.getRemainingTime();
+        timeBonusRemaining = app.getTimeBonusRemaining();
+        flags = flagsOf(app);
+        spawnCounter = level.getSpawnCounter();
+        spawnInterval = level.getSpawnInterval();
+        out.writeSigned(score);
+        out.writeSigned(remainingTime);
+        out.writeSigned(timeBonusRemaining);
+        out.write(flags, FLAG_BITS);
+        out.writeSigned(spawnCounter);
+        out.write(Float.floatToIntBits(spawnInterval), 32);
+        queue.clear();
+        for (String color : level.getConfigBalls()) {
+            queue.add(Level.getColorIndex(color));
+        }
+        writeColors(queue, 0);
+        tiles = tilesOf(app);
+        writeTiles();
+
+        List<Brick> layoutBricks = level.getLayoutBricks();
+        brickStates = new int[layoutBricks.size()];
+        markAlive(level.getBricks());
+        for (int i = 0; i < brickStates.length; i++) {
+            brickStates[i] = brickState(layoutBricks.get(i));
+            writeBrickState(brickStates[i]);
+        }
+
+        balls.clear();
+        ballStates.clear();
+        List<Ball> live = level.getBalls();
+        out.writeUnsigned(live.size());
+        for (Ball ball : live) {
+            addBall(ball);
+        }
+
+        lines.clear();
+        lineIds.clear();
+        nextLineId = 0;
+        List<Line> playerLines = app.getPlayerLines();
+        out.writeUnsigned(playerLines.size());
+        for (Line line : playerLines) {
+            lines.add(line);
+            lineIds.put(line, nextLineId++);
+            writePoints(line.points(), 0);
+        }
+        currentLine = app.getCurrentLine();
+        out.writeBit(currentLine != null);
+        if (currentLine != null) {
+            startCurrentLine(currentLine);
+        }
+    }
+
+    /**
+     * Writes what changed since the last frame and updates the mirror to match.
+     *
+     * @param app The game.
+     */
+    private void writeDelta(App app) {
+        out.writeUnsigned(app.getTick() - tick - 1);
+        tick = app.getTick();
+
+        writeChange(app.getScore() - score);
+        score = app.getScore();
+        writeChange(app.getRemainingTime() - remainingTime);
+        remainingTime = app.getRemainingTime();
+        writeChange(app.getTimeBonusRemaining() - timeBonusRemaining);
+        timeBonusRemaining = app.getTimeBonusRemaining();
+        int newFlags = flagsOf(app);
+        out.writeBit(newFlags != flags);
+        if (newFlags != flags) {
+            out.write(newFlags, FLAG_BITS);
+            flags = newFlags;
+        }
+        // The spawn counter almost always goes up by one a tick
+        int newCounter = level.getSpawnCounter();
+        out.writeBit(newCounter != spawnCounter + 1);
+        if (newCounter != spawnCounter + 1) {
+            out.writeSigned(newCounter - spawnCounter);
+        }
+        spawnCounter = newCounter;
+        out.writeBit(level.getSpawnInterval() != spawnInterval);
+        if (level.getSpawnInterval() != spawnInterval) {
+            spawnInterval = level.getSpawnInterval();
+            out.write(Float.floatToIntBits(spawnInterval), 32);
+        }
+        writeQueue(level.getConfigBalls());
+        int[] newTiles = tilesOf(app);
+        out.writeBit(!Arrays.equals(newTiles, tiles));
+        if (!Arrays.equals(newTiles, tiles)) {
+            tiles = newTiles;
+            writeTiles();
+        }
+
+        writeBricks();
+        writeBalls();
+        writeLines(app);
+    }
+
+    /**
+     * Writes the bricks whose state changed, as gaps between their layout indices.
+     */
+    private void writeBricks() {
+        List<Brick> layoutBricks = level.getLayoutBricks();
+        markAlive(level.getBricks());
+        scratch.clear();
+        for (int i = 0; i < brickStates.length; i++) {
+            if (brickState(layoutBricks.get(i)) != brickStates[i]) {
+                scratch.add(i);
+            }
+        }
+        out.writeUnsigned(scratch.size());
+        int previous = -1;
+        for (int index : scratch) {
+            out.writeUnsigned(index - previous - 1);
+            previous = index;
+            brickStates[index] = brickState(layoutBricks.get(index));
+            writeBrickState(brickStates[index]);
+        }
+    }
+
+    /**
+     * Writes the balls that went away, the changes to the balls that stayed, and the new balls.
+     */
+    private void writeBalls() {
+        List<Ball> live = level.getBalls();
+        seen.clear();
+        seen.addAll(live);
+
+        scratch.clear();
+        for (int i = 0; i < balls.size(); i++) {
+            if (!seen.contains(balls.get(i))) {
+                scratch.add(i);
+            }
+        }
+        out.writeUnsigned(scratch.size());
+        int previous = -1;
+        for (int index : scratch) {
+            out.writeUnsigned(index - previous - 1);
+            previous = index;
+        }
+        for (int i = scratch.size() - 1; i >= 0; i--) {
+            ballStates.remove(balls.remove((int) scratch.get(i)));
+        }
+
+        for (Ball ball : balls) {
+            BallState state = ballStates.get(ball);
+            int vx = quantize(ball.getVelocity().x, POSITION_SCALE);
+            int vy = quantize(ball.getVelocity().y, POSITION_SCALE);
+            boolean turned = vx != state.vx || vy != state.vy;
+            out.writeBit(turned);
+            if (turned) {
+                out.writeSigned(vx - state.vx);
+                out.writeSigned(vy - state.vy);
+                state.vx = vx;
+                state.vy = vy;
+            }
+            int dx = quantize(ball.getPosition().x, POSITION_SCALE) - (state.x + state.vx);
+            int dy = quantize(ball.getPosition().y, POSITION_SCALE) - (state.y + state.vy);
+            out.writeBit(dx != 0 || dy != 0);
+            if (dx != 0 || dy != 0) {
+                out.writeSigned(dx);
+                out.writeSigned(dy);
+            }
+            state.x += state.vx + dx;
+            state.y += state.vy + dy;
+            int radius = quantizeRadius(ball.getRadius());
+            int color = ball.getColorType() + 1;
+            out.writeBit(radius != state.radius || color != state.color);
+            if (radius != state.radius || color != state.color) {
+                out.write(radius, RADIUS_BITS);
+                out.write(color, COLOR_BITS);
+                state.radius = radius;
+                state.color = color;
+            }
+        }
+
+        scratch.clear();
+        for (int i = 0; i < live.size(); i++) {
+            if (!ballStates.containsKey(live.get(i))) {
+                scratch.add(i);
+            }
+        }
+        out.writeUnsigned(scratch.size());
+        for (int index : scratch) {
+            addBall(live.get(index));
+        }
+    }
+
+    /**
+     * Writes consumed lines by id, finished or new lines, and the points added to the line
+     * being drawn.
+     *
+     * @param app The game.
+     */
+    private void writeLines(App app) {
+        List<Line> playerLines = app.getPlayerLines();
+        Line drawing = app.getCurrentLine();
+        seen.clear();
+        seen.addAll(playerLines);
+
+        scratch.clear();
+        for (Line line : lines) {
+            if (!seen.contains(line)) {
+                scratch.add(lineIds.get(line));
+            }
+        }
+        int removed = scratch.size();
+        List<Line> added = new ArrayList<>();
+        for (Line line : playerLines) {
+            if (!lineIds.containsKey(line) || line == currentLine) {
+                added.add(line);
+            }
+        }
+        boolean changed = removed > 0 || !added.isEmpty() || drawing != currentLine
+                || (drawing != null && drawing.points().size() != currentPoints);
+        out.writeBit(changed);
+        if (!changed) {
+            return;
+        }
+
+        Collections.sort(scratch);
+        out.writeUnsigned(removed);
+        int previous = -1;
+        for (int id : scratch) {
+            out.writeUnsigned(id - previous - 1);
+            previous = id;
+        }
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            if (!seen.contains(lines.get(i))) {
+                lineIds.remove(lines.remove(i));
+            }
+        }
+
+        out.writeUnsigned(added.size());
+        for (Line line : added) {
+            boolean finished = line == currentLine;
+            out.writeBit(finished);
+            if (finished) {
+                currentLine = null;
+            } else {
+                lineIds.put(line, nextLineId++);
+                writePoints(line.points(), 0);
+            }
+            lines.add(line);
+        }
+        if (currentLine != null && currentLine != drawing) {
+            // Abandoned without being finished, for example when a ball crossed it
+            lineIds.remove(currentLine);
+            currentLine = null;
+        }
+
+        out.writeBit(drawing != null);
+        if (drawing != null) {
+            boolean continued = drawing == currentLine && drawing.points().size() >= currentPoints;
+            out.writeBit(continued);
+            if (continued) {
+                writePoints(drawing.points(), currentPoints);
+                currentPoints = drawing.points().size();
+            } else {
+                if (currentLine != null) {
+                    lineIds.remove(currentLine);
+                }
+                currentLine = drawing;
+                startCurrentLine(drawing);
+            }
+        }
+    }
+
+    private void startCurrentLine(Line line) {
+        lineIds.put(line, nextLineId++);
+        writePoints(line.points(), 0);
+        currentPoints = line.points().size();
+    }
+
+    private void addBall(Ball ball) {
+        BallState state = new BallState();
+        state.x = quantize(ball.getPosition().x, POSITION_SCALE);
+        state.y = quantize(ball.getPosition().y, POSITION_SCALE);
+        state.vx = quantize(ball.getVelocity().x, POSITION_SCALE);
+        state.vy = quantize(ball.getVelocity().y, POSITION_SCALE);
+        state.radius = quantizeRadius(ball.getRadius());
+        state.color = ball.getColorType() + 1;
+        out.writeSigned(state.x);
+        out.writeSigned(state.y);
+        out.writeSigned(state.vx);
+        out.writeSigned(state.vy);
+        out.write(state.radius, RADIUS_BITS);
+        out.write(state.color, COLOR_BITS);
+        balls.add(ball);
+        ballStates.put(ball, state);
+    }
+
+    /**
+     * Writes the points of a line from an index on: a count, then the first point whole and
+     * each further point as the step from the one before.
+     *
+     * @param points The line's points.
+     * @param from The index of the first point to write.
+     */
+    private void writePoints(List<PVector> points, int from) {
+        out.writeUnsigned(points.size() - from);
+        for (int i = from; i < points.size(); i++) {
+            int x = Math.round(points.get(i).x);
+            int y = Math.round(points.get(i).y);
+            if (i > 0) {
+                x -= Math.round(points.get(i - 1).x);
+                y -= Math.round(points.get(i - 1).y);
+            }
+            out.writeSigned(x);
+            out.writeSigned(y);
+        }
+    }
+
+    /**
+     * Writes the spawn queue if it changed, as the number of balls taken from the front and
+     * the balls added to the back. Taking every ball describes any change.
+     *
+     * @param configBalls The queue's color names.
+     */
+    private void writeQueue(List<String> configBalls) {
+        scratch.clear();
+        for (String color : configBalls) {
+            scratch.add(Level.getColorIndex(color));
+        }
+        out.writeBit(!scratch.equals(queue));
+        if (scratch.equals(queue)) {
+            return;
+        }
+        int taken = 0;
+        while (!isPrefix(queue.subList(taken, queue.size()), scratch)) {
+            taken++;
+        }
+        out.writeUnsigned(taken);
+        writeColors(scratch, queue.size() - taken);
+        queue.clear();
+        queue.addAll(scratch);
+    }
+
+    private static boolean isPrefix(List<Integer> prefix, List<Integer> list) {
+        return prefix.size() <= list.size() && prefix.equals(list.subList(0, prefix.size()));
+    }
+
+    private void writeColors(List<Integer> colors, int from) {
+        out.writeUnsigned(colors.size() - from);
+        for (int i = from; i < colors.size(); i++) {
+            out.write(colors.get(i) + 1, COLOR_BITS);
+        }
+    }
+
+    private void writeTiles() {
+        out.writeUnsigned(tiles.length / 2);
+        for (int value : tiles) {
+            out.writeSigned(value);
+        }
+    }
+
+    private void writeChange(int change) {
+        out.writeBit(change != 0);
+        if (change != 0) {
+            out.writeSigned(change);
+        }
+    }
+
+    private void writeBrickState(int state) {
+        out.writeBit(state >= 0);
+        if (state >= 0) {
+            out.write(state, HIT_BITS);
+        }
+    }
+
+    private void markAlive(List<Brick> bricks) {
+        seen.clear();
+        seen.addAll(bricks);
+    }
+
+    /**
+     * Gets the state of a brick as sent: its hit count, or -1 once destroyed.
+     * Expects {@link #markAlive} to have been called with the level's bricks.
+     */
+    private int brickState(Brick brick) {
+        return seen.contains(brick) ? Math.min(brick.getHitCount(), (1 << HIT_BITS) - 1) : -1;
+    }
+
+    private static int flagsOf(App app) {
+        return (app.getPaused() ? 1 : 0)
+                | (app.isTimeUp() ? 2 : 0)
+                | (app.isLevelCompleted() ? 4 : 0)
+                | (app.isGameCompleted() ? 8 : 0)
+                | (app.getShowWinMessage() ? 16 : 0);
+    }
+
+    private static int[] tilesOf(App app) {
+        List<App.YellowTile> yellowTiles = app.getYellowTiles();
+        if (yellowTiles == null) {
+            return new int[0];
+        }
+        int[] positions = new int[yellowTiles.size() * 2];
+        for (int i = 0; i < yellowTiles.size(); i++) {
+            positions[2 * i] = Math.round(yellowTiles.get(i).position.x);
+            positions[2 * i + 1] = Math.round(yellowTiles.get(i).position.y);
+        }
+        return positions;
+    }
+
+    static int quantize(float value, int scale) {
+        return Math.round(value * scale);
+    }
+
+    static int quantizeRadius(float radius) {
+        return Math.max(0, Math.min((1 << RADIUS_BITS) - 1, quantize(radius, RADIUS_SCALE)));
+    }
+
+    /**
+     * Writes a frame to a stream, preceded by its length.
+     *
+     * @param out The stream.
+     * @param frame The frame.
+     * @throws IOException If the stream fails or the frame is larger than
+     *                     {@link #MAX_FRAME_BYTES}.
+     */
+    public static void writeFrame(DataOutputStream out, byte[] frame) throws IOException {
+        if (frame.length > MAX_FRAME_BYTES) {
+            throw new IOException("Frame of " + frame.length + " bytes is larger than " + MAX_FRAME_BYTES);
+        }
+        Varint.writeUnsigned(out, frame.length);
+        out.write(frame);
+    }
+
+    /**
+     * Reads a frame written by {@link #writeFrame}.
+     *
+     * @param in The stream.
+     * @return The frame, or null at the end of the stream.
+     * @throws IOException If the stream fails, ends inside a frame or gives a frame length
+     *                     outside 0 to {@link #MAX_FRAME_BYTES}.
+     */
+    public static byte[] readFrame(DataInputStream in) throws IOException {
+        long length;
+        try {
+            length = Varint.readUnsigned(in);
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Frame length " + length + " is outside 0 to " + MAX_FRAME_BYTES);
+        }
+        byte[] frame = new byte[(int) length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    /**
+     * Replays a recording and saves it as a spectator stream, for {@link SpectatorApp} to show
+     * with {@code --file}.
+     *
+     * @param args The path of the recording and the path to save the stream to, optionally
+     *             followed by a config resource path.
+     * @throws IOException If the recording cannot be read or the stream cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        InputLog log = InputLog.load(new File(args[0]));
+        JSONObject config = App.loadConfigResource(args.length > 2 ? args[2] : "/inkball/config.json");
+        Replayer replayer = new Replayer(log, config);
+        SpectatorEncoder encoder = new SpectatorEncoder(10 * App.FPS);
+        long bytes = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[1])))) {
+            while (replayer.step()) {
+                byte[] frame = encoder.encode(replayer.getApp());
+                writeFrame(out, frame);
+                bytes += frame.length;
+            }
+        }
+        System.out.println("Ticks: " + replayer.getApp().getTick() + ", stream: " + bytes + " bytes");
+    }
+}
@@ -0,0 +1,256 @@
+package inkball;
+
+/**
+ * A hierarchical hashed timer wheel driven by simulation ticks.
+ *
+ * <p>Each level has 64 slots. A level 0 slot holds the timers due in one particular tick of
+ * the next 64; a level 1 slot holds those due in one particular block of 64 ticks of the next
+ * 4096, and so on. When the wheel enters a new block it moves that block's timers down a
+ * level. Timers are linked into their slot, so scheduling, cancelling and firing a timer cost
+ * O(1), and a timer that is not due costs nothing while the wheel turns. A slot is only a
+ * reference to its first and last timer, so an empty wheel is two small arrays, which keeps
+ * the many wheels of hosted and forked games cheap.</p>
+ *
+ * <p>The wheel only moves when {@link #advance(long)} is called, so a caller that stops
+ * advancing it while paused also pauses every timer on it. Timers due in the same tick fire in
+ * the order they were scheduled.</p>
+ */
+public class TimerWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 4;
+    // The list of timers firing in the current tick, kept after the wheel's slots
+    private static final int FIRING = LEVELS * SLOTS;
+
+    private final Timer[] heads = new Timer[FIRING + 1];
+    private final Timer[] tails = new Timer[FIRING + 1];
+    private long current;
+    private int count;
+
+    /**
+     * Something to run when the wheel reaches a tick. A timer is on at most one wheel at a time.
+     */
+    public static final class Timer {
+        private final Runnable task;
+        private long deadline;
+        private TimerWheel wheel;
+        private int slot;
+        private Timer prev;
+        private Timer next;
+
+        /**
+         * Constructor for the Timer object.
+         *
+         * @param task What to run when the timer fires. It may schedule the timer again.
+         */
+        public Timer(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Checks whether the timer is waiting to fire.
+         *
+         * @return True if the timer is on a wheel.
+         */
+        public boolean isScheduled() {
+            return wheel != null;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+    /**
+     * Constructor for the TimerWheel object.
+     *
+     * @param current The last tick that counts as already processed.
+     */
+    public TimerWheel(long current) {
+        this.current = current;
+    }
+
+    /**
+     * Schedules a timer, moving it if it was already scheduled. A deadline that has already
+     * been processed fires at the next tick.
+     *
+     * @param timer The timer.
+     * @param deadline The tick to fire in.
+     */
+    public void schedule(Timer timer, long deadline) {
+        cancel(timer);
+        timer.deadline = Math.max(deadline, current + 1);
+        timer.wheel = this;
+        place(timer);
+        count++;
+    }
+
+    /**
+     * Cancels a timer if it is scheduled on this wheel.
+     *
+     * @param timer The timer.
+     */
+    public void cancel(Timer timer) {
+        if (timer.wheel != this) {
+            return;
+        }
+        unlink(timer);
+        timer.wheel = null;
+        count--;
+    }
+
+    /**
+     * Fires every timer due up to and including a tick, earliest first.
+     *
+     * @param tick The tick to advance to.
+     */
+    public void advance(long tick) {
+        while (current < tick) {
+            if (count == 0) {
+                current = tick;
+                return;
+            }
+            long next = current + 1;
+            // Higher levels first, so their timers can fall all the way down to level 0
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((next & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) (next >>> (BITS * level)) & (SLOTS - 1));
+                }
+            }
+            current = next;
+            // Due timers wait in their own list, so a task can cancel or reschedule any of them
+            splice((int) next & (SLOTS - 1), FIRING);
+            while (heads[FIRING] != null) {
+                Timer timer = heads[FIRING];
+                unlink(timer);
+                timer.wheel = null;
+                count--;
+                timer.task.run();
+            }
+        }
+    }
+
+    /**
+     * Cancels every timer and moves the wheel to a new position, for when the clock it follows
+     * jumps.
+     *
+     * @param current The last tick that counts as already processed.
+     */
+    public void reset(long current) {
+        for (int slot = 0; slot <= FIRING; slot++) {
+            drop(detach(slot));
+        }
+        count = 0;
+        this.current = current;
+    }
+
+    private static void drop(Timer timer) {
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            timer.wheel = null;
+            timer = next;
+        }
+    }
+
+    /**
+     * Moves the timers of one slot to the levels below.
+     *
+     * @param level The slot's level.
+     * @param slot The slot.
+     */
+    private void cascade(int level, int slot) {
+        Timer timer = detach(level * SLOTS + slot);
+        while (timer != null) {
+            Timer next = timer.next;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Links a timer into the slot for its deadline, measured from the next tick to process.
+     *
+     * @param timer The timer.
+     */
+    private void place(Timer timer) {
+        long delta = timer.deadline - (current + 1);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        // Deadlines beyond the top level wrap around and are placed again when their slot comes up
+        int slot = level * SLOTS + ((int) (timer.deadline >>> (BITS * level)) & (SLOTS - 1));
+        timer.slot = slot;
+        timer.prev = tails[slot];
+        timer.next = null;
+        if (tails[slot] != null) {
+            tails[slot].next = timer;
+        } else {
+            heads[slot] = timer;
+        }
+        tails[slot] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            heads[timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        } else {
+            tails[timer.slot] = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    /**
+     * Empties a slot.
+     *
+     * @param slot The slot's index, counting the slots of lower levels first.
+     * @return The first of the slot's timers, linked through next and ending in null.
+     */
+    private Timer detach(int slot) {
+        Timer first = heads[slot];
+        heads[slot] = null;
+        tails[slot] = null;
+        return first;
+    }
+
+    /**
+     * Moves every timer of one slot to the end of another.
+     *
+     * @param from The slot to empty.
+     * @param to The slot to append to.
+     */
+    private void splice(int from, int to) {
+        Timer first = heads[from];
+        if (first == null) {
+            return;
+        }
+        for (Timer timer = first; timer != null; timer = timer.next) {
+            timer.slot = to;
+        }
+        first.prev = tails[to];
+        if (tails[to] != null) {
+            tails[to].next = first;
+        } else {
+            heads[to] = first;
+        }
+        tails[to] = tails[from];
+        heads[from] = null;
+        tails[from] = null;
+    }
+
+    public long getCurrent() {
+        return current;
+    }
+
+    public int size() {
+        return count;
+    }
+}
@@ -0,0 +1,119 @@
+package inkball;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for writing and reading variable-length integers.
+ * Small values take a single byte, which keeps tick and coordinate deltas compact.
+ */
+public final class Varint {
+
+    private Varint() {
+    }
+
+    /**
+     * Writes an unsigned value seven bits at a time, lowest bits first.
+     *
+     * @param out The stream to write to.
+     * @param value The value to write, treated as unsigned.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void writeUnsigned(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Reads a value written by {@link #writeUnsigned(OutputStream, long)}.
+     *
+     * @param in The stream to read from.
+     * @return The decoded value.
+     * @throws IOException If the stream ends early or the value is malformed.
+     */
+    public static long readUnsigned(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated varint");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a value written by {@link #writeUnsigned(OutputStream, long)} from a buffer,
+     * starting at its position.
+     *
+     * @param in The buffer to read from.
+     * @return The decoded value.
+     * @throws IOException If the buffer ends early or the value is malformed.
+     */
+    public static long readUnsigned(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new EOFException("Truncated varint");
+            }
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Writes a signed value using zig-zag encoding so that small negative numbers stay short.
+     *
+     * @param out The stream to write to.
+     * @param value The value to write.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void writeSigned(OutputStream out, long value) throws IOException {
+        writeUnsigned(out, zigZag(value));
+    }
+
+    /**
+     * Reads a value written by {@link #writeSigned(OutputStream, long)}.
+     *
+     * @param in The stream to read from.
+     * @return The decoded value.
+     * @throws IOException If the stream ends early or the value is malformed.
+     */
+    public static long readSigned(InputStream in) throws IOException {
+        return unZigZag(readUnsigned(in));
+    }
+
+    /**
+     * Maps a signed value onto an unsigned one: 0, -1, 1, -2, 2 become 0, 1, 2, 3, 4.
+     *
+     * @param value The signed value.
+     * @return The zig-zag encoded value.
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigZag(long)}.
+     *
+     * @param value The zig-zag encoded value.
+     * @return The signed value.
+     */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
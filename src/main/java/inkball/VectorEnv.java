@@ -0,0 +1,217 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A batch of {@link InkballEnv}s that are stepped together on a thread pool.
+ *
+ * <p>Results are written to arrays that are allocated once and overwritten by every call:
+ * observations are packed back to back, {@link InkballEnv#OBSERVATION_SIZE} values per
+ * environment. An environment whose episode ends is reset straight away with its next seed;
+ * its done or truncated flag is set for that step, its reward is the last reward of the old
+ * episode, and its observation is the first one of the new episode.</p>
+ *
+ * <p>With an {@link ObservationBuffer} attached, environment i writes its observation,
+ * reward and flags to slot i of that buffer instead of the float arrays.</p>
+ */
+public class VectorEnv implements AutoCloseable {
+    private final InkballEnv[] envs;
+    private final float[] observations;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final boolean[] truncated;
+    private final long[] seeds;
+    private final ExecutorService executor;
+    private final List<Callable<Void>> chunks;
+    private InkballEnv.Action[] actions;
+    private ObservationBuffer shared;
+
+    /**
+     * Constructor for the VectorEnv object.
+     *
+     * @param config The game configuration.
+     * @param levelIndex The level every episode is played on.
+     * @param count The number of environments.
+     * @param ticksPerStep How many simulation ticks each step advances.
+     * @param maxSteps The number of steps after which an episode is truncated, or 0 for no limit.
+     * @param threads The number of worker threads; 1 steps every environment on the caller's thread.
+     */
+    public VectorEnv(JSONObject config, int levelIndex, int count, int ticksPerStep, int maxSteps, int threads) {
+        this.envs = new InkballEnv[count];
+        for (int i = 0; i < count; i++) {
+            envs[i] = new InkballEnv(config, levelIndex, ticksPerStep, maxSteps);
+        }
+        this.observations = new float[count * InkballEnv.OBSERVATION_SIZE];
+        this.rewards = new float[count];
+        this.dones = new boolean[count];
+        this.truncated = new boolean[count];
+        this.seeds = new long[count];
+
+        int workers = Math.max(1, Math.min(threads, count));
+        this.executor = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        this.chunks = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            final int from = count * w / workers;
+            final int to = count * (w + 1) / workers;
+            chunks.add(() -> {
+                stepRange(from, to);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Resets every environment. Environment i is seeded with seed + i, and later episodes
+     * continue in steps of the batch size, so no two episodes of a batch share a seed.
+     *
+     * @param seed The seed of the first environment.
+     * @return The observations, packed back to back.
+     */
+    public float[] reset(long seed) {
+        for (int i = 0; i < envs.length; i++) {
+            seeds[i] = seed + i;
+            envs[i].reset(seeds[i]);
+            rewards[i] = 0;
+            dones[i] = false;
+            truncated[i] = false;
+            publish(i);
+        }
+        return observations;
+    }
+
+    /**
+     * Steps every environment with its action.
+     *
+     * @param actions One action per environment.
+     */
+    public void step(InkballEnv.Action[] actions) {
+        if (actions.length != envs.length) {
+            throw new IllegalArgumentException("Expected " + envs.length + " actions but got " + actions.length);
+        }
+        this.actions = actions;
+        if (executor == null) {
+            stepRange(0, envs.length);
+            return;
+        }
+        ParallelTasks.runAll(executor, chunks);
+    }
+
+    /**
+     * Steps a range of environments, resetting any whose episode ends.
+     *
+     * @param from The first environment.
+     * @param to One past the last environment.
+     */
+    private void stepRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            InkballEnv env = envs[i];
+            rewards[i] = env.advance(actions[i]);
+            dones[i] = env.isDone();
+            truncated[i] = env.isTruncated();
+            if (dones[i] || truncated[i]) {
+                seeds[i] += envs.length;
+                env.reset(seeds[i]);
+            }
+            publish(i);
+        }
+    }
+
+    /**
+     * Writes an environment's observation to the attached buffer, or to the float arrays.
+     *
+     * @param index The environment.
+     */
+    private void publish(int index) {
+        if (shared != null) {
+            shared.write(index, envs[index].getApp(), rewards[index], dones[index], truncated[index]);
+        } else {
+            envs[index].writeObservation(observations, index * InkballEnv.OBSERVATION_SIZE);
+        }
+    }
+
+    /**
+     * Sends observations to a shared buffer from now on, starting with the current ones.
+     *
+     * @param buffer The buffer, with at least one slot per environment, or null to go back to the float arrays.
+     */
+    public void attach(ObservationBuffer buffer) {
+        if (buffer != null && buffer.getSlots() < envs.length) {
+            throw new IllegalArgumentException("The buffer needs a slot for each of the " + envs.length + " environments");
+        }
+        this.shared = buffer;
+        for (int i = 0; i < envs.length; i++) {
+            if (envs[i].getApp() != null) {
+                publish(i);
+            }
+        }
+    }
+
+    /**
+     * Shuts down the worker threads.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public int size() {
+        return envs.length;
+    }
+
+    public InkballEnv getEnv(int index) {
+        return envs[index];
+    }
+
+    public float[] getObservations() {
+        return observations;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    public boolean[] getTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Measures how many steps per second a batch of environments reaches with no-op actions.
+     *
+     * @param args Optionally the number of environments, the number of threads, the number of
+     *             batches and "direct" to write observations to a direct buffer.
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int batches = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        InkballEnv.Action[] actions = new InkballEnv.Action[count];
+        Arrays.fill(actions, InkballEnv.Action.NOOP);
+        try (VectorEnv env = new VectorEnv(config, 0, count, 1, 0, threads)) {
+            if (args.length > 3 && args[3].equals("direct")) {
+                env.attach(ObservationBuffer.allocate(count));
+            }
+            env.reset(1);
+            long start = System.nanoTime();
+            for (int b = 0; b < batches; b++) {
+                env.step(actions);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d environments on %d threads: %.0f steps per second%n",
+                    count, threads, count * (double) batches / seconds);
+        }
+    }
+}
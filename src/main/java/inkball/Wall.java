@@ -1,13 +1,22 @@
 package inkball;
 
+import processing.core.PGraphics;
 import processing.core.PImage;
 import processing.core.PVector;
-import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Wall extends GameObject {
+    /**
+     * The collision cooldown a wall or brick gives a ball it bounces. A ball's cooldown only
+     * has this value at the end of the tick it bounced in, which is how
+     * {@link HeatmapAggregator} counts wall hits.
+     */
+    public static final int HIT_COOLDOWN = 5;
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
     protected PImage sprite;
     protected int wallType;
-    protected Map<Ball, Integer> collisionBuffers;
+    private final int id;
 
     /**
      * Constructor for the Wall object.
@@ -21,7 +30,30 @@ public class Wall extends GameObject {
         super(position, app);
         this.sprite = sprite;
         this.wallType = wallType;
-        this.collisionBuffers = new HashMap<>();
+        this.id = NEXT_ID.getAndIncrement();
+    }
+
+    /**
+     * Copy constructor used when a level is forked. The copy keeps the original's id,
+     * so collision cooldowns stored on balls still refer to it.
+     *
+     * @param other The wall to copy.
+     * @param app Reference to the application that owns the copy.
+     */
+    protected Wall(Wall other, App app) {
+        super(other.position, app);
+        this.sprite = other.sprite;
+        this.wallType = other.wallType;
+        this.id = other.id;
+    }
+
+    /**
+     * Gets the id that identifies this wall in ball collision cooldowns.
+     *
+     * @return The wall's id.
+     */
+    public int getId() {
+        return id;
     }
 
     /**
@@ -44,6 +76,17 @@ public class Wall extends GameObject {
         }
     }
 
+    /**
+     * Draws the wall onto an off-screen layer instead of the screen.
+     *
+     * @param layer The layer to draw onto.
+     */
+    public void display(PGraphics layer) {
+        if (sprite != null) {
+            layer.image(sprite, position.x, position.y, App.CELLSIZE, App.CELLSIZE);
+        }
+    }
+
     /**
      * Updates the state of the wall. Static walls do not require updates.
      * Overrides the update method from the GameObject class.
@@ -140,33 +183,24 @@ public class Wall extends GameObject {
      */
     public boolean checkCollision(Ball ball) {
         if (isCollidingWithBall(ball)) {
-            int buffer = collisionBuffers.getOrDefault(ball, 0);
+            int buffer = ball.getCooldown(this);
 
             if (buffer <= 0) {
                 correctBallPosition(ball);
                 reflectBallVelocity(ball);
                 changeBallColor(ball);
-                collisionBuffers.put(ball, 5);
+                ball.setCooldown(this, HIT_COOLDOWN);
             } else {
-                collisionBuffers.put(ball, buffer - 1);
+                ball.setCooldown(this, buffer - 1);
                 correctBallPosition(ball);
             }
             return true;
         } else {
-            collisionBuffers.put(ball, 0);
+            ball.setCooldown(this, 0);
             return false;
         }
     }
 
-    /**
-     * Cleans up cooldowns by removing entries for balls that are no longer active.
-     *
-     * @param activeBalls List of currently active balls.
-     */
-    public void cleanupCooldowns(List<Ball> activeBalls) {
-        collisionBuffers.keySet().removeIf(ball -> !activeBalls.contains(ball));
-    }
-
     /**
      * Corrects the position of the ball to prevent it from overlapping with the wall.
      *
@@ -0,0 +1,179 @@
+package inkball;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Buckets a level's walls by the tile their top-left corner is in, so that collision checks
+ * only need to look at the walls around a ball instead of every wall in the level.
+ *
+ * <p>The grid is immutable once built and is shared between forked levels, like the walls
+ * themselves. Queries return wall indices in list order, so walls are still checked in the
+ * same order as a full scan would check them.</p>
+ */
+public class WallGrid {
+    private final List<Wall> walls;
+    private final int size;
+    private final int minTileX;
+    private final int minTileY;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStarts;
+    private final int[] cellWalls;
+    private final int[] sortedIds;
+    private final int[] indicesBySortedId;
+
+    /**
+     * Constructor for the WallGrid object.
+     *
+     * @param walls The walls to index. The list must not change while the grid is in use.
+     */
+    public WallGrid(List<Wall> walls) {
+        this.walls = walls;
+        this.size = walls.size();
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int[] tileXs = new int[size];
+        int[] tileYs = new int[size];
+        for (int i = 0; i < size; i++) {
+            Wall wall = walls.get(i);
+            tileXs[i] = tileOf(wall.getPosition().x);
+            tileYs[i] = tileOf(wall.getPosition().y);
+            minX = Math.min(minX, tileXs[i]);
+            minY = Math.min(minY, tileYs[i]);
+            maxX = Math.max(maxX, tileXs[i]);
+            maxY = Math.max(maxY, tileYs[i]);
+        }
+        if (size == 0) {
+            minX = minY = 0;
+            maxX = maxY = -1;
+        }
+        this.minTileX = minX;
+        this.minTileY = minY;
+        this.columns = maxX - minX + 1;
+        this.rows = maxY - minY + 1;
+
+        // Counting sort of the walls by cell; walls within a cell stay in list order
+        this.cellStarts = new int[columns * rows + 1];
+        for (int i = 0; i < size; i++) {
+            cellStarts[cellOf(tileXs[i], tileYs[i]) + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        this.cellWalls = new int[size];
+        int[] fill = Arrays.copyOf(cellStarts, cellStarts.length);
+        for (int i = 0; i < size; i++) {
+            cellWalls[fill[cellOf(tileXs[i], tileYs[i])]++] = i;
+        }
+
+        long[] idIndex = new long[size];
+        for (int i = 0; i < size; i++) {
+            idIndex[i] = ((long) walls.get(i).getId() << 32) | i;
+        }
+        Arrays.sort(idIndex);
+        this.sortedIds = new int[size];
+        this.indicesBySortedId = new int[size];
+        for (int i = 0; i < size; i++) {
+            sortedIds[i] = (int) (idIndex[i] >> 32);
+            indicesBySortedId[i] = (int) idIndex[i];
+        }
+    }
+
+    /**
+     * Checks whether this grid was built for the given wall list in its current state.
+     *
+     * @param walls The level's current walls.
+     * @return True if the grid can be used for them.
+     */
+    public boolean isFor(List<Wall> walls) {
+        return this.walls == walls && this.size == walls.size();
+    }
+
+    /**
+     * Collects the indices of every wall that could touch a circle.
+     * Walls are aligned to tiles in level layouts, but a wall may sit anywhere, so the
+     * query reaches one extra tile up and to the left to cover walls that straddle two tiles.
+     *
+     * @param x The x coordinate of the circle's centre.
+     * @param y The y coordinate of the circle's centre.
+     * @param reach The circle's radius plus any margin.
+     * @param out The array to write the indices to, in ascending order.
+     * @return The number of walls found. If this is larger than out, only part of them were written.
+     */
+    public int collect(float x, float y, float reach, int[] out) {
+        int fromX = Math.max(minTileX, tileOf(x - reach) - 1);
+        int toX = Math.min(minTileX + columns - 1, tileOf(x + reach));
+        int fromY = Math.max(minTileY, tileOf(y - reach) - 1);
+        int toY = Math.min(minTileY + rows - 1, tileOf(y + reach));
+
+        int count = 0;
+        for (int ty = fromY; ty <= toY; ty++) {
+            for (int tx = fromX; tx <= toX; tx++) {
+                int cell = cellOf(tx, ty);
+                for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+                    if (count < out.length) {
+                        insertSorted(out, count, cellWalls[k]);
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds a wall's position in the wall list from its id.
+     *
+     * @param wallId The wall's id.
+     * @return The wall's index, or -1 if the id is not one of this grid's walls.
+     */
+    public int indexOf(int wallId) {
+        int found = Arrays.binarySearch(sortedIds, wallId);
+        return found >= 0 ? indicesBySortedId[found] : -1;
+    }
+
+    /**
+     * Inserts a value into the sorted prefix of an array.
+     *
+     * @param values The array.
+     * @param count The length of the sorted prefix.
+     * @param value The value to insert.
+     */
+    private static void insertSorted(int[] values, int count, int value) {
+        int i = count;
+        while (i > 0 && values[i - 1] > value) {
+            values[i] = values[i - 1];
+            i--;
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Converts a board coordinate to a tile coordinate.
+     *
+     * @param coordinate The board coordinate.
+     * @return The tile that contains it.
+     */
+    private static int tileOf(float coordinate) {
+        return (int) Math.floor(coordinate / App.CELLSIZE);
+    }
+
+    /**
+     * Converts a tile to its cell index in this grid.
+     *
+     * @param tileX The tile column.
+     * @param tileY The tile row.
+     * @return The cell index.
+     */
+    private int cellOf(int tileX, int tileY) {
+        return (tileY - minTileY) * columns + (tileX - minTileX);
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,122 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AppForkTest {
+
+    private App app;
+
+    @BeforeEach
+    public void setup() {
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        app = App.createHeadless(config, 5);
+        app.beginLine(100, 100);
+        app.extendLine(200, 120);
+        app.finishLine();
+        for (int i = 0; i < 400; i++) {
+            app.tick();
+        }
+    }
+
+    private List<PVector> positions(App target) {
+        List<PVector> result = new ArrayList<>();
+        for (Ball ball : target.getCurrentLevel().getBalls()) {
+            result.add(ball.getPosition().copy());
+        }
+        return result;
+    }
+
+    @Test
+    public void testForkSharesUnchangedState() {
+        App fork = app.fork();
+        Level level = app.getCurrentLevel();
+        Level forkLevel = fork.getCurrentLevel();
+
+        assertSame(level.getWalls(), forkLevel.getWalls(), "Walls should be shared");
+        assertSame(level.getHoles(), forkLevel.getHoles(), "Holes should be shared");
+        assertSame(level.getBalls(), forkLevel.getBalls(), "Balls should be shared until changed");
+        assertSame(level.getBricks(), forkLevel.getBricks(), "Bricks should be shared until changed");
+        assertSame(app.getPlayerLines().get(0), fork.getPlayerLines().get(0), "Finished lines should be shared");
+    }
+
+    @Test
+    public void testForkIsIndependentOfSource() {
+        List<PVector> before = positions(app);
+        int scoreBefore = app.getScore();
+
+        App fork = app.fork();
+        fork.beginLine(300, 300);
+        fork.extendLine(350, 320);
+        fork.finishLine();
+        for (int i = 0; i < 600; i++) {
+            fork.tick();
+        }
+
+        assertEquals(before, positions(app), "Ticking a fork should not move the source's balls");
+        assertEquals(scoreBefore, app.getScore(), "Ticking a fork should not change the source's score");
+        assertEquals(1, app.getPlayerLines().size(), "Lines drawn on a fork should not appear in the source");
+        assertNotSame(app.getCurrentLevel().getBalls(), fork.getCurrentLevel().getBalls(),
+                "A fork should copy the balls once it changes them");
+    }
+
+    @Test
+    public void testForkContinuesLikeSource() {
+        App fork = app.fork();
+        for (int i = 0; i < 900; i++) {
+            app.tick();
+            fork.tick();
+        }
+        assertEquals(app.getScore(), fork.getScore(), "Fork and source should reach the same score");
+        assertEquals(positions(app), positions(fork), "Fork and source should move their balls identically");
+    }
+
+    @Test
+    public void testBrickHitsStayInFork() {
+        Level level = app.getCurrentLevel();
+        Brick brick = level.getBricks().get(0);
+        int hitsBefore = brick.getHitCount();
+
+        App fork = app.fork();
+        Ball ball = new Ball(new PVector(brick.getPosition().x - 10, brick.getPosition().y + 16), null, fork, brick.getWallType());
+        ball.setVelocity(new PVector(2, 0));
+        fork.getCurrentLevel().addBall(ball);
+        for (int i = 0; i < 5; i++) {
+            fork.getCurrentLevel().update(fork.getConfig());
+        }
+
+        Brick forkBrick = fork.getCurrentLevel().getLayoutBricks().get(0);
+        assertNotSame(brick, forkBrick, "A fork should copy its bricks before hitting one");
+        assertEquals(hitsBefore + 1, forkBrick.getHitCount(), "The fork's brick should count the hit");
+        assertEquals(hitsBefore, brick.getHitCount(), "The source's brick should be unchanged");
+    }
+
+    @Test
+    public void testRestoringSourceLeavesForkLinesAlone() {
+        LevelSnapshot snapshot = new LevelSnapshot();
+        snapshot.capture(app);
+        app.getPlayerLines().clear();
+        app.beginLine(300, 300);
+        app.extendLine(350, 320);
+        app.finishLine();
+        List<PVector> drawn = new ArrayList<>();
+        for (PVector point : app.getPlayerLines().get(0).points()) {
+            drawn.add(point.copy());
+        }
+
+        App fork = app.fork();
+        snapshot.restore(app);
+
+        assertEquals(new PVector(100, 100), app.getPlayerLines().get(0).points().get(0),
+                "The source should get its captured line back");
+        assertEquals(drawn, fork.getPlayerLines().get(0).points(),
+                "Restoring the source should not change the lines its fork holds");
+    }
+}
@@ -71,6 +71,7 @@ public class AppTest {
             1
         );
         app.mousePressed(mouseEvent);
+        app.applyQueuedInput();
         Line line = app.getCurrentLine();
         app.removeLine(line);
         assertFalse(app.getPlayerLines().contains(line), "Line should be removed from the game");
@@ -110,6 +111,7 @@ public class AppTest {
         app.increaseScore(50);
         app.key = 'r';
         app.keyPressed();
+        app.applyQueuedInput();
         assertEquals(0, app.getScore(), "Score should reset after restarting the level");
     }
 
@@ -118,6 +120,7 @@ public class AppTest {
         app.setGameCompleted(true);
         app.key = 'r';
         app.keyPressed();
+        app.applyQueuedInput();
         assertFalse(app.isGameCompleted(), "Game should restart and reset completion flag");
         assertEquals(0, app.getScore(), "Score should reset to 0 on game restart");
     }
@@ -192,6 +195,7 @@ public class AppTest {
         boolean initialPausedState = app.getPaused();
         app.key = ' ';
         app.keyPressed();
+        app.applyQueuedInput();
         assertNotEquals(initialPausedState, app.getPaused(), "Pressing space should toggle paused state");
     }
 
@@ -221,12 +225,14 @@ public class AppTest {
             1
         );
         app.mousePressed(mouseEvent);
+        app.applyQueuedInput();
         assertNull(app.getCurrentLine(), "Current line should not be initialized when clicking outside game area");
     }
 
     @Test
     public void testMouseDraggedWithoutPressedDoesNotCreateLine() {
         app.mouseDragged();
+        app.applyQueuedInput();
         assertNull(app.getCurrentLine(), "Dragging without a pressed mouse should not create a line");
     }
 
@@ -253,6 +259,7 @@ public class AppTest {
             PConstants.LEFT,
             1
         ));
+        app.applyQueuedInput();
         assertNull(app.getCurrentLine(), "No new lines should be created when level is completed");
     }
 
@@ -286,6 +293,7 @@ public class AppTest {
     @Test
     public void testMouseReleasedWithoutPressedDoesNotAddLine() {
         app.mouseReleased();
+        app.applyQueuedInput();
         assertTrue(app.getPlayerLines().isEmpty(), "No lines should be added when mouse released without pressing");
     }
 
@@ -302,6 +310,7 @@ public class AppTest {
             PConstants.LEFT,
             1
         ));
+        app.applyQueuedInput();
         assertNull(app.getCurrentLine(), "No lines should be drawn when game is completed");
     }
 
@@ -318,6 +327,7 @@ public class AppTest {
             PConstants.LEFT,
             1
         ));
+        app.applyQueuedInput();
         assertNull(app.getCurrentLine(), "No lines should be drawn when time is up");
     }
 
@@ -335,6 +345,7 @@ public class AppTest {
             1
         );
         app.mousePressed(mouseEvent);
+        app.applyQueuedInput();
         assertNull(app.getCurrentLine(), "No line should be started when game is paused.");
     }
 
@@ -352,6 +363,7 @@ public class AppTest {
             1
         );
         app.mousePressed(mouseEvent);
+        app.applyQueuedInput();
         assertNull(app.getCurrentLine(), "No line should be started when time is up.");
     }
 
@@ -369,6 +381,7 @@ public class AppTest {
             1
         );
         app.mousePressed(mouseEvent);
+        app.applyQueuedInput();
         assertNull(app.getCurrentLine(), "No line should be started when level is completed.");
     }
 
@@ -381,6 +394,7 @@ public class AppTest {
     public void testKeyPressedPausesGame() {
         app.key = ' ';
         app.keyPressed();
+        app.applyQueuedInput();
         assertTrue(app.getPaused(), "Game should be paused when space key is pressed.");
     }
 
@@ -414,6 +428,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
         // Add some lines to the player lines
         Line line = new Line(new ArrayList<>(), app);
         app.getPlayerLines().add(line);
@@ -426,6 +441,7 @@ public class AppTest {
         app.setGameCompleted(true);
         app.key = 'r';
         app.keyPressed();
+        app.applyQueuedInput();
         assertFalse(app.isGameCompleted(), "Game should restart when 'r' is pressed after completion.");
     }
 
@@ -435,6 +451,7 @@ public class AppTest {
         int initialScore = app.getScore();
         app.key = 'r';
         app.keyPressed();
+        app.applyQueuedInput();
         assertEquals(initialScore, app.getScore(), "Score should reset to initial value after restarting the level.");
     }
 
@@ -459,6 +476,7 @@ public class AppTest {
         app.setPaused(true);
         app.key = ' ';
         app.keyPressed();
+        app.applyQueuedInput();
         assertFalse(app.getPaused(), "Game should resume when space is pressed after being paused.");
     }
 
@@ -492,6 +510,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
         assertNull(app.getCurrentLine(), "Player should not be able to draw new lines after game completion.");
     }
 
@@ -510,6 +529,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertNull(app.getCurrentLine(), "No line should start drawing when left-clicking above the game area.");
     }
@@ -528,6 +548,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertTrue(app.getPlayerLines().isEmpty(), "No lines should be removed if none are drawn.");
     }
@@ -546,6 +567,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertTrue(app.getPlayerLines().isEmpty(), "No lines should be removed if no lines are at the clicked position.");
     }
@@ -568,6 +590,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertTrue(app.getPlayerLines().contains(line), "No lines should be removed when right-clicking outside the game area.");
     }
@@ -586,6 +609,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertTrue(app.getPlayerLines().isEmpty(), "No lines should be removed when control-left-clicking above the game area.");
     }
@@ -608,6 +632,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertTrue(app.getPlayerLines().contains(line), "No lines should be removed if no line matches the clicked position.");
     }
@@ -630,6 +655,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertNotNull(app.getCurrentLine(), "A line should start drawing when left mouse button is pressed.");
     }
@@ -652,6 +678,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertNull(app.getCurrentLine(), "No line should start when clicking above the game area.");
     }
@@ -674,6 +701,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertTrue(app.getPlayerLines().isEmpty(), "No line should be removed if no lines exist.");
     }
@@ -696,6 +724,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertTrue(app.getPlayerLines().isEmpty(), "No lines should be removed when control-left-clicking in an empty area.");
     }
@@ -706,6 +735,7 @@ public class AppTest {
     
         // No line started
         app.mouseReleased();
+        app.applyQueuedInput();
     
         assertTrue(app.getPlayerLines().isEmpty(), "No line should be added if no line was started.");
     }
@@ -732,6 +762,7 @@ public class AppTest {
             1
         );
         app.mousePressed(event);
+        app.applyQueuedInput();
     
         assertFalse(app.getPlayerLines().isEmpty(), "No line should be removed when clicking outside the game area.");
     }
@@ -748,6 +779,7 @@ public class AppTest {
         app.mouseX = 100;
         app.mouseY = 150;
         app.mouseDragged();
+        app.applyQueuedInput();
     
         // Assert that a point has been added to the line
         assertFalse(app.getCurrentLine().getPoints().isEmpty(), "Line should have points after mouseDragged.");
@@ -761,6 +793,7 @@ public class AppTest {
         app.mouseX = 150;
         app.mouseY = 200;  // Simulate dragging the mouse
         app.mouseDragged();  // Call mouseDragged
+        app.applyQueuedInput();
     
         // Since currentLine is null, nothing should be added
         assertNull(app.getCurrentLine(), "No line should be created when mouseDragged is called without an active line.");
@@ -776,6 +809,7 @@ public class AppTest {
     
         // Simulate releasing the mouse to complete the line
         app.mouseReleased();
+        app.applyQueuedInput();
     
         // Verify the line is added to the playerLines list
         assertFalse(app.getPlayerLines().isEmpty(), "Player lines should contain the current line after mouseReleased.");
@@ -790,6 +824,7 @@ public class AppTest {
         int initialPlayerLinesSize = app.getPlayerLines().size();  // Store initial playerLines size
     
         app.mouseReleased();  // Call mouseReleased
+        app.applyQueuedInput();
     
         // Verify that nothing happens, playerLines should remain unchanged
         assertEquals(initialPlayerLinesSize, app.getPlayerLines().size(), "Player lines should remain unchanged if mouseReleased is called without an active line.");
@@ -804,6 +839,7 @@ public class AppTest {
 
         MouseEvent event = new MouseEvent(app, System.currentTimeMillis(), MouseEvent.PRESS, 0, app.mouseX, app.mouseY, PConstants.LEFT, 1);
         app.mousePressed(event);
+        app.applyQueuedInput();
 
         assertNotNull(app.getCurrentLine(), "Line should start when left-click is pressed within the game area.");
     }
@@ -819,6 +855,7 @@ public class AppTest {
         app.mouseX = 100;
         app.mouseY = 150 + App.TOPBAR;
         app.mouseDragged();
+        app.applyQueuedInput();
 
         assertFalse(app.getCurrentLine().getPoints().isEmpty(), "Points should be added to the line when mouse is dragged.");
     }
@@ -832,6 +869,7 @@ public class AppTest {
 
         // Simulate releasing the mouse
         app.mouseReleased();
+        app.applyQueuedInput();
 
         assertFalse(app.getPlayerLines().isEmpty(), "The line should be added to player lines when mouse is released.");
         assertNull(app.getCurrentLine(), "Current line should be set to null after mouse is released.");
@@ -845,6 +883,7 @@ public class AppTest {
         app.mouseButton = PConstants.LEFT;
         MouseEvent event = new MouseEvent(app, System.currentTimeMillis(), MouseEvent.PRESS, 0, app.mouseX, app.mouseY, PConstants.LEFT, 1);
         app.mousePressed(event);
+        app.applyQueuedInput();
 
         assertNotNull(app.getCurrentLine(), "A new line should be created when left-clicking in the game area.");
     }
@@ -857,12 +896,14 @@ public class AppTest {
         app.mouseButton = PConstants.RIGHT;
         MouseEvent rightClickEvent = new MouseEvent(app, System.currentTimeMillis(), MouseEvent.PRESS, 0, app.mouseX, app.mouseY, PConstants.RIGHT, 1);
         app.mousePressed(rightClickEvent);
+        app.applyQueuedInput();
 
         app.mouseX = 100;
         app.mouseY = 150 + App.TOPBAR;
         app.mouseButton = PConstants.LEFT;
         MouseEvent leftClickEvent = new MouseEvent(app, System.currentTimeMillis(), MouseEvent.PRESS, 0, app.mouseX, app.mouseY, PConstants.LEFT, 1);
         app.mousePressed(leftClickEvent);
+        app.applyQueuedInput();
 
         assertNotNull(app.getCurrentLine(), "A new line should be created after the left-click.");
     }
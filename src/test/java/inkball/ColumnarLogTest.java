@@ -0,0 +1,163 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarLogTest {
+
+    /**
+     * A recording dominated by strokes, as real ones are: smooth drags a few pixels apart,
+     * one or two per tick, with the odd erase and pause.
+     */
+    private static InputLog strokes(int count, long seed) {
+        Random random = new Random(seed);
+        InputLog log = new InputLog(seed, 0x1234);
+        long tick = 0;
+        for (int s = 0; s < count; s++) {
+            tick += 20 + random.nextInt(100);
+            int x = 20 + random.nextInt(530);
+            int y = 20 + random.nextInt(530);
+            log.add(tick, InputLog.LINE_START, x, y);
+            double angle = random.nextDouble() * Math.PI * 2;
+            int points = 20 + random.nextInt(40);
+            for (int p = 0; p < points; p++) {
+                angle += random.nextGaussian() * 0.2;
+                x += (int) Math.round(Math.cos(angle) * 6);
+                y += (int) Math.round(Math.sin(angle) * 6);
+                tick += random.nextInt(3) == 0 ? 0 : 1;
+                log.add(tick, InputLog.LINE_DRAG, x, y);
+            }
+            log.add(tick, InputLog.LINE_RELEASE, 0, 0);
+            if (s % 10 == 9) {
+                log.add(tick + 5, InputLog.ERASE, random.nextInt(576), random.nextInt(576));
+            }
+            if (s % 25 == 24) {
+                log.add(tick + 7, InputLog.PAUSE, 0, 0);
+                log.add(tick + 40, InputLog.PAUSE, 0, 0);
+                tick += 40;
+            }
+        }
+        log.setEndTick(tick + 100);
+        return log;
+    }
+
+    private static byte[] rowFormat(InputLog log) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        log.write(out);
+        return out.toByteArray();
+    }
+
+    private static void assertSameLog(InputLog expected, InputLog actual) {
+        assertEquals(expected.getSeed(), actual.getSeed(), "Seed should survive the round trip");
+        assertEquals(expected.getConfigHash(), actual.getConfigHash(), "Config hash should survive the round trip");
+        assertEquals(expected.getEndTick(), actual.getEndTick(), "End tick should survive the round trip");
+        assertEquals(expected.size(), actual.size(), "Every event should be decoded");
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTick(i), actual.getTick(i), "Tick of event " + i);
+            assertEquals(expected.getType(i), actual.getType(i), "Type of event " + i);
+            assertEquals(expected.getX(i), actual.getX(i), "X of event " + i);
+            assertEquals(expected.getY(i), actual.getY(i), "Y of event " + i);
+        }
+    }
+
+    @Test
+    public void testRoundTripWithAndWithoutEntropyCoding() throws IOException {
+        InputLog log = strokes(120, 5);
+        assertSameLog(log, ColumnarLog.decode(ColumnarLog.encode(log, false)));
+        assertSameLog(log, ColumnarLog.decode(ColumnarLog.encode(log, true)));
+
+        InputLog empty = new InputLog(3, 4);
+        assertSameLog(empty, ColumnarLog.decode(ColumnarLog.encode(empty, true)));
+    }
+
+    @Test
+    public void testColumnsAreSmallerThanRows() throws IOException {
+        InputLog log = strokes(400, 8);
+        int rows = rowFormat(log).length;
+        int columns = ColumnarLog.encode(log, false).length;
+        int coded = ColumnarLog.encode(log, true).length;
+        assertTrue(columns < rows, "Columns should beat rows: " + columns + " vs " + rows);
+        assertTrue(coded * 2 < rows, "Entropy-coded columns should be under half of rows: " + coded + " vs " + rows);
+    }
+
+    @Test
+    public void testInputLogReadsColumnarRecordings() throws IOException {
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        App app = TestGames.play(config, 17, 600);
+
+        InputLog loaded = InputLog.read(new ByteArrayInputStream(ColumnarLog.encode(app.getInputLog(), true)));
+        assertSameLog(app.getInputLog(), loaded);
+        App replayed = new Replayer(loaded, config).run();
+        assertEquals(app.getScore(), replayed.getScore(), "A columnar recording should replay the same game");
+        assertEquals(app.getRemainingTime(), replayed.getRemainingTime(), "A columnar recording should replay the same game");
+    }
+
+    @Test
+    public void testTruncatedDataIsRejected() {
+        byte[] encoded = ColumnarLog.encode(strokes(30, 2), true);
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 10);
+        assertThrows(IOException.class, () -> ColumnarLog.decode(truncated), "A cut-off log should not decode");
+    }
+
+    /**
+     * Writes a columnar log header for an uncompressed payload, with the lengths given.
+     */
+    private static ByteArrayOutputStream header(long count, long rawLength, long storedLength) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(ColumnarLog.MAGIC);
+        Varint.writeUnsigned(data, 1);
+        data.writeByte(0);
+        data.writeLong(5);
+        data.writeInt(6);
+        Varint.writeUnsigned(data, 100);
+        Varint.writeUnsigned(data, count);
+        Varint.writeUnsigned(data, rawLength);
+        Varint.writeUnsigned(data, storedLength);
+        return out;
+    }
+
+    @Test
+    public void testCorruptLengthsAreRejected() throws IOException {
+        byte[] negative = header(1, -1L, 4).toByteArray();
+        assertThrows(IOException.class, () -> ColumnarLog.decode(negative), "A negative length should not decode");
+        byte[] oversized = header(1, 1L << 40, 1L << 40).toByteArray();
+        assertThrows(IOException.class, () -> ColumnarLog.decode(oversized), "A length past 2 GiB should not decode");
+        byte[] missing = header(1, 1 << 30, 1 << 30).toByteArray();
+        assertThrows(EOFException.class, () -> ColumnarLog.decode(missing),
+                "A length past the end of the data should be reported as truncation");
+    }
+
+    private static byte[] uncompressed(int count, byte[] payload) throws IOException {
+        ByteArrayOutputStream out = header(count, payload.length, payload.length);
+        out.write(payload);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testLeftoverColumnDataIsRejected() throws IOException {
+        // A tick column of one delta, one run of one release, then six empty position columns
+        byte[] exact = {1, 0, 2, InputLog.LINE_RELEASE, 1, 0, 0, 0, 0, 0, 0};
+        assertEquals(1, ColumnarLog.decode(uncompressed(1, exact)).size(), "Columns used up exactly should decode");
+
+        byte[] extraTick = {2, 0, 0, 2, InputLog.LINE_RELEASE, 1, 0, 0, 0, 0, 0, 0};
+        assertThrows(IOException.class, () -> ColumnarLog.decode(uncompressed(1, extraTick)),
+                "A tick column longer than its events should not decode");
+        byte[] longRun = {1, 0, 2, InputLog.LINE_RELEASE, 2, 0, 0, 0, 0, 0, 0};
+        assertThrows(IOException.class, () -> ColumnarLog.decode(uncompressed(1, longRun)),
+                "A run longer than its events should not decode");
+        byte[] trailing = {1, 0, 2, InputLog.LINE_RELEASE, 1, 0, 0, 0, 0, 0, 0, 9};
+        assertThrows(IOException.class, () -> ColumnarLog.decode(uncompressed(1, trailing)),
+                "Bytes after the last column should not decode");
+    }
+}
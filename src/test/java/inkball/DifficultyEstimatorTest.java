@@ -0,0 +1,70 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DifficultyEstimatorTest {
+
+    private JSONObject config;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+    }
+
+    @Test
+    public void testWilsonInterval() {
+        double[] none = DifficultyEstimator.wilson(0, 10);
+        assertEquals(0, none[0], 1e-9, "No successes should give a lower bound of 0");
+        assertEquals(0.2775, none[1], 1e-3, "The upper bound should match the Wilson formula");
+        double[] half = DifficultyEstimator.wilson(50, 100);
+        assertEquals(1, half[0] + half[1], 1e-9, "The interval should be symmetric about one half");
+        assertTrue(half[1] - half[0] < 0.2, "A hundred trials should narrow the interval");
+    }
+
+    @Test
+    public void testEstimateIsRepeatableAndStopsAdaptively() {
+        DifficultyEstimator single = new DifficultyEstimator(config, Player.IDLE, 1);
+        single.setBatchSize(4);
+        single.setGameLimits(8, 40);
+        single.setTargetWidths(1, 1);
+        DifficultyEstimator.Estimate loose = single.estimate(0, 3);
+        assertTrue(loose.isConverged(), "Wide targets should be met");
+        assertEquals(8, loose.getGames(), "Wide targets should stop at the minimum number of games");
+
+        single.setTargetWidths(0, 0);
+        DifficultyEstimator.Estimate tight = single.estimate(0, 3);
+        assertFalse(tight.isConverged(), "Zero-width targets cannot be met");
+        assertEquals(40, tight.getGames(), "Sampling should stop at the game limit");
+
+        DifficultyEstimator parallel = new DifficultyEstimator(config, Player.IDLE, 3);
+        parallel.setBatchSize(4);
+        parallel.setGameLimits(8, 40);
+        parallel.setTargetWidths(0, 0);
+        DifficultyEstimator.Estimate again = parallel.estimate(0, 3);
+        assertEquals(tight.getMeanScore(), again.getMeanScore(), 1e-9, "Scores should not depend on threads");
+        assertEquals(tight.getCompleted(), again.getCompleted(), "Completions should not depend on threads");
+        assertTrue(tight.getScoreLow() <= tight.getMeanScore() && tight.getMeanScore() <= tight.getScoreHigh(),
+                "The interval should contain the mean");
+    }
+
+    @Test
+    public void testEveryLevelIsEstimated() {
+        DifficultyEstimator estimator = new DifficultyEstimator(config, Player.IDLE, 2);
+        estimator.setBatchSize(2);
+        estimator.setGameLimits(2, 4);
+        List<DifficultyEstimator.Estimate> estimates = estimator.estimateAll(1);
+        assertEquals(config.getJSONArray("levels").size(), estimates.size(), "Every level should be estimated");
+        for (int i = 0; i < estimates.size(); i++) {
+            DifficultyEstimator.Estimate estimate = estimates.get(i);
+            assertEquals(i, estimate.getLevelIndex(), "Estimates should be in config order");
+            assertTrue(estimate.getMaxScore() > 0, "Every level should have balls to score");
+            assertTrue(estimate.getDifficulty() >= 0 && estimate.getDifficulty() <= 1, "Difficulty should be a fraction");
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameEventBusTest {
+
+    private JSONObject config;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+    }
+
+    @Test
+    public void testTickPublishesEventsInOrder() {
+        App app = App.createHeadless(config, 4);
+        List<String> events = new ArrayList<>();
+        List<Long> ticks = new ArrayList<>();
+        int[] points = new int[1];
+        app.getEvents().addListener(event -> {
+            events.add(event.toString());
+            ticks.add(event.getTick());
+            if (event.getType() == GameEvent.CAPTURE) {
+                points[0] += event.getPoints();
+            } else if (event.getType() == GameEvent.WRONG_CAPTURE) {
+                points[0] -= event.getPoints();
+            }
+        });
+        int queued = app.getCurrentLevel().getConfigBalls().size();
+        while (!app.isLevelCompleted() && !app.isTimeUp()) {
+            app.tick();
+        }
+
+        long spawns = events.stream().filter(e -> e.startsWith("BallSpawned")).count();
+        assertTrue(spawns >= queued, "Every queued ball should be spawned");
+        assertTrue(events.stream().anyMatch(e -> e.startsWith("Capture") || e.startsWith("WrongCapture")),
+                "Balls should be captured");
+        assertEquals(app.getCapturePoints(), points[0], "Capture events should account for every point");
+        for (int i = 1; i < ticks.size(); i++) {
+            assertTrue(ticks.get(i - 1) <= ticks.get(i), "Events should arrive in tick order");
+        }
+    }
+
+    @Test
+    public void testCaptureIsAppliedWhenTheBatchEnds() {
+        String[] layout = {
+            "XXXXXX",
+            "X    X",
+            "X H0 X",
+            "X    X",
+            "XXXXXX"
+        };
+        App app = App.createHeadless(config, 1, layout);
+        Level level = app.getCurrentLevel();
+        level.setScoreIncreaseMultiplier(1);
+        Hole hole = level.getHoles().get(0);
+        Ball ball = new Ball(new PVector(hole.getPosition().x + 32, hole.getPosition().y + 32), null, app, 2);
+        level.addBall(ball);
+
+        GameEventBus events = app.getEvents();
+        events.begin();
+        hole.handleCapture(ball, app, config);
+        assertEquals(0, app.getScore(), "The score should wait for the batch to end");
+        assertTrue(level.getBalls().contains(ball), "The ball should stay until the batch ends");
+        assertTrue(events.isCaptured(ball), "The ball should be known to be captured");
+        assertTrue(events.withoutCaptured(level.getBalls()).isEmpty(), "Captured balls should be left out");
+        events.end();
+
+        assertTrue(app.getScore() > 0, "The capture should be scored");
+        assertFalse(level.getBalls().contains(ball), "The ball should be removed");
+        assertFalse(events.isCaptured(ball), "Nothing should be pending after the batch");
+    }
+
+    @Test
+    public void testDestroyedBrickIsSkippedUntilRemoved() {
+        String[] layout = {
+            "XXXXXX",
+            "X    X",
+            "X E0 X",
+            "X    X",
+            "XXXXXX"
+        };
+        App app = App.createHeadless(config, 1, layout);
+        Level level = app.getCurrentLevel();
+        Brick brick = level.getBricks().get(0);
+        brick.setHitCount(2);
+        PVector centre = new PVector(brick.getPosition().x + 16, brick.getPosition().y - 8);
+        Ball first = new Ball(centre.copy(), null, app, 0);
+        Ball second = new Ball(centre.copy(), null, app, 0);
+
+        GameEventBus events = app.getEvents();
+        events.begin();
+        level.checkBrickCollisions(first);
+        assertTrue(events.isDestroyed(brick), "The third hit should destroy the brick");
+        assertTrue(level.getBricks().contains(brick), "The brick should stay until the batch ends");
+        PVector velocity = second.getVelocity().copy();
+        level.checkBrickCollisions(second);
+        assertEquals(velocity, second.getVelocity(), "Later balls should pass through the destroyed brick");
+        assertEquals(0, second.getCooldown(brick), "Later balls should not touch the destroyed brick");
+        events.end();
+
+        assertTrue(level.getBricks().isEmpty(), "The brick should be removed");
+        assertEquals(3, brick.getHitCount(), "The brick should only count hits while standing");
+    }
+
+    @Test
+    public void testBrickChangesInvalidateTheStaticLayer() {
+        String[] layout = {
+            "XXXXXX",
+            "X    X",
+            "X E0 X",
+            "X    X",
+            "XXXXXX"
+        };
+        App app = App.createHeadless(config, 1, layout);
+        Level level = app.getCurrentLevel();
+        Brick brick = level.getBricks().get(0);
+        LevelSnapshot snapshot = new LevelSnapshot();
+        snapshot.capture(app);
+        PVector centre = new PVector(brick.getPosition().x + 16, brick.getPosition().y - 8);
+
+        int version = level.getBrickVersion();
+        level.update(config);
+        assertEquals(version, level.getBrickVersion(), "Nothing touching a brick should leave the layer alone");
+
+        GameEventBus events = app.getEvents();
+        events.begin();
+        level.checkBrickCollisions(new Ball(centre.copy(), null, app, 0));
+        assertEquals(version, level.getBrickVersion(), "A hit should only count once the batch ends");
+        events.end();
+        assertNotEquals(version, level.getBrickVersion(), "A hit should redraw the layer");
+
+        version = level.getBrickVersion();
+        brick.setHitCount(2);
+        events.begin();
+        level.checkBrickCollisions(new Ball(centre.copy(), null, app, 0));
+        events.end();
+        assertTrue(level.getBricks().isEmpty(), "The third hit should destroy the brick");
+        assertNotEquals(version, level.getBrickVersion(), "A destroyed brick should redraw the layer");
+
+        version = level.getBrickVersion();
+        snapshot.restore(app);
+        assertEquals(1, level.getBricks().size(), "The restore should bring the brick back");
+        assertNotEquals(version, level.getBrickVersion(), "A restored brick should redraw the layer");
+    }
+
+    @Test
+    public void testRingGrowsAndEventsAreReleased() {
+        App app = App.createHeadless(config, 1);
+        GameEventBus events = new GameEventBus(app, 1);
+        List<GameEvent> seen = new ArrayList<>();
+        List<Byte> types = new ArrayList<>();
+        events.addListener(event -> {
+            seen.add(event);
+            types.add(event.getType());
+        });
+        Ball ball = new Ball(new PVector(100, 100), null, app, 1);
+        events.begin();
+        for (int i = 0; i < 10; i++) {
+            events.ballSpawned(ball);
+        }
+        assertTrue(seen.isEmpty(), "Nothing should be dispatched during a batch");
+        events.end();
+
+        assertEquals(10, types.size(), "Every event should survive the ring growing");
+        for (GameEvent event : seen) {
+            assertNull(event.getBall(), "Applied events should not keep the ball alive");
+        }
+        events.ballSpawned(ball);
+        assertEquals(11, types.size(), "Outside a batch events should be dispatched straight away");
+    }
+}
@@ -0,0 +1,107 @@
+package inkball;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameServerTest {
+
+    private JSONObject config;
+    private SessionHost host;
+    private GameServer server;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        config = App.loadConfigResource("/inkball/config.json");
+        host = new SessionHost(config, 4);
+        server = new GameServer(host, 0, 200, 40);
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.close();
+        host.close();
+    }
+
+    @Test
+    public void testClientDrawsLineAndSeesIt() throws IOException {
+        App view = App.createHeadless(config, 0);
+        try (GameClient client = new GameClient(server.getPort())) {
+            assertTrue(client.readState(view), "The server should send frames");
+            long firstTick = view.getTick();
+            assertTrue(client.readState(view), "The server should keep sending frames");
+            assertTrue(view.getTick() > firstTick, "Frames should follow the game");
+
+            client.beginLine(100, 150);
+            client.extendLine(160, 200);
+            client.extendLine(220, 260);
+            client.finishLine();
+            for (int i = 0; i < 200 && view.getPlayerLines().isEmpty(); i++) {
+                assertTrue(client.readState(view), "The server should keep sending frames");
+            }
+            assertEquals(1, view.getPlayerLines().size(), "The line should show up in the game's state");
+
+            client.togglePause();
+            for (int i = 0; i < 200 && !view.getPaused(); i++) {
+                client.readState(view);
+            }
+            assertTrue(view.getPaused(), "The pause command should pause the game");
+        }
+    }
+
+    @Test
+    public void testManyClientsEachGetTheirOwnGame() throws IOException {
+        List<GameClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                clients.add(new GameClient(server.getPort()));
+            }
+            App first = App.createHeadless(config, 0);
+            App second = App.createHeadless(config, 0);
+            for (GameClient client : clients) {
+                assertTrue(client.readState(first), "Every client should get frames");
+            }
+            clients.get(0).readState(first);
+            clients.get(1).readState(second);
+            assertNotEquals(first.getRandom().getState(), second.getRandom().getState(),
+                    "Each connection should play its own seed");
+            assertEquals(200, server.getConnectionCount(), "Every connection should be open");
+        } finally {
+            for (GameClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownCommandClosesConnection() throws IOException, InterruptedException {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+            ByteBuffer command = ByteBuffer.allocate(GameServer.COMMAND_SIZE);
+            command.put((byte) 42).putShort((short) 0).putShort((short) 0).flip();
+            channel.write(command);
+            ByteBuffer sink = ByteBuffer.allocate(1 << 16);
+            long deadline = System.currentTimeMillis() + 10000;
+            int read = 0;
+            while (read >= 0 && System.currentTimeMillis() < deadline) {
+                sink.clear();
+                read = channel.read(sink);
+            }
+            assertEquals(-1, read, "The server should hang up on a bad command");
+        }
+        for (int i = 0; i < 100 && !host.getSessions().isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(host.getSessions().isEmpty(), "The connection's session should be closed");
+    }
+}
@@ -0,0 +1,76 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GhostRaceTest {
+
+    private final JSONObject config = App.loadConfigResource("/inkball/config.json");
+
+    private InputLog record(long seed, int ticks) {
+        return TestGames.record(config, seed, ticks);
+    }
+
+    @Test
+    public void testGhostsReplayTheirRunsInParallel() {
+        List<InputLog> logs = new ArrayList<>();
+        for (int g = 0; g < 6; g++) {
+            logs.add(record(100 + g, 400 + g * 50));
+        }
+        try (GhostRace race = new GhostRace(config, logs, 3)) {
+            for (int frame = 0; frame < 700; frame++) {
+                race.advance();
+            }
+            for (int g = 0; g < logs.size(); g++) {
+                assertTrue(race.isFinished(g), "Ghost " + g + " should have reached the end of its run");
+                App expected = new Replayer(logs.get(g), config).run();
+                assertArrayEquals(TestGames.snapshot(expected), TestGames.snapshot(race.getGhost(g)),
+                        "Ghost " + g + " should play exactly as the recorded run");
+            }
+        }
+    }
+
+    @Test
+    public void testGhostsShareStaticGeometry() {
+        List<InputLog> logs = Arrays.asList(record(1, 10), record(2, 10), record(3, 10));
+        try (GhostRace race = new GhostRace(config, logs, 2)) {
+            Level first = race.getGhost(0).getCurrentLevel();
+            for (int g = 1; g < logs.size(); g++) {
+                Level level = race.getGhost(g).getCurrentLevel();
+                assertSame(first.getWalls(), level.getWalls(), "Walls should be shared between ghosts");
+                assertSame(first.getHoles(), level.getHoles(), "Holes should be shared between ghosts");
+                assertNotSame(first.getBalls(), level.getBalls(), "Balls should belong to each ghost");
+            }
+            assertEquals(1, race.getLayoutCache().size(), "The layout should be parsed once");
+        }
+    }
+
+    @Test
+    public void testInterruptedWaitStillFinishesTheStep() {
+        List<InputLog> logs = Arrays.asList(record(7, 300), record(8, 300), record(9, 300));
+        try (GhostRace race = new GhostRace(config, logs, 3)) {
+            for (int frame = 0; frame < 100; frame++) {
+                race.beginAdvance();
+                if (frame == 50) {
+                    Thread.currentThread().interrupt();
+                }
+                race.finishAdvance();
+                if (frame == 50) {
+                    assertTrue(Thread.interrupted(), "The interrupt should be passed on");
+                }
+                for (int g = 0; g < logs.size(); g++) {
+                    assertEquals(frame + 1, race.getGhost(g).getTick(),
+                            "Every ghost should have finished frame " + frame + " when the wait returns");
+                }
+            }
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.awt.image.BufferedImage;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeatmapAggregatorTest {
+
+    private JSONObject config;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+    }
+
+    @Test
+    public void testMergedCountsDoNotDependOnThreads() {
+        HeatmapAggregator.Heatmap single = new HeatmapAggregator(config, 1, 8, 1).run(5, 6, Player.IDLE);
+        HeatmapAggregator.Heatmap parallel = new HeatmapAggregator(config, 1, 8, 3).run(5, 6, Player.IDLE);
+
+        assertEquals(6, single.getGames(), "Every game should be counted");
+        assertEquals(single.getTicks(), parallel.getTicks(), "Tick counts should not depend on threads");
+        StringWriter singleCsv = new StringWriter();
+        StringWriter parallelCsv = new StringWriter();
+        single.writeTileCsv(singleCsv);
+        parallel.writeTileCsv(parallelCsv);
+        assertEquals(singleCsv.toString(), parallelCsv.toString(), "Counts should not depend on threads");
+        assertEquals(18 * 18 + 1, singleCsv.toString().split("\\R").length, "There should be a row per tile");
+
+        long wallHits = 0;
+        long ballTicks = 0;
+        for (int row = 0; row < 18; row++) {
+            for (int column = 0; column < 18; column++) {
+                wallHits += single.getWallHits(column, row);
+                ballTicks += single.getTileBallTicks(column, row);
+            }
+        }
+        assertTrue(wallHits > 0, "Balls should hit walls");
+        assertTrue(ballTicks > single.getTicks(), "Several balls should be on the board at once");
+    }
+
+    @Test
+    public void testHitsAndCapturesLandOnTheirTiles() {
+        String[] layout = {
+            "XXXXXXX",
+            "X     X",
+            "X B0  X",
+            "X   H0X",
+            "X     X",
+            "XXXXXXX"
+        };
+        HeatmapAggregator.Heatmap heatmap = new HeatmapAggregator.Heatmap(32);
+        App app = App.createHeadless(config, 2, layout);
+        HeatmapAggregator.play(app, Player.IDLE, heatmap);
+
+        assertTrue(app.isLevelCompleted(), "The ball should end up in the hole");
+        assertEquals(1, heatmap.getCaptures(4, 3), "The capture should be counted on the hole");
+        long wallHits = 0;
+        long ballTicks = 0;
+        for (int row = 0; row < 6; row++) {
+            for (int column = 0; column < 7; column++) {
+                if (layout[row].charAt(column) != 'X') {
+                    assertEquals(0, heatmap.getWallHits(column, row), "Only wall tiles can be hit");
+                }
+                wallHits += heatmap.getWallHits(column, row);
+                ballTicks += heatmap.getBallTicks(column, row);
+            }
+        }
+        assertTrue(wallHits > 0, "The ball should bounce off the walls before it is captured");
+        assertEquals(heatmap.getTicks() - 1, ballTicks, "The ball should be counted every tick until its capture");
+    }
+
+    @Test
+    public void testBrickHitsAreCountedUntilTheBrickBreaks() {
+        String[] layout = {
+            "XXXXX",
+            "XB0 X",
+            "X E0X",
+            "X   X",
+            "XXXXX"
+        };
+        HeatmapAggregator.Heatmap heatmap = new HeatmapAggregator.Heatmap(32);
+        App app = App.createHeadless(config, 3, layout);
+        HeatmapAggregator.play(app, Player.IDLE, heatmap);
+
+        assertTrue(app.getCurrentLevel().getBricks().isEmpty(), "The ball should break the brick");
+        assertEquals(3, heatmap.getBrickHits(2, 2), "Each hit until the brick breaks should be counted once");
+        for (int row = 0; row < 5; row++) {
+            for (int column = 0; column < 5; column++) {
+                if (layout[row].charAt(column) == 'X') {
+                    assertEquals(0, heatmap.getBrickHits(column, row), "Walls are not bricks");
+                } else {
+                    assertEquals(0, heatmap.getWallHits(column, row), "Only walls count as wall hits");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRenderAndCellCsv() {
+        HeatmapAggregator aggregator = new HeatmapAggregator(config, 0, 16, 1);
+        HeatmapAggregator.Heatmap heatmap = aggregator.run(1, 1, Player.IDLE);
+        BufferedImage image = aggregator.render(heatmap);
+        assertEquals(App.WIDTH, image.getWidth(), "The image should cover the board");
+        assertEquals(App.WIDTH, image.getHeight(), "The image should cover the board");
+
+        StringWriter cells = new StringWriter();
+        heatmap.writeCellCsv(cells);
+        assertEquals(36 * 36 + 1, cells.toString().split("\\R").length, "There should be a row per cell");
+        assertThrows(IllegalArgumentException.class, () -> new HeatmapAggregator(config, 0, 5, 1),
+                "Cells must divide the tile size");
+    }
+}
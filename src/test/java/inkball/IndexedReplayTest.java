@@ -0,0 +1,91 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexedReplayTest {
+
+    private final JSONObject config = App.loadConfigResource("/inkball/config.json");
+
+    private InputLog record(long seed, int ticks) {
+        return TestGames.record(config, seed, ticks);
+    }
+
+    private IndexedReplay open(InputLog log, int interval) throws IOException {
+        File file = File.createTempFile("replay", ".inki");
+        file.deleteOnExit();
+        IndexedReplay.save(log, config, interval, file);
+        return IndexedReplay.open(file, App.createHeadless(config, 0));
+    }
+
+    @Test
+    public void testSeekLandsOnTheSameStateAsReplayingFromTheStart() throws IOException {
+        InputLog log = record(21, 2400);
+        Map<Long, byte[]> expected = new HashMap<>();
+        long[] targets = {2000, 10, 1234, 150, 151, 2399, 0, 900, 901, 2400};
+        Replayer replayer = new Replayer(log, config);
+        do {
+            for (long target : targets) {
+                if (target == replayer.getApp().getTick()) {
+                    expected.put(target, TestGames.snapshot(replayer.getApp()));
+                }
+            }
+        } while (replayer.step());
+
+        IndexedReplay replay = open(log, 150);
+        assertEquals(17, replay.getKeyframeCount(), "There should be a keyframe every interval, ends included");
+        for (long target : targets) {
+            replay.seek(target);
+            assertEquals(target, replay.getTick(), "Seek should land on the requested tick");
+            assertArrayEquals(expected.get(target), TestGames.snapshot(replay.getApp()),
+                    "The state at tick " + target + " should match a replay from the start");
+        }
+    }
+
+    @Test
+    public void testSeekReplaysAtMostOneInterval() throws IOException {
+        IndexedReplay replay = open(record(4, 1500), 100);
+        replay.seek(1299);
+        assertEquals(99, replay.getResimulatedTicks(), "A seek should start from the keyframe before it");
+        replay.seek(250);
+        assertEquals(99 + 50, replay.getResimulatedTicks(), "Seeking back should restore an earlier keyframe");
+        replay.seek(280);
+        assertEquals(99 + 50 + 30, replay.getResimulatedTicks(), "A short seek forward should just play on");
+        replay.seek(5000);
+        assertEquals(1500, replay.getTick(), "Seeking past the end should stop at the end");
+        assertFalse(replay.step(), "There is nothing to play after the end");
+    }
+
+    @Test
+    public void testScrubbingAThreeMinuteRunReplaysLessThanAnIntervalPerSeek() throws IOException {
+        IndexedReplay replay = open(record(9, 3 * 60 * App.FPS), IndexedReplay.DEFAULT_INTERVAL);
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            long target = random.nextInt((int) replay.getEndTick() + 1);
+            long before = replay.getResimulatedTicks();
+            replay.seek(target);
+            assertEquals(target, replay.getTick(), "Seek should land on the requested tick");
+            assertTrue(replay.getResimulatedTicks() - before < replay.getInterval(),
+                    "A seek to tick " + target + " should replay less than one interval");
+        }
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        record(1, 10).write(out);
+        ByteBuffer plainLog = ByteBuffer.wrap(out.toByteArray());
+        assertThrows(IOException.class, () -> new IndexedReplay(plainLog, App.createHeadless(config, 0)),
+                "A plain input log is not an indexed replay");
+    }
+}
@@ -0,0 +1,105 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InkballEnvTest {
+
+    private JSONObject config;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+    }
+
+    @Test
+    public void testResetMatchesFreshGame() {
+        InkballEnv env = new InkballEnv(config, 0, 1, 0);
+        env.reset(42);
+        App fresh = App.createHeadless(config, 42);
+        for (int i = 0; i < 900; i++) {
+            env.step(InkballEnv.Action.NOOP);
+            fresh.tick();
+        }
+
+        App played = env.getApp();
+        assertEquals(fresh.getScore(), played.getScore(), "Scores should match a freshly loaded game");
+        assertEquals(fresh.getCurrentLevel().getBalls().size(), played.getCurrentLevel().getBalls().size(),
+                "Ball counts should match a freshly loaded game");
+        for (int i = 0; i < fresh.getCurrentLevel().getBalls().size(); i++) {
+            assertEquals(fresh.getCurrentLevel().getBalls().get(i).getPosition(),
+                    played.getCurrentLevel().getBalls().get(i).getPosition(), "Balls should move the same way");
+        }
+    }
+
+    @Test
+    public void testRewardsAddUpToCapturePoints() {
+        InkballEnv env = new InkballEnv(config, 0, 4, 0);
+        env.reset(5);
+        float total = 0;
+        for (int i = 0; i < 600 && !env.isDone(); i++) {
+            total += env.step(InkballEnv.Action.NOOP).getReward();
+        }
+        assertEquals(env.getApp().getCapturePoints(), (long) total, "Rewards should add up to the capture points");
+    }
+
+    @Test
+    public void testStrokeAndEraseActions() {
+        InkballEnv env = new InkballEnv(config, 0, 1, 0);
+        float[] first = env.reset(1);
+        assertEquals(0, first[3], "A new episode should have no lines");
+
+        InkballEnv.StepResult drawn = env.step(InkballEnv.Action.stroke(100, 300, 150, 320, 200, 300));
+        assertEquals(1, drawn.getObservation()[3], "A stroke should add a player line");
+        assertEquals(3, env.getApp().getPlayerLines().get(0).getPoints().size(), "The line should follow the stroke");
+
+        InkballEnv.StepResult erased = env.step(InkballEnv.Action.erase(150, 320));
+        assertEquals(0, erased.getObservation()[3], "Erasing should remove the line");
+        assertThrows(IllegalArgumentException.class, () -> InkballEnv.Action.stroke(1, 2),
+                "A stroke needs two points");
+    }
+
+    @Test
+    public void testEpisodeIsTruncated() {
+        InkballEnv env = new InkballEnv(config, 0, 2, 3);
+        env.reset(9);
+        assertFalse(env.step(InkballEnv.Action.NOOP).isTruncated(), "The first step should not truncate");
+        env.step(InkballEnv.Action.NOOP);
+        assertTrue(env.step(InkballEnv.Action.NOOP).isTruncated(), "The third step should truncate");
+        assertThrows(IllegalStateException.class, () -> env.step(InkballEnv.Action.NOOP),
+                "Stepping a finished episode should fail");
+        assertEquals(6, env.getApp().getTick(), "Each step should advance two ticks");
+    }
+
+    @Test
+    public void testVectorEnvIsDeterministicAcrossThreadCounts() {
+        InkballEnv.Action[] actions = new InkballEnv.Action[6];
+        Arrays.fill(actions, InkballEnv.Action.NOOP);
+        actions[2] = InkballEnv.Action.stroke(60, 200, 140, 260);
+
+        try (VectorEnv single = new VectorEnv(config, 0, 6, 2, 250, 1);
+             VectorEnv parallel = new VectorEnv(config, 0, 6, 2, 250, 3)) {
+            single.reset(100);
+            parallel.reset(100);
+            boolean anyTruncated = false;
+            for (int b = 0; b < 400; b++) {
+                single.step(actions);
+                parallel.step(actions);
+                assertArrayEquals(single.getObservations(), parallel.getObservations(),
+                        "Observations should not depend on the number of threads");
+                assertArrayEquals(single.getRewards(), parallel.getRewards(),
+                        "Rewards should not depend on the number of threads");
+                anyTruncated |= single.getTruncated()[0];
+                actions[2] = InkballEnv.Action.NOOP;
+            }
+            assertTrue(anyTruncated, "Episodes should be truncated and reset");
+            assertEquals(InkballEnv.OBSERVATION_SIZE * 6, single.getObservations().length,
+                    "Observations should be packed back to back");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InputQueueTest {
+
+    @Test
+    public void testPackingKeepsNegativeCoordinates() {
+        long entry = InputQueue.pack(InputLog.ERASE, -17, 575);
+        assertEquals(InputLog.ERASE, InputQueue.typeOf(entry), "The type should survive packing");
+        assertEquals(-17, InputQueue.xOf(entry), "Negative x should survive packing");
+        assertEquals(575, InputQueue.yOf(entry), "y should survive packing");
+        assertEquals(-3, InputQueue.yOf(InputQueue.pack(InputLog.LINE_DRAG, 0, -3)), "Negative y should survive packing");
+    }
+
+    @Test
+    public void testDragsAreCoalescedAndFullQueueDrops() {
+        InputQueue queue = new InputQueue(6);
+        assertEquals(8, queue.getCapacity(), "The capacity should round up to a power of two");
+        queue.offer(InputLog.LINE_START, 10, 10);
+        for (int i = 1; i <= 5; i++) {
+            queue.offer(InputLog.LINE_DRAG, 10 + i, 20 + i);
+        }
+        queue.offer(InputLog.LINE_RELEASE, 0, 0);
+        queue.offer(InputLog.PAUSE, 0, 0);
+        assertFalse(queue.offer(InputLog.PAUSE, 0, 0), "A full queue should refuse new inputs");
+        assertEquals(1, queue.getDropped(), "The refused input should be counted");
+
+        List<String> applied = new ArrayList<>();
+        int count = queue.drain((type, x, y) -> applied.add(type + ":" + x + "," + y));
+        assertEquals(4, count, "Only the last of a run of drags should be applied");
+        assertEquals("[0:10,10, 1:15,25, 2:0,0, 4:0,0]", applied.toString(), "Inputs should keep their order");
+        assertEquals(4, queue.getCoalesced(), "Skipped drags should be counted");
+        assertTrue(queue.isEmpty(), "Draining should empty the queue");
+        assertTrue(queue.offer(InputLog.PAUSE, 0, 0), "Drained slots should be reused");
+    }
+
+    @Test
+    public void testInputsCrossThreadsInOrder() throws InterruptedException {
+        InputQueue queue = new InputQueue(64);
+        int total = 200000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                while (!queue.offer(InputLog.ERASE, i, -i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+        int[] next = {0};
+        boolean[] ordered = {true};
+        while (next[0] < total) {
+            queue.drain((type, x, y) -> {
+                ordered[0] &= x == next[0] && y == -next[0];
+                next[0]++;
+            });
+        }
+        producer.join();
+        assertTrue(ordered[0], "Every input should arrive once and in order");
+        assertTrue(queue.isEmpty(), "Nothing should be left over");
+    }
+
+    @Test
+    public void testTickAppliesQueuedInput() {
+        App app = App.createHeadless(App.loadConfigResource("/inkball/config.json"), 2);
+        InputLog log = app.startRecording();
+        InputQueue queue = app.getInputQueue();
+        queue.offer(InputLog.LINE_START, 100, 100);
+        queue.offer(InputLog.LINE_DRAG, 150, 120);
+        queue.offer(InputLog.LINE_DRAG, 200, 140);
+        queue.offer(InputLog.LINE_RELEASE, 0, 0);
+        assertTrue(app.getPlayerLines().isEmpty(), "Input should wait for the next tick");
+
+        app.tick();
+        assertEquals(1, app.getPlayerLines().size(), "The queued line should be drawn at the tick");
+        assertEquals(2, app.getPlayerLines().get(0).getPoints().size(), "The drags should be coalesced");
+        assertEquals(3, log.size(), "The recording should hold the inputs that were applied");
+        assertEquals(0, log.getTick(0), "Queued input should be recorded at the tick it was applied in");
+        assertEquals(200, log.getX(1), "The last drag should be kept");
+    }
+}
@@ -0,0 +1,87 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvariantFuzzerTest {
+
+    private JSONObject config;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+    }
+
+    @Test
+    public void testGeneratedCasesAreRepeatableAndHoldInvariants() {
+        InvariantFuzzer fuzzer = new InvariantFuzzer(config, 600, 2);
+        InvariantFuzzer.Case first = fuzzer.generate(77);
+        InvariantFuzzer.Case again = fuzzer.generate(77);
+        assertArrayEquals(first.getLayout(), again.getLayout(), "The same seed should give the same layout");
+        assertEquals(first.getQueue(), again.getQueue(), "The same seed should give the same queue");
+        assertEquals(first.toString(), again.toString(), "The same seed should give the same strokes");
+        assertEquals(18, first.getLayout().length, "Layouts should cover the board");
+        assertFalse(first.getLayout()[0].contains(" "), "Layouts should have a wall border");
+
+        assertTrue(fuzzer.run(0, 40).isEmpty(), "The physics should hold every invariant");
+        assertTrue(fuzzer.getTicksRun() > 40 * 100, "Every case should be played");
+    }
+
+    @Test
+    public void testDegenerateStrokesKeepVelocitiesFinite() {
+        String[] layout = {
+            "XXXXXXXXXX",
+            "X        X",
+            "X        X",
+            "X   B0   X",
+            "X        X",
+            "X        X",
+            "XXXXXXXXXX"
+        };
+        InvariantFuzzer.Case box = new InvariantFuzzer.Case(4, layout, Collections.singletonList("blue"), 1,
+                Arrays.asList(
+                        new InvariantFuzzer.Stroke(0, 80, 96, 80, 96, 200, 96, 200, 96),
+                        new InvariantFuzzer.Stroke(0, 80, 160, 80, 160),
+                        new InvariantFuzzer.Stroke(200, 130, 130)),
+                900);
+        assertNull(new InvariantFuzzer(config, 900, 1).check(box), "Zero-length segments should not break the physics");
+        assertThrows(IllegalArgumentException.class, () -> new InvariantFuzzer.Stroke(0, 1, 2, 3),
+                "Strokes need whole points");
+    }
+
+    @Test
+    public void testFailureIsShrunk() {
+        // Without a border the spawned balls leave the board
+        String[] layout = {
+            "   X      1",
+            "          ",
+            "     S    ",
+            "          ",
+            "  E2   X  ",
+            "H1        "
+        };
+        InvariantFuzzer.Case open = new InvariantFuzzer.Case(9, layout, Arrays.asList("grey", "blue", "yellow"), 2,
+                Arrays.asList(
+                        new InvariantFuzzer.Stroke(5, 500, 500, 540, 540, 560, 500),
+                        new InvariantFuzzer.Stroke(10, 520, 520)),
+                2000);
+        InvariantFuzzer fuzzer = new InvariantFuzzer(config, 2000, 1);
+        InvariantFuzzer.Failure failure = fuzzer.check(open);
+        assertNotNull(failure, "A ball should leave an open board");
+        assertEquals(InvariantFuzzer.BALL_OFF_BOARD, failure.getInvariant(), "The ball should be off the board");
+
+        InvariantFuzzer.Failure shrunk = fuzzer.shrink(failure);
+        assertEquals(InvariantFuzzer.BALL_OFF_BOARD, shrunk.getInvariant(), "Shrinking should keep the invariant");
+        assertTrue(shrunk.getCase().getStrokes().isEmpty(), "Strokes that do not matter should be dropped");
+        assertEquals(1, shrunk.getCase().getQueue().size(), "One ball is enough to fail");
+        assertEquals(failure.getTick() + 1, shrunk.getCase().getTicks(), "The game should stop at the failure");
+        assertEquals("S", String.join("", shrunk.getCase().getLayout()).replace(" ", ""),
+                "Only the spawner should be left in the layout");
+    }
+}
@@ -0,0 +1,92 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LevelSnapshotTest {
+
+    private JSONObject config;
+    private App app;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+        app = App.createHeadless(config, 99);
+        app.beginLine(120, 200);
+        app.extendLine(220, 260);
+        app.extendLine(320, 240);
+        app.finishLine();
+        for (int i = 0; i < 700; i++) {
+            app.tick();
+        }
+    }
+
+    private void runTicks(App target, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            target.tick();
+        }
+    }
+
+    private void assertSameState(App expected, App actual) {
+        assertEquals(expected.getTick(), actual.getTick(), "Tick should match");
+        assertEquals(expected.getScore(), actual.getScore(), "Score should match");
+        assertEquals(expected.getRemainingTime(), actual.getRemainingTime(), "Remaining time should match");
+        assertEquals(expected.getPlayerLines().size(), actual.getPlayerLines().size(), "Line count should match");
+        assertEquals(expected.getCurrentLevel().getBricks().size(), actual.getCurrentLevel().getBricks().size(),
+                "Brick count should match");
+        assertEquals(expected.getCurrentLevel().getConfigBalls(), actual.getCurrentLevel().getConfigBalls(),
+                "Spawn queue should match");
+        List<Ball> expectedBalls = expected.getCurrentLevel().getBalls();
+        List<Ball> actualBalls = actual.getCurrentLevel().getBalls();
+        assertEquals(expectedBalls.size(), actualBalls.size(), "Ball count should match");
+        for (int i = 0; i < expectedBalls.size(); i++) {
+            assertEquals(expectedBalls.get(i).getPosition(), actualBalls.get(i).getPosition(), "Ball position should match");
+            assertEquals(expectedBalls.get(i).getVelocity(), actualBalls.get(i).getVelocity(), "Ball velocity should match");
+            assertEquals(expectedBalls.get(i).getColorType(), actualBalls.get(i).getColorType(), "Ball color should match");
+        }
+    }
+
+    @Test
+    public void testRestoreInPlaceRewindsGame() {
+        LevelSnapshot snapshot = new LevelSnapshot();
+        snapshot.capture(app);
+        runTicks(app, 600);
+        int scoreAfter = app.getScore();
+        long tickAfter = app.getTick();
+
+        snapshot.restore(app);
+        assertEquals(tickAfter - 600, app.getTick(), "Restore should rewind the tick counter");
+        runTicks(app, 600);
+        assertEquals(scoreAfter, app.getScore(), "Replaying from a restored snapshot should reach the same score");
+    }
+
+    @Test
+    public void testRestoreIntoAnotherAppContinuesIdentically() {
+        LevelSnapshot snapshot = new LevelSnapshot(16);
+        snapshot.capture(app);
+
+        App copy = App.createHeadless(config, 1);
+        snapshot.restore(copy);
+        assertSameState(app, copy);
+
+        runTicks(app, 900);
+        runTicks(copy, 900);
+        assertSameState(app, copy);
+    }
+
+    @Test
+    public void testCaptureReusesBuffer() {
+        LevelSnapshot snapshot = new LevelSnapshot();
+        snapshot.capture(app);
+        int capacity = snapshot.getBuffer().capacity();
+        runTicks(app, 10);
+        snapshot.capture(app);
+        assertEquals(capacity, snapshot.getBuffer().capacity(), "A snapshot of the same size should reuse its buffer");
+        assertTrue(snapshot.size() > 0, "Snapshot should contain data");
+    }
+}
@@ -0,0 +1,60 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineSolverTest {
+
+    private App app;
+
+    @BeforeEach
+    public void setup() {
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        app = App.createHeadless(config, 3);
+        for (int i = 0; i < 290; i++) {
+            app.tick();
+        }
+    }
+
+    @Test
+    public void testSolveReturnsBestPlacementsFirst() {
+        List<LineSolver.Placement> placements = new LineSolver(8, 2, 400, 11, 2).solve(app, 5);
+
+        assertEquals(5, placements.size(), "Solver should keep the requested number of placements");
+        for (int i = 1; i < placements.size(); i++) {
+            assertTrue(placements.get(i - 1).getExpectedScore() >= placements.get(i).getExpectedScore(),
+                    "Placements should be ordered by expected score");
+        }
+        for (LineSolver.Placement placement : placements) {
+            assertTrue(placement.getStart().x >= 0 && placement.getEnd().x < App.WIDTH, "Lines should stay on the board");
+            assertTrue(placement.getCompletionRate() >= 0 && placement.getCompletionRate() <= 1,
+                    "Completion rate should be a fraction");
+        }
+    }
+
+    @Test
+    public void testSolveDoesNotChangeGame() {
+        long tick = app.getTick();
+        int balls = app.getCurrentLevel().getBalls().size();
+        new LineSolver(4, 2, 300, 11, 2).solve(app, 2);
+
+        assertEquals(tick, app.getTick(), "Solving should not advance the game");
+        assertEquals(balls, app.getCurrentLevel().getBalls().size(), "Solving should not change the balls");
+        assertTrue(app.getPlayerLines().isEmpty(), "Solving should not draw lines in the game");
+    }
+
+    @Test
+    public void testSolveIsDeterministicAcrossThreadCounts() {
+        List<LineSolver.Placement> single = new LineSolver(6, 2, 300, 7, 1).solve(app, 6);
+        List<LineSolver.Placement> parallel = new LineSolver(6, 2, 300, 7, 4).solve(app, 6);
+        for (int i = 0; i < single.size(); i++) {
+            assertEquals(single.get(i).toString(), parallel.get(i).toString(),
+                    "Results should not depend on the number of threads");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LockstepMatchTest {
+
+    private final JSONObject config = App.loadConfigResource("/inkball/config.json");
+
+    private LockstepMatch[] match(int players, int delay) {
+        LockstepMatch.Transport[] transports = LockstepMatch.loopback(players);
+        LockstepMatch[] peers = new LockstepMatch[players];
+        for (int p = 0; p < players; p++) {
+            peers[p] = new LockstepMatch(config, 77, players, p, transports[p], delay);
+        }
+        return peers;
+    }
+
+    @Test
+    public void testPeersSimulateEveryBoardIdentically() {
+        LockstepMatch[] peers = match(3, 3);
+        for (int frame = 0; frame < 900; frame++) {
+            if (frame % 120 == 20) {
+                peers[0].input(InputLog.LINE_START, 100 + frame % 300, 120);
+                peers[0].input(InputLog.LINE_DRAG, 160 + frame % 300, 300);
+                peers[0].input(InputLog.LINE_RELEASE, 0, 0);
+            }
+            if (frame == 300) {
+                peers[1].input(InputLog.PAUSE, 0, 0);
+            }
+            if (frame == 360) {
+                peers[1].input(InputLog.PAUSE, 0, 0);
+            }
+            for (LockstepMatch peer : peers) {
+                peer.advance();
+            }
+        }
+
+        for (LockstepMatch peer : peers) {
+            assertFalse(peer.isDesynced(), "Identical simulations should never desync");
+            assertTrue(peer.getTick() > 880, "Peers advancing together should not stall");
+        }
+        assertEquals(peers[0].getTick(), peers[1].getTick(), "Peers advancing together should be at the same tick");
+        assertEquals(peers[0].getTick(), peers[2].getTick(), "Peers advancing together should be at the same tick");
+        for (int board = 0; board < 3; board++) {
+            assertArrayEquals(TestGames.snapshot(peers[0].getBoard(board)), TestGames.snapshot(peers[1].getBoard(board)),
+                    "Board " + board + " should be the same on every peer");
+            assertArrayEquals(TestGames.snapshot(peers[0].getBoard(board)), TestGames.snapshot(peers[2].getBoard(board)),
+                    "Board " + board + " should be the same on every peer");
+        }
+        assertFalse(peers[0].getBoard(0).getPlayerLines().isEmpty(), "Player 0's lines should be on their board");
+        assertTrue(peers[0].getBoard(1).getPlayerLines().isEmpty(), "Player 0's lines should not reach other boards");
+    }
+
+    @Test
+    public void testMatchWaitsForSlowPeer() {
+        LockstepMatch[] peers = match(2, 4);
+        for (int frame = 0; frame < 50; frame++) {
+            peers[0].advance();
+        }
+        assertEquals(4, peers[0].getTick(), "A peer should only run ahead by the input delay");
+        for (int frame = 0; frame < 10; frame++) {
+            peers[1].advance();
+        }
+        assertTrue(peers[0].advance(), "The match should continue once the slow peer catches up");
+    }
+
+    @Test
+    public void testDesyncIsDetectedAtTheTickItHappens() {
+        LockstepMatch[] peers = match(2, 2);
+        for (int frame = 0; frame < 100; frame++) {
+            peers[0].advance();
+            peers[1].advance();
+        }
+        peers[1].getBoard(0).setScore(peers[1].getBoard(0).getScore() + 5);
+        long corrupted = peers[1].getTick();
+        for (int frame = 0; frame < 20; frame++) {
+            peers[0].advance();
+            peers[1].advance();
+        }
+        assertTrue(peers[0].isDesynced(), "A peer whose state drifted should be noticed");
+        assertEquals(corrupted, peers[0].getDesyncTick(), "The desync should be pinned to the first tick that differs");
+        assertEquals(1, peers[0].getDesyncPlayer(), "The desync should name the peer that differs");
+        assertFalse(peers[0].advance(), "A desynced match should stop");
+    }
+
+    @Test
+    public void testIdleTickMessageIsTiny() {
+        byte[] idle = LockstepMatch.encode(1, 5000, 4997, 0x7ABCDEF1, new long[0]);
+        assertTrue(idle.length <= 10, "A tick without input should cost only a few bytes");
+        byte[] stroke = LockstepMatch.encode(1, 5000, 4997, 1, new long[]{InputQueue.pack(InputLog.LINE_DRAG, 300, 400)});
+        assertTrue(stroke.length - idle.length <= 5, "A stroke point should add a few bytes");
+    }
+
+    @Test
+    public void testChecksumCoversBoardsLargerThanItsFirstBuffer() {
+        LockstepMatch[] peers = match(2, 1);
+        for (LockstepMatch peer : peers) {
+            App board = peer.getBoard(0);
+            for (int l = 0; l < 20; l++) {
+                List<PVector> points = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    points.add(new PVector(40 + i, 60 + l * 20));
+                }
+                board.getPlayerLines().add(new Line(points, board));
+            }
+        }
+        assertTrue(TestGames.snapshot(peers[0].getBoard(0)).length > 1 << 16,
+                "The board should not fit the checksum's first buffer");
+
+        for (int frame = 0; frame < 10; frame++) {
+            peers[0].advance();
+            peers[1].advance();
+        }
+        assertFalse(peers[0].isDesynced(), "Large identical boards should still agree");
+    }
+
+    @Test
+    public void testTruncatedMessagesAreRejected() {
+        byte[] message = LockstepMatch.encode(1, 5000, 4997, 0x7ABCDEF1,
+                new long[]{InputQueue.pack(InputLog.LINE_DRAG, 300, 400)});
+        LockstepMatch.Message decoded = LockstepMatch.Message.decode(message);
+        assertEquals(0x7ABCDEF1, decoded.checksum, "A whole message should decode");
+        for (int length = 0; length < message.length; length++) {
+            byte[] cut = Arrays.copyOf(message, length);
+            assertThrows(UncheckedIOException.class, () -> LockstepMatch.Message.decode(cut),
+                    "A message cut to " + length + " bytes should be rejected");
+        }
+    }
+}
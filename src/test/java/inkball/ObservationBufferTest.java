@@ -0,0 +1,178 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObservationBufferTest {
+
+    private JSONObject config;
+    private App app;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+        app = App.createHeadless(config, 8);
+        for (int i = 0; i < 400; i++) {
+            app.tick();
+        }
+    }
+
+    @Test
+    public void testSlotMatchesGameState() {
+        ObservationBuffer observations = ObservationBuffer.allocate(2);
+        observations.write(1, app, 2.5f, false, true);
+        ByteBuffer buffer = observations.getBuffer();
+        int base = observations.slotOffset(1);
+
+        assertTrue(buffer.isDirect(), "Observations should live outside the heap");
+        assertEquals(ObservationBuffer.MAGIC, buffer.getInt(0), "The header should start with the magic number");
+        assertEquals(ObservationBuffer.SLOT_SIZE, buffer.getInt(12), "The header should record the slot size");
+        assertEquals(1, observations.getStep(1), "Writing should advance the step counter");
+        assertEquals(0, observations.getStep(0), "Other slots should be untouched");
+        assertEquals(2.5f, buffer.getFloat(base + ObservationBuffer.REWARD_OFFSET), "The reward should be written");
+        assertEquals(1, buffer.get(base + ObservationBuffer.TRUNCATED_OFFSET), "The truncated flag should be written");
+
+        int ballCount = buffer.get(base + ObservationBuffer.BALL_COUNT_OFFSET);
+        assertEquals(app.getCurrentLevel().getBalls().size(), ballCount, "Every ball should be written");
+        for (int i = 0; i < ballCount; i++) {
+            Ball ball = app.getCurrentLevel().getBalls().get(i);
+            int at = base + ObservationBuffer.BALLS_OFFSET + i * ObservationBuffer.BALL_SIZE;
+            assertEquals(ball.getPosition().x, buffer.getFloat(at), "Ball x should be written");
+            assertEquals(ball.getVelocity().y, buffer.getFloat(at + 12), "Ball velocity should be written");
+            assertEquals(ball.getColorType(), buffer.get(at + 16), "Ball colour should be written");
+        }
+
+        int bricks = buffer.get(base + ObservationBuffer.BRICK_COUNT_OFFSET);
+        assertEquals(app.getCurrentLevel().getLayoutBricks().size(), bricks, "Every brick should be written");
+        assertEquals((byte) 0xFF, buffer.get(base + ObservationBuffer.BRICKS_OFFSET + bricks),
+                "Unused brick slots should be marked");
+    }
+
+    @Test
+    public void testLineRasterFollowsLines() {
+        ObservationBuffer observations = ObservationBuffer.allocate(1);
+        int raster = observations.slotOffset(0) + ObservationBuffer.RASTER_OFFSET;
+        int tile = 10 * ObservationBuffer.RASTER_COLUMNS + 5;
+
+        app.beginLine(5 * App.CELLSIZE + 4, 10 * App.CELLSIZE + 16);
+        app.extendLine(7 * App.CELLSIZE + 4, 10 * App.CELLSIZE + 16);
+        app.finishLine();
+        observations.write(0, app, 0, false, false);
+        assertEquals(1, observations.getBuffer().get(raster + tile), "The line's first tile should be marked");
+        assertEquals(1, observations.getBuffer().get(raster + tile + 1), "Tiles the line crosses should be marked");
+        assertEquals(0, observations.getBuffer().get(raster + tile + 3), "Tiles past the line should be clear");
+
+        app.eraseLineAt(6 * App.CELLSIZE, 10 * App.CELLSIZE + 16);
+        observations.write(0, app, 0, false, false);
+        assertEquals(0, observations.getBuffer().get(raster + tile), "Erasing should clear the raster");
+    }
+
+    @Test
+    public void testMappedFileIsReadableFromOutside() throws IOException {
+        File file = File.createTempFile("observations", ".bin");
+        file.deleteOnExit();
+        ObservationBuffer observations = ObservationBuffer.map(file, 1);
+        observations.write(0, app, 7, true, false);
+
+        ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        int base = ObservationBuffer.HEADER_SIZE;
+        assertEquals(ObservationBuffer.sizeFor(1), contents.capacity(), "The file should hold the whole buffer");
+        assertEquals(ObservationBuffer.MAGIC, contents.getInt(0), "The file should carry the header");
+        assertEquals(7f, contents.getFloat(base + ObservationBuffer.REWARD_OFFSET), "The file should carry the slot");
+        assertEquals(1, contents.get(base + ObservationBuffer.DONE_OFFSET), "The done flag should reach the file");
+    }
+
+    @Test
+    public void testVectorEnvWritesToAttachedBuffer() {
+        InkballEnv.Action[] actions = new InkballEnv.Action[4];
+        Arrays.fill(actions, InkballEnv.Action.NOOP);
+        ObservationBuffer observations = ObservationBuffer.allocate(4);
+        try (VectorEnv arrays = new VectorEnv(config, 0, 4, 3, 0, 1);
+             VectorEnv shared = new VectorEnv(config, 0, 4, 3, 0, 2)) {
+            arrays.reset(20);
+            shared.reset(20);
+            shared.attach(observations);
+            for (int b = 0; b < 300; b++) {
+                arrays.step(actions);
+                shared.step(actions);
+            }
+            for (int i = 0; i < 4; i++) {
+                int base = observations.slotOffset(i);
+                assertEquals(301, observations.getStep(i), "Each step should be published");
+                assertEquals(arrays.getRewards()[i], observations.getBuffer().getFloat(base + ObservationBuffer.REWARD_OFFSET),
+                        "Rewards should match the float arrays");
+                assertEquals(arrays.getObservations()[i * InkballEnv.OBSERVATION_SIZE + InkballEnv.HEADER_SIZE + 1]
+                        * App.WIDTH, observations.getBuffer().getFloat(base + ObservationBuffer.BALLS_OFFSET), 0.01f,
+                        "Ball positions should match the float arrays");
+            }
+        }
+    }
+
+    private static byte[] slotBytes(ObservationBuffer observations, int slot) {
+        byte[] bytes = new byte[ObservationBuffer.SLOT_SIZE];
+        observations.read(slot, bytes);
+        // The sequence counter differs between writes, so only the fields are compared
+        Arrays.fill(bytes, 0, 8, (byte) 0);
+        return bytes;
+    }
+
+    @Test
+    public void testReadersNeverSeeAHalfWrittenSlot() throws InterruptedException {
+        App other = app.fork();
+        for (int i = 0; i < 200; i++) {
+            other.tick();
+        }
+        ObservationBuffer reference = ObservationBuffer.allocate(2);
+        reference.write(0, app, 1, false, false);
+        reference.write(1, other, 2, true, false);
+        byte[] first = slotBytes(reference, 0);
+        byte[] second = slotBytes(reference, 1);
+
+        ObservationBuffer observations = ObservationBuffer.allocate(1);
+        observations.write(0, app, 1, false, false);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                observations.write(0, i % 2 == 0 ? other : app, i % 2 == 0 ? 2 : 1, i % 2 == 0, false);
+            }
+        });
+        writer.start();
+        byte[] copy = new byte[ObservationBuffer.SLOT_SIZE];
+        long last = 0;
+        while (writer.isAlive()) {
+            long step = observations.read(0, copy);
+            Arrays.fill(copy, 0, 8, (byte) 0);
+            assertTrue(Arrays.equals(first, copy) || Arrays.equals(second, copy),
+                    "A read should see one whole write, seen after write " + step);
+            assertTrue(step >= last, "Steps should only move forward");
+            last = step;
+        }
+        writer.join();
+        assertEquals(20001, observations.getStep(0), "Every write should be counted once");
+    }
+
+    @Test
+    public void testBricksAreWrittenInLayoutOrder() {
+        Level level = app.getCurrentLevel();
+        List<Brick> layoutBricks = level.getLayoutBricks();
+        assertTrue(layoutBricks.size() >= 2, "The level should have bricks to write");
+        layoutBricks.get(1).setHitCount(1);
+        level.removeBrick(layoutBricks.get(0));
+
+        ObservationBuffer observations = ObservationBuffer.allocate(1);
+        observations.write(0, app, 0, false, false);
+        int bricks = observations.slotOffset(0) + ObservationBuffer.BRICKS_OFFSET;
+        assertEquals(3, observations.getBuffer().get(bricks), "A destroyed brick should be marked");
+        assertEquals(1, observations.getBuffer().get(bricks + 1), "A standing brick should carry its hits");
+    }
+}
@@ -0,0 +1,110 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OccupancyGridTest {
+
+    private static final String[] LAYOUT = {
+        "XXXXXXXX",
+        "X      X",
+        "X E3   X",
+        "X    H2X",
+        "X B1   X",
+        "X      X",
+        "X3333333"
+    };
+
+    private App app;
+
+    @BeforeEach
+    public void setup() {
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        app = App.createHeadless(config, 3, LAYOUT);
+    }
+
+    @Test
+    public void testLayoutPlanes() {
+        OccupancyGrid grid = new OccupancyGrid();
+        grid.rasterize(app);
+
+        assertEquals(1, grid.get(OccupancyGrid.WALLS, 0, 0), "Grey walls should be type 0 + 1");
+        assertEquals(4, grid.get(OccupancyGrid.WALLS, 3, 6), "Coloured walls should keep their type");
+        assertEquals(0, grid.get(OccupancyGrid.WALLS, 3, 3), "Open tiles should have no wall");
+        assertEquals(3, grid.get(OccupancyGrid.BRICK_HITS, 2, 2), "A new brick should take three hits");
+        assertEquals(4, grid.get(OccupancyGrid.BRICK_COLORS, 2, 2), "Bricks should keep their colour");
+        for (int column = 5; column <= 6; column++) {
+            for (int row = 3; row <= 4; row++) {
+                assertEquals(3, grid.get(OccupancyGrid.HOLES, column, row), "A hole should cover two by two tiles");
+            }
+        }
+
+        Ball ball = app.getCurrentLevel().getBalls().get(0);
+        int column = (int) (ball.getPosition().x / App.CELLSIZE);
+        int row = (int) (ball.getPosition().y / App.CELLSIZE);
+        assertEquals(2, grid.get(OccupancyGrid.BALLS, column, row), "The ball should be in the cell of its centre");
+        assertEquals(Math.round(ball.getVelocity().x * 16), grid.get(OccupancyGrid.BALL_VELOCITY_X, column, row),
+                "Velocity should be stored in sixteenths of a pixel");
+        assertEquals(Math.round(ball.getVelocity().y * 16), grid.get(OccupancyGrid.BALL_VELOCITY_Y, column, row),
+                "Velocity should be stored in sixteenths of a pixel");
+    }
+
+    @Test
+    public void testLinePlaneFollowsLines() {
+        OccupancyGrid grid = new OccupancyGrid();
+        app.beginLine(1 * App.CELLSIZE + 4, 5 * App.CELLSIZE + 16);
+        app.extendLine(4 * App.CELLSIZE + 4, 5 * App.CELLSIZE + 16);
+        app.finishLine();
+        grid.rasterize(app);
+        for (int column = 1; column <= 4; column++) {
+            assertEquals(1, grid.get(OccupancyGrid.LINES, column, 5), "Cells the line crosses should be marked");
+        }
+        assertEquals(0, grid.get(OccupancyGrid.LINES, 5, 5), "Cells past the line should be clear");
+
+        app.eraseLineAt(2 * App.CELLSIZE + 16, 5 * App.CELLSIZE + 16);
+        grid.rasterize(app);
+        assertEquals(0, grid.get(OccupancyGrid.LINES, 2, 5), "Erasing should clear the line plane");
+    }
+
+    @Test
+    public void testFinerGrid() {
+        OccupancyGrid grid = new OccupancyGrid(4);
+        grid.rasterize(app);
+
+        assertEquals(72, grid.getColumns(), "Each tile should be split into four columns");
+        assertEquals(72, grid.getRows(), "Each tile should be split into four rows");
+        assertEquals(OccupancyGrid.CHANNELS * 72 * 72, grid.getPlanes().length, "Every channel should have a plane");
+        assertEquals(3, grid.get(OccupancyGrid.BRICK_HITS, 11, 11), "A brick should cover all cells of its tile");
+        assertEquals(0, grid.get(OccupancyGrid.BRICK_HITS, 12, 11), "A brick should not spill into the next tile");
+        assertEquals(3, grid.get(OccupancyGrid.HOLES, 27, 19), "A hole should cover eight by eight cells");
+        assertThrows(IllegalArgumentException.class, () -> new OccupancyGrid(3),
+                "Cells per tile must divide the tile size");
+    }
+
+    @Test
+    public void testDiffFindsMovedBall() {
+        OccupancyGrid before = new OccupancyGrid(2);
+        OccupancyGrid after = new OccupancyGrid(2);
+        before.rasterize(app);
+        for (int i = 0; i < 30; i++) {
+            app.tick();
+        }
+        after.rasterize(app);
+
+        int[] changed = new int[64];
+        int count = after.diff(before, changed);
+        assertTrue(count >= 2, "The ball should leave one cell and enter another");
+        int planeSize = after.getColumns() * after.getRows();
+        for (int i = 0; i < Math.min(count, changed.length); i++) {
+            int channel = changed[i] / planeSize;
+            assertTrue(channel != OccupancyGrid.WALLS && channel != OccupancyGrid.HOLES
+                    && channel != OccupancyGrid.LINES, "Only balls and bricks should change, not " + channel);
+        }
+
+        before.rasterize(app);
+        assertEquals(0, after.diff(before, changed), "Grids of the same state should not differ");
+    }
+}
@@ -0,0 +1,113 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelBallUpdaterTest {
+
+    private JSONObject config;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+    }
+
+    /**
+     * Fills every open tile of the board with a ball, cycling through the colours.
+     */
+    private void crowd(App app, String[] layout) {
+        int color = 0;
+        for (int row = 0; row < layout.length; row++) {
+            for (int column = 0; column < layout[row].length(); column++) {
+                if (layout[row].charAt(column) == ' ') {
+                    PVector position = new PVector(column * App.CELLSIZE + 16, row * App.CELLSIZE + 16);
+                    app.getCurrentLevel().addBall(new Ball(position, null, app, color++ % 5));
+                }
+            }
+        }
+    }
+
+    private void drawLine(App app, int x1, int y1, int x2, int y2) {
+        app.beginLine(x1, y1);
+        app.extendLine((x1 + x2) / 2, (y1 + y2) / 2);
+        app.extendLine(x2, y2);
+        app.finishLine();
+    }
+
+    @Test
+    public void testParallelUpdateMatchesSequential() {
+        String[] layout = {
+            "XXXXXXXXXXXXXXXXXX",
+            "X   E0    E1   H0X",
+            "X      E2        X",
+            "X  H1      E0E0  X",
+            "X    E4   1      X",
+            "X  2     H2    E3X",
+            "X      E0E0E0    X",
+            "X H3          H4 X",
+            "X     3   E2     X",
+            "XXXXXXXXXXXXXXXXXX"
+        };
+        App sequential = App.createHeadless(config, 7, layout);
+        App parallel = App.createHeadless(config, 7, layout);
+        crowd(sequential, layout);
+        crowd(parallel, layout);
+        int balls = sequential.getCurrentLevel().getBalls().size();
+        assertTrue(balls > 80, "The board should be crowded");
+
+        try (ParallelBallUpdater updater = new ParallelBallUpdater(3, 7)) {
+            updater.setMinBalls(0);
+            parallel.setBallUpdater(updater);
+            for (int tick = 0; tick < 1500; tick++) {
+                if (tick % 100 == 10) {
+                    int x = 40 + (tick * 7) % 480;
+                    drawLine(sequential, x, 60, x + 60, 200);
+                    drawLine(parallel, x, 60, x + 60, 200);
+                }
+                sequential.tick();
+                parallel.tick();
+                if (tick % 50 == 0) {
+                    assertArrayEquals(TestGames.snapshot(sequential), TestGames.snapshot(parallel),
+                            "States should match at tick " + tick);
+                }
+            }
+        }
+        assertArrayEquals(TestGames.snapshot(sequential), TestGames.snapshot(parallel), "Final states should match");
+        assertEquals(sequential.getScore(), parallel.getScore(), "Scores should match");
+        assertEquals(sequential.getCapturePoints(), parallel.getCapturePoints(), "Capture points should match");
+        assertTrue(sequential.getCurrentLevel().getBalls().size() < balls, "Some balls should have been captured");
+        assertTrue(sequential.getCurrentLevel().getBricks().size()
+                < sequential.getCurrentLevel().getLayoutBricks().size(), "Some bricks should have been destroyed");
+    }
+
+    @Test
+    public void testConfigLevelMatchesSequential() {
+        App sequential = App.createHeadless(config, 3);
+        App parallel = App.createHeadless(config, 3);
+        try (ParallelBallUpdater updater = new ParallelBallUpdater(2, 4)) {
+            updater.setMinBalls(1);
+            parallel.setBallUpdater(updater);
+            while (!sequential.isLevelCompleted() && !sequential.isTimeUp()) {
+                sequential.tick();
+                parallel.tick();
+            }
+            assertArrayEquals(TestGames.snapshot(sequential), TestGames.snapshot(parallel), "States should match");
+            assertEquals(sequential.isLevelCompleted(), parallel.isLevelCompleted(), "Outcomes should match");
+            assertEquals(sequential.getScore(), parallel.getScore(), "Scores should match");
+        }
+    }
+
+    @Test
+    public void testSmallLevelsStaySequential() {
+        try (ParallelBallUpdater updater = new ParallelBallUpdater(2, 4)) {
+            assertFalse(updater.isWorthwhile(10), "A few balls are not worth the threads");
+            assertTrue(updater.isWorthwhile(64), "Many balls should be split");
+            updater.setMinBalls(5);
+            assertTrue(updater.isWorthwhile(5), "The threshold should be adjustable");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelTasksTest {
+
+    @Test
+    public void testResultsComeBackInTaskOrder() {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int value = i;
+            tasks.add(() -> {
+                Thread.sleep((20 - value) % 3);
+                return value * value;
+            });
+        }
+        List<Integer> results = ParallelTasks.runAll(4, tasks);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i * i, (int) results.get(i), "Result " + i + " should be in its task's place");
+        }
+    }
+
+    @Test
+    public void testOneThreadRunsOnTheCaller() {
+        Thread caller = Thread.currentThread();
+        List<Callable<Thread>> tasks = Arrays.asList(Thread::currentThread, Thread::currentThread);
+        for (Thread ran : ParallelTasks.runAll(1, tasks)) {
+            assertSame(caller, ran, "A single-threaded batch should not start a pool");
+        }
+    }
+
+    @Test
+    public void testInterruptFailsTheWholeBatch() {
+        CountDownLatch never = new CountDownLatch(1);
+        List<Callable<Integer>> tasks = Arrays.asList(() -> 1, () -> {
+            never.await();
+            return 2;
+        });
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(IllegalStateException.class, () -> ParallelTasks.runAll(2, tasks),
+                    "An interrupted batch should not return partial results");
+            assertTrue(Thread.interrupted(), "The interrupt should be kept for the caller");
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void testFailedTaskFailsTheBatch() {
+        List<Callable<Integer>> tasks = Arrays.asList(() -> 1, () -> {
+            throw new IllegalArgumentException("bad task");
+        });
+        RuntimeException failure = assertThrows(RuntimeException.class, () -> ParallelTasks.runAll(2, tasks),
+                "A failed task should fail the batch");
+        assertTrue(failure.getCause() instanceof IllegalArgumentException, "The task's exception should be the cause");
+    }
+}
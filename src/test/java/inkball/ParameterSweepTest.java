@@ -0,0 +1,116 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParameterSweepTest {
+
+    private JSONObject config;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+    }
+
+    @Test
+    public void testParseAxes() {
+        ParameterSweep.Axis range = ParameterSweep.Axis.parse("spawn_interval=0.5:1.5:0.25");
+        assertEquals(Arrays.asList("0.5", "0.75", "1", "1.25", "1.5"), range.getValues(), "Ranges should include both ends");
+
+        ParameterSweep.Axis balls = ParameterSweep.Axis.parse("balls=grey/blue,orange");
+        assertEquals(Arrays.asList("grey/blue", "orange"), balls.getValues(), "Lists should split on commas");
+
+        assertThrows(IllegalArgumentException.class, () -> ParameterSweep.Axis.parse("gravity=1,2"),
+                "Unknown fields should be rejected");
+        assertThrows(IllegalArgumentException.class, () -> ParameterSweep.Axis.parse("balls=grey/purple"),
+                "Unknown colours should be rejected");
+        assertThrows(IllegalArgumentException.class,
+                () -> ParameterSweep.Axis.parse("score_increase_from_hole_capture.purpel=10"),
+                "Unknown score colours should be rejected");
+        assertThrows(IllegalArgumentException.class,
+                () -> ParameterSweep.Axis.parse("score_increase_from_hole_capture.Blue=10"),
+                "Score colours should be spelled as the config spells them");
+        assertThrows(IllegalArgumentException.class, () -> ParameterSweep.Axis.parse("time=1.5"),
+                "Whole-number fields should reject fractions");
+    }
+
+    @Test
+    public void testConfigForGridPoint() {
+        List<ParameterSweep.Axis> axes = Arrays.asList(
+                ParameterSweep.Axis.parse("time=30,60"),
+                ParameterSweep.Axis.parse("balls=grey/grey,blue"),
+                ParameterSweep.Axis.parse("score_decrease_from_wrong_hole.yellow=5"));
+        ParameterSweep sweep = new ParameterSweep(config, 1, axes, 1, 0, 1);
+        assertEquals(4, sweep.getPointCount(), "Every combination should be a grid point");
+        assertEquals(Arrays.asList("60", "grey/grey", "5"), sweep.valuesAt(2), "The last axis should vary fastest");
+
+        JSONObject point = sweep.configFor(sweep.valuesAt(2));
+        JSONObject level = point.getJSONArray("levels").getJSONObject(0);
+        assertEquals(1, point.getJSONArray("levels").size(), "Only the swept level should be kept");
+        assertEquals("level2.txt", level.getString("layout"), "The swept level should be the chosen one");
+        assertEquals(60, level.getInt("time"), "Level fields should be set");
+        assertEquals(2, level.getJSONArray("balls").size(), "Ball lists should be set");
+        assertEquals(5, point.getJSONObject("score_decrease_from_wrong_hole").getInt("yellow"),
+                "Score table entries should be set");
+        assertEquals(100, config.getJSONObject("score_decrease_from_wrong_hole").getInt("yellow"),
+                "The base config should not change");
+    }
+
+    @Test
+    public void testRunIsRepeatableAcrossThreads() {
+        List<ParameterSweep.Axis> axes = Collections.singletonList(ParameterSweep.Axis.parse("spawn_interval=2,6"));
+        List<ParameterSweep.Result> single = new ParameterSweep(config, 0, axes, 4, 3, 1).run(Player.IDLE);
+        List<ParameterSweep.Result> parallel = new ParameterSweep(config, 0, axes, 4, 3, 3).run(Player.IDLE);
+
+        assertEquals(2, single.size(), "There should be a result per grid point");
+        for (int i = 0; i < single.size(); i++) {
+            assertEquals(4, single.get(i).getGames(), "Every game should be counted");
+            assertEquals(single.get(i).toCsvRow(), parallel.get(i).toCsvRow(),
+                    "Results should not depend on the number of threads");
+        }
+
+        StringWriter csv = new StringWriter();
+        new ParameterSweep(config, 0, axes, 4, 3, 1).writeCsv(single, csv);
+        String[] rows = csv.toString().trim().split("\\R");
+        assertEquals(3, rows.length, "The CSV should have a header and a row per point");
+        assertTrue(rows[0].startsWith("spawn_interval,games,completed"), "The header should name the axes first");
+        assertTrue(rows[1].startsWith("2,4,"), "Rows should start with the axis values");
+    }
+
+    @Test
+    public void testZeroCapturePointsScoreNothing() {
+        List<ParameterSweep.Axis> axes = Arrays.asList(
+                ParameterSweep.Axis.parse("score_increase_from_hole_capture_modifier=0"),
+                ParameterSweep.Axis.parse("time=60"));
+        ParameterSweep.Result result = new ParameterSweep(config, 0, axes, 3, 11, 1).run(Player.IDLE).get(0);
+        assertEquals(0, result.getScorePercentile(100), "No game should score with no capture points");
+    }
+
+    @Test
+    public void testScriptedPlayerReplaysInputs() {
+        InputLog log = new InputLog(0, 0);
+        log.add(5, InputLog.LINE_START, 100, 300);
+        log.add(5, InputLog.LINE_DRAG, 200, 300);
+        log.add(6, InputLog.LINE_RELEASE, 0, 0);
+        log.add(40, InputLog.LINE_START, 300, 100);
+        log.add(41, InputLog.LINE_DRAG, 300, 200);
+        log.add(41, InputLog.LINE_RELEASE, 0, 0);
+
+        ParameterSweep sweep = new ParameterSweep(config, 0,
+                Collections.singletonList(ParameterSweep.Axis.parse("time=2")), 1, 0, 1);
+        App app = ParameterSweep.play(sweep.configFor(sweep.valuesAt(0)), 2, Player.scripted(log));
+        assertTrue(app.isTimeUp(), "The game should run until the time is up");
+        assertEquals(2, app.getPlayerLines().size(), "Both recorded lines should be drawn");
+        assertEquals(new PVector(300, 200), app.getPlayerLines().get(1).getPoints().get(1),
+                "Lines should follow the recorded drags");
+    }
+}
@@ -0,0 +1,88 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReachabilityAnalyzerTest {
+
+    private JSONObject config;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+    }
+
+    @Test
+    public void testClosedBoxLoopsForever() {
+        String[] layout = {
+            "XXXXXX",
+            "XS   X",
+            "X    X",
+            "XXXXXX"
+        };
+        ReachabilityAnalyzer.Report report = new ReachabilityAnalyzer(config, 50000, 2).analyze("box", layout);
+
+        assertEquals(20, report.getTraces().size(), "Every colour and velocity should be traced");
+        for (ReachabilityAnalyzer.Trace trace : report.getTraces()) {
+            assertEquals(ReachabilityAnalyzer.LOOPS, trace.getOutcome(), "A ball in a closed box should loop");
+            assertTrue(trace.getPeriod() > 0, "A loop should have a period");
+            assertFalse(trace.getLoopTiles().isEmpty(), "A loop should pass through some tiles");
+        }
+    }
+
+    @Test
+    public void testBallWithoutWallsEscapes() {
+        String[] layout = {"", " S"};
+        ReachabilityAnalyzer.Report report = new ReachabilityAnalyzer(config, 5000, 1).analyze("open", layout);
+
+        assertEquals(20, report.getTraces(ReachabilityAnalyzer.ESCAPED).size(), "Every ball should leave the board");
+        for (int color = 0; color < 5; color++) {
+            assertFalse(report.canScore(color), "No ball can score without holes");
+        }
+    }
+
+    @Test
+    public void testColoredWallsRecolorCapturedBalls() {
+        String[] layout = {
+            "1111111",
+            "1S    1",
+            "1     1",
+            "1  H0 1",
+            "1     1",
+            "1111111"
+        };
+        ReachabilityAnalyzer.Report report = new ReachabilityAnalyzer(config, 5000, 2).analyze("orange", layout);
+
+        List<ReachabilityAnalyzer.Trace> captured = report.getTraces(ReachabilityAnalyzer.CAPTURED);
+        assertFalse(captured.isEmpty(), "Some balls should reach the hole");
+        for (ReachabilityAnalyzer.Trace trace : captured) {
+            assertEquals(0, trace.getHole(), "The only hole should capture the balls");
+            assertTrue(trace.getCaptureColor() == trace.getInitialColor() || trace.getCaptureColor() == 1,
+                    "Balls should arrive in their own colour or recoloured orange");
+        }
+        assertTrue(report.isReachable(0, 1), "An orange ball should reach the hole");
+        assertTrue(report.canScore(4), "A yellow ball should score in the grey hole");
+    }
+
+    @Test
+    public void testPackMatchesSingleLevelAnalysis() {
+        String[] level1 = App.loadStrings(getClass().getResourceAsStream("/inkball/level1.txt"));
+        String[] level3 = App.loadStrings(getClass().getResourceAsStream("/inkball/level3.txt"));
+        ReachabilityAnalyzer analyzer = new ReachabilityAnalyzer(config, 4000, 3);
+
+        List<ReachabilityAnalyzer.Report> pack = analyzer.analyzeAll(
+                Arrays.asList("level1", "level3"), Arrays.asList(level1, level3));
+        ReachabilityAnalyzer.Report single = analyzer.analyze("level3", level3);
+
+        assertEquals(2, pack.size(), "Every level should get a report");
+        assertEquals(single.toString(), pack.get(1).toString(), "Reports should not depend on how work is split");
+        assertEquals(4, pack.get(0).getHoleCount(), "Level 1 has four holes");
+        assertTrue(pack.get(0).getReachableColors(0) != 0, "Level 1's first hole is reachable without lines");
+    }
+}
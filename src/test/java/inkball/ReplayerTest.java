@@ -0,0 +1,83 @@
+package inkball;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplayerTest {
+
+    private JSONObject config;
+
+    @BeforeEach
+    public void setup() {
+        config = App.loadConfigResource("/inkball/config.json");
+    }
+
+    @Test
+    public void testLogRoundTrip() throws IOException {
+        InputLog log = new InputLog(7L, 1234);
+        log.add(0, InputLog.LINE_START, 10, 20);
+        log.add(3, InputLog.LINE_DRAG, 12, 18);
+        log.add(3, InputLog.LINE_RELEASE, 0, 0);
+        log.add(500, InputLog.ERASE, 11, 19);
+        log.add(900, InputLog.RESTART, 0, 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        log.write(out);
+        InputLog decoded = InputLog.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(7L, decoded.getSeed(), "Seed should survive the round trip");
+        assertEquals(1234, decoded.getConfigHash(), "Config hash should survive the round trip");
+        assertEquals(900, decoded.getEndTick(), "End tick should survive the round trip");
+        assertEquals(log.size(), decoded.size(), "Every event should be decoded");
+        for (int i = 0; i < log.size(); i++) {
+            assertEquals(log.getTick(i), decoded.getTick(i), "Tick should match for event " + i);
+            assertEquals(log.getType(i), decoded.getType(i), "Type should match for event " + i);
+            assertEquals(log.getX(i), decoded.getX(i), "X should match for event " + i);
+            assertEquals(log.getY(i), decoded.getY(i), "Y should match for event " + i);
+        }
+    }
+
+    @Test
+    public void testDragEventsAreCompact() throws IOException {
+        InputLog log = new InputLog(0, 0);
+        for (int i = 0; i < 100; i++) {
+            log.add(i, InputLog.LINE_DRAG, 200 + i, 200 - i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        log.write(out);
+        assertTrue(out.size() < 100 * 5, "Small tick and position deltas should take one byte each");
+    }
+
+    @Test
+    public void testReplayReproducesGame() {
+        App recorded = TestGames.play(config, 42, 900);
+        App replayed = new Replayer(recorded.getInputLog(), config).run();
+
+        assertEquals(recorded.getTick(), replayed.getTick(), "Replay should stop at the recorded end tick");
+        assertEquals(recorded.getScore(), replayed.getScore(), "Replay should reach the recorded score");
+        assertEquals(recorded.getRemainingTime(), replayed.getRemainingTime(), "Replay should reach the recorded time");
+        assertEquals(recorded.getPlayerLines().size(), replayed.getPlayerLines().size(), "Replay should leave the same lines");
+        assertEquals(recorded.getCurrentLevel().getBalls().size(), replayed.getCurrentLevel().getBalls().size(),
+                "Replay should leave the same balls");
+        for (int i = 0; i < recorded.getCurrentLevel().getBalls().size(); i++) {
+            Ball expected = recorded.getCurrentLevel().getBalls().get(i);
+            Ball actual = replayed.getCurrentLevel().getBalls().get(i);
+            assertEquals(expected.getPosition().x, actual.getPosition().x, "Ball x should match");
+            assertEquals(expected.getPosition().y, actual.getPosition().y, "Ball y should match");
+        }
+    }
+
+    @Test
+    public void testReplayRejectsDifferentConfig() {
+        InputLog log = new InputLog(1, App.configHash(config) + 1);
+        assertThrows(IllegalArgumentException.class, () -> new Replayer(log, config),
+                "A log recorded with another config should be rejected");
+    }
+}
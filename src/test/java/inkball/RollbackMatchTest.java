@@ -0,0 +1,186 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class RollbackMatchTest {
+
+    private final JSONObject config = App.loadConfigResource("/inkball/config.json");
+
+    /**
+     * Two transports whose messages take a number of frames to arrive.
+     */
+    private static class DelayedLink {
+        private final List<Deque<Object[]>> inboxes;
+        private final int latency;
+        private long frame;
+
+        DelayedLink(int latency) {
+            this.latency = latency;
+            this.inboxes = Arrays.asList(new ArrayDeque<>(), new ArrayDeque<>());
+        }
+
+        LockstepMatch.Transport end(int player) {
+            return new LockstepMatch.Transport() {
+                @Override
+                public void send(byte[] message) {
+                    inboxes.get(1 - player).add(new Object[]{frame + latency, message});
+                }
+
+                @Override
+                public byte[] poll() {
+                    Object[] head = inboxes.get(player).peek();
+                    if (head == null || (Long) head[0] > frame) {
+                        return null;
+                    }
+                    inboxes.get(player).poll();
+                    return (byte[]) head[1];
+                }
+            };
+        }
+    }
+
+    private static void stroke(RollbackMatch peer, int x) {
+        peer.input(InputLog.LINE_START, x, 100);
+        peer.input(InputLog.LINE_DRAG, x + 50, 250);
+        peer.input(InputLog.LINE_DRAG, x - 30, 400);
+        peer.input(InputLog.LINE_RELEASE, 0, 0);
+    }
+
+    @Test
+    public void testLateInputsAreRolledBackIntoTheSameGame() {
+        DelayedLink link = new DelayedLink(6);
+        RollbackMatch[] peers = {
+                new RollbackMatch(config, 31, 2, 0, link.end(0), 16),
+                new RollbackMatch(config, 31, 2, 1, link.end(1), 16)
+        };
+        App[] expected = {App.createHeadless(config, 31), App.createHeadless(config, 31)};
+        for (int frame = 0; frame < 800; frame++, link.frame++) {
+            for (int p = 0; p < 2; p++) {
+                if (frame % 90 == 15 * (p + 1)) {
+                    int x = 60 + (frame * 7 + p * 200) % 400;
+                    stroke(peers[p], x);
+                    expected[p].beginLine(x, 100);
+                    expected[p].extendLine(x + 50, 250);
+                    expected[p].extendLine(x - 30, 400);
+                    expected[p].finishLine();
+                }
+                peers[p].advance();
+                expected[p].tick();
+            }
+        }
+        // Let the last messages arrive
+        for (int frame = 0; frame < 10; frame++, link.frame++) {
+            for (int p = 0; p < 2; p++) {
+                peers[p].advance();
+                expected[p].tick();
+            }
+        }
+
+        for (int p = 0; p < 2; p++) {
+            assertFalse(peers[p].isDesynced(), "Rolled back boards should agree with their owners");
+            assertTrue(peers[p].getRollbacks() > 0, "Late strokes should have caused rollbacks");
+            assertEquals(6 * peers[p].getRollbacks(), peers[p].getResimulatedTicks(),
+                    "Each rollback should replay the ticks the input was late by");
+            for (int board = 0; board < 2; board++) {
+                assertArrayEquals(TestGames.snapshot(expected[board]), TestGames.snapshot(peers[p].getBoard(board)),
+                        "Peer " + p + " should end with board " + board + " as if every input had been on time");
+            }
+        }
+    }
+
+    @Test
+    public void testInputOlderThanHistoryIsRejected() {
+        DelayedLink link = new DelayedLink(20);
+        RollbackMatch[] peers = {
+                new RollbackMatch(config, 3, 2, 0, link.end(0), 8),
+                new RollbackMatch(config, 3, 2, 1, link.end(1), 8)
+        };
+        stroke(peers[0], 200);
+        for (int frame = 0; frame < 20; frame++, link.frame++) {
+            peers[0].advance();
+            peers[1].advance();
+        }
+        assertThrows(IllegalStateException.class, peers[1]::advance,
+                "An input later than the snapshot history should be refused");
+    }
+
+    @Test
+    public void testDivergedCopyIsReportedAsDesync() {
+        DelayedLink link = new DelayedLink(3);
+        RollbackMatch[] peers = {
+                new RollbackMatch(config, 8, 2, 0, link.end(0), 16),
+                new RollbackMatch(config, 8, 2, 1, link.end(1), 16)
+        };
+        for (int frame = 0; frame < 50; frame++, link.frame++) {
+            peers[0].advance();
+            peers[1].advance();
+        }
+        peers[0].getBoard(1).setScore(99);
+        for (int frame = 0; frame < 20; frame++, link.frame++) {
+            peers[0].advance();
+            peers[1].advance();
+        }
+        assertTrue(peers[0].isDesynced(), "A copy that no longer matches its owner should be noticed");
+        assertEquals(1, peers[0].getDesyncPlayer(), "The desync should name the board that differs");
+        assertFalse(peers[1].isDesynced(), "The owner's peer has nothing wrong with its copy of board 0");
+    }
+
+    @Test
+    public void testRestoringCapturedBallsAndConsumedLinesDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "The JVM cannot count allocations");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        App board = App.createHeadless(config, 31);
+        LevelSnapshot snapshot = new LevelSnapshot();
+        int windows = 0;
+        int allocating = 0;
+        for (int start = 0; start < 2400; start += 12) {
+            snapshot.capture(board);
+            int balls = board.getCurrentLevel().getBalls().size();
+            int lines = board.getPlayerLines().size();
+            playWindow(board, start);
+            boolean removed = board.getCurrentLevel().getBalls().size() < balls || board.getPlayerLines().size() < lines;
+            // Roll back over the window twice, as a late input would, and count both restores
+            long restoreBytes = Long.MAX_VALUE;
+            for (int round = 0; round < 2; round++) {
+                long before = threads.getThreadAllocatedBytes(thread);
+                snapshot.restore(board);
+                restoreBytes = Math.min(restoreBytes, threads.getThreadAllocatedBytes(thread) - before);
+                playWindow(board, start);
+            }
+            if (removed) {
+                windows++;
+                if (restoreBytes > 0) {
+                    allocating++;
+                }
+            }
+        }
+        assertTrue(windows > 10, "Balls should have been captured and lines consumed after some captures");
+        assertEquals(0, allocating, "Restoring removed balls and lines should reuse objects instead of allocating");
+    }
+
+    private static void playWindow(App board, int start) {
+        for (int t = start; t < start + 12; t++) {
+            if (t % 60 == 5) {
+                int x = 60 + t * 7 % 400;
+                board.beginLine(x, 100);
+                board.extendLine(x + 50, 250);
+                board.extendLine(x - 30, 400);
+                board.finishLine();
+            }
+            board.tick();
+        }
+    }
+}
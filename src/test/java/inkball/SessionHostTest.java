@@ -0,0 +1,104 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionHostTest {
+
+    private final JSONObject config = App.loadConfigResource("/inkball/config.json");
+
+    private static void drawLine(App app, int x) {
+        app.beginLine(x, 120);
+        app.extendLine(x + 60, 260);
+        app.extendLine(x - 20, 420);
+        app.finishLine();
+    }
+
+    @Test
+    public void testCachedLayoutsPlayLikeParsedLayouts() {
+        LayoutCache cache = new LayoutCache();
+        App parsed = App.createHeadless(config, 21);
+        App cached = App.createHeadless(config, 21, cache);
+        App other = App.createHeadless(config, 22, cache);
+        assertSame(cached.getCurrentLevel().getWalls(), other.getCurrentLevel().getWalls(),
+                "Games on the same layout should share its walls");
+        assertEquals(1, cache.size(), "The layout should only be parsed once");
+
+        for (int t = 0; t < 2400; t++) {
+            if (t % 150 == 10) {
+                drawLine(parsed, 80 + t % 400);
+                drawLine(cached, 80 + t % 400);
+            }
+            if (t == 1500) {
+                parsed.restartLevel();
+                cached.restartLevel();
+            }
+            parsed.tick();
+            cached.tick();
+            other.tick();
+            if (t % 100 == 0) {
+                assertArrayEquals(TestGames.snapshot(parsed), TestGames.snapshot(cached),
+                        "A cached layout should play like a parsed one at tick " + t);
+            }
+        }
+        assertNotEquals(parsed.getCurrentLevel().getBalls().get(0).getPosition(),
+                other.getCurrentLevel().getBalls().get(0).getPosition(),
+                "Sharing a layout should not share the balls");
+    }
+
+    @Test
+    public void testHostedSessionsMatchStandaloneGames() throws InterruptedException {
+        List<SessionHost.Session> sessions = new ArrayList<>();
+        try (SessionHost host = new SessionHost(config, 4)) {
+            for (int seed = 0; seed < 24; seed++) {
+                sessions.add(host.open(seed, 2000, Player.IDLE));
+            }
+            long deadline = System.currentTimeMillis() + 20000;
+            for (SessionHost.Session session : sessions) {
+                while (session.getTicks() < 60 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(5);
+                }
+            }
+            assertEquals(24, host.getSessions().size(), "Every session should still be open");
+        }
+
+        for (int seed = 0; seed < sessions.size(); seed++) {
+            SessionHost.Session session = sessions.get(seed);
+            assertTrue(session.isClosed(), "Closing the host should close its sessions");
+            assertTrue(session.getTicks() >= 60, "Every session should have been ticked");
+            App expected = App.createHeadless(config, seed);
+            for (long t = 0; t < session.getTicks(); t++) {
+                expected.tick();
+            }
+            assertArrayEquals(TestGames.snapshot(expected), TestGames.snapshot(session.getApp()),
+                    "Session " + seed + " should play exactly like a standalone game");
+        }
+    }
+
+    @Test
+    public void testFailingSessionIsClosedAlone() throws InterruptedException {
+        try (SessionHost host = new SessionHost(config, 2)) {
+            SessionHost.Session healthy = host.open(1, 1000, Player.IDLE);
+            SessionHost.Session failing = host.open(2, 1000, app -> {
+                if (app.getTick() == 5) {
+                    throw new IllegalStateException("bot crashed");
+                }
+            });
+            long deadline = System.currentTimeMillis() + 20000;
+            while ((!failing.isClosed() || healthy.getTicks() < 50) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(failing.isClosed(), "A session whose tick throws should be closed");
+            assertEquals("bot crashed", failing.getFailure().getMessage(), "The failure should be kept");
+            assertEquals(5, failing.getTicks(), "The failing session should stop at the failing tick");
+            assertFalse(healthy.isClosed(), "Other sessions should keep running");
+            assertTrue(healthy.getTicks() >= 50, "Other sessions should keep ticking");
+            assertEquals(1, host.getSessions().size(), "Only the healthy session should be left");
+        }
+    }
+}
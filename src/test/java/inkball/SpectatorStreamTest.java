@@ -0,0 +1,284 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpectatorStreamTest {
+
+    private final JSONObject config = App.loadConfigResource("/inkball/config.json");
+
+    private static void play(App game, int frame) {
+        if (frame % 90 == 10) {
+            int x = 40 + (frame * 13) % 480;
+            game.beginLine(x, 80);
+            for (int i = 1; i <= 20; i++) {
+                game.extendLine(x + (i % 2 == 0 ? 10 : -10), 80 + i * 15);
+                if (i == 10) {
+                    // Half the line goes out while it is still being drawn
+                    game.tick();
+                }
+            }
+            game.finishLine();
+        }
+    }
+
+    private static void assertShows(App game, App view) {
+        String at = " at tick " + game.getTick();
+        assertEquals(game.getCurrentLevelIndex(), view.getCurrentLevelIndex(), "Level" + at);
+        assertEquals(game.getTick(), view.getTick(), "Tick" + at);
+        assertEquals(game.getScore(), view.getScore(), "Score" + at);
+        assertEquals(game.getRemainingTime(), view.getRemainingTime(), "Remaining time" + at);
+        assertEquals(game.isLevelCompleted(), view.isLevelCompleted(), "Completion" + at);
+        assertEquals(game.getCurrentLevel().getConfigBalls(), view.getCurrentLevel().getConfigBalls(), "Spawn queue" + at);
+
+        List<Ball> balls = game.getCurrentLevel().getBalls();
+        List<Ball> shown = view.getCurrentLevel().getBalls();
+        assertEquals(balls.size(), shown.size(), "Ball count" + at);
+        float tolerance = 0.5f / SpectatorEncoder.POSITION_SCALE + 1e-3f;
+        for (int i = 0; i < balls.size(); i++) {
+            assertEquals(balls.get(i).getPosition().x, shown.get(i).getPosition().x, tolerance, "Ball x" + at);
+            assertEquals(balls.get(i).getPosition().y, shown.get(i).getPosition().y, tolerance, "Ball y" + at);
+            assertEquals(balls.get(i).getColorType(), shown.get(i).getColorType(), "Ball color" + at);
+        }
+
+        List<Brick> layout = game.getCurrentLevel().getLayoutBricks();
+        List<Brick> shownLayout = view.getCurrentLevel().getLayoutBricks();
+        for (int i = 0; i < layout.size(); i++) {
+            boolean alive = game.getCurrentLevel().getBricks().contains(layout.get(i));
+            assertEquals(alive, view.getCurrentLevel().getBricks().contains(shownLayout.get(i)), "Brick " + i + at);
+            if (alive) {
+                assertEquals(layout.get(i).getHitCount(), shownLayout.get(i).getHitCount(), "Brick hits" + at);
+            }
+        }
+
+        assertEquals(game.getPlayerLines().size(), view.getPlayerLines().size(), "Line count" + at);
+        for (int i = 0; i < game.getPlayerLines().size(); i++) {
+            assertPoints(game.getPlayerLines().get(i).points(), view.getPlayerLines().get(i).points(), "Line" + at);
+        }
+        assertEquals(game.getCurrentLine() == null, view.getCurrentLine() == null, "Line being drawn" + at);
+        if (game.getCurrentLine() != null) {
+            assertPoints(game.getCurrentLine().points(), view.getCurrentLine().points(), "Line being drawn" + at);
+        }
+    }
+
+    private static void assertPoints(List<PVector> expected, List<PVector> actual, String message) {
+        assertEquals(expected.size(), actual.size(), message);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).x, actual.get(i).x, message);
+            assertEquals(expected.get(i).y, actual.get(i).y, message);
+        }
+    }
+
+    @Test
+    public void testBitPackingRoundTrips() {
+        BitWriter out = new BitWriter(1);
+        long[] values = {0, 1, 2, 3, 1000, Integer.MAX_VALUE, 1L << 40};
+        for (long value : values) {
+            out.writeUnsigned(value);
+            out.writeSigned(-value);
+            out.write(value & 0x1F, 5);
+        }
+        BitReader in = new BitReader(out.toByteArray());
+        for (long value : values) {
+            assertEquals(value, in.readUnsigned(), "Gamma codes should round trip");
+            assertEquals(-value, in.readSigned(), "Signed gamma codes should round trip");
+            assertEquals(value & 0x1F, in.read(5), "Fixed fields should round trip");
+        }
+        BitWriter small = new BitWriter(8);
+        small.writeUnsigned(0);
+        assertEquals(1, small.getBitLength(), "Zero should cost one bit");
+    }
+
+    @Test
+    public void testFrameLengthsOutsideTheBoundAreRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        SpectatorEncoder.writeFrame(out, new byte[]{1, 2, 3});
+        Varint.writeUnsigned(out, SpectatorEncoder.MAX_FRAME_BYTES + 1L);
+        Varint.writeUnsigned(out, -1L);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertArrayEquals(new byte[]{1, 2, 3}, SpectatorEncoder.readFrame(in), "A small frame should read back");
+        assertThrows(IOException.class, () -> SpectatorEncoder.readFrame(in), "An oversized length should be rejected");
+        assertThrows(IOException.class, () -> SpectatorEncoder.readFrame(in), "A negative length should be rejected");
+        assertThrows(IOException.class, () -> SpectatorEncoder.writeFrame(out, new byte[SpectatorEncoder.MAX_FRAME_BYTES + 1]),
+                "An oversized frame should not be written");
+    }
+
+    @Test
+    public void testViewShowsTheGameEveryTick() {
+        App game = App.createHeadless(config, 5);
+        SpectatorEncoder encoder = new SpectatorEncoder(150);
+        SpectatorDecoder decoder = new SpectatorDecoder(App.createHeadless(config, 0));
+        int linesConsumed = 0;
+        for (int frame = 0; frame < 3000; frame++) {
+            int before = game.getPlayerLines().size();
+            play(game, frame);
+            game.tick();
+            if (game.getPlayerLines().size() < before) {
+                linesConsumed++;
+            }
+            assertTrue(decoder.apply(encoder.encode(game)), "Every frame should apply after the first keyframe");
+            assertShows(game, decoder.getView());
+        }
+        assertTrue(linesConsumed > 0, "Balls should have used up some lines along the way");
+    }
+
+    @Test
+    public void testBrickChangesRedrawTheSpectatorsStaticLayer() {
+        App game = App.createHeadless(config, 5);
+        SpectatorEncoder encoder = new SpectatorEncoder(Integer.MAX_VALUE);
+        SpectatorDecoder decoder = new SpectatorDecoder(App.createHeadless(config, 0));
+        assertTrue(decoder.apply(encoder.encode(game)), "The first frame should be a keyframe");
+        Level view = decoder.getView().getCurrentLevel();
+        assertNotEquals(0, view.getBrickVersion(), "A keyframe should redraw the layer");
+
+        int version = view.getBrickVersion();
+        game.tick();
+        assertTrue(decoder.apply(encoder.encode(game)), "Every frame should apply after the first keyframe");
+        assertEquals(version, view.getBrickVersion(), "A frame without brick changes should leave the layer alone");
+
+        Level level = game.getCurrentLevel();
+        level.getBricks().get(0).setHitCount(2);
+        game.tick();
+        assertTrue(decoder.apply(encoder.encode(game)), "Every frame should apply after the first keyframe");
+        assertEquals(2, view.getBricks().get(0).getHitCount(), "The hit should reach the spectator");
+        assertNotEquals(version, view.getBrickVersion(), "A hit brick in a frame should redraw the layer");
+
+        int gameVersion = level.getBrickVersion();
+        int standing = level.getBricks().size();
+        level.removeBrick(level.getBricks().get(0));
+        assertNotEquals(gameVersion, level.getBrickVersion(), "Removing a brick should redraw the layer");
+        version = view.getBrickVersion();
+        game.tick();
+        assertTrue(decoder.apply(encoder.encode(game)), "Every frame should apply after the first keyframe");
+        assertEquals(standing - 1, view.getBricks().size(), "The removal should reach the spectator");
+        assertNotEquals(version, view.getBrickVersion(), "A removed brick in a frame should redraw the layer");
+    }
+
+    @Test
+    public void testLateSpectatorCatchesUpAtNextKeyframe() {
+        App game = App.createHeadless(config, 12);
+        SpectatorEncoder encoder = new SpectatorEncoder(100);
+        SpectatorDecoder late = new SpectatorDecoder(App.createHeadless(config, 0));
+        for (int frame = 0; frame < 400; frame++) {
+            play(game, frame);
+            game.tick();
+            byte[] frameBytes = encoder.encode(game);
+            if (frame == 150) {
+                assertFalse(late.apply(frameBytes), "A delta without a keyframe before it should be skipped");
+            } else if (frame > 150) {
+                late.apply(frameBytes);
+            }
+        }
+        assertTrue(late.isSynced(), "The late spectator should have picked up a keyframe");
+        assertShows(game, late.getView());
+
+        encoder.requestKeyframe();
+        game.tick();
+        byte[] keyframe = encoder.encode(game);
+        SpectatorDecoder joiner = new SpectatorDecoder(App.createHeadless(config, 0));
+        assertTrue(joiner.apply(keyframe), "A requested keyframe should sync a new spectator at once");
+        assertShows(game, joiner.getView());
+    }
+
+    @Test
+    public void testDeltasStaySmallAsLinesGrow() {
+        App game = App.createHeadless(config, 5);
+        SpectatorEncoder encoder = new SpectatorEncoder(Integer.MAX_VALUE);
+        encoder.encode(game);
+        // A long line away from the balls' path, then a quiet stretch
+        game.beginLine(20, 20);
+        for (int i = 0; i < 300; i++) {
+            game.extendLine(20 + i % 2, 20 + i);
+        }
+        game.tick();
+        encoder.encode(game);
+        long deltaBytes = 0;
+        int deltas = 0;
+        for (int frame = 0; frame < 200; frame++) {
+            game.tick();
+            deltaBytes += encoder.encode(game).length;
+            deltas++;
+        }
+        int snapshot = TestGames.snapshot(game).length;
+        double average = deltaBytes / (double) deltas;
+        assertTrue(average < 16, "A tick should cost a few bytes, not " + average);
+        assertTrue(average * 20 < snapshot,
+                "Deltas should be far smaller than full state: " + average + " vs " + snapshot);
+    }
+
+    /**
+     * Starts a delta that changes nothing up to the ball queue.
+     *
+     * @return The writer, positioned at the queue's flag.
+     */
+    private static BitWriter emptyDelta() {
+        BitWriter out = new BitWriter(64);
+        out.writeBit(false);
+        out.writeUnsigned(0);
+        for (int i = 0; i < 6; i++) {
+            out.writeBit(false);
+        }
+        return out;
+    }
+
+    @Test
+    public void testCorruptFramesAreRejectedUntilTheNextKeyframe() {
+        App game = App.createHeadless(config, 4);
+        SpectatorEncoder encoder = new SpectatorEncoder(Integer.MAX_VALUE);
+        SpectatorDecoder decoder = new SpectatorDecoder(App.createHeadless(config, 0));
+        game.tick();
+        assertTrue(decoder.apply(encoder.encode(game)), "The first frame should be a keyframe");
+        int balls = decoder.getView().getCurrentLevel().getBalls().size();
+        assertNull(decoder.getView().getCurrentLine(), "No line should be in progress");
+
+        BitWriter overTaken = emptyDelta();
+        overTaken.writeBit(true);
+        overTaken.writeUnsigned(1000);
+        BitWriter overRemoved = emptyDelta();
+        overRemoved.writeBit(false);
+        overRemoved.writeBit(false);
+        overRemoved.writeUnsigned(0);
+        overRemoved.writeUnsigned(1L << 40);
+        BitWriter finishedNothing = emptyDelta();
+        finishedNothing.writeBit(false);
+        finishedNothing.writeBit(false);
+        finishedNothing.writeUnsigned(0);
+        finishedNothing.writeUnsigned(0);
+        for (int i = 0; i < balls * 3; i++) {
+            finishedNothing.writeBit(false);
+        }
+        finishedNothing.writeUnsigned(0);
+        finishedNothing.writeBit(true);
+        finishedNothing.writeUnsigned(0);
+        finishedNothing.writeUnsigned(1);
+        finishedNothing.writeBit(true);
+        byte[] cut = encoder.encode(game);
+
+        for (byte[] frame : new byte[][]{overTaken.toByteArray(), overRemoved.toByteArray(),
+                finishedNothing.toByteArray(), Arrays.copyOf(cut, cut.length / 2)}) {
+            assertThrows(IllegalStateException.class, () -> decoder.apply(frame),
+                    "A frame that does not fit the view should be rejected");
+            assertFalse(decoder.isSynced(), "A rejected frame should leave the spectator waiting for a keyframe");
+            game.tick();
+            assertFalse(decoder.apply(encoder.encode(game)), "Deltas after a rejected frame should be skipped");
+
+            encoder.requestKeyframe();
+            game.tick();
+            assertTrue(decoder.apply(encoder.encode(game)), "The next keyframe should sync the spectator again");
+            assertShows(game, decoder.getView());
+        }
+    }
+}
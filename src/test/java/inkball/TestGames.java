@@ -0,0 +1,72 @@
+package inkball;
+
+import processing.data.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Helpers shared by the tests that record games or compare games played in different ways.
+ */
+final class TestGames {
+
+    private TestGames() {
+    }
+
+    /**
+     * Captures a game's state, so two games can be compared byte for byte.
+     *
+     * @param app The game.
+     * @return The game's level snapshot.
+     */
+    static byte[] snapshot(App app) {
+        LevelSnapshot snapshot = new LevelSnapshot();
+        snapshot.capture(app);
+        ByteBuffer buffer = snapshot.getBuffer();
+        return Arrays.copyOf(buffer.array(), buffer.limit());
+    }
+
+    /**
+     * Plays a recorded game that uses every kind of input: a line is drawn every 120 ticks at a
+     * place that depends on the seed, every other line is erased 60 ticks later, and the game
+     * is paused from tick 400 to tick 460.
+     *
+     * @param config The game configuration.
+     * @param seed The game's seed.
+     * @param ticks The number of ticks to play.
+     * @return The game, with its recording ending at the last tick.
+     */
+    static App play(JSONObject config, long seed, int ticks) {
+        App app = App.createHeadless(config, seed);
+        app.startRecording();
+        int x = 0;
+        for (int i = 0; i < ticks; i++) {
+            if (i % 120 == 30) {
+                x = 60 + (int) ((seed * 37 + i) % 400);
+                app.beginLine(x, 120);
+                app.extendLine(x + 50, 250);
+                app.extendLine(x - 30, 380);
+                app.finishLine();
+            } else if (i % 240 == 90) {
+                app.eraseLineAt(x, 120);
+            } else if (i == 400 || i == 460) {
+                app.togglePause();
+            }
+            app.tick();
+        }
+        app.getInputLog().setEndTick(app.getTick());
+        return app;
+    }
+
+    /**
+     * Records a game played by {@link #play}.
+     *
+     * @param config The game configuration.
+     * @param seed The game's seed.
+     * @param ticks The number of ticks to play.
+     * @return The recording.
+     */
+    static InputLog record(JSONObject config, long seed, int ticks) {
+        return play(config, seed, ticks).getInputLog();
+    }
+}
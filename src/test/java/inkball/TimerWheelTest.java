@@ -0,0 +1,119 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimerWheelTest {
+
+    @Test
+    public void testTimersFireInDeadlineThenSchedulingOrder() {
+        TimerWheel wheel = new TimerWheel(0);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(new TimerWheel.Timer(() -> fired.add("b" + wheel.getCurrent())), 5);
+        wheel.schedule(new TimerWheel.Timer(() -> fired.add("a" + wheel.getCurrent())), 3);
+        wheel.schedule(new TimerWheel.Timer(() -> fired.add("c" + wheel.getCurrent())), 5);
+        wheel.schedule(new TimerWheel.Timer(() -> fired.add("late" + wheel.getCurrent())), -10);
+
+        wheel.advance(4);
+        assertEquals("[late1, a3]", fired.toString(), "A past deadline should fire at the next tick");
+        wheel.advance(10);
+        assertEquals("[late1, a3, b5, c5]", fired.toString(), "Timers due together should keep their scheduling order");
+        assertEquals(0, wheel.size(), "Fired timers should leave the wheel");
+    }
+
+    @Test
+    public void testCancelAndRescheduleFromInsideATask() {
+        TimerWheel wheel = new TimerWheel(0);
+        List<String> fired = new ArrayList<>();
+        TimerWheel.Timer victim = new TimerWheel.Timer(() -> fired.add("victim"));
+        TimerWheel.Timer moved = new TimerWheel.Timer(() -> fired.add("moved" + wheel.getCurrent()));
+        TimerWheel.Timer[] repeating = new TimerWheel.Timer[1];
+        repeating[0] = new TimerWheel.Timer(() -> {
+            fired.add("repeat" + wheel.getCurrent());
+            if (wheel.getCurrent() < 6) {
+                wheel.schedule(repeating[0], wheel.getCurrent() + 3);
+            }
+        });
+        wheel.schedule(new TimerWheel.Timer(() -> {
+            wheel.cancel(victim);
+            wheel.schedule(moved, 2);
+        }), 2);
+        wheel.schedule(victim, 2);
+        wheel.schedule(moved, 2);
+        wheel.schedule(repeating[0], 3);
+
+        wheel.advance(20);
+        assertEquals("[repeat3, moved3, repeat6]", fired.toString(),
+                "A task should be able to cancel or move timers due in the same tick");
+        assertFalse(victim.isScheduled(), "A cancelled timer should not be scheduled");
+    }
+
+    @Test
+    public void testLongDeadlinesCascadeToTheRightTick() {
+        TimerWheel wheel = new TimerWheel(100);
+        long[] deadlines = {101, 164, 165, 4196, 4197, 300000, 16777316, 20000000};
+        List<Long> fired = new ArrayList<>();
+        for (long deadline : deadlines) {
+            wheel.schedule(new TimerWheel.Timer(() -> fired.add(wheel.getCurrent())), deadline);
+        }
+        wheel.advance(300000);
+        assertEquals(6, fired.size(), "Timers due by the target tick should have fired");
+        wheel.advance(30000000);
+        List<Long> expected = new ArrayList<>();
+        for (long deadline : deadlines) {
+            expected.add(deadline);
+        }
+        assertEquals(expected, fired, "Each timer should fire exactly at its deadline");
+    }
+
+    @Test
+    public void testResetDropsEveryTimer() {
+        TimerWheel wheel = new TimerWheel(0);
+        List<Long> fired = new ArrayList<>();
+        TimerWheel.Timer[] timers = new TimerWheel.Timer[4];
+        long[] deadlines = {1, 1, 100, 10000};
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new TimerWheel.Timer(() -> fired.add(wheel.getCurrent()));
+            wheel.schedule(timers[i], deadlines[i]);
+        }
+
+        wheel.reset(50);
+        assertEquals(0, wheel.size(), "A reset wheel should hold no timers");
+        for (TimerWheel.Timer timer : timers) {
+            assertFalse(timer.isScheduled(), "A reset should unschedule every timer");
+        }
+        wheel.schedule(timers[1], 52);
+        wheel.advance(20000);
+        assertEquals("[52]", fired.toString(), "Only timers scheduled after the reset should fire");
+    }
+
+    @Test
+    public void testCountdownPausesWithTheGame() {
+        JSONObject config = App.loadConfigResource("/inkball/config.json");
+        App app = App.createHeadless(config, 7);
+        int start = app.getRemainingTime();
+        for (int i = 0; i <= App.FPS * 3; i++) {
+            app.tick();
+        }
+        assertEquals(start - 3, app.getRemainingTime(), "Three seconds of ticks should take three seconds off");
+
+        app.togglePause();
+        for (int i = 0; i < App.FPS * 10; i++) {
+            app.tick();
+        }
+        assertEquals(start - 3, app.getRemainingTime(), "The countdown should not run while paused");
+
+        App fork = app.fork();
+        app.togglePause();
+        fork.togglePause();
+        app.tick();
+        fork.tick();
+        assertEquals(start - 4, app.getRemainingTime(), "An overdue second should be taken on resume");
+        assertEquals(app.getRemainingTime(), fork.getRemainingTime(), "A fork should carry the countdown over");
+    }
+}
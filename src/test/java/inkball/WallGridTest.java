@@ -0,0 +1,117 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import processing.core.PVector;
+import processing.data.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WallGridTest {
+
+    private final JSONObject config = App.loadConfigResource("/inkball/config.json");
+
+    /**
+     * A board crowded with walls of every colour, so balls are pushed from wall to wall.
+     */
+    private static String[] crowdedLayout(Random random) {
+        String[] layout = new String[18];
+        for (int row = 0; row < layout.length; row++) {
+            StringBuilder line = new StringBuilder();
+            for (int col = 0; col < 18; col++) {
+                int pick = random.nextInt(10);
+                line.append(pick < 4 ? ' ' : pick < 6 ? 'X' : (char) ('1' + random.nextInt(4)));
+            }
+            layout[row] = line.toString();
+        }
+        return layout;
+    }
+
+    /**
+     * Walls scattered off the tile grid and overlapping each other, which the grid allows.
+     */
+    private static List<Wall> scatteredWalls(App app, Random random) {
+        List<Wall> walls = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            PVector position = new PVector(random.nextFloat() * 544, random.nextFloat() * 544);
+            walls.add(new Wall(position, null, app, random.nextInt(5)));
+        }
+        return walls;
+    }
+
+    /**
+     * Moves a ball the way checking every wall in list order does.
+     */
+    private static void moveAgainstEveryWall(Ball ball, List<Wall> walls) {
+        ball.update();
+        for (Wall wall : walls) {
+            wall.checkCollision(ball);
+        }
+    }
+
+    private static void assertSameBall(Ball expected, Ball actual, List<Wall> walls, String context) {
+        assertEquals(expected.getPosition(), actual.getPosition(), "Position " + context);
+        assertEquals(expected.getVelocity(), actual.getVelocity(), "Velocity " + context);
+        assertEquals(expected.getColorType(), actual.getColorType(), "Colour " + context);
+        for (Wall wall : walls) {
+            assertEquals(expected.getCooldown(wall), actual.getCooldown(wall), "Cooldown " + context);
+        }
+    }
+
+    @Test
+    public void testNearbyWallsMatchAFullScan() {
+        Random random = new Random(11);
+        for (int board = 0; board < 40; board++) {
+            App app = App.createHeadless(config, board, crowdedLayout(random));
+            Level level = app.getCurrentLevel();
+            if (board % 2 == 1) {
+                level.setWalls(scatteredWalls(app, random));
+            }
+            List<Wall> walls = level.getWalls();
+            int[] nearby = new int[16];
+            for (int b = 0; b < 40; b++) {
+                // Balls start anywhere, often deep inside a wall, and some move faster than a tile per tick
+                float speed = b % 4 == 0 ? 40 : 4;
+                Ball expected = new Ball(new PVector(random.nextFloat() * 576, random.nextFloat() * 576), null, app, random.nextInt(5));
+                expected.setVelocity(new PVector((random.nextFloat() * 2 - 1) * speed, (random.nextFloat() * 2 - 1) * speed));
+                for (int c = 0; c < 3; c++) {
+                    expected.setCooldown(walls.get(random.nextInt(walls.size())), 1 + random.nextInt(5));
+                }
+                Ball actual = expected.copy(app);
+                for (int t = 0; t < 60; t++) {
+                    moveAgainstEveryWall(expected, walls);
+                    nearby = level.moveBall(actual, nearby);
+                    assertSameBall(expected, actual, walls, "on board " + board + ", ball " + b + ", tick " + t);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCollectFindsEveryWallInReach() {
+        Random random = new Random(4);
+        App app = App.createHeadless(config, 0, crowdedLayout(random));
+        List<Wall> walls = app.getCurrentLevel().getWalls();
+        WallGrid grid = new WallGrid(walls);
+        int[] found = new int[walls.size()];
+        for (int i = 0; i < 500; i++) {
+            float x = random.nextFloat() * 640 - 32;
+            float y = random.nextFloat() * 640 - 32;
+            float reach = random.nextFloat() * 40;
+            int count = grid.collect(x, y, reach, found);
+            for (int w = 0; w < walls.size(); w++) {
+                PVector corner = walls.get(w).getPosition();
+                boolean inReach = corner.x < x + reach && corner.x + App.CELLSIZE > x - reach
+                        && corner.y < y + reach && corner.y + App.CELLSIZE > y - reach;
+                if (inReach) {
+                    assertTrue(Arrays.binarySearch(found, 0, count, w) >= 0,
+                            "Wall " + w + " is within " + reach + " of (" + x + ", " + y + ")");
+                }
+            }
+        }
+    }
+}